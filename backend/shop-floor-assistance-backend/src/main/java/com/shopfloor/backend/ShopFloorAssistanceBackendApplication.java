@@ -1,14 +1,21 @@
 package com.shopfloor.backend;
 
+import com.shopfloor.backend.olingo.database.ODataBaseRepository;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Main class for the ShopFloor Assistance Backend application.
  * This class is responsible for bootstrapping the Spring Boot application.
+ * All repositories are based on the ODataBaseRepository, which adds the projection queries used by OData.
+ * Scheduling runs the periodic housekeeping, e.g. the sweep of expired asynchronous OData requests.
  * @author David Todorov (https://github.com/david-todorov)
  */
 @SpringBootApplication
+@EnableJpaRepositories(repositoryBaseClass = ODataBaseRepository.class)
+@EnableScheduling
 public class ShopFloorAssistanceBackendApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,89 @@
+package com.shopfloor.backend.concurrency;
+
+import com.shopfloor.backend.concurrency.AdaptiveLimiter.Priority;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Filter admitting every request through the shared PriorityAdmission and the adaptive limiter of its endpoint group.
+ * It runs before the bulkheads and Spring Security, a shed request is answered with 503 Service Unavailable and Retry-After.
+ * The latency of every admitted request adapts the limit of its group and, through its gradient, the admission,
+ * except for requests rejected with 503 further on, whose short latency would let the limits grow while the service is overloaded.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+@ConditionalOnProperty(name = "limiter.enabled", havingValue = "true")
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 20)
+public class AdaptiveLimitFilter extends OncePerRequestFilter {
+
+    private final AdaptiveLimiters limiters;
+
+    /**
+     * Constructor for AdaptiveLimitFilter.
+     *
+     * @param limiters the limiters of the endpoint groups
+     */
+    public AdaptiveLimitFilter(AdaptiveLimiters limiters) {
+        this.limiters = limiters;
+    }
+
+    /**
+     * Processes the request if the admission and the limiter of its group admit it, otherwise sheds it.
+     *
+     * @param request the HTTP request
+     * @param response the HTTP response
+     * @param filterChain the filter chain
+     * @throws ServletException if a servlet error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        String group = limiters.groupOf(request.getMethod(), request.getRequestURI().substring(request.getContextPath().length()));
+        if (group == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        Priority priority = limiters.priorityOf(group, request.getMethod());
+        PriorityAdmission admission = limiters.getAdmission();
+        AdaptiveLimiter limiter = limiters.get(group);
+        int admittedInFlight = admission.tryAcquire(priority);
+        if (admittedInFlight == 0) {
+            shed(admission, group, response);
+            return;
+        }
+        int inFlight = limiter.tryAcquire(priority);
+        if (inFlight == 0) {
+            admission.release();
+            shed(limiter, group, response);
+            return;
+        }
+        long start = System.nanoTime();
+        long rttNanos = 0;
+        try {
+            filterChain.doFilter(request, response);
+            if (response.getStatus() != HttpServletResponse.SC_SERVICE_UNAVAILABLE) {
+                rttNanos = System.nanoTime() - start;
+            }
+        } finally {
+            double gradient = limiter.onComplete(rttNanos, inFlight, priority);
+            admission.onGroupComplete(gradient, admittedInFlight, priority);
+        }
+    }
+
+    private void shed(AdaptiveLimiter limiter, String group, HttpServletResponse response) throws IOException {
+        String message = "The limit of " + limiter.getLimit() + " concurrent " + limiter.getName() + " requests is reached, retry later";
+        ServiceUnavailable.write(response, group.startsWith("odata"), message, limiters.getRetryAfter());
+    }
+}
@@ -0,0 +1,193 @@
+package com.shopfloor.backend.concurrency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency limit adapting to the observed latency, after the gradient algorithm of Netflix' concurrency-limits.
+ * The long-term average latency is compared with the latency of every finished request:
+ * gradient = min(1, max(0.5, rtt-tolerance * long average / latency))
+ * new limit = limit * gradient + sqrt(limit)
+ * While requests are as fast as usual the limit grows by the square root, the allowed queue.
+ * When requests get slower than the tolerance, requests are queuing somewhere (threads, connections, database),
+ * the limit shrinks by up to half until the latency is back to normal. Samples of requests sent while less than half
+ * of the share of the limit their priority may use was used are ignored, the latency then tells nothing about the limit.
+ *
+ * A request of any priority is admitted while fewer requests are in flight than the limit,
+ * the shedding by priority is done by PriorityAdmission in front of the limiters of the endpoint groups.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class AdaptiveLimiter {
+
+    /**
+     * Priorities of requests with the share of the limit of PriorityAdmission they may use.
+     */
+    public enum Priority {
+        CRITICAL(1.0), HIGH(0.9), NORMAL(0.75), LOW(0.5);
+
+        private final double share;
+
+        Priority(double share) {
+            this.share = share;
+        }
+
+        /**
+         * Returns the share of the shared admission limit requests of this priority may use.
+         *
+         * @return the share between 0 and 1
+         */
+        public double getShare() {
+            return share;
+        }
+    }
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final int longWindow;
+    private final double rttTolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder[] shed = new LongAdder[Priority.values().length];
+
+    /**
+     * Current limit, read without locking, written under the lock of this limiter.
+     */
+    private volatile double limit;
+    private double longRttNanos;
+
+    /**
+     * Constructs a limiter.
+     *
+     * @param name the name of the endpoint group, e.g. "operator"
+     * @param initialLimit the limit before the first sample
+     * @param minLimit the smallest limit
+     * @param maxLimit the largest limit
+     * @param smoothing the weight of a new limit against the current limit, between 0 and 1
+     * @param longWindow the number of samples of the long-term average latency
+     * @param rttTolerance the factor a request may be slower than the average before the limit shrinks
+     */
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, double smoothing, int longWindow, double rttTolerance) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.longWindow = longWindow;
+        this.rttTolerance = rttTolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        for (int i = 0; i < shed.length; i++) {
+            shed[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Admits a request if fewer requests are in flight than the share of the limit of its priority.
+     * An admitted request has to be completed by onComplete or release.
+     *
+     * @param priority the priority of the request
+     * @return the number of requests in flight including this one, 0 if the request is shed
+     */
+    public int tryAcquire(Priority priority) {
+        int allowed = Math.max(1, (int) (limit * share(priority)));
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                shed[priority.ordinal()].increment();
+                return 0;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.increment();
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * Completes an admitted request without a sample, e.g. when it was rejected further on.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Completes an admitted request and adapts the limit to its latency.
+     *
+     * @param rttNanos the latency of the request in nanoseconds
+     * @param inFlightAtStart the number of requests in flight when it was admitted, as returned by tryAcquire
+     * @param priority the priority the request was admitted with
+     * @return the gradient of the latency against the long-term average, 0 without a latency
+     */
+    public double onComplete(long rttNanos, int inFlightAtStart, Priority priority) {
+        inFlight.decrementAndGet();
+        return rttNanos > 0 ? sample(rttNanos, inFlightAtStart, priority) : 0;
+    }
+
+    /**
+     * Returns the share of the limit requests of a priority may use.
+     *
+     * @param priority the priority
+     * @return the share between 0 and 1, 1 for every priority
+     */
+    protected double share(Priority priority) {
+        return 1.0;
+    }
+
+    /**
+     * Adapts the limit by the gradient of a sample, unless the limit was not used enough when the request was admitted.
+     *
+     * @param gradient the gradient between 0.5 and 1
+     * @param inFlightAtStart the number of requests in flight when the request was admitted
+     * @param priority the priority the request was admitted with
+     */
+    protected synchronized void adapt(double gradient, int inFlightAtStart, Priority priority) {
+        // measured against the share the priority was admitted to, e.g. a LOW request never sees more than half of the limit
+        if (inFlightAtStart < limit * share(priority) / 2) {
+            return;
+        }
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + newLimit * smoothing));
+    }
+
+    private synchronized double sample(long rttNanos, int inFlightAtStart, Priority priority) {
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+        } else {
+            longRttNanos += (rttNanos - longRttNanos) * 2 / (longWindow + 1);
+        }
+        // after a slow period the average drifts back faster, otherwise the limit would keep growing on it
+        if (longRttNanos / rttNanos > 2) {
+            longRttNanos *= 0.95;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRttNanos / rttNanos));
+        adapt(gradient, inFlightAtStart, priority);
+        return gradient;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * Returns the number of shed requests of a priority.
+     *
+     * @param priority the priority
+     * @return the number of shed requests
+     */
+    public long getShed(Priority priority) {
+        return shed[priority.ordinal()].sum();
+    }
+}
@@ -0,0 +1,180 @@
+package com.shopfloor.backend.concurrency;
+
+import com.shopfloor.backend.concurrency.AdaptiveLimiter.Priority;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The adaptive concurrency limits of the endpoint groups, see AdaptiveLimiter.
+ * - odata-collection: OData collection reads and $metadata, priority LOW
+ * - odata-entity: OData reads of a single entity, OData writes and $batch (its changesets write), priority NORMAL
+ * - editor: /editor/**, priority NORMAL
+ * - operator: /operator/**, writes (starting, finishing, aborting an order) CRITICAL, reads HIGH
+ * - auth: /auth/**, priority HIGH, the operators have to log in
+ * Every group has a limit of its own, bounding it by its own latency whatever its priority.
+ * Before that every request passes the shared PriorityAdmission ("admission"), adapted by the gradients of all groups,
+ * which sheds by priority: under overload the OData collections are shed before the editors and the editors before
+ * the operators, whichever group causes the load.
+ *
+ * Every setting is read from "limiter.<group>.<setting>" and falls back to "limiter.<setting>":
+ * initial-limit, min-limit, max-limit, smoothing, long-window, rtt-tolerance (the admission uses the first four).
+ * The limits, the requests in flight and the shed requests are registered as the meters "concurrency.limit",
+ * "concurrency.in.flight", "concurrency.accepted" and "concurrency.shed" tagged with the group (GET /actuator/prometheus),
+ * and exposed as the JMX bean "com.shopfloor.backend:type=AdaptiveLimiters".
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+@ManagedResource(objectName = "com.shopfloor.backend:type=AdaptiveLimiters", description = "Adaptive concurrency limits of the endpoint groups")
+public class AdaptiveLimiters {
+
+    /**
+     * The name of the shared admission stage every limited request passes.
+     */
+    public static final String ADMISSION = "admission";
+
+    private static final String PREFIX = "limiter.";
+
+    private final Map<String, AdaptiveLimiter> limiters = new LinkedHashMap<>();
+    private final PriorityAdmission admission;
+    private final Duration retryAfter;
+
+    /**
+     * Constructs the limiters read from the given environment.
+     *
+     * @param environment the environment containing the limiter properties
+     * @param meterRegistry the registry the meters of the limiters are registered in
+     */
+    @Autowired
+    public AdaptiveLimiters(Environment environment, MeterRegistry meterRegistry) {
+        this.admission = new PriorityAdmission(
+                getSetting(environment, ADMISSION, "initial-limit", Integer.class, 100),
+                getSetting(environment, ADMISSION, "min-limit", Integer.class, 20),
+                getSetting(environment, ADMISSION, "max-limit", Integer.class, 400),
+                getSetting(environment, ADMISSION, "smoothing", Double.class, 0.2));
+        limiters.put(ADMISSION, admission);
+        for (String group : new String[]{"odata-collection", "odata-entity", "editor", "operator", "auth"}) {
+            limiters.put(group, new AdaptiveLimiter(group,
+                    getSetting(environment, group, "initial-limit", Integer.class, 20),
+                    getSetting(environment, group, "min-limit", Integer.class, 4),
+                    getSetting(environment, group, "max-limit", Integer.class, 200),
+                    getSetting(environment, group, "smoothing", Double.class, 0.2),
+                    getSetting(environment, group, "long-window", Integer.class, 600),
+                    getSetting(environment, group, "rtt-tolerance", Double.class, 1.5)));
+        }
+        this.retryAfter = environment.getProperty(PREFIX + "retry-after", Duration.class, Duration.ofSeconds(1));
+        limiters.values().forEach(limiter -> registerMeters(limiter, meterRegistry));
+    }
+
+    /**
+     * Returns the limiter of an endpoint group.
+     *
+     * @param group the group, e.g. "operator"
+     * @return the limiter, null for an unknown group
+     */
+    public AdaptiveLimiter get(String group) {
+        return limiters.get(group);
+    }
+
+    /**
+     * Returns the shared admission stage shedding by priority.
+     *
+     * @return the admission stage
+     */
+    public PriorityAdmission getAdmission() {
+        return admission;
+    }
+
+    /**
+     * Returns the endpoint group of a request.
+     *
+     * @param method the HTTP method
+     * @param path the path of the request without the context path, e.g. "/odata/Orders(1)"
+     * @return the group, null if the request is not limited
+     */
+    public String groupOf(String method, String path) {
+        if (path.startsWith("/odata/")) {
+            String resource = path.substring("/odata/".length());
+            int end = resource.indexOf('/');
+            String firstSegment = end < 0 ? resource : resource.substring(0, end);
+            boolean collection = "GET".equals(method) && !firstSegment.contains("(") && !"$batch".equals(firstSegment);
+            return collection ? "odata-collection" : "odata-entity";
+        }
+        for (String group : new String[]{"editor", "operator", "auth"}) {
+            if (path.startsWith("/" + group + "/")) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the priority of a request of an endpoint group.
+     *
+     * @param group the group of the request
+     * @param method the HTTP method
+     * @return the priority
+     */
+    public Priority priorityOf(String group, String method) {
+        return switch (group) {
+            case "operator" -> "GET".equals(method) ? Priority.HIGH : Priority.CRITICAL;
+            case "auth" -> Priority.HIGH;
+            case "odata-collection" -> Priority.LOW;
+            default -> Priority.NORMAL;
+        };
+    }
+
+    /**
+     * Returns the time a shed client is asked to wait before retrying.
+     *
+     * @return the time sent in the Retry-After header
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    @ManagedOperation(description = "Current concurrency limit of the group")
+    public int getLimit(String group) {
+        return limiters.get(group).getLimit();
+    }
+
+    @ManagedOperation(description = "Requests of the group in flight")
+    public int getInFlight(String group) {
+        return limiters.get(group).getInFlight();
+    }
+
+    @ManagedOperation(description = "Shed requests of the group and priority")
+    public long getShed(String group, String priority) {
+        return limiters.get(group).getShed(Priority.valueOf(priority.toUpperCase(Locale.ROOT)));
+    }
+
+    private static void registerMeters(AdaptiveLimiter limiter, MeterRegistry meterRegistry) {
+        Gauge.builder("concurrency.limit", limiter, AdaptiveLimiter::getLimit)
+                .description("Adaptive concurrency limit of the endpoint group").tag("group", limiter.getName()).register(meterRegistry);
+        Gauge.builder("concurrency.in.flight", limiter, AdaptiveLimiter::getInFlight)
+                .description("Requests of the endpoint group in flight").tag("group", limiter.getName()).register(meterRegistry);
+        FunctionCounter.builder("concurrency.accepted", limiter, AdaptiveLimiter::getAccepted)
+                .description("Requests admitted by the limiter of the endpoint group").tag("group", limiter.getName()).register(meterRegistry);
+        for (Priority priority : Priority.values()) {
+            FunctionCounter.builder("concurrency.shed", limiter, shedLimiter -> shedLimiter.getShed(priority))
+                    .description("Requests shed by the limiter of the endpoint group")
+                    .tags("group", limiter.getName(), "priority", priority.name().toLowerCase(Locale.ROOT)).register(meterRegistry);
+        }
+    }
+
+    private static <T> T getSetting(Environment environment, String group, String setting, Class<T> type, T defaultValue) {
+        T value = environment.getProperty(PREFIX + group + "." + setting, type);
+        return value != null ? value : environment.getProperty(PREFIX + setting, type, defaultValue);
+    }
+}
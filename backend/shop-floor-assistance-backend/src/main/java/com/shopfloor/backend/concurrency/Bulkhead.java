@@ -0,0 +1,196 @@
+package com.shopfloor.backend.concurrency;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Budget of concurrent requests and database connections of one API family, e.g. the OData API.
+ * A request enters the bulkhead of its family before it is processed, if all places are taken for longer than max-wait
+ * it is rejected instead of waiting for a thread or a connection other families need.
+ * The bulkhead of the request is bound to its thread, GatedDataSource takes one of the connections of its family
+ * when the request borrows its first connection and returns it when the request has closed all of them,
+ * so a request needing a second connection (e.g. a $count run on the request thread) can not wait for itself.
+ * The connections of all families come from one ConnectionBudget: a family holds at most max-connections,
+ * and reserved-connections of the pool are kept for it whatever the other families do.
+ * Tasks the request hands to an executor (the $count, $batch and respond-async executors of the OData API)
+ * are bound to its bulkhead with propagate, so their connections count toward the budget of the family as well.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class Bulkhead {
+
+    private static final ThreadLocal<Bulkhead> CURRENT = new ThreadLocal<>();
+    private static final ThreadLocal<int[]> HELD_CONNECTIONS = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxConnections;
+    private final int reservedConnections;
+    private final Duration maxWait;
+    private final Semaphore requests;
+    private final ConnectionBudget connections;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder connectionTimeouts = new LongAdder();
+
+    /**
+     * Constructs a bulkhead.
+     *
+     * @param name the name of the API family, e.g. "odata"
+     * @param maxConcurrent the number of requests processed at once
+     * @param maxConnections the number of connections the family holds at once at most
+     * @param reservedConnections the number of connections of the pool the other families leave to this one
+     * @param maxWait the longest wait for a place before a request is rejected
+     * @param connections the connections of the pool shared by all families
+     */
+    Bulkhead(String name, int maxConcurrent, int maxConnections, int reservedConnections, Duration maxWait, ConnectionBudget connections) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxConnections = maxConnections;
+        this.reservedConnections = reservedConnections;
+        this.maxWait = maxWait;
+        this.requests = new Semaphore(maxConcurrent);
+        this.connections = connections;
+        connections.register(this);
+    }
+
+    /**
+     * Returns the bulkhead the current thread works for.
+     *
+     * @return the bulkhead, null outside of a bulkhead
+     */
+    public static Bulkhead current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds the task to the bulkhead of the current thread, so it borrows its connections inside the same budget
+     * when it runs on another thread. Used as the TaskDecorator of the OData executors.
+     *
+     * @param task the task handed to an executor
+     * @return the task running inside the bulkhead, the task itself outside of a bulkhead
+     */
+    public static Runnable propagate(Runnable task) {
+        Bulkhead bulkhead = CURRENT.get();
+        if (bulkhead == null) {
+            return task;
+        }
+        return () -> {
+            Bulkhead previous = CURRENT.get();
+            CURRENT.set(bulkhead);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    CURRENT.set(previous);
+                } else {
+                    CURRENT.remove();
+                }
+            }
+        };
+    }
+
+    /**
+     * Takes a place for a request, waiting at most max-wait, and binds the bulkhead to the current thread.
+     *
+     * @return true if the request may be processed, false if it has to be rejected
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean tryEnter() throws InterruptedException {
+        if (!requests.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+            rejected.increment();
+            return false;
+        }
+        accepted.increment();
+        CURRENT.set(this);
+        return true;
+    }
+
+    /**
+     * Returns the place of a request taken by tryEnter and unbinds the bulkhead from the current thread.
+     */
+    public void exit() {
+        CURRENT.remove();
+        requests.release();
+    }
+
+    /**
+     * Takes a connection of the family for the current thread, unless the thread already holds one.
+     *
+     * @param timeoutMillis the longest wait in milliseconds
+     * @throws SQLException if no permit was free in time
+     */
+    void acquireConnection(long timeoutMillis) throws SQLException {
+        int[] held = HELD_CONNECTIONS.get();
+        if (held[0] > 0) {
+            held[0]++;
+            return;
+        }
+        try {
+            if (!connections.tryAcquire(this, timeoutMillis)) {
+                connectionTimeouts.increment();
+                throw new SQLTransientConnectionException("No connection available for the " + name + " requests after "
+                        + timeoutMillis + " ms, they hold " + getActiveConnections() + " of at most " + maxConnections
+                        + ", the rest of the pool is used or reserved by the other families");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+        }
+        held[0] = 1;
+    }
+
+    /**
+     * Returns the connection of the current thread once it has closed all of its connections.
+     */
+    void releaseConnection() {
+        int[] held = HELD_CONNECTIONS.get();
+        if (held[0] > 0 && --held[0] == 0) {
+            connections.release(this);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getReservedConnections() {
+        return reservedConnections;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public int getActiveRequests() {
+        return maxConcurrent - requests.availablePermits();
+    }
+
+    public int getActiveConnections() {
+        return connections.getUsed(this);
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getConnectionTimeouts() {
+        return connectionTimeouts.sum();
+    }
+}
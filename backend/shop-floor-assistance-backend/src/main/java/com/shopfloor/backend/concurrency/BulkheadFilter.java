@@ -0,0 +1,79 @@
+package com.shopfloor.backend.concurrency;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Filter admitting every request through the bulkhead of its API family.
+ * It runs before Spring Security, so a rejected request costs neither a token validation nor a database query.
+ * A request finding its bulkhead full for longer than max-wait is answered with 503 Service Unavailable and Retry-After,
+ * in the OData error format for /odata and as a problem detail otherwise.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+@ConditionalOnProperty(name = "bulkhead.enabled", havingValue = "true")
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 10)
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    private final Bulkheads bulkheads;
+
+    /**
+     * Constructor for BulkheadFilter.
+     *
+     * @param bulkheads the bulkheads of the API families
+     */
+    public BulkheadFilter(Bulkheads bulkheads) {
+        this.bulkheads = bulkheads;
+    }
+
+    /**
+     * Processes the request inside the bulkhead of its family or rejects it.
+     *
+     * @param request the HTTP request
+     * @param response the HTTP response
+     * @param filterChain the filter chain
+     * @throws ServletException if a servlet error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        Bulkhead bulkhead = bulkheads.forPath(request.getRequestURI().substring(request.getContextPath().length()));
+        if (bulkhead == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        boolean entered;
+        try {
+            entered = bulkhead.tryEnter();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            reject(bulkhead, response);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            bulkhead.exit();
+        }
+    }
+
+    private void reject(Bulkhead bulkhead, HttpServletResponse response) throws IOException {
+        String message = "All " + bulkhead.getMaxConcurrent() + " places for " + bulkhead.getName() + " requests are taken, retry later";
+        ServiceUnavailable.write(response, "odata".equals(bulkhead.getName()), message, bulkheads.getRetryAfter());
+    }
+}
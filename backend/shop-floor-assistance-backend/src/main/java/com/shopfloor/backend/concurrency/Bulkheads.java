@@ -0,0 +1,126 @@
+package com.shopfloor.backend.concurrency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The bulkheads separating the API families, so a heavy OData export can not slow down the operators on the floor.
+ * - odata: /odata/**
+ * - editor: /editor/**
+ * - operator: /operator/**
+ * Other requests (e.g. /auth) are not limited.
+ *
+ * Every budget is read from "bulkhead.<family>.<limit>" and falls back to "bulkhead.<limit>":
+ * - max-concurrent: the number of requests processed at once
+ * - max-connections: the number of connections held at once, by default the whole pool
+ * - reserved-connections: the number of connections of the pool the other families can not take, by default none
+ * - max-wait: the longest wait for a place before the request is rejected with 503
+ * The operators are given a reservation, so the connections they need stay free however busy the OData API is.
+ * The $count, $batch and respond-async executors of the OData API borrow their connections inside the odata budget.
+ * The bulkheads are off unless bulkhead.enabled is set.
+ * The active and rejected requests are exposed as the JMX bean "com.shopfloor.backend:type=Bulkheads".
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+@ConditionalOnProperty(name = "bulkhead.enabled", havingValue = "true")
+@ManagedResource(objectName = "com.shopfloor.backend:type=Bulkheads", description = "Budgets of the API families")
+public class Bulkheads {
+
+    private static final String PREFIX = "bulkhead.";
+
+    /**
+     * Size of a Hikari pool configured without maximum-pool-size.
+     */
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    private final Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
+    private final Duration retryAfter;
+
+    /**
+     * Constructs the bulkheads read from the given environment.
+     *
+     * @param environment the environment containing the bulkhead properties
+     */
+    @Autowired
+    public Bulkheads(Environment environment) {
+        int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, DEFAULT_POOL_SIZE);
+        ConnectionBudget connections = new ConnectionBudget(poolSize);
+        for (String family : new String[]{"odata", "editor", "operator"}) {
+            bulkheads.put(family, new Bulkhead(family,
+                    getLimit(environment, family, "max-concurrent", Integer.class, 50),
+                    getLimit(environment, family, "max-connections", Integer.class, poolSize),
+                    getLimit(environment, family, "reserved-connections", Integer.class, 0),
+                    getLimit(environment, family, "max-wait", Duration.class, Duration.ofMillis(200)),
+                    connections));
+        }
+        this.retryAfter = environment.getProperty(PREFIX + "retry-after", Duration.class, Duration.ofSeconds(1));
+    }
+
+    /**
+     * Returns the bulkhead of a request path.
+     *
+     * @param path the path of the request without the context path, e.g. "/operator/orders/1"
+     * @return the bulkhead, null if the path belongs to no API family
+     */
+    public Bulkhead forPath(String path) {
+        if (path.length() < 2) {
+            return null;
+        }
+        int end = path.indexOf('/', 1);
+        String family = end < 0 ? path.substring(1) : path.substring(1, end);
+        return bulkheads.get(family);
+    }
+
+    /**
+     * Returns the bulkhead of an API family.
+     *
+     * @param family the family, e.g. "odata"
+     * @return the bulkhead, null for an unknown family
+     */
+    public Bulkhead get(String family) {
+        return bulkheads.get(family);
+    }
+
+    /**
+     * Returns the time a rejected client is asked to wait before retrying.
+     *
+     * @return the time sent in the Retry-After header
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    @ManagedOperation(description = "Requests of the family processed now")
+    public int getActiveRequests(String family) {
+        return bulkheads.get(family).getActiveRequests();
+    }
+
+    @ManagedOperation(description = "Requests of the family holding a connection now")
+    public int getActiveConnections(String family) {
+        return bulkheads.get(family).getActiveConnections();
+    }
+
+    @ManagedOperation(description = "Connections of the pool the other families leave to the family")
+    public int getReservedConnections(String family) {
+        return bulkheads.get(family).getReservedConnections();
+    }
+
+    @ManagedOperation(description = "Requests of the family rejected with 503")
+    public long getRejected(String family) {
+        return bulkheads.get(family).getRejected();
+    }
+
+    private static <T> T getLimit(Environment environment, String family, String limit, Class<T> type, T defaultValue) {
+        T value = environment.getProperty(PREFIX + family + "." + limit, type);
+        return value != null ? value : environment.getProperty(PREFIX + limit, type, defaultValue);
+    }
+}
@@ -0,0 +1,134 @@
+package com.shopfloor.backend.concurrency;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The connections of the pool shared by the bulkheads of all API families.
+ * A family may take a connection while it holds less than its max-connections, and only if the connections
+ * the other families have reserved (reserved-connections) but do not use yet stay free.
+ * So a reservation is kept for its family whatever the other families do, and a family without a reservation
+ * can still use the whole rest of the pool.
+ * A ReentrantLock is used instead of synchronized, a virtual thread waiting for a connection does not pin its carrier.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+final class ConnectionBudget {
+
+    private final int poolSize;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition released = lock.newCondition();
+
+    /**
+     * The connections each family holds, guarded by the lock.
+     */
+    private final Map<Bulkhead, int[]> usedByFamily = new IdentityHashMap<>();
+    private int used;
+
+    /**
+     * Constructs the budget of a pool.
+     *
+     * @param poolSize the number of connections of the pool
+     */
+    ConnectionBudget(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Adds the bulkhead of a family, its reservation is kept free from now on.
+     *
+     * @param bulkhead the bulkhead
+     * @throws IllegalArgumentException if the reservations of all families exceed the pool
+     */
+    void register(Bulkhead bulkhead) {
+        lock.lock();
+        try {
+            int reserved = bulkhead.getReservedConnections();
+            for (Bulkhead other : usedByFamily.keySet()) {
+                reserved += other.getReservedConnections();
+            }
+            if (reserved > poolSize) {
+                throw new IllegalArgumentException("The bulkheads reserve " + reserved + " connections, the pool holds " + poolSize);
+            }
+            usedByFamily.put(bulkhead, new int[1]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a connection for a family, waiting until one is free for it.
+     *
+     * @param bulkhead the bulkhead of the family
+     * @param timeoutMillis the longest wait in milliseconds
+     * @return true if the connection was taken, false if none was free for the family in time
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    boolean tryAcquire(Bulkhead bulkhead, long timeoutMillis) throws InterruptedException {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lockInterruptibly();
+        try {
+            while (!isFree(bulkhead)) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = released.awaitNanos(remainingNanos);
+            }
+            used++;
+            usedByFamily.get(bulkhead)[0]++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a connection taken by tryAcquire.
+     *
+     * @param bulkhead the bulkhead of the family
+     */
+    void release(Bulkhead bulkhead) {
+        lock.lock();
+        try {
+            used--;
+            usedByFamily.get(bulkhead)[0]--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the connections a family holds.
+     *
+     * @param bulkhead the bulkhead of the family
+     * @return the number of connections
+     */
+    int getUsed(Bulkhead bulkhead) {
+        lock.lock();
+        try {
+            return usedByFamily.get(bulkhead)[0];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a family may take a connection, the caller holds the lock.
+     */
+    private boolean isFree(Bulkhead bulkhead) {
+        if (usedByFamily.get(bulkhead)[0] >= bulkhead.getMaxConnections()) {
+            return false;
+        }
+        int keptForOthers = 0;
+        for (Map.Entry<Bulkhead, int[]> other : usedByFamily.entrySet()) {
+            if (other.getKey() != bulkhead) {
+                keptForOthers += Math.max(0, other.getKey().getReservedConnections() - other.getValue()[0]);
+            }
+        }
+        return used + 1 + keptForOthers <= poolSize;
+    }
+}
@@ -0,0 +1,48 @@
+package com.shopfloor.backend.concurrency;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration putting a GatedDataSource in front of the Hikari connection pool.
+ * The gate is enabled with database.connection-gate.enabled, on by default: the Tomcat threads and the OData executors
+ * are many more than the connections of the pool. It does not depend on virtual threads (spring.threads.virtual.enabled),
+ * under which the number of requests waiting for a connection would no longer be bounded by the size of the Tomcat thread pool.
+ * The gate is needed as well for the connection budgets of the bulkheads (bulkhead.enabled).
+ * The gate lets as many threads borrow a connection as the pool holds and waits as long as the pool would.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Configuration
+@ConditionalOnExpression("${database.connection-gate.enabled:false} or ${bulkhead.enabled:false}")
+public class ConnectionGateConfiguration {
+
+    /**
+     * Size of a Hikari pool configured without maximum-pool-size.
+     */
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    /**
+     * Creates the post processor wrapping the Hikari pool into the gate.
+     * The method is static so the post processor is created before the DataSource bean.
+     * Hikari applies its default pool size only when the pool is started, so it is applied here as well.
+     *
+     * @return the post processor
+     */
+    @Bean
+    public static BeanPostProcessor connectionGatePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource pool) {
+                    int poolSize = pool.getMaximumPoolSize() > 0 ? pool.getMaximumPoolSize() : DEFAULT_POOL_SIZE;
+                    return new GatedDataSource(pool, poolSize, pool.getConnectionTimeout());
+                }
+                return bean;
+            }
+        };
+    }
+}
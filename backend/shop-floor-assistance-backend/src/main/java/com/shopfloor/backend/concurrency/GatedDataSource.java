@@ -0,0 +1,171 @@
+package com.shopfloor.backend.concurrency;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+
+/**
+ * DataSource letting at most as many threads borrow a connection as the pool holds, in the order they asked.
+ * The 200 Tomcat threads, and with virtual threads thousands of requests, can block on the connection pool at once,
+ * the pool's own waiting is not fair and lets late requests overtake early ones, so requests at shift change time out at random.
+ * A fair semaphore in front of the pool queues the requests first come, first served,
+ * a permit is taken before a connection is borrowed and returned when the connection is closed.
+ * A request waiting longer than the timeout fails like a request waiting for the pool itself.
+ * A request running in a Bulkhead also takes one of the connection permits of its API family,
+ * so one family can not hold all connections of the pool.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ManagedResource(objectName = "com.shopfloor.backend:type=GatedDataSource", description = "Fair gate in front of the connection pool")
+public class GatedDataSource extends DelegatingDataSource {
+
+    private final Semaphore permits;
+    private final int maxConnections;
+    private final long timeoutMillis;
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * Constructs the gate in front of the given pool.
+     *
+     * @param targetDataSource the connection pool
+     * @param maxConnections the number of connections borrowed at once, the size of the pool
+     * @param timeoutMillis the longest wait for a permit in milliseconds
+     */
+    public GatedDataSource(DataSource targetDataSource, int maxConnections, long timeoutMillis) {
+        super(targetDataSource);
+        this.permits = new Semaphore(maxConnections, true);
+        this.maxConnections = maxConnections;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Bulkhead bulkhead = acquire();
+        try {
+            return gate(super.getConnection(), bulkhead);
+        } catch (SQLException | RuntimeException e) {
+            release(bulkhead);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Bulkhead bulkhead = acquire();
+        try {
+            return gate(super.getConnection(username, password), bulkhead);
+        } catch (SQLException | RuntimeException e) {
+            release(bulkhead);
+            throw e;
+        }
+    }
+
+    @ManagedAttribute(description = "Connections borrowed at once at most")
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    @ManagedAttribute(description = "Connections which can be borrowed without waiting")
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    @ManagedAttribute(description = "Threads waiting for a connection")
+    public int getWaitingThreads() {
+        return permits.getQueueLength();
+    }
+
+    @ManagedAttribute(description = "Requests which waited longer than the timeout")
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Takes the connection permit of the bulkhead of the current thread, if any, and a permit of the pool.
+     *
+     * @return the bulkhead whose permit was taken, null outside of a bulkhead
+     * @throws SQLException if no permit was free in time
+     */
+    private Bulkhead acquire() throws SQLException {
+        long start = System.nanoTime();
+        Bulkhead bulkhead = Bulkhead.current();
+        if (bulkhead != null) {
+            bulkhead.acquireConnection(timeoutMillis);
+        }
+        boolean acquired = false;
+        try {
+            long remainingMillis = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            acquired = permits.tryAcquire(Math.max(0, remainingMillis), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+        } finally {
+            if (!acquired && bulkhead != null) {
+                bulkhead.releaseConnection();
+            }
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLTransientConnectionException("No connection available after " + timeoutMillis + " ms, "
+                    + permits.getQueueLength() + " requests are waiting");
+        }
+        return bulkhead;
+    }
+
+    /**
+     * Returns the permits taken by acquire.
+     *
+     * @param bulkhead the bulkhead whose permit was taken, may be null
+     */
+    private void release(Bulkhead bulkhead) {
+        permits.release();
+        if (bulkhead != null) {
+            bulkhead.releaseConnection();
+        }
+    }
+
+    /**
+     * Wraps the connection, so closing it returns the permits once.
+     *
+     * @param connection the borrowed connection
+     * @param bulkhead the bulkhead whose permit was taken, may be null
+     * @return the connection returning the permits on close
+     */
+    private Connection gate(Connection connection, Bulkhead bulkhead) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "close":
+                    if (released.compareAndSet(false, true)) {
+                        try {
+                            connection.close();
+                        } finally {
+                            release(bulkhead);
+                        }
+                    }
+                    return null;
+                default:
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+            }
+        });
+    }
+}
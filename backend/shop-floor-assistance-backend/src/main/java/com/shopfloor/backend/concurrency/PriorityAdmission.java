@@ -0,0 +1,45 @@
+package com.shopfloor.backend.concurrency;
+
+/**
+ * The adaptive limit every limited request passes before the limiter of its endpoint group, see AdaptiveLimiters.
+ * It has no latency of its own, it is adapted by the gradients of the endpoint groups: every group compares the latency
+ * of its requests with its own long-term average, so whichever group gets slower shrinks this limit.
+ * A request is admitted while fewer requests of all groups are in flight than its priority's share of the limit,
+ * so when the limit shrinks the OData collections are shed first and the operator writes last,
+ * also when the operators are the ones getting slower.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class PriorityAdmission extends AdaptiveLimiter {
+
+    /**
+     * Constructs the admission stage.
+     *
+     * @param initialLimit the limit before the first sample
+     * @param minLimit the smallest limit
+     * @param maxLimit the largest limit
+     * @param smoothing the weight of a new limit against the current limit, between 0 and 1
+     */
+    public PriorityAdmission(int initialLimit, int minLimit, int maxLimit, double smoothing) {
+        super(AdaptiveLimiters.ADMISSION, initialLimit, minLimit, maxLimit, smoothing, 1, 1.0);
+    }
+
+    /**
+     * Completes an admitted request and adapts the limit by the gradient of its endpoint group.
+     *
+     * @param gradient the gradient returned by the limiter of the group, 0 without a latency
+     * @param inFlightAtStart the number of requests in flight when it was admitted, as returned by tryAcquire
+     * @param priority the priority the request was admitted with
+     */
+    public void onGroupComplete(double gradient, int inFlightAtStart, Priority priority) {
+        release();
+        if (gradient > 0) {
+            adapt(gradient, inFlightAtStart, priority);
+        }
+    }
+
+    @Override
+    protected double share(Priority priority) {
+        return priority.getShare();
+    }
+}
@@ -0,0 +1,46 @@
+package com.shopfloor.backend.concurrency;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Writes the 503 Service Unavailable response of a rejected request,
+ * in the OData error format for /odata and as a problem detail otherwise.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+final class ServiceUnavailable {
+
+    private ServiceUnavailable() {
+    }
+
+    /**
+     * Writes the rejection to the response.
+     *
+     * @param response the response of the rejected request
+     * @param odata true for a request to the OData API
+     * @param message the reason of the rejection, without quotes
+     * @param retryAfter the time the client is asked to wait before retrying
+     * @throws IOException if the response can not be written
+     */
+    static void write(HttpServletResponse response, boolean odata, String message, Duration retryAfter) throws IOException {
+        String body;
+        if (odata) {
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            body = "{\"error\":{\"code\":\"503\",\"message\":\"" + message + "\"}}";
+        } else {
+            response.setContentType(MediaType.APPLICATION_PROBLEM_JSON_VALUE);
+            body = "{\"type\":\"about:blank\",\"title\":\"Service Unavailable\",\"status\":503,\"detail\":\"" + message + "\"}";
+        }
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())));
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(body);
+    }
+}
@@ -0,0 +1,161 @@
+package com.shopfloor.backend.concurrency;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces identical reads running at the same time, so only one of them does the work.
+ * The first caller of a key (the leader) runs the work, callers of the same key arriving while it runs (the followers)
+ * wait for it and get its result or its exception. Once the work has finished the key is free again,
+ * nothing is cached: a follower gets the result of a read that started at most one read duration before it.
+ * When a new order is published dozens of terminals request it within a few hundred milliseconds,
+ * they share one database query and one mapping instead of running them all.
+ *
+ * Callers inside a transaction neither lead nor follow, their reads have to see the writes of their own transaction.
+ * Keys of different reads must not collide, they are prefixed by the read, e.g. "operator-order:12".
+ * The authorities of the caller (SecurityContextHolder) are added to every key, so only callers with the same roles
+ * share a read, a response shaped by the roles of one caller never reaches another.
+ * A follower waits at most single-flight.max-wait for the leader, then it runs the read itself.
+ * The numbers of leaders, followers and timed out followers are exposed as the JMX bean "com.shopfloor.backend:type=SingleFlight".
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+@ManagedResource(objectName = "com.shopfloor.backend:type=SingleFlight", description = "Coalesced identical reads")
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder followers = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final boolean enabled;
+    private final Duration maxWait;
+
+    /**
+     * Constructs the single flight.
+     *
+     * @param enabled false to run every read on its own
+     * @param maxWait the longest a follower waits for the leader before running the read itself
+     */
+    public SingleFlight(@Value("${single-flight.enabled:true}") boolean enabled,
+                        @Value("${single-flight.max-wait:5s}") Duration maxWait) {
+        this.enabled = enabled;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Runs the work, or waits for the same work already running under the key.
+     *
+     * @param key the key identifying the read, equal keys must produce equal results for callers with the same authorities
+     * @param work the read
+     * @param <V> the type of the result
+     * @param <E> the checked exception of the read
+     * @return the result of the read, shared with all callers of the key, it must not be modified
+     * @throws E the exception of the read, shared with all callers of the key
+     */
+    @SuppressWarnings("unchecked")
+    public <V, E extends Exception> V execute(String key, Work<V, E> work) throws E {
+        if (!enabled || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.run();
+        }
+        String callerKey = key + "|" + callerAuthorities();
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = flights.putIfAbsent(callerKey, flight);
+        if (running != null) {
+            followers.increment();
+            try {
+                return (V) running.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                timedOut.increment();
+                return work.run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return work.run();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw (E) cause;
+            }
+        }
+        leaders.increment();
+        try {
+            V result = work.run();
+            flights.remove(callerKey, flight);
+            flight.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            flights.remove(callerKey, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @ManagedAttribute(description = "Reads run by a leader")
+    public long getLeaders() {
+        return leaders.sum();
+    }
+
+    @ManagedAttribute(description = "Reads answered with the result of a running leader")
+    public long getFollowers() {
+        return followers.sum();
+    }
+
+    @ManagedAttribute(description = "Followers which stopped waiting for the leader and read themselves")
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    @ManagedAttribute(description = "Reads running now")
+    public int getRunning() {
+        return flights.size();
+    }
+
+    private static String callerAuthorities() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null) {
+            return "";
+        }
+        return authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * A read which may throw a checked exception.
+     *
+     * @param <V> the type of the result
+     * @param <E> the checked exception
+     */
+    @FunctionalInterface
+    public interface Work<V, E extends Exception> {
+
+        /**
+         * Runs the read.
+         *
+         * @return the result
+         * @throws E if the read fails
+         */
+        V run() throws E;
+    }
+}
@@ -12,20 +12,25 @@ import java.util.List;
 /**
  * Entity representing equipment in the database.
  * Contains details about the equipment, including its number, name, type, description, creator, timestamps, and associated orders.
+ * The name and the creation time are indexed for OData filters and orderings, see schema-postgresql.sql for the text searches.
  * @author David Todorov (https://github.com/david-todorov)
  */
 @Entity
-@Table(name = "equipment")
+@Table(name = "equipment", indexes = {
+        @Index(name = "idx_equipment_name", columnList = "name"),
+        @Index(name = "idx_equipment_created_at", columnList = "created_at")
+})
 @Setter
 @Getter
 public class EquipmentDBO {
 
     /**
      * Unique identifier for the equipment.
-     * Auto-generated by the database.
+     * Drawn from the equipment_seq sequence in blocks of 50, so that the inserts can be batched.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "equipment_seq")
+    @SequenceGenerator(name = "equipment_seq", sequenceName = "equipment_seq", allocationSize = 50)
     @Setter(AccessLevel.NONE)
     @Column(name = "id")
     private Long id;
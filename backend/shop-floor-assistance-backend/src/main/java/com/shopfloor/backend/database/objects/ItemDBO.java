@@ -21,10 +21,11 @@ public class ItemDBO {
 
     /**
      * Unique identifier for the item.
-     * Auto-generated by the database.
+     * Drawn from the items_seq sequence in blocks of 50, so that the inserts can be batched.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "items_seq")
+    @SequenceGenerator(name = "items_seq", sequenceName = "items_seq", allocationSize = 50)
     @Setter(AccessLevel.NONE)
     private Long id;
 
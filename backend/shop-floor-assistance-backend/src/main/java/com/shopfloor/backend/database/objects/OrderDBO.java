@@ -11,20 +11,28 @@ import java.util.stream.Collectors;
 /**
  * Entity representing an order in the database.
  * Contains details about the order, including its number, name, description, creator, timestamps, associated workflows, equipment, products, and executions.
+ * The foreign keys to the products are indexed, OData filters over the orders of a product (OrdersAsBefore/any) look them up.
+ * The name and the creation time are indexed for OData filters and orderings, see schema-postgresql.sql for the text searches.
  * @author David Todorov (https://github.com/david-todorov)
  */
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_before_product_id", columnList = "before_product_id"),
+        @Index(name = "idx_orders_after_product_id", columnList = "after_product_id"),
+        @Index(name = "idx_orders_name", columnList = "name"),
+        @Index(name = "idx_orders_created_at", columnList = "created_at")
+})
 @Setter
 @Getter
 public class OrderDBO {
 
     /**
      * Unique identifier for the order.
-     * Auto-generated by the database.
+     * Drawn from the orders_seq sequence in blocks of 50, so that the inserts can be batched.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     @Setter(AccessLevel.NONE)
     @Column(name = "id")
     private Long id;
@@ -95,9 +103,14 @@ public class OrderDBO {
      * Cascade type is set to PERSIST and MERGE, meaning these operations are cascaded to the equipment.
      * Fetch type is set to LAZY, meaning the equipment is loaded on demand.
      * The join table 'order_equipment' is used to manage the many-to-many relationship.
+     * It is indexed in both directions, the any and all filters of OData (Equipments/any, Orders/any) are correlated over it.
      */
     @ManyToMany(cascade = { CascadeType.PERSIST, CascadeType.MERGE }, fetch = FetchType.LAZY)
-    @JoinTable(name = "order_equipment", joinColumns = @JoinColumn(name = "order_id"), inverseJoinColumns = @JoinColumn(name = "equipment_id"))
+    @JoinTable(name = "order_equipment", joinColumns = @JoinColumn(name = "order_id"), inverseJoinColumns = @JoinColumn(name = "equipment_id"),
+            indexes = {
+                    @Index(name = "idx_order_equipment_order_id", columnList = "order_id, equipment_id"),
+                    @Index(name = "idx_order_equipment_equipment_id", columnList = "equipment_id, order_id")
+            })
     private List<EquipmentDBO> equipment;
 
     /**
@@ -13,20 +13,25 @@ import java.util.List;
  * Entity representing a product in the database.
  * Contains details about the product, including its number, name, type,
  * country, package size, package type, language, description, creator, timestamps, and associated orders.
+ * The name and the creation time are indexed for OData filters and orderings, see schema-postgresql.sql for the text searches.
  * @author David Todorov (https://github.com/david-todorov)
  */
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_name", columnList = "name"),
+        @Index(name = "idx_products_created_at", columnList = "created_at")
+})
 @Setter
 @Getter
 public class ProductDBO {
 
     /**
      * Unique identifier for the product.
-     * Auto-generated by the database.
+     * Drawn from the products_seq sequence in blocks of 50, so that the inserts can be batched.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
     @Setter(AccessLevel.NONE)
     @Column(name = "id")
     private Long id;
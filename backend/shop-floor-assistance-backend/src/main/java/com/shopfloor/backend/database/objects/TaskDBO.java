@@ -22,10 +22,11 @@ public class TaskDBO {
 
     /**
      * Unique identifier for the task.
-     * Auto-generated by the database.
+     * Drawn from the tasks_seq sequence in blocks of 50, so that the inserts can be batched.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tasks_seq")
+    @SequenceGenerator(name = "tasks_seq", sequenceName = "tasks_seq", allocationSize = 50)
     @Setter(AccessLevel.NONE)
     @Column(name = "id")
     private Long id;
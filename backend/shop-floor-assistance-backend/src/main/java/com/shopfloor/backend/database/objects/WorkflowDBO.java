@@ -22,10 +22,11 @@ public class WorkflowDBO {
 
     /**
      * Unique identifier for the workflow.
-     * Auto-generated by the database.
+     * Drawn from the workflows_seq sequence in blocks of 50, so that the inserts can be batched.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "workflows_seq")
+    @SequenceGenerator(name = "workflows_seq", sequenceName = "workflows_seq", allocationSize = 50)
     @Setter(AccessLevel.NONE)
     @Column(name = "id")
     private Long id;
@@ -0,0 +1,42 @@
+package com.shopfloor.backend.olingo.business.generics;
+
+import java.util.Map;
+
+/**
+ * Resolves the names used in the EDM (e.g. "OrderNumber", "ProductBefore")
+ * to the attribute names of the JPA entities (e.g. "orderNumber", "beforeProduct").
+ * Most properties only differ in the first letter, the navigation properties
+ * whose names differ completely are listed explicitly.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public final class ODataAttributeResolver {
+
+    /**
+     * EDM names whose JPA attribute is not simply the camel case version of the name.
+     */
+    private static final Map<String, String> ALIASES = Map.of(
+            "ProductBefore", "beforeProduct",
+            "ProductAfter", "afterProduct",
+            "Equipments", "equipment",
+            "OrdersAsBefore", "ordersAsBeforeProduct",
+            "OrdersAsAfter", "ordersAsAfterProduct"
+    );
+
+    private ODataAttributeResolver() {
+    }
+
+    /**
+     * Resolves the given EDM property or navigation property name to the JPA attribute name.
+     *
+     * @param edmName the name used in the EDM
+     * @return the name of the JPA attribute
+     */
+    public static String resolve(String edmName) {
+        String alias = ALIASES.get(edmName);
+        if (alias != null) {
+            return alias;
+        }
+        return Character.toLowerCase(edmName.charAt(0)) + edmName.substring(1);
+    }
+}
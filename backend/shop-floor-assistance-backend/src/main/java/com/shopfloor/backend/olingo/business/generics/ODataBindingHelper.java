@@ -0,0 +1,61 @@
+package com.shopfloor.backend.olingo.business.generics;
+
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Helper for reading the entity references of a deep insert or deep update.
+ * A client binds existing entities with "Navigation@odata.bind", e.g. "ProductBefore@odata.bind": "Products(1)",
+ * the reference may be relative to the service root or absolute.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public final class ODataBindingHelper {
+
+    /**
+     * Matches the last segment of a reference, e.g. "Products(1)" or "Products(Id=1)".
+     */
+    private static final Pattern REFERENCE_PATTERN = Pattern.compile("(?:^|/)(\\w+)\\((?:Id=)?(\\d+)\\)$");
+
+    private ODataBindingHelper() {
+    }
+
+    /**
+     * Returns the ID of the entity the given reference points to.
+     *
+     * @param reference the entity reference, e.g. "Products(1)"
+     * @param entitySetName the entity set the reference must point into
+     * @return the ID of the referenced entity
+     * @throws ODataApplicationException if the reference is malformed or points into another entity set
+     */
+    public static Long getReferencedId(String reference, String entitySetName) throws ODataApplicationException {
+        Matcher matcher = reference == null ? null : REFERENCE_PATTERN.matcher(reference);
+        if (matcher == null || !matcher.find() || !entitySetName.equals(matcher.group(1))) {
+            throw new ODataApplicationException("Invalid reference to " + entitySetName + ": " + reference,
+                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+        }
+        return Long.valueOf(matcher.group(2));
+    }
+
+    /**
+     * Returns the IDs of the entities the given references point to, in the order of the references.
+     *
+     * @param references the entity references
+     * @param entitySetName the entity set the references must point into
+     * @return the IDs of the referenced entities
+     * @throws ODataApplicationException if a reference is malformed or points into another entity set
+     */
+    public static List<Long> getReferencedIds(List<String> references, String entitySetName) throws ODataApplicationException {
+        List<Long> ids = new ArrayList<>();
+        for (String reference : references) {
+            ids.add(getReferencedId(reference, entitySetName));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,61 @@
+package com.shopfloor.backend.olingo.business.generics;
+
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+
+import java.util.List;
+
+/**
+ * Helper for reading the $expand tree of a request.
+ * The services use it to convert only the navigation properties the client asked for,
+ * the fetch specification uses it to load exactly these navigation properties.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public final class ODataExpandHelper {
+
+    private ODataExpandHelper() {
+    }
+
+    /**
+     * Returns the expand item for the given navigation property.
+     * A star item ($expand=*) matches every navigation property.
+     *
+     * @param expandOption the $expand option of the current level, may be null
+     * @param navigationName the name of the navigation property, e.g. "ProductBefore"
+     * @return the matching expand item, or null if the navigation property is not expanded
+     */
+    public static ExpandItem getExpandItem(ExpandOption expandOption, String navigationName) {
+        if (expandOption == null) {
+            return null;
+        }
+
+        for (ExpandItem expandItem : expandOption.getExpandItems()) {
+            if (expandItem.isStar() || navigationName.equals(getNavigationName(expandItem))) {
+                return expandItem;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name of the navigation property an expand item refers to.
+     *
+     * @param expandItem the expand item
+     * @return the name of the navigation property, or null for star items
+     */
+    public static String getNavigationName(ExpandItem expandItem) {
+        if (expandItem.isStar() || expandItem.getResourcePath() == null) {
+            return null;
+        }
+
+        List<UriResource> resourceParts = expandItem.getResourcePath().getUriResourceParts();
+        UriResource lastPart = resourceParts.get(resourceParts.size() - 1);
+        if (lastPart instanceof UriResourceNavigation) {
+            return ((UriResourceNavigation) lastPart).getProperty().getName();
+        }
+        return lastPart.getSegmentValue();
+    }
+}
@@ -0,0 +1,86 @@
+package com.shopfloor.backend.olingo.business.generics;
+
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.hibernate.query.sqm.tree.from.SqmAttributeJoin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolves the member paths of $filter and $orderby (e.g. "ProductAfter/Name") to JPA paths.
+ * The single valued navigation properties on the way are left joined, an order without an after product
+ * compares like a null name instead of being dropped. A navigation property is joined once per query,
+ * so filtering and ordering by the same navigation property share the join.
+ * Collection valued navigation properties can only be followed by the any and all lambdas, see FilterSpecification.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public final class ODataPathHelper {
+
+    private ODataPathHelper() {
+    }
+
+    /**
+     * Resolves the given URI resource parts to the JPA attributes of the path.
+     *
+     * @param resourceParts the navigation properties followed by a property, e.g. ProductAfter and Name
+     * @return the JPA attributes, e.g. "afterProduct" and "name"
+     * @throws IllegalArgumentException if the path follows a collection valued navigation property or is no property path
+     */
+    public static List<String> getAttributes(List<UriResource> resourceParts) {
+        List<String> attributes = new ArrayList<>();
+        for (int i = 0; i < resourceParts.size(); i++) {
+            UriResource resourcePart = resourceParts.get(i);
+            if (resourcePart instanceof UriResourceNavigation navigation) {
+                if (navigation.isCollection()) {
+                    throw new IllegalArgumentException("The collection " + navigation.getSegmentValue()
+                            + " can only be filtered with any or all");
+                }
+            } else if (!(resourcePart instanceof UriResourcePrimitiveProperty) || i != resourceParts.size() - 1) {
+                throw new IllegalArgumentException("Unsupported path segment: " + resourcePart.getSegmentValue());
+            }
+            attributes.add(ODataAttributeResolver.resolve(resourcePart.getSegmentValue()));
+        }
+        return attributes;
+    }
+
+    /**
+     * Returns the path of the last attribute, left joining the navigation properties before it.
+     *
+     * @param from the entity the path starts at
+     * @param attributes the JPA attributes of the path
+     * @param <Y> the type of the last attribute
+     * @return the path of the last attribute
+     */
+    public static <Y> Path<Y> getPath(From<?, ?> from, List<String> attributes) {
+        From<?, ?> parent = from;
+        for (String attribute : attributes.subList(0, attributes.size() - 1)) {
+            parent = getJoin(parent, attribute);
+        }
+        return parent.get(attributes.get(attributes.size() - 1));
+    }
+
+    /**
+     * Returns the left join of the given attribute, an existing one is reused.
+     * Fetch joins of $expand are not reused, they are only part of the select queries.
+     *
+     * @param from the entity joined from
+     * @param attribute the JPA attribute of the navigation property
+     * @return the join
+     */
+    private static From<?, ?> getJoin(From<?, ?> from, String attribute) {
+        for (Join<?, ?> join : from.getJoins()) {
+            boolean fetched = join instanceof SqmAttributeJoin<?, ?> attributeJoin && attributeJoin.isFetched();
+            if (!fetched && join.getJoinType() == JoinType.LEFT && join.getAttribute().getName().equals(attribute)) {
+                return join;
+            }
+        }
+        return from.join(attribute, JoinType.LEFT);
+    }
+}
@@ -0,0 +1,61 @@
+package com.shopfloor.backend.olingo.business.generics;
+
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.SelectItem;
+import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper for translating $select into the attributes which have to be read from the database.
+ * A projection is only used when it is safe: every selected item is a primitive property
+ * and nothing is expanded, because expanded navigation properties need the full, managed entity.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public final class ODataSelectHelper {
+
+    /**
+     * The key property, always read so the entity ID can be built.
+     */
+    private static final String KEY_PROPERTY = "Id";
+
+    private ODataSelectHelper() {
+    }
+
+    /**
+     * Returns the JPA attributes to read for the given $select and $expand options.
+     *
+     * @param selectOption the $select option of the request, may be null
+     * @param expandOption the $expand option of the request, may be null
+     * @return the attributes to read including the key, or null if the full entity has to be read
+     */
+    public static List<String> getSelectedAttributes(SelectOption selectOption, ExpandOption expandOption) {
+        if (selectOption == null || (expandOption != null && !expandOption.getExpandItems().isEmpty())) {
+            return null;
+        }
+
+        List<String> attributes = new ArrayList<>();
+        attributes.add(ODataAttributeResolver.resolve(KEY_PROPERTY));
+
+        for (SelectItem selectItem : selectOption.getSelectItems()) {
+            if (selectItem.isStar() || selectItem.getResourcePath() == null) {
+                return null;
+            }
+
+            List<UriResource> resourceParts = selectItem.getResourcePath().getUriResourceParts();
+            if (resourceParts.size() != 1 || !(resourceParts.get(0) instanceof UriResourcePrimitiveProperty)) {
+                return null;
+            }
+
+            String attribute = ODataAttributeResolver.resolve(((UriResourcePrimitiveProperty) resourceParts.get(0)).getProperty().getName());
+            if (!attributes.contains(attribute)) {
+                attributes.add(attribute);
+            }
+        }
+        return attributes;
+    }
+}
@@ -2,6 +2,8 @@ package com.shopfloor.backend.olingo.business.generics;
 
 import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.data.EntityCollection;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
 
 /**
  * Interface for OData services, providing methods to create and update entities and DBOs.
@@ -13,30 +15,34 @@ public interface ODataService<T> {
 
     /**
      * Creates an OData Entity from the given DBO (DataBase Object).
+     * Only the navigation properties contained in the expand option are converted,
+     * so navigation properties the client did not ask for are never loaded.
      *
      * @param dbo the DataBase Object to be converted into an OData Entity
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option describing which related entities should be expanded, may be null
      * @return the created OData Entity
      */
-    Entity createEntityFrom(T dbo, int expandDepth);
+    Entity createEntityFrom(T dbo, ExpandOption expandOption);
 
     /**
      * Creates an OData Entity Collection from the given DBOs (DataBase Objects).
      *
      * @param dbos the DataBase Objects to be converted into an OData Entity Collection
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option describing which related entities should be expanded, may be null
      * @return the created OData Entity Collection
      */
-    EntityCollection createEntityCollectionFrom(Iterable<T> dbos, int expandDepth);
+    EntityCollection createEntityCollectionFrom(Iterable<T> dbos, ExpandOption expandOption);
 
     /**
      * Creates a DBO (DataBase Object) from the given OData Entity.
+     * A service supporting deep inserts also converts the inline entities and the entity references (@odata.bind) of the entity.
      *
      * @param entity the OData Entity to be converted into a DBO
      * @param creatorId the ID of the user who created the entity
      * @return the created DBO
+     * @throws ODataApplicationException if the entity refers to entities that do not exist
      */
-    T createDBOFrom(Entity entity, long creatorId);
+    T createDBOFrom(Entity entity, long creatorId) throws ODataApplicationException;
 
     /**
      * Updates the given DBO (DataBase Object) with the data from the given OData Entity.
@@ -45,8 +51,9 @@ public interface ODataService<T> {
      * @param sourceEntity the OData Entity containing the updated data
      * @param updaterId the ID of the user who updated the entity
      * @return the updated DBO
+     * @throws ODataApplicationException if the entity refers to entities that do not exist
      */
-    T updateDBOFrom(T targetDBO, Entity sourceEntity, long updaterId);
+    T updateDBOFrom(T targetDBO, Entity sourceEntity, long updaterId) throws ODataApplicationException;
 
     /**
      * Clears the references of the given DBO (DataBase Object).
@@ -0,0 +1,227 @@
+package com.shopfloor.backend.olingo.business.generics.aggregations;
+
+import com.shopfloor.backend.olingo.database.TupleProjection;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.apache.olingo.server.api.uri.queryoption.apply.AggregateExpression.StandardMethod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The GROUP BY query compiled from $apply, built by the ODataAggregationBuilder.
+ * Every grouping property and every aggregate becomes one column of the tuple query,
+ * navigation properties on the way (e.g. ProductAfter/Id) are left joined,
+ * so only the aggregated rows are read from the database.
+ *
+ * @param <T> the type of the entity to be aggregated
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class ODataAggregation<T> implements TupleProjection<T> {
+
+    private static final String GROUPING_ALIAS = "g";
+    private static final String AGGREGATE_ALIAS = "a";
+
+    /**
+     * The grouping properties, in the order of the groupby transformation.
+     */
+    private final List<Grouping> groupings = new ArrayList<>();
+
+    /**
+     * The aggregates, in the order of the aggregate transformation.
+     */
+    private final List<Aggregate> aggregates = new ArrayList<>();
+
+    /**
+     * Adds a grouping property.
+     *
+     * @param edmPath the EDM names of the path, e.g. ["ProductAfter", "Id"]
+     * @param attributes the JPA attributes of the path, e.g. ["afterProduct", "id"]
+     */
+    void addGrouping(List<String> edmPath, List<String> attributes) {
+        groupings.add(new Grouping(edmPath, attributes));
+    }
+
+    /**
+     * Adds an aggregate.
+     *
+     * @param alias the name of the aggregate in the result
+     * @param method the aggregation method, null for $count
+     * @param attributes the JPA attributes of the aggregated path, empty for $count
+     */
+    void addAggregate(String alias, StandardMethod method, List<String> attributes) {
+        aggregates.add(new Aggregate(alias, method, attributes));
+    }
+
+    public List<Grouping> getGroupings() {
+        return Collections.unmodifiableList(groupings);
+    }
+
+    public List<Aggregate> getAggregates() {
+        return Collections.unmodifiableList(aggregates);
+    }
+
+    /**
+     * Returns the value of a grouping property from a result row.
+     *
+     * @param tuple the result row
+     * @param index the index of the grouping property
+     * @return the value
+     */
+    public Object getGroupingValue(Tuple tuple, int index) {
+        return tuple.get(GROUPING_ALIAS + index);
+    }
+
+    /**
+     * Returns the value of an aggregate from a result row.
+     *
+     * @param tuple the result row
+     * @param index the index of the aggregate
+     * @return the value
+     */
+    public Object getAggregateValue(Tuple tuple, int index) {
+        return tuple.get(AGGREGATE_ALIAS + index);
+    }
+
+    /**
+     * Selects the grouping properties and the aggregates, groups by the grouping properties and orders by them,
+     * so the groups are returned in a stable order.
+     *
+     * @param root the root type in the from clause
+     * @param query the tuple query
+     * @param criteriaBuilder the criteria builder used to construct the selections
+     */
+    @Override
+    public void apply(Root<T> root, CriteriaQuery<Tuple> query, CriteriaBuilder criteriaBuilder) {
+        Map<String, From<?, ?>> joins = new HashMap<>();
+        List<Selection<?>> selections = new ArrayList<>();
+        List<Expression<?>> groupBy = new ArrayList<>();
+        List<Order> orders = new ArrayList<>();
+
+        for (int i = 0; i < groupings.size(); i++) {
+            Path<Object> path = resolvePath(root, groupings.get(i).getAttributes(), joins);
+            selections.add(path.alias(GROUPING_ALIAS + i));
+            groupBy.add(path);
+            orders.add(criteriaBuilder.asc(path));
+        }
+
+        for (int i = 0; i < aggregates.size(); i++) {
+            Aggregate aggregate = aggregates.get(i);
+            Expression<?> expression = aggregate.getMethod() == null
+                    ? criteriaBuilder.count(root)
+                    : createAggregate(aggregate.getMethod(), resolvePath(root, aggregate.getAttributes(), joins), criteriaBuilder);
+            selections.add(expression.alias(AGGREGATE_ALIAS + i));
+        }
+
+        query.multiselect(selections);
+        query.groupBy(groupBy);
+        query.orderBy(orders);
+    }
+
+    /**
+     * Creates the aggregate expression for the given method.
+     *
+     * @param method the aggregation method
+     * @param path the aggregated path
+     * @param criteriaBuilder the criteria builder used to construct the expression
+     * @return the aggregate expression
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Expression<?> createAggregate(StandardMethod method, Path<Object> path, CriteriaBuilder criteriaBuilder) {
+        switch (method) {
+            case SUM:
+                return criteriaBuilder.sum((Expression<Number>) (Expression) path);
+            case AVERAGE:
+                return criteriaBuilder.avg((Expression<Number>) (Expression) path);
+            case MIN:
+                return criteriaBuilder.least((Expression<Comparable>) (Expression) path);
+            case MAX:
+                return criteriaBuilder.greatest((Expression<Comparable>) (Expression) path);
+            case COUNT_DISTINCT:
+                return criteriaBuilder.countDistinct(path);
+            default:
+                throw new UnsupportedOperationException("Unsupported aggregation method: " + method);
+        }
+    }
+
+    /**
+     * Resolves the path of JPA attributes, left joining the navigation properties on the way.
+     * Joins are shared between the columns, so grouping and aggregating over the same navigation joins once.
+     *
+     * @param root the root type in the from clause
+     * @param attributes the JPA attributes of the path
+     * @param joins the joins created so far, by their path
+     * @return the path of the last attribute
+     */
+    private Path<Object> resolvePath(Root<T> root, List<String> attributes, Map<String, From<?, ?>> joins) {
+        From<?, ?> from = root;
+        StringBuilder joinPath = new StringBuilder();
+        for (String attribute : attributes.subList(0, attributes.size() - 1)) {
+            joinPath.append('/').append(attribute);
+            From<?, ?> parent = from;
+            from = joins.computeIfAbsent(joinPath.toString(), key -> parent.join(attribute, JoinType.LEFT));
+        }
+        return from.get(attributes.get(attributes.size() - 1));
+    }
+
+    /**
+     * A grouping property of the aggregation, e.g. ProductAfter/Id.
+     */
+    public static final class Grouping {
+
+        private final List<String> edmPath;
+        private final List<String> attributes;
+
+        private Grouping(List<String> edmPath, List<String> attributes) {
+            this.edmPath = List.copyOf(edmPath);
+            this.attributes = List.copyOf(attributes);
+        }
+
+        public List<String> getEdmPath() {
+            return edmPath;
+        }
+
+        public List<String> getAttributes() {
+            return attributes;
+        }
+    }
+
+    /**
+     * An aggregate of the aggregation, e.g. TotalTimeRequired with sum as Total.
+     */
+    public static final class Aggregate {
+
+        private final String alias;
+        private final StandardMethod method;
+        private final List<String> attributes;
+
+        private Aggregate(String alias, StandardMethod method, List<String> attributes) {
+            this.alias = alias;
+            this.method = method;
+            this.attributes = List.copyOf(attributes);
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public StandardMethod getMethod() {
+            return method;
+        }
+
+        public List<String> getAttributes() {
+            return attributes;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.shopfloor.backend.olingo.business.generics.aggregations;
+
+import com.shopfloor.backend.olingo.business.generics.ODataAttributeResolver;
+import com.shopfloor.backend.olingo.business.generics.specifications.FilterSpecification;
+import com.shopfloor.backend.olingo.business.generics.specifications.ODataFilterCache;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceKind;
+import org.apache.olingo.server.api.uri.queryoption.ApplyItem;
+import org.apache.olingo.server.api.uri.queryoption.ApplyOption;
+import org.apache.olingo.server.api.uri.queryoption.apply.Aggregate;
+import org.apache.olingo.server.api.uri.queryoption.apply.AggregateExpression;
+import org.apache.olingo.server.api.uri.queryoption.apply.Filter;
+import org.apache.olingo.server.api.uri.queryoption.apply.GroupBy;
+import org.apache.olingo.server.api.uri.queryoption.apply.GroupByItem;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A builder class translating the $apply option of OData into an ODataAggregation.
+ * Supported transformations:
+ * - filter(...) before the rows are grouped, it becomes part of the WHERE clause
+ * - groupby((path, ...)) with an optional nested aggregate(...)
+ * - aggregate(path with sum|min|max|average|countdistinct as Alias, $count as Alias)
+ * Other transformations, rollups and custom aggregation methods are rejected with 501 Not Implemented.
+ *
+ * @param <T> the type of the entity to be aggregated
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class ODataAggregationBuilder<T> {
+
+    /**
+     * The aggregation being built.
+     */
+    private final ODataAggregation<T> aggregation;
+
+    /**
+     * The filter transformations applied before grouping.
+     */
+    private Specification<T> filter;
+
+    /**
+     * Whether a groupby or aggregate transformation was added, only one of them is supported.
+     */
+    private boolean grouped;
+
+    /**
+     * The cache of the compiled templates of the filter transformations.
+     */
+    private final ODataFilterCache filterCache;
+
+    /**
+     * Constructs an ODataAggregationBuilder instance without any transformation.
+     *
+     * @param filterCache the cache of the compiled templates of the filter transformations
+     */
+    public ODataAggregationBuilder(ODataFilterCache filterCache) {
+        this.aggregation = new ODataAggregation<>();
+        this.filter = Specification.where(null);
+        this.filterCache = filterCache;
+    }
+
+    /**
+     * Adds the transformations of the $apply option.
+     *
+     * @param applyOption the $apply option of the request
+     * @return the updated ODataAggregationBuilder instance
+     * @throws ODataApplicationException if a transformation is not supported
+     */
+    public ODataAggregationBuilder<T> addApply(ApplyOption applyOption) throws ODataApplicationException {
+        for (ApplyItem applyItem : applyOption.getApplyItems()) {
+            switch (applyItem.getKind()) {
+                case FILTER:
+                    addFilter((Filter) applyItem);
+                    break;
+                case GROUP_BY:
+                    addGroupBy((GroupBy) applyItem);
+                    break;
+                case AGGREGATE:
+                    startGrouping();
+                    addAggregate((Aggregate) applyItem);
+                    break;
+                case IDENTITY:
+                    break; // Returns the input unchanged
+                default:
+                    throw notImplemented("The $apply transformation " + applyItem.getKind() + " is not supported");
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Builds the specification of the filter transformations, to be combined with $filter.
+     *
+     * @return the specification of the filter transformations
+     */
+    public Specification<T> buildFilter() {
+        return filter;
+    }
+
+    /**
+     * Builds the aggregation.
+     *
+     * @return the aggregation
+     */
+    public ODataAggregation<T> build() {
+        return aggregation;
+    }
+
+    /**
+     * Adds a filter transformation, which is only supported before the rows are grouped.
+     *
+     * @param filterItem the filter transformation
+     * @throws ODataApplicationException if the rows were already grouped
+     */
+    private void addFilter(Filter filterItem) throws ODataApplicationException {
+        if (grouped) {
+            throw notImplemented("filter after groupby or aggregate is not supported in $apply");
+        }
+        filter = filter.and(new FilterSpecification<T>(filterCache).build(filterItem.getFilterOption()));
+    }
+
+    /**
+     * Adds a groupby transformation with its nested aggregate transformation.
+     *
+     * @param groupBy the groupby transformation
+     * @throws ODataApplicationException if the transformation is not supported
+     */
+    private void addGroupBy(GroupBy groupBy) throws ODataApplicationException {
+        startGrouping();
+
+        for (GroupByItem groupByItem : groupBy.getGroupByItems()) {
+            if (groupByItem.isRollupAll() || !groupByItem.getRollup().isEmpty()) {
+                throw notImplemented("rollup is not supported in $apply");
+            }
+            List<String> edmPath = toEdmPath(groupByItem.getPath());
+            aggregation.addGrouping(edmPath, toAttributes(edmPath));
+        }
+
+        if (groupBy.getApplyOption() != null) {
+            for (ApplyItem applyItem : groupBy.getApplyOption().getApplyItems()) {
+                if (applyItem.getKind() != ApplyItem.Kind.AGGREGATE) {
+                    throw notImplemented("Only aggregate is supported inside groupby");
+                }
+                addAggregate((Aggregate) applyItem);
+            }
+        }
+    }
+
+    /**
+     * Adds the aggregates of an aggregate transformation.
+     *
+     * @param aggregate the aggregate transformation
+     * @throws ODataApplicationException if an aggregate is not supported
+     */
+    private void addAggregate(Aggregate aggregate) throws ODataApplicationException {
+        for (AggregateExpression expression : aggregate.getExpressions()) {
+            if (expression.getAlias() == null || expression.getInlineAggregateExpression() != null || !expression.getFrom().isEmpty()) {
+                throw notImplemented("Only aggregates of the form 'path with method as alias' and '$count as alias' are supported");
+            }
+
+            List<UriResource> path = expression.getPath();
+            if (path.isEmpty() && expression.getExpression() instanceof Member) {
+                path = ((Member) expression.getExpression()).getResourcePath().getUriResourceParts();
+            }
+
+            if (path.size() == 1 && path.get(0).getKind() == UriResourceKind.count) {
+                aggregation.addAggregate(expression.getAlias(), null, List.of());
+            } else if (expression.getStandardMethod() != null && !path.isEmpty()) {
+                aggregation.addAggregate(expression.getAlias(), expression.getStandardMethod(), toAttributes(toEdmPath(path)));
+            } else {
+                throw notImplemented("Custom aggregation methods and expressions are not supported in $apply");
+            }
+        }
+    }
+
+    /**
+     * Marks the rows as grouped, only one groupby or aggregate transformation is supported.
+     *
+     * @throws ODataApplicationException if the rows were already grouped
+     */
+    private void startGrouping() throws ODataApplicationException {
+        if (grouped) {
+            throw notImplemented("Only one groupby or aggregate transformation is supported in $apply");
+        }
+        grouped = true;
+    }
+
+    /**
+     * Returns the EDM names of a path of navigation properties ending with a property.
+     *
+     * @param path the path
+     * @return the EDM names, e.g. ["ProductAfter", "Id"]
+     * @throws ODataApplicationException if the path contains anything else
+     */
+    private List<String> toEdmPath(List<UriResource> path) throws ODataApplicationException {
+        List<String> edmPath = new ArrayList<>();
+        for (UriResource segment : path) {
+            if (segment.getKind() != UriResourceKind.primitiveProperty && segment.getKind() != UriResourceKind.navigationProperty) {
+                throw notImplemented("Only properties and navigation properties are supported in $apply paths");
+            }
+            edmPath.add(segment.getSegmentValue());
+        }
+        if (path.isEmpty() || path.get(path.size() - 1).getKind() != UriResourceKind.primitiveProperty) {
+            throw notImplemented("Paths in $apply have to end with a property");
+        }
+        return edmPath;
+    }
+
+    private List<String> toAttributes(List<String> edmPath) {
+        return edmPath.stream().map(ODataAttributeResolver::resolve).toList();
+    }
+
+    private ODataApplicationException notImplemented(String message) {
+        return new ODataApplicationException(message, HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), null);
+    }
+}
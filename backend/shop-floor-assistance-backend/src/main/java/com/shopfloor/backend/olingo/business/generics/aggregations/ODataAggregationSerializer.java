@@ -0,0 +1,92 @@
+package com.shopfloor.backend.olingo.business.generics.aggregations;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.persistence.Tuple;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Serializes the rows of an ODataAggregation as OData JSON.
+ * The rows of $apply are instances of a dynamic type, e.g. {"ProductAfter": {"Id": 1}, "Total": 120},
+ * which the Olingo serializers cannot write, because they only write the properties declared in the EDM.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public final class ODataAggregationSerializer {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private ODataAggregationSerializer() {
+    }
+
+    /**
+     * Serializes the aggregated rows.
+     *
+     * @param serviceRoot the service root URL, e.g. "http://localhost:8080/odata"
+     * @param entitySetName the name of the aggregated entity set
+     * @param aggregation the aggregation the rows were read with
+     * @param rows the aggregated rows
+     * @return the JSON response body
+     * @throws IOException if the JSON cannot be written
+     */
+    public static InputStream serialize(String serviceRoot, String entitySetName, ODataAggregation<?> aggregation, List<Tuple> rows)
+            throws IOException {
+        ObjectNode result = MAPPER.createObjectNode();
+        result.put("@odata.context", serviceRoot + "/$metadata#" + entitySetName + "(" + createSelectList(aggregation) + ")");
+        ArrayNode value = result.putArray("value");
+
+        for (Tuple row : rows) {
+            ObjectNode entity = value.addObject();
+            for (int i = 0; i < aggregation.getGroupings().size(); i++) {
+                List<String> edmPath = aggregation.getGroupings().get(i).getEdmPath();
+                ObjectNode parent = entity;
+                for (String navigation : edmPath.subList(0, edmPath.size() - 1)) {
+                    parent = parent.has(navigation) ? (ObjectNode) parent.get(navigation) : parent.putObject(navigation);
+                }
+                parent.set(edmPath.get(edmPath.size() - 1), toJson(aggregation.getGroupingValue(row, i)));
+            }
+            for (int i = 0; i < aggregation.getAggregates().size(); i++) {
+                entity.set(aggregation.getAggregates().get(i).getAlias(), toJson(aggregation.getAggregateValue(row, i)));
+            }
+        }
+        return new ByteArrayInputStream(MAPPER.writeValueAsBytes(result));
+    }
+
+    /**
+     * Creates the select list of the context URL, e.g. "ProductAfter(Id),Total".
+     *
+     * @param aggregation the aggregation
+     * @return the select list
+     */
+    private static String createSelectList(ODataAggregation<?> aggregation) {
+        StringBuilder selectList = new StringBuilder();
+        for (ODataAggregation.Grouping grouping : aggregation.getGroupings()) {
+            List<String> edmPath = grouping.getEdmPath();
+            selectList.append(selectList.length() > 0 ? "," : "").append(String.join("(", edmPath)).append(")".repeat(edmPath.size() - 1));
+        }
+        for (ODataAggregation.Aggregate aggregate : aggregation.getAggregates()) {
+            selectList.append(selectList.length() > 0 ? "," : "").append(aggregate.getAlias());
+        }
+        return selectList.toString();
+    }
+
+    /**
+     * Converts a value read from the database to JSON, dates are written as ISO 8601 like the Olingo serializers do.
+     *
+     * @param value the value
+     * @return the JSON value
+     */
+    private static JsonNode toJson(Object value) {
+        if (value instanceof Date date) {
+            return MAPPER.getNodeFactory().textNode(date.toInstant().toString());
+        }
+        return MAPPER.valueToTree(value);
+    }
+}
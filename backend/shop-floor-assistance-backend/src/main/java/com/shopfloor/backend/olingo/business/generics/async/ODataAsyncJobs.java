@@ -0,0 +1,414 @@
+package com.shopfloor.backend.olingo.business.generics.async;
+
+import com.shopfloor.backend.olingo.database.ODataExecutorConfiguration;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Runs OData requests sent with "Prefer: respond-async" in the background and serves their status monitors.
+ * The request is answered with 202 Accepted and the URL of its status monitor, "/odata/$async/{id}",
+ * then it is processed again by the handler of its entity set on the async executor, without the preference,
+ * and the finished response is spooled to a file on local disk. So a long running read holds neither
+ * a request thread nor a database connection while the client waits.
+ * The status monitor answers:
+ * - GET while the request runs - 202 Accepted with Retry-After
+ * - GET when the request finished - 200 OK with the finished response, its status in the AsyncResult header
+ * - DELETE - 204 No Content, the response is discarded and a running request is interrupted
+ * - unknown or expired requests - 404 Not Found
+ * Finished responses are kept for odata.async.ttl. If the executor is saturated or odata.async.max-jobs
+ * responses are kept, the request is processed synchronously instead. A request still running
+ * odata.async.max-runtime after it was accepted is interrupted and answered with status 500.
+ * The jobs are only kept in memory: the spool files left by a previous run are deleted at startup,
+ * and expired jobs are swept every odata.async.sweep-interval, also while no client sends requests.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+@ManagedResource(objectName = "com.shopfloor.backend:type=ODataAsyncJobs", description = "Asynchronous OData requests")
+public class ODataAsyncJobs {
+
+    /**
+     * The path segment of the status monitors below the service root.
+     */
+    public static final String MONITOR_SEGMENT = "$async";
+
+    /**
+     * Header of the status monitor containing the status of the finished response.
+     */
+    public static final String ASYNC_RESULT = "AsyncResult";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ODataAsyncJobs.class);
+
+    private static final String RESPOND_ASYNC = "respond-async";
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * Executor processing the asynchronous requests.
+     */
+    private final Executor executor;
+
+    /**
+     * Directory the finished responses are spooled to.
+     */
+    private final Path spoolDirectory;
+
+    /**
+     * Time a finished response is kept.
+     */
+    private final Duration ttl;
+
+    /**
+     * The largest number of running and finished requests kept at once.
+     */
+    private final int maxJobs;
+
+    /**
+     * Time after which a request still running is interrupted.
+     */
+    private final Duration maxRuntime;
+
+    /**
+     * Processes the requests in the background with a handler of their entity set.
+     */
+    private BiFunction<String, ODataRequest, ODataResponse> dispatcher;
+
+    /**
+     * Constructs the asynchronous request processing.
+     *
+     * @param executor the executor configured in ODataExecutorConfiguration
+     * @param spoolDirectory the directory the finished responses are spooled to, created if missing
+     * @param ttl the time a finished response is kept
+     * @param maxJobs the largest number of running and finished requests kept at once
+     * @param maxRuntime the time after which a request still running is interrupted
+     * @throws IOException if the spool directory can not be created or its leftover spool files not deleted
+     */
+    @Autowired
+    public ODataAsyncJobs(@Qualifier(ODataExecutorConfiguration.ASYNC_EXECUTOR) Executor executor,
+                          @Value("${odata.async.spool-dir:${java.io.tmpdir}/odata-async}") Path spoolDirectory,
+                          @Value("${odata.async.ttl:1h}") Duration ttl,
+                          @Value("${odata.async.max-jobs:100}") int maxJobs,
+                          @Value("${odata.async.max-runtime:30m}") Duration maxRuntime) throws IOException {
+        this.executor = executor;
+        this.spoolDirectory = Files.createDirectories(spoolDirectory);
+        this.ttl = ttl;
+        this.maxJobs = maxJobs;
+        this.maxRuntime = maxRuntime;
+        deleteLeftoverSpools();
+    }
+
+    /**
+     * Sets the dispatcher processing the asynchronous requests.
+     *
+     * @param dispatcher processes a request with a handler of an entity set
+     */
+    public void setDispatcher(BiFunction<String, ODataRequest, ODataResponse> dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Starts processing the request in the background.
+     *
+     * @param request the request sent with "Prefer: respond-async"
+     * @param entitySetName the name of the requested entity set
+     * @return the URL of the status monitor, null if the request has to be processed synchronously
+     */
+    public String submit(ODataRequest request, String entitySetName) {
+        removeExpired();
+        if (jobs.size() >= maxJobs) {
+            rejected.increment();
+            return null;
+        }
+
+        String id = UUID.randomUUID().toString();
+        Job job = new Job(spoolDirectory.resolve(id + ".spool"));
+        ODataRequest syncRequest = withoutRespondAsync(request);
+        job.task = new FutureTask<>(() -> {
+            try {
+                job.complete(dispatcher.apply(entitySetName, syncRequest));
+            } catch (Throwable e) {
+                // the FutureTask keeps the failure to itself, nobody reads its result
+                if (!job.discarded) {
+                    LOGGER.error("Asynchronous request {} {} failed", syncRequest.getMethod(), syncRequest.getRawRequestUri(), e);
+                }
+                job.fail();
+            }
+            return null;
+        });
+        jobs.put(id, job);
+        try {
+            executor.execute(job.task);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            rejected.increment();
+            return null;
+        }
+        submitted.increment();
+        return request.getRawBaseUri() + "/" + MONITOR_SEGMENT + "/" + id;
+    }
+
+    /**
+     * Answers a request to a status monitor, "/odata/$async/{id}".
+     *
+     * @param servletRequest the request to the status monitor
+     * @param servletResponse the response
+     * @throws IOException if the spooled response can not be read
+     */
+    public void respond(HttpServletRequest servletRequest, HttpServletResponse servletResponse) throws IOException {
+        removeExpired();
+        String uri = servletRequest.getRequestURI();
+        String id = uri.substring(uri.lastIndexOf('/') + 1);
+        Job job = jobs.get(id);
+        if (job == null) {
+            servletResponse.setStatus(HttpStatusCode.NOT_FOUND.getStatusCode());
+            return;
+        }
+
+        if (HttpMethod.DELETE.name().equals(servletRequest.getMethod())) {
+            jobs.remove(id);
+            job.discard();
+            servletResponse.setStatus(HttpStatusCode.NO_CONTENT.getStatusCode());
+            return;
+        }
+        if (!HttpMethod.GET.name().equals(servletRequest.getMethod())) {
+            servletResponse.setStatus(HttpStatusCode.METHOD_NOT_ALLOWED.getStatusCode());
+            return;
+        }
+
+        if (job.finishedAt == null) {
+            servletResponse.setStatus(HttpStatusCode.ACCEPTED.getStatusCode());
+            servletResponse.setHeader(HttpHeader.LOCATION, servletRequest.getRequestURL().toString());
+            servletResponse.setHeader(HttpHeader.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            return;
+        }
+
+        servletResponse.setStatus(HttpStatusCode.OK.getStatusCode());
+        servletResponse.setHeader(ASYNC_RESULT, String.valueOf(job.statusCode));
+        job.headers.forEach((name, values) -> values.forEach(value -> servletResponse.addHeader(name, value)));
+        if (Files.exists(job.spool)) {
+            try (InputStream content = Files.newInputStream(job.spool)) {
+                content.transferTo(servletResponse.getOutputStream());
+            }
+        }
+    }
+
+    @ManagedAttribute(description = "Requests processed asynchronously")
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    @ManagedAttribute(description = "Requests processed synchronously because the executor was saturated")
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @ManagedAttribute(description = "Requests interrupted because they ran longer than the max runtime")
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    @ManagedAttribute(description = "Running and finished requests kept")
+    public int getSize() {
+        return jobs.size();
+    }
+
+    /**
+     * Interrupts the requests running longer than the max runtime, their status monitors answer with status 500,
+     * and discards the finished responses older than the ttl.
+     * Runs on every request and status monitor request, and every odata.async.sweep-interval.
+     */
+    @Scheduled(fixedDelayString = "${odata.async.sweep-interval:PT1M}")
+    public void removeExpired() {
+        Instant now = Instant.now();
+        Instant deadline = now.minus(maxRuntime);
+        jobs.forEach((id, job) -> {
+            if (job.finishedAt == null && job.acceptedAt.isBefore(deadline)) {
+                LOGGER.warn("Asynchronous request {} still ran after {}, interrupting it", id, maxRuntime);
+                job.task.cancel(true);
+                job.fail();
+                timedOut.increment();
+            }
+        });
+
+        Instant expiry = now.minus(ttl);
+        jobs.entrySet().removeIf(entry -> {
+            Instant finishedAt = entry.getValue().finishedAt;
+            if (finishedAt != null && finishedAt.isBefore(expiry)) {
+                entry.getValue().discard();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Deletes the spool files of a previous run, their jobs were lost with it and nobody can fetch them any more.
+     *
+     * @throws IOException if the spool directory can not be read or a file not deleted
+     */
+    private void deleteLeftoverSpools() throws IOException {
+        int deleted = 0;
+        try (DirectoryStream<Path> spools = Files.newDirectoryStream(spoolDirectory, "*.spool")) {
+            for (Path spool : spools) {
+                Files.deleteIfExists(spool);
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            LOGGER.info("Deleted {} spooled responses of a previous run from {}", deleted, spoolDirectory);
+        }
+    }
+
+    /**
+     * Copies the request without the respond-async preference, other preferences are kept.
+     *
+     * @param request the request sent with "Prefer: respond-async"
+     * @return the request processed in the background
+     */
+    private static ODataRequest withoutRespondAsync(ODataRequest request) {
+        ODataRequest copy = new ODataRequest();
+        copy.setMethod(request.getMethod());
+        copy.setProtocol(request.getProtocol());
+        copy.setRawBaseUri(request.getRawBaseUri());
+        copy.setRawODataPath(request.getRawODataPath());
+        copy.setRawQueryPath(request.getRawQueryPath());
+        copy.setRawRequestUri(request.getRawRequestUri());
+        copy.setRawServiceResolutionUri(request.getRawServiceResolutionUri());
+        request.getAllHeaders().forEach((name, values) -> {
+            if (!HttpHeader.PREFER.equalsIgnoreCase(name)) {
+                copy.addHeader(name, values);
+                return;
+            }
+            List<String> preferences = new ArrayList<>();
+            for (String value : values) {
+                for (String preference : value.split(",")) {
+                    if (!preference.isBlank() && !RESPOND_ASYNC.equalsIgnoreCase(preference.trim())) {
+                        preferences.add(preference.trim());
+                    }
+                }
+            }
+            if (!preferences.isEmpty()) {
+                copy.addHeader(name, String.join(", ", preferences));
+            }
+        });
+        return copy;
+    }
+
+    /**
+     * A request processed in the background and its spooled response.
+     */
+    private static final class Job {
+
+        private final Path spool;
+        private final Instant acceptedAt = Instant.now();
+        private FutureTask<Void> task;
+        private volatile int statusCode;
+        private volatile Map<String, List<String>> headers = Map.of();
+        private volatile Instant finishedAt;
+        private volatile boolean discarded;
+
+        Job(Path spool) {
+            this.spool = spool;
+        }
+
+        /**
+         * Spools the finished response, streamed content is written within its own transaction here.
+         *
+         * @param response the response of the handler
+         */
+        void complete(ODataResponse response) {
+            try (OutputStream out = Files.newOutputStream(spool)) {
+                if (response.getODataContent() != null) {
+                    response.getODataContent().write(out);
+                } else if (response.getContent() != null) {
+                    try (InputStream content = response.getContent()) {
+                        content.transferTo(out);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not spool the asynchronous response", e);
+            }
+            synchronized (this) {
+                if (finishedAt != null) {
+                    // interrupted after the max runtime, its status monitor already answers with status 500
+                    deleteSpool();
+                    return;
+                }
+                statusCode = response.getStatusCode();
+                headers = Map.copyOf(response.getAllHeaders());
+                finishedAt = Instant.now();
+            }
+            if (discarded) {
+                deleteSpool();
+            }
+        }
+
+        /**
+         * Records a request which could not be processed or spooled, its status monitor answers with status 500.
+         */
+        synchronized void fail() {
+            if (finishedAt != null) {
+                return;
+            }
+            deleteSpool();
+            statusCode = HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode();
+            headers = Map.of();
+            finishedAt = Instant.now();
+        }
+
+        /**
+         * Interrupts the request if it still runs and deletes its spooled response.
+         */
+        void discard() {
+            discarded = true;
+            task.cancel(true);
+            deleteSpool();
+        }
+
+        private void deleteSpool() {
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                spool.toFile().deleteOnExit();
+            }
+        }
+    }
+}
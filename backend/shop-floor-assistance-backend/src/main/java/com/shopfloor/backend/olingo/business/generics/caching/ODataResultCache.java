@@ -0,0 +1,429 @@
+package com.shopfloor.backend.olingo.business.generics.caching;
+
+import org.apache.olingo.commons.api.edm.EdmBindingTarget;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.edm.EdmNavigationPropertyBinding;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.apache.olingo.server.api.uri.queryoption.SystemQueryOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded LRU cache of serialized OData collection responses, used by ODataCollectionProcessor.
+ * A response is keyed by the entity set, the query options in a normalized order and the content type,
+ * and it is tagged with the entity sets it was read from: the requested one, the targets of $expand
+ * and, if $filter, $orderby or $apply follow a navigation path, every entity set reachable over the navigation bindings.
+ *
+ * Writes are reported by ODataResultCacheInvalidator, which listens to all Hibernate writes,
+ * so OData requests and the editor REST API invalidate alike. The responses tagged with a written entity set
+ * are evicted once the transaction commits. A read running while an entity set is written does not store its response,
+ * and a read inside a transaction that wrote one of its entity sets bypasses the cache, it has to see its own writes.
+ * The time to live only bounds the age of responses whose data changed without Hibernate, e.g. in SQL scripts.
+ *
+ * The statistics are exposed as the JMX bean "com.shopfloor.backend:type=ODataResultCache" (with spring.jmx.enabled=true).
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+@ManagedResource(objectName = "com.shopfloor.backend:type=ODataResultCache", description = "Serialized OData collection responses")
+public class ODataResultCache {
+
+    /**
+     * The key of the entity sets written in the current transaction, bound with TransactionSynchronizationManager.
+     */
+    private static final Object PENDING_WRITES = new Object();
+
+    /**
+     * The responses in access order, the least recently used first.
+     */
+    private final LinkedHashMap<String, CachedResponse> responses = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The number of invalidations per entity set, a read compares them before and after it ran.
+     */
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private final boolean enabled;
+    private final int maximumSize;
+    private final int maximumEntryBytes;
+    private final long timeToLiveNanos;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param enabled false to answer every request from the database
+     * @param maximumSize the maximum number of cached responses
+     * @param maximumEntryBytes larger responses are not cached
+     * @param timeToLive the maximum age of a cached response
+     */
+    public ODataResultCache(@Value("${odata.result-cache.enabled:true}") boolean enabled,
+                            @Value("${odata.result-cache.size:500}") int maximumSize,
+                            @Value("${odata.result-cache.max-entry-bytes:1048576}") int maximumEntryBytes,
+                            @Value("${odata.result-cache.ttl:10m}") Duration timeToLive) {
+        this.enabled = enabled && maximumSize > 0;
+        this.maximumSize = maximumSize;
+        this.maximumEntryBytes = maximumEntryBytes;
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    /**
+     * Creates the key of a collection request. The query options are decoded and sorted,
+     * so the order in which the client sends them does not matter.
+     * The base URI is part of the key, the responses contain absolute links.
+     *
+     * @param request the OData request
+     * @param entitySetName the requested entity set
+     * @param contentType the content type of the response
+     * @return the key
+     */
+    public static String createKey(ODataRequest request, String entitySetName, ContentType contentType) {
+        Set<String> parameters = new TreeSet<>();
+        String rawQuery = request.getRawQueryPath();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                if (!parameter.isEmpty()) {
+                    parameters.add(URLDecoder.decode(parameter, StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        List<String> preferHeaders = request.getHeaders(HttpHeader.PREFER);
+        return request.getRawBaseUri() + "/" + entitySetName + "?" + String.join("&", parameters)
+                + "|" + contentType.toContentTypeString()
+                + "|" + (preferHeaders != null ? String.join(",", preferHeaders) : "");
+    }
+
+    /**
+     * Returns the entity sets a collection request reads from, the response has to be evicted when one of them is written.
+     * The targets of $expand are followed level by level, navigation paths in $filter, $orderby or $apply
+     * (they contain a "/") may reach any entity set bound from the requested one.
+     *
+     * @param edmEntitySet the requested entity set
+     * @param uriInfo the URI information containing the OData query options
+     * @return the names of the entity sets
+     */
+    public static Set<String> getDependencies(EdmEntitySet edmEntitySet, UriInfo uriInfo) {
+        Set<String> dependencies = new HashSet<>();
+        dependencies.add(edmEntitySet.getName());
+        addExpandTargets(edmEntitySet, uriInfo.getExpandOption(), dependencies);
+
+        if (followsNavigation(uriInfo.getFilterOption()) || followsNavigation(uriInfo.getOrderByOption())
+                || followsNavigation(uriInfo.getApplyOption())) {
+            addReachableTargets(edmEntitySet, dependencies);
+        }
+        return dependencies;
+    }
+
+    /**
+     * Checks whether responses depending on the given entity sets may be read from and stored in the cache.
+     * They may not if the cache is disabled or the current transaction wrote one of the entity sets.
+     *
+     * @param dependencies the entity sets the response is read from
+     * @return true if the cache may be used
+     */
+    public boolean isCacheable(Set<String> dependencies) {
+        if (!enabled) {
+            return false;
+        }
+        Set<String> pendingWrites = getPendingWrites();
+        return pendingWrites == null || Collections.disjoint(pendingWrites, dependencies);
+    }
+
+    /**
+     * Answers a request from the cache, the status, the headers and the body of the cached response are copied.
+     *
+     * @param key the key created by createKey
+     * @param response the OData response to fill
+     * @return true if the response was answered, false on a miss
+     */
+    public boolean respond(String key, ODataResponse response) {
+        CachedResponse cached;
+        synchronized (responses) {
+            cached = responses.get(key);
+            if (cached != null && System.nanoTime() - cached.createdAt > timeToLiveNanos) {
+                responses.remove(key);
+                cached = null;
+            }
+        }
+        if (cached == null) {
+            misses.increment();
+            return false;
+        }
+
+        hits.increment();
+        response.setStatusCode(cached.statusCode);
+        cached.headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        response.setContent(new ByteArrayInputStream(cached.content));
+        return true;
+    }
+
+    /**
+     * Returns the current generation of the given entity sets, taken before a read.
+     *
+     * @param dependencies the entity sets the response is read from
+     * @return the generation, it grows with every invalidation of one of the entity sets
+     */
+    public long getGeneration(Set<String> dependencies) {
+        long generation = 0;
+        for (String entitySet : dependencies) {
+            generation += generations.computeIfAbsent(entitySet, name -> new AtomicLong()).get();
+        }
+        return generation;
+    }
+
+    /**
+     * Stores a response that was serialized at once, its content is read and set again.
+     * The response is not stored if one of its entity sets was invalidated since the read started,
+     * it may contain data of before the write then.
+     *
+     * @param key the key created by createKey
+     * @param dependencies the entity sets the response was read from
+     * @param generation the generation taken with getGeneration before the read
+     * @param response the OData response, its content must not be streamed
+     * @throws IOException if the content can not be read
+     */
+    public void store(String key, Set<String> dependencies, long generation, ODataResponse response) throws IOException {
+        InputStream content = response.getContent();
+        if (content == null) {
+            return;
+        }
+        byte[] bytes = content.readAllBytes();
+        response.setContent(new ByteArrayInputStream(bytes));
+        if (bytes.length > maximumEntryBytes) {
+            return;
+        }
+
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        response.getAllHeaders().forEach((name, values) -> headers.put(name, List.copyOf(values)));
+        CachedResponse cached = new CachedResponse(response.getStatusCode(), headers, bytes, Set.copyOf(dependencies));
+
+        synchronized (responses) {
+            // invalidations increment the generation while holding the lock, so none can slip in between
+            if (getGeneration(dependencies) != generation) {
+                return;
+            }
+            responses.put(key, cached);
+            Iterator<CachedResponse> iterator = responses.values().iterator();
+            while (responses.size() > maximumSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Reports a write of an entity set. Inside a transaction the responses are evicted after the commit,
+     * until then the transaction bypasses the cache for this entity set. Without a transaction they are evicted at once.
+     *
+     * @param entitySet the name of the written entity set
+     */
+    public void written(String entitySet) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(List.of(entitySet));
+            return;
+        }
+
+        Set<String> pendingWrites = getPendingWrites();
+        if (pendingWrites == null) {
+            Set<String> writes = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(PENDING_WRITES, writes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PENDING_WRITES);
+                    // a rollback leaves the data unchanged, but the entities may have been flushed and read meanwhile
+                    invalidate(writes);
+                }
+            });
+            pendingWrites = writes;
+        }
+        if (pendingWrites.add(entitySet)) {
+            // reads running concurrently must not store data of before the commit
+            generations.computeIfAbsent(entitySet, name -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Evicts the responses depending on one of the given entity sets.
+     *
+     * @param entitySets the names of the written entity sets
+     */
+    public void invalidate(Collection<String> entitySets) {
+        synchronized (responses) {
+            for (String entitySet : entitySets) {
+                generations.computeIfAbsent(entitySet, name -> new AtomicLong()).incrementAndGet();
+            }
+            responses.values().removeIf(cached -> !Collections.disjoint(cached.dependencies, entitySets));
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    @ManagedAttribute(description = "Requests answered from the cache")
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of cacheable requests read from the database
+     */
+    @ManagedAttribute(description = "Cacheable requests read from the database")
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of responses evicted to keep the maximum size
+     */
+    @ManagedAttribute(description = "Responses evicted to keep the maximum size")
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of committed writes that evicted responses
+     */
+    @ManagedAttribute(description = "Committed writes that evicted responses")
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return the number of cached responses
+     */
+    @ManagedAttribute(description = "Cached responses")
+    public int getSize() {
+        synchronized (responses) {
+            return responses.size();
+        }
+    }
+
+    /**
+     * Evicts all cached responses, the statistics are kept.
+     */
+    @ManagedOperation(description = "Evicts all cached responses")
+    public void clear() {
+        synchronized (responses) {
+            generations.values().forEach(AtomicLong::incrementAndGet);
+            responses.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> getPendingWrites() {
+        return (Set<String>) TransactionSynchronizationManager.getResource(PENDING_WRITES);
+    }
+
+    /**
+     * Adds the targets of the expanded navigation properties, recursively for nested $expand.
+     * "$expand=*" expands all navigation properties of the entity set.
+     */
+    private static void addExpandTargets(EdmBindingTarget bindingTarget, ExpandOption expandOption, Set<String> dependencies) {
+        if (expandOption == null) {
+            return;
+        }
+        for (ExpandItem expandItem : expandOption.getExpandItems()) {
+            if (expandItem.isStar()) {
+                for (EdmNavigationPropertyBinding binding : bindingTarget.getNavigationPropertyBindings()) {
+                    dependencies.add(binding.getTarget());
+                }
+                continue;
+            }
+            if (expandItem.getResourcePath() == null) {
+                continue;
+            }
+            EdmBindingTarget target = bindingTarget;
+            for (UriResource resourcePart : expandItem.getResourcePath().getUriResourceParts()) {
+                if (resourcePart instanceof UriResourceNavigation navigation && target != null) {
+                    target = target.getRelatedBindingTarget(navigation.getProperty().getName());
+                }
+            }
+            if (target != null && target != bindingTarget) {
+                dependencies.add(target.getName());
+                addExpandTargets(target, expandItem.getExpandOption(), dependencies);
+            }
+        }
+    }
+
+    /**
+     * Adds every entity set reachable over the navigation property bindings.
+     */
+    private static void addReachableTargets(EdmBindingTarget bindingTarget, Set<String> dependencies) {
+        Set<String> visited = new HashSet<>(Set.of(bindingTarget.getName()));
+        List<EdmBindingTarget> pending = new ArrayList<>(List.of(bindingTarget));
+        while (!pending.isEmpty()) {
+            EdmBindingTarget current = pending.remove(pending.size() - 1);
+            for (EdmNavigationPropertyBinding binding : current.getNavigationPropertyBindings()) {
+                EdmBindingTarget target = current.getRelatedBindingTarget(binding.getPath());
+                if (target != null && visited.add(target.getName())) {
+                    dependencies.add(target.getName());
+                    pending.add(target);
+                }
+            }
+        }
+    }
+
+    private static boolean followsNavigation(SystemQueryOption option) {
+        return option != null && option.getText() != null && option.getText().contains("/");
+    }
+
+    /**
+     * A serialized response together with the entity sets it was read from.
+     */
+    private static final class CachedResponse {
+
+        private final int statusCode;
+        private final Map<String, List<String>> headers;
+        private final byte[] content;
+        private final Set<String> dependencies;
+        private final long createdAt = System.nanoTime();
+
+        private CachedResponse(int statusCode, Map<String, List<String>> headers, byte[] content, Set<String> dependencies) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.content = content;
+            this.dependencies = dependencies;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.shopfloor.backend.olingo.business.generics.caching;
+
+import com.shopfloor.backend.database.objects.EquipmentDBO;
+import com.shopfloor.backend.database.objects.ItemDBO;
+import com.shopfloor.backend.database.objects.OrderDBO;
+import com.shopfloor.backend.database.objects.ProductDBO;
+import com.shopfloor.backend.database.objects.TaskDBO;
+import com.shopfloor.backend.database.objects.WorkflowDBO;
+import com.shopfloor.backend.olingo.presentation.EdmProvider;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Reports the writes of all Hibernate sessions to the ODataResultCache, by the entity set they change.
+ * Listening to Hibernate instead of the OData processors covers the editor REST API (EditorServiceImpl) as well.
+ * The workflows, tasks and items of an order are exposed as part of the order, changing them changes Orders.
+ * Changes of a many-to-many collection are reported for the entity set owning the collection,
+ * the entity sets expanding it from the other side depend on that entity set as well.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+public class ODataResultCacheInvalidator implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener,
+        PostCollectionRecreateEventListener, PostCollectionUpdateEventListener, PostCollectionRemoveEventListener {
+
+    /**
+     * The entity sets by the name of the entity they are read from, entities missing here are not exposed over OData.
+     */
+    private static final Map<String, String> ENTITY_SETS = Map.of(
+            OrderDBO.class.getName(), EdmProvider.ES_ORDERS_NAME,
+            WorkflowDBO.class.getName(), EdmProvider.ES_ORDERS_NAME,
+            TaskDBO.class.getName(), EdmProvider.ES_ORDERS_NAME,
+            ItemDBO.class.getName(), EdmProvider.ES_ORDERS_NAME,
+            ProductDBO.class.getName(), EdmProvider.ES_PRODUCTS_NAME,
+            EquipmentDBO.class.getName(), EdmProvider.ES_EQUIPMENTS_NAME);
+
+    private final ODataResultCache resultCache;
+
+    /**
+     * Constructs the invalidator and registers it with the Hibernate session factory.
+     *
+     * @param entityManagerFactory the entity manager factory of the application
+     * @param resultCache the cache to invalidate
+     */
+    @Autowired
+    public ODataResultCacheInvalidator(EntityManagerFactory entityManagerFactory, ODataResultCache resultCache) {
+        this.resultCache = resultCache;
+
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, this);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        written(event.getPersister().getEntityName());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        written(event.getPersister().getEntityName());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        written(event.getPersister().getEntityName());
+    }
+
+    @Override
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        written(event);
+    }
+
+    @Override
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        written(event);
+    }
+
+    @Override
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        written(event);
+    }
+
+    /**
+     * The cache is invalidated after the commit by the cache itself, the listeners run before it.
+     *
+     * @param persister the persister of the written entity
+     * @return always false
+     */
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    private void written(AbstractCollectionEvent event) {
+        written(event.getAffectedOwnerEntityName());
+    }
+
+    private void written(String entityName) {
+        String entitySet = ENTITY_SETS.get(entityName);
+        if (entitySet != null) {
+            resultCache.written(entitySet);
+        }
+    }
+}
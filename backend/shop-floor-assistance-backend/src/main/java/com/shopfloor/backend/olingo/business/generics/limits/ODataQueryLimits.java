@@ -0,0 +1,200 @@
+package com.shopfloor.backend.olingo.business.generics.limits;
+
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmNavigationProperty;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The limits bounding the cost of a single OData request, so one client can not exhaust the heap or hold a connection for minutes.
+ * - max-top: a larger $top is truncated, the rest of the requested entities is linked with @odata.nextLink
+ * - max-expand-depth: the number of nested $expand levels, deeper expansions are rejected
+ * - max-expand-breadth: the number of navigation properties expanded on one level, "*" counts all of them
+ * - max-response-bytes: larger collection responses are rejected, streamed responses are cut off
+ * - statement-timeout: the database cancels the queries of a request running longer
+ *
+ * Every limit is read from "odata.limits.<entity set>.<limit>" and falls back to "odata.limits.<limit>",
+ * e.g. odata.limits.Products.max-top=500. The numbers of truncated and rejected requests are exposed
+ * as the JMX bean "com.shopfloor.backend:type=ODataQueryLimits" (with spring.jmx.enabled=true).
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+@ManagedResource(objectName = "com.shopfloor.backend:type=ODataQueryLimits", description = "Limits of OData requests")
+public class ODataQueryLimits {
+
+    private static final String PREFIX = "odata.limits.";
+
+    private final LongAdder topTruncations = new LongAdder();
+    private final LongAdder expandRejections = new LongAdder();
+    private final LongAdder responseSizeRejections = new LongAdder();
+    private final LongAdder statementTimeouts = new LongAdder();
+
+    private final Environment environment;
+
+    /**
+     * Constructs the limits read from the given environment.
+     *
+     * @param environment the environment containing the odata.limits properties
+     */
+    @Autowired
+    public ODataQueryLimits(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Returns the largest page of the entity set, a larger $top is truncated.
+     *
+     * @param entitySetName the name of the entity set, e.g. "Orders"
+     * @return the largest number of entities read by one request
+     */
+    public int getMaxTop(String entitySetName) {
+        return getLimit(entitySetName, "max-top", Integer.class, 10000);
+    }
+
+    /**
+     * Returns the largest serialized response of the entity set.
+     *
+     * @param entitySetName the name of the entity set
+     * @return the largest number of bytes of a collection response
+     */
+    public long getMaxResponseBytes(String entitySetName) {
+        return getLimit(entitySetName, "max-response-bytes", Long.class, 52428800L);
+    }
+
+    /**
+     * Returns the time after which the database cancels a query of the entity set.
+     *
+     * @param entitySetName the name of the entity set
+     * @return the statement timeout
+     */
+    public Duration getStatementTimeout(String entitySetName) {
+        return getLimit(entitySetName, "statement-timeout", Duration.class, Duration.ofSeconds(30));
+    }
+
+    /**
+     * Checks the $expand option of a request against the depth and breadth limits of the entity set.
+     *
+     * @param entitySetName the name of the requested entity set
+     * @param entityType the type of the requested entities
+     * @param expandOption the $expand option, may be null
+     * @throws ODataApplicationException if the expansion is too deep or too broad
+     */
+    public void checkExpand(String entitySetName, EdmEntityType entityType, ExpandOption expandOption) throws ODataApplicationException {
+        int maxDepth = getLimit(entitySetName, "max-expand-depth", Integer.class, 3);
+        int maxBreadth = getLimit(entitySetName, "max-expand-breadth", Integer.class, 10);
+        checkExpand(entityType, expandOption, 1, maxDepth, maxBreadth);
+    }
+
+    /**
+     * Counts a request whose $top was truncated to the limit.
+     */
+    public void topTruncated() {
+        topTruncations.increment();
+    }
+
+    /**
+     * Counts a response rejected for its size and creates the error returned instead.
+     *
+     * @param entitySetName the name of the requested entity set
+     * @return the error
+     */
+    public ODataApplicationException responseTooLarge(String entitySetName) {
+        responseSizeRejections.increment();
+        return new ODataApplicationException("The response exceeds the limit of " + getMaxResponseBytes(entitySetName)
+                + " bytes of " + entitySetName + ", request fewer entities with $top or fewer properties with $select",
+                HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+    }
+
+    /**
+     * Counts a streamed response cut off for its size, its status was already sent.
+     */
+    public void responseCutOff() {
+        responseSizeRejections.increment();
+    }
+
+    /**
+     * Counts a request whose query was cancelled by the statement timeout and creates the error returned instead.
+     *
+     * @param entitySetName the name of the requested entity set
+     * @param cause the exception of the cancelled query
+     * @return the error
+     */
+    public ODataApplicationException statementTimedOut(String entitySetName, Exception cause) {
+        statementTimeouts.increment();
+        return new ODataApplicationException("The query of " + entitySetName + " exceeded the statement timeout of "
+                + getStatementTimeout(entitySetName).toMillis() + " ms",
+                HttpStatusCode.SERVICE_UNAVAILABLE.getStatusCode(), Locale.ENGLISH, cause);
+    }
+
+    @ManagedAttribute(description = "Requests whose $top was truncated")
+    public long getTopTruncations() {
+        return topTruncations.sum();
+    }
+
+    @ManagedAttribute(description = "Requests rejected for the depth or breadth of $expand")
+    public long getExpandRejections() {
+        return expandRejections.sum();
+    }
+
+    @ManagedAttribute(description = "Responses rejected or cut off for their size")
+    public long getResponseSizeRejections() {
+        return responseSizeRejections.sum();
+    }
+
+    @ManagedAttribute(description = "Requests whose query exceeded the statement timeout")
+    public long getStatementTimeouts() {
+        return statementTimeouts.sum();
+    }
+
+    private void checkExpand(EdmEntityType entityType, ExpandOption expandOption, int depth, int maxDepth, int maxBreadth)
+            throws ODataApplicationException {
+        if (expandOption == null || expandOption.getExpandItems().isEmpty()) {
+            return;
+        }
+        if (depth > maxDepth) {
+            throw rejectExpand("$expand must not be nested deeper than " + maxDepth + " levels");
+        }
+
+        int breadth = 0;
+        for (ExpandItem item : expandOption.getExpandItems()) {
+            if (item.isStar()) {
+                breadth += entityType.getNavigationPropertyNames().size();
+                continue;
+            }
+            breadth++;
+            List<UriResource> resourceParts = item.getResourcePath() != null ? item.getResourcePath().getUriResourceParts() : List.of();
+            if (!resourceParts.isEmpty() && resourceParts.get(resourceParts.size() - 1) instanceof UriResourceNavigation navigation) {
+                EdmNavigationProperty property = navigation.getProperty();
+                checkExpand(property.getType(), item.getExpandOption(), depth + 1, maxDepth, maxBreadth);
+            }
+        }
+        if (breadth > maxBreadth) {
+            throw rejectExpand("$expand must not expand more than " + maxBreadth + " navigation properties per level");
+        }
+    }
+
+    private ODataApplicationException rejectExpand(String message) {
+        expandRejections.increment();
+        return new ODataApplicationException(message, HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+    }
+
+    private <V> V getLimit(String entitySetName, String limit, Class<V> type, V defaultValue) {
+        V value = environment.getProperty(PREFIX + entitySetName + "." + limit, type);
+        return value != null ? value : environment.getProperty(PREFIX + limit, type, defaultValue);
+    }
+}
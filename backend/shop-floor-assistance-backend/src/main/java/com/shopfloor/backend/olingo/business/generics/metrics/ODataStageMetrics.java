@@ -0,0 +1,176 @@
+package com.shopfloor.backend.olingo.business.generics.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers of the stages of OData requests per entity set, and the numbers of rows fetched and bytes serialized.
+ * A stage is identified by the entity set, the operation (e.g. "read-collection") and the stage (e.g. "fetch"),
+ * its durations are published as a histogram from 1 ms to 10 s, so the stage dominating slow requests can be told apart.
+ * The meters "odata.stage", "odata.rows.fetched" and "odata.bytes.serialized" are registered in the MeterRegistry
+ * and scraped in the Prometheus format from GET /actuator/prometheus.
+ *
+ * Stages are recorded by chaining the start times:
+ * long start = System.nanoTime();
+ * ... fetch ...
+ * start = metrics.record("Orders", ODataStageMetrics.READ_COLLECTION, "fetch", start);
+ * ... convert ...
+ * start = metrics.record("Orders", ODataStageMetrics.READ_COLLECTION, "convert", start);
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+public class ODataStageMetrics {
+
+    /**
+     * Operation reading an entity collection.
+     */
+    public static final String READ_COLLECTION = "read-collection";
+
+    /**
+     * Operation reading a single entity.
+     */
+    public static final String READ_ENTITY = "read-entity";
+
+    /**
+     * Operation creating an entity.
+     */
+    public static final String CREATE_ENTITY = "create-entity";
+
+    /**
+     * Operation updating an entity.
+     */
+    public static final String UPDATE_ENTITY = "update-entity";
+
+    /**
+     * Operation deleting an entity.
+     */
+    public static final String DELETE_ENTITY = "delete-entity";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<StageKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rowsFetched = new ConcurrentHashMap<>();
+    private final Map<String, Counter> bytesSerialized = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs the metrics registered in the given registry.
+     *
+     * @param meterRegistry the registry the meters are registered in
+     */
+    @Autowired
+    public ODataStageMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Records the duration of a stage from its start until now.
+     *
+     * @param entitySetName the name of the entity set, e.g. "Orders"
+     * @param operation the operation, e.g. READ_COLLECTION
+     * @param stage the stage, e.g. "fetch"
+     * @param startNanos the start of the stage from System.nanoTime()
+     * @return the end of the stage, the start of the following one
+     */
+    public long record(String entitySetName, String operation, String stage, long startNanos) {
+        long now = System.nanoTime();
+        recordNanos(entitySetName, operation, stage, now - startNanos);
+        return now;
+    }
+
+    /**
+     * Records the duration of a stage.
+     *
+     * @param entitySetName the name of the entity set
+     * @param operation the operation
+     * @param stage the stage
+     * @param nanos the duration in nanoseconds
+     */
+    public void recordNanos(String entitySetName, String operation, String stage, long nanos) {
+        timers.computeIfAbsent(new StageKey(entitySetName, operation, stage), this::registerTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts the rows fetched from the database for an entity set.
+     *
+     * @param entitySetName the name of the entity set
+     * @param rows the number of rows
+     */
+    public void countRows(String entitySetName, long rows) {
+        rowsFetched.computeIfAbsent(entitySetName, key -> registerCounter("odata.rows.fetched", key,
+                "Rows fetched from the database by OData requests")).increment(rows);
+    }
+
+    /**
+     * Counts the bytes of a serialized response of an entity set.
+     *
+     * @param entitySetName the name of the entity set
+     * @param bytes the number of bytes
+     */
+    public void countBytes(String entitySetName, long bytes) {
+        bytesSerialized.computeIfAbsent(entitySetName, key -> registerCounter("odata.bytes.serialized", key,
+                "Bytes of serialized OData responses")).increment(bytes);
+    }
+
+    /**
+     * Returns the number of recorded durations of a stage.
+     *
+     * @param entitySetName the name of the entity set
+     * @param operation the operation
+     * @param stage the stage
+     * @return the number of recorded durations, 0 if none was recorded
+     */
+    public long getCount(String entitySetName, String operation, String stage) {
+        Timer timer = timers.get(new StageKey(entitySetName, operation, stage));
+        return timer != null ? timer.count() : 0;
+    }
+
+    /**
+     * Returns the number of rows fetched for an entity set.
+     *
+     * @param entitySetName the name of the entity set
+     * @return the number of rows
+     */
+    public long getRowsFetched(String entitySetName) {
+        Counter rows = rowsFetched.get(entitySetName);
+        return rows != null ? (long) rows.count() : 0;
+    }
+
+    /**
+     * Returns the number of bytes serialized for an entity set.
+     *
+     * @param entitySetName the name of the entity set
+     * @return the number of bytes
+     */
+    public long getBytesSerialized(String entitySetName) {
+        Counter bytes = bytesSerialized.get(entitySetName);
+        return bytes != null ? (long) bytes.count() : 0;
+    }
+
+    private Timer registerTimer(StageKey key) {
+        return Timer.builder("odata.stage")
+                .description("Duration of the stages of OData requests")
+                .tags("entity_set", key.entitySetName(), "operation", key.operation(), "stage", key.stage())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry);
+    }
+
+    private Counter registerCounter(String name, String entitySetName, String description) {
+        return Counter.builder(name).description(description).tag("entity_set", entitySetName).register(meterRegistry);
+    }
+
+    /**
+     * Identifies the timer of a stage.
+     */
+    private record StageKey(String entitySetName, String operation, String stage) {
+    }
+}
@@ -9,6 +9,8 @@ import org.springframework.data.domain.Sort;
  * A builder class for creating pagination configurations for OData queries.
  * Implements the Pageable interface to provide pagination details.
  * Represent $skip and $top options in OData.
+ * Without $top the server page size applies, the following pages are requested
+ * with the $skiptoken of the next link instead of $skip (see ODataSkipToken).
  * @author David Todorov (https://github.com/david-todorov)
  */
 public class ODataPaginationBuilder implements Pageable {
@@ -26,6 +28,26 @@ public class ODataPaginationBuilder implements Pageable {
         this.offset = DEFAULT_OFFSET;
     }
 
+    /**
+     * Creates a pagination configuration with the given default page size,
+     * used when the request does not contain $top.
+     *
+     * @param defaultLimit the server page size
+     * @throws IllegalArgumentException if the default limit is less than or equal to 0
+     */
+    public ODataPaginationBuilder(int defaultLimit) {
+        if (defaultLimit <= 0) {
+            throw new IllegalArgumentException("Default limit must be greater than 0.");
+        }
+        this.limit = defaultLimit;
+        this.offset = DEFAULT_OFFSET;
+    }
+
+    private ODataPaginationBuilder(int limit, int offset) {
+        this.limit = limit;
+        this.offset = offset;
+    }
+
     /**
      * Adds the $top option to the pagination configuration.
      *
@@ -60,6 +82,17 @@ public class ODataPaginationBuilder implements Pageable {
         return this; // Return the builder itself for method chaining
     }
 
+    /**
+     * Limits the number of records to return, a larger $top or page size is truncated.
+     *
+     * @param maxLimit the largest number of records to return
+     * @return the ODataPaginationBuilder instance for method chaining
+     */
+    public ODataPaginationBuilder limitTo(int maxLimit) {
+        this.limit = Math.min(this.limit, maxLimit);
+        return this;
+    }
+
     /**
      * Builds the Pageable object with the current pagination configuration.
      *
@@ -69,6 +102,16 @@ public class ODataPaginationBuilder implements Pageable {
         return this; // Return the current instance as Pageable
     }
 
+    /**
+     * Returns the same pagination reading one more record,
+     * the additional record tells whether a next page exists without counting all records.
+     *
+     * @return the Pageable object reading one more record
+     */
+    public Pageable withLookahead() {
+        return new ODataPaginationBuilder(limit + 1, offset);
+    }
+
     @Override
     public int getPageNumber() {
         return 0; // Not using page numbers
@@ -91,26 +134,26 @@ public class ODataPaginationBuilder implements Pageable {
 
     @Override
     public Pageable next() {
-        throw new UnsupportedOperationException("Pagination beyond the first page is not supported.");
+        return new ODataPaginationBuilder(limit, offset + limit); // The records directly after this page
     }
 
     @Override
     public Pageable previousOrFirst() {
-        return this; // No support for previous, so return the current instance
+        return new ODataPaginationBuilder(limit, Math.max(offset - limit, 0)); // The records directly before this page
     }
 
     @Override
     public Pageable first() {
-        return this; // Return the current instance (no page concept)
+        return new ODataPaginationBuilder(limit, 0);
     }
 
     @Override
     public Pageable withPage(int pageNumber) {
-        throw new UnsupportedOperationException("Direct page number navigation is not supported.");
+        throw new UnsupportedOperationException("Direct page number navigation is not supported, use $skiptoken.");
     }
 
     @Override
     public boolean hasPrevious() {
-        return false; // No previous pages, so return false
+        return offset > 0;
     }
 }
@@ -0,0 +1,153 @@
+package com.shopfloor.backend.olingo.business.generics.paginations;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.shopfloor.backend.olingo.business.generics.specifications.ODataSortKey;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.hibernate.Hibernate;
+import org.springframework.beans.PropertyAccessorFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The opaque $skiptoken of server-driven paging.
+ * It holds the sort key values of the last entity of a page, from which KeysetSpecification continues
+ * with the next page, and the sort keys it was created for, so a token cannot be reused with a different $orderby.
+ * Encoded as base64url JSON, e.g. {"s":"orderNumber desc,id asc","v":["O0042",42]}.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public final class ODataSkipToken {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String SORT_FIELD = "s";
+    private static final String VALUES_FIELD = "v";
+
+    /**
+     * The sort keys the token was created for, e.g. "orderNumber desc,id asc".
+     */
+    private final String sortFingerprint;
+
+    /**
+     * The sort key values of the last entity, in the order of the sort keys.
+     */
+    private final List<Object> values;
+
+    private ODataSkipToken(String sortFingerprint, List<Object> values) {
+        this.sortFingerprint = sortFingerprint;
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Creates the skip token continuing after the given entity.
+     *
+     * @param dbo the last entity of the page
+     * @param sortKeys the sort keys of the ordering
+     * @return the skip token
+     */
+    public static ODataSkipToken of(Object dbo, List<ODataSortKey> sortKeys) {
+        List<Object> values = new ArrayList<>();
+        for (ODataSortKey sortKey : sortKeys) {
+            Object value = readValue(dbo, sortKey.getAttributes());
+            values.add(value instanceof Date date ? date.getTime() : value);
+        }
+        return new ODataSkipToken(fingerprint(sortKeys), values);
+    }
+
+    /**
+     * Reads the value of a sort key from the entity, following the navigation properties on the way.
+     * Lazy related entities are initialized, a missing related entity yields null like the left join of the query.
+     *
+     * @param dbo the entity
+     * @param attributes the JPA attributes of the sort key
+     * @return the value, may be null
+     */
+    private static Object readValue(Object dbo, List<String> attributes) {
+        Object value = dbo;
+        for (String attribute : attributes) {
+            if (value == null) {
+                return null;
+            }
+            value = PropertyAccessorFactory.forDirectFieldAccess(Hibernate.unproxy(value)).getPropertyValue(attribute);
+        }
+        return value;
+    }
+
+    /**
+     * Parses a skip token received with a request.
+     *
+     * @param token the encoded skip token
+     * @param sortKeys the sort keys of the request
+     * @return the skip token
+     * @throws ODataApplicationException if the token is malformed or was created for a different ordering
+     */
+    public static ODataSkipToken parse(String token, List<ODataSortKey> sortKeys) throws ODataApplicationException {
+        JsonNode json;
+        try {
+            json = MAPPER.readTree(Base64.getUrlDecoder().decode(token));
+        } catch (IllegalArgumentException | IOException e) {
+            throw invalid("Invalid $skiptoken");
+        }
+
+        if (json == null || !json.path(VALUES_FIELD).isArray() || !fingerprint(sortKeys).equals(json.path(SORT_FIELD).asText())) {
+            throw invalid("The $skiptoken does not match the requested $orderby");
+        }
+
+        List<Object> values = new ArrayList<>();
+        for (JsonNode value : json.get(VALUES_FIELD)) {
+            values.add(MAPPER.convertValue(value, Object.class));
+        }
+        if (values.size() != sortKeys.size()) {
+            throw invalid("Invalid $skiptoken");
+        }
+        return new ODataSkipToken(fingerprint(sortKeys), values);
+    }
+
+    /**
+     * Encodes the skip token for a next link.
+     *
+     * @return the encoded, URL safe skip token
+     */
+    public String encode() {
+        ObjectNode json = MAPPER.createObjectNode();
+        json.put(SORT_FIELD, sortFingerprint);
+        ArrayNode valuesNode = json.putArray(VALUES_FIELD);
+        for (Object value : values) {
+            valuesNode.addPOJO(value);
+        }
+
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(json));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode $skiptoken", e);
+        }
+    }
+
+    public List<Object> getValues() {
+        return values;
+    }
+
+    /**
+     * Returns the text identifying the given sort keys.
+     *
+     * @param sortKeys the sort keys
+     * @return the sort keys joined by commas
+     */
+    private static String fingerprint(List<ODataSortKey> sortKeys) {
+        return sortKeys.stream().map(ODataSortKey::toString).collect(Collectors.joining(","));
+    }
+
+    private static ODataApplicationException invalid(String message) {
+        return new ODataApplicationException(message, HttpStatusCode.BAD_REQUEST.getStatusCode(), null);
+    }
+}
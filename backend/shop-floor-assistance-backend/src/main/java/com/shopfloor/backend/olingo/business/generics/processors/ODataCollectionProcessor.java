@@ -1,9 +1,26 @@
 package com.shopfloor.backend.olingo.business.generics.processors;
 
+import com.shopfloor.backend.olingo.business.generics.ODataSelectHelper;
 import com.shopfloor.backend.olingo.business.generics.ODataService;
+import com.shopfloor.backend.olingo.business.generics.aggregations.ODataAggregation;
+import com.shopfloor.backend.olingo.business.generics.aggregations.ODataAggregationBuilder;
+import com.shopfloor.backend.olingo.business.generics.aggregations.ODataAggregationSerializer;
+import com.shopfloor.backend.olingo.business.generics.async.ODataAsyncJobs;
+import com.shopfloor.backend.olingo.business.generics.caching.ODataResultCache;
+import com.shopfloor.backend.olingo.business.generics.limits.ODataQueryLimits;
+import com.shopfloor.backend.olingo.business.generics.metrics.ODataStageMetrics;
 import com.shopfloor.backend.olingo.business.generics.paginations.ODataPaginationBuilder;
+import com.shopfloor.backend.olingo.business.generics.paginations.ODataSkipToken;
+import com.shopfloor.backend.olingo.business.generics.specifications.ODataFilterCache;
+import com.shopfloor.backend.olingo.business.generics.specifications.ODataSortKey;
 import com.shopfloor.backend.olingo.business.generics.specifications.ODataSpecificationBuilder;
+import com.shopfloor.backend.olingo.business.generics.specifications.OrderBySpecification;
+import com.shopfloor.backend.olingo.business.generics.specifications.SearchSpecification;
+import com.shopfloor.backend.olingo.business.generics.streaming.ODataEntityIterator;
+import com.shopfloor.backend.olingo.business.generics.streaming.ODataTransactionalContent;
+import com.shopfloor.backend.olingo.database.ODataExecutorConfiguration;
 import com.shopfloor.backend.olingo.database.ODataRepository;
+import jakarta.persistence.Tuple;
 import org.apache.olingo.commons.api.data.ContextURL;
 import org.apache.olingo.commons.api.data.EntityCollection;
 import org.apache.olingo.commons.api.edm.EdmEntitySet;
@@ -12,17 +29,45 @@ import org.apache.olingo.commons.api.format.ContentType;
 import org.apache.olingo.commons.api.http.HttpHeader;
 import org.apache.olingo.commons.api.http.HttpStatusCode;
 import org.apache.olingo.server.api.*;
+import org.apache.olingo.server.api.prefer.Preferences;
+import org.apache.olingo.server.api.prefer.PreferencesApplied;
 import org.apache.olingo.server.api.processor.EntityCollectionProcessor;
 import org.apache.olingo.server.api.serializer.EntityCollectionSerializerOptions;
 import org.apache.olingo.server.api.serializer.ODataSerializer;
 import org.apache.olingo.server.api.serializer.SerializerResult;
+import org.apache.olingo.server.api.serializer.SerializerStreamResult;
 import org.apache.olingo.server.api.uri.UriInfo;
 import org.apache.olingo.server.api.uri.queryoption.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
  * ODataCollectionProcessor is a generic class that implements the EntityCollectionProcessor interface.
@@ -33,11 +78,17 @@ import java.util.List;
  */
 public class ODataCollectionProcessor<T> implements EntityCollectionProcessor {
 
+    private static final String SKIP_PARAMETER = "$skip";
+    private static final String SKIP_TOKEN_PARAMETER = "$skiptoken";
+    private static final String TOP_PARAMETER = "$top";
+    private static final String COUNT_PREFERENCE = "count";
+    private static final String ESTIMATED_COUNT = "estimated";
 
     /**
-     * The maximum depth for expanding entities in the OData response.
+     * Time a count running on the count executor may take beyond its statement timeout before the request gives up on it.
+     * Without a statement timeout the request waits for the count as long as it runs.
      */
-    private final int MAX_DEPTH = 2;
+    private static final long COUNT_AWAIT_GRACE_MILLIS = 1000;
 
     /**
      * Repository for accessing and managing entities of type T.
@@ -64,6 +115,71 @@ public class ODataCollectionProcessor<T> implements EntityCollectionProcessor {
      */
     private ServiceMetadata serviceMetadata;
 
+    /**
+     * Results with a page size above this threshold ($top) are streamed instead of loaded at once.
+     */
+    @Value("${odata.streaming.threshold:1000}")
+    private int streamingThreshold;
+
+    /**
+     * The number of rows the JDBC driver reads per round trip while streaming.
+     */
+    @Value("${odata.streaming.fetch-size:500}")
+    private int streamingFetchSize;
+
+    /**
+     * The number of entities per page when the request does not contain $top,
+     * the following pages are linked with a $skiptoken.
+     */
+    @Value("${odata.paging.page-size:100}")
+    private int pageSize;
+
+    /**
+     * Estimates below this number are not used, small collections are counted exactly, which is cheap.
+     */
+    @Value("${odata.count.estimate-threshold:10000}")
+    private long countEstimateThreshold;
+
+    /**
+     * Template for the read-only transaction in which streamed results are written.
+     */
+    private TransactionTemplate streamingTransaction;
+
+    /**
+     * Template for the read-only transaction in which the count queries run.
+     */
+    private TransactionTemplate countTransaction;
+
+    /**
+     * Executor running the count queries in parallel with the page queries.
+     */
+    private Executor countExecutor;
+
+    /**
+     * Cache of the serialized responses, evicted when their entity sets are written.
+     */
+    private ODataResultCache resultCache;
+
+    /**
+     * Limits of the page size, the expansion, the response size and the query time.
+     */
+    private ODataQueryLimits queryLimits;
+
+    /**
+     * Runs the requests sent with "Prefer: respond-async" in the background.
+     */
+    private ODataAsyncJobs asyncJobs;
+
+    /**
+     * Timers of the stages of the requests.
+     */
+    private ODataStageMetrics stageMetrics;
+
+    /**
+     * Cache of the compiled $filter templates.
+     */
+    private ODataFilterCache filterCache;
+
     /**
      * Constructs an ODataCollectionProcessor with the specified repository and service.
      *
@@ -77,9 +193,16 @@ public class ODataCollectionProcessor<T> implements EntityCollectionProcessor {
 
     /**
      * Reads an OData entity collection based on the provided OData request and query options.
-     * This method handles various OData query options such as $filter, $orderby, $search, $top, $skip, $select, $expand, and $count.
+     * This method handles various OData query options such as $filter, $orderby, $search, $top, $skip, $skiptoken, $select, $expand, $count and $apply.
      * It retrieves the filtered and paginated results from the repository, converts them to an OData EntityCollection,
-     * and serializes the response.
+     * and serializes the response. Results larger than the streaming threshold are streamed instead.
+     * Without $top the results are paged by the server, a full page links the next one with a $skiptoken.
+     * With "Prefer: count=estimated" the $count of unfiltered collections is read from the database statistics.
+     * Responses serialized at once are cached until one of the entity sets they were read from is written.
+     * The request is bounded by the ODataQueryLimits of the entity set, a $top above the limit is paged like a request without $top.
+     * With "Prefer: respond-async" the request is answered with 202 Accepted and the URL of its status monitor,
+     * it is read again in the background by ODataAsyncJobs.
+     * The duration of every stage is recorded in ODataStageMetrics, together with the fetched rows and serialized bytes.
      *
      * @param request the OData request
      * @param response the OData response
@@ -92,6 +215,7 @@ public class ODataCollectionProcessor<T> implements EntityCollectionProcessor {
     @Transactional
     public void readEntityCollection(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType contentType)
             throws ODataApplicationException, ODataLibraryException {
+        long stageStart = System.nanoTime();
 
         // 1. Extract OData query options
         FilterOption filterOption = uriInfo.getFilterOption();
@@ -99,43 +223,119 @@ public class ODataCollectionProcessor<T> implements EntityCollectionProcessor {
         SearchOption searchOption = uriInfo.getSearchOption();
         TopOption topOption = uriInfo.getTopOption();
         SkipOption skipOption = uriInfo.getSkipOption();
+        SkipTokenOption skipTokenOption = uriInfo.getSkipTokenOption();
         SelectOption selectOption = uriInfo.getSelectOption();
         ExpandOption expandOption = uriInfo.getExpandOption();
         CountOption countOption = uriInfo.getCountOption();
 
-        // 2. Build filter specifications, reflects $filter and $orderby and $search
-        Specification<T> specification = new ODataSpecificationBuilder<T>()
+        // Answer the request from the cache if the same query was read since its entity sets were last written
+        String entitySetName = uriInfo.getUriResourceParts().get(0).getSegmentValue();
+        EdmEntitySet edmEntitySet = serviceMetadata.getEdm().getEntityContainer().getEntitySet(entitySetName);
+        queryLimits.checkExpand(entitySetName, edmEntitySet.getEntityType(), expandOption);
+        Duration statementTimeout = queryLimits.getStatementTimeout(entitySetName);
+        repository.setStatementTimeout(statementTimeout);
+
+        // Heavy reads can run in the background, the client polls the status monitor instead of holding the connection
+        if (prefersRespondAsync(request)) {
+            String monitor = asyncJobs.submit(request, entitySetName);
+            if (monitor != null) {
+                response.setStatusCode(HttpStatusCode.ACCEPTED.getStatusCode());
+                response.setHeader(HttpHeader.LOCATION, monitor);
+                response.setHeader(HttpHeader.PREFERENCE_APPLIED, PreferencesApplied.with().respondAsync().build().toValueString());
+                return;
+            }
+        }
+
+        Set<String> dependencies = ODataResultCache.getDependencies(edmEntitySet, uriInfo);
+        String cacheKey = resultCache.isCacheable(dependencies) ? ODataResultCache.createKey(request, entitySetName, contentType) : null;
+        if (cacheKey != null && resultCache.respond(cacheKey, response)) {
+            stageMetrics.record(entitySetName, ODataStageMetrics.READ_COLLECTION, "cache", stageStart);
+            return;
+        }
+        long generation = resultCache.getGeneration(dependencies);
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.READ_COLLECTION, "options", stageStart);
+
+        // Aggregations return dynamic rows instead of entities and are read separately, reflects $apply
+        if (uriInfo.getApplyOption() != null) {
+            readAggregation(request, response, uriInfo, contentType);
+            stageMetrics.record(entitySetName, ODataStageMetrics.READ_COLLECTION, "aggregation", stageStart);
+            storeInCache(cacheKey, dependencies, generation, response);
+            return;
+        }
+
+        // 2. Resolve the ordering and the position of the previous page, reflects $orderby and $skiptoken,
+        // $search without $orderby is ordered by relevance, the relevance is no sort key, so these pages are linked with $skip
+        List<ODataSortKey> sortKeys = OrderBySpecification.getSortKeys(orderByOption);
+        boolean ranked = orderByOption == null && !SearchSpecification.getRankingTerms(searchOption).isEmpty();
+        if (ranked && skipTokenOption != null) {
+            throw new ODataApplicationException("A $skiptoken can not continue a $search ordered by relevance",
+                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+        }
+        ODataSkipToken skipToken = skipTokenOption != null ? ODataSkipToken.parse(skipTokenOption.getValue(), sortKeys) : null;
+
+        // 3. Build filter specifications, reflects $filter and $orderby and $search and $skiptoken,
+        // the navigation properties requested with $expand are fetched along
+        Specification<T> specification = new ODataSpecificationBuilder<T>(filterCache)
                 .addFilter(filterOption)
                 .addOrderBy(orderByOption)
                 .addSearchOption(searchOption)
+                .addSearchRanking(ranked ? searchOption : null)
+                .addSkipToken(skipToken, sortKeys)
+                .addExpand(expandOption)
                 .build();
 
-        // 3. Get entity count, reflects $count
-        long count = (countOption != null && countOption.getValue()) ? repository.count(specification) : -1;
+        // 4. Start the entity count, reflects $count, the count covers all pages so the skip token is not applied,
+        // it has no ordering and runs on its own connection while the page is read,
+        // unfiltered collections are estimated instead if the client prefers it
+        ParallelCount count = null;
+        boolean countEstimated = false;
+        if (countOption != null && countOption.getValue()) {
+            if (filterOption == null && searchOption == null && prefersEstimatedCount(request)) {
+                Optional<Long> estimate = repository.estimateCount();
+                if (estimate.isPresent() && estimate.get() >= countEstimateThreshold) {
+                    count = new ParallelCount(estimate.get());
+                    countEstimated = true;
+                }
+            }
+            if (count == null) {
+                count = startCount(new ODataSpecificationBuilder<T>(filterCache)
+                        .addFilter(filterOption)
+                        .addSearchOption(searchOption)
+                        .build(), statementTimeout);
+            }
+        }
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.READ_COLLECTION, "specification", stageStart);
 
-        // 4. Build pagination, reflects  $top and $skip
-        Pageable paging = new ODataPaginationBuilder()
+        // 5. Build pagination, reflects $top and $skip, the skip token replaces $skip on the following pages,
+        // the page size and $top are truncated to the limit of the entity set
+        Pageable paging = new ODataPaginationBuilder(pageSize)
                 .addTopOption(topOption)
-                .addSkipOption(skipOption)
+                .addSkipOption(skipToken == null ? skipOption : null)
+                .limitTo(queryLimits.getMaxTop(entitySetName))
                 .build();
+        boolean topTruncated = topOption != null && topOption.getValue() > paging.getPageSize();
+        if (topTruncated) {
+            queryLimits.topTruncated();
+        }
 
-        // 5. Retrieve paginated and filtered results from the repository
-        List<T> dbEntities = repository.findAll(specification, paging).getContent();
-
-        // 6. Convert results to OData EntityCollection
-        EntityCollection entityCollection = service.createEntityCollectionFrom(dbEntities, MAX_DEPTH);
-        entityCollection.setCount((int) count);
+        // Without $top the server pages the results and links the next page,
+        // the rest of a truncated $top is linked the same way with the remaining $top
+        boolean serverPaging = topOption == null || topTruncated;
+        String remainingTop = topTruncated ? TOP_PARAMETER + "=" + (topOption.getValue() - paging.getPageSize()) : null;
 
-        // 7. Retrieve entity set metadata
-        String entitySetName = uriInfo.getUriResourceParts().get(0).getSegmentValue();
-        EdmEntitySet edmEntitySet = serviceMetadata.getEdm().getEntityContainer().getEntitySet(entitySetName);
+        // 6. Retrieve entity type metadata
         EdmEntityType edmEntityType = edmEntitySet.getEntityType();
 
-        // 8. Build Context URL
+        // The next page continues after the last entity, pages ordered by relevance continue at the next offset
+        Function<T, URI> nextLinkFactory = ranked
+                ? last -> createNextLink(request, edmEntitySet, remainingTop, SKIP_PARAMETER + "=" + (paging.getOffset() + paging.getPageSize()))
+                : last -> createNextLink(request, edmEntitySet, remainingTop, SKIP_TOKEN_PARAMETER + "=" + ODataSkipToken.of(last, sortKeys).encode());
+
+        // 7. Build Context URL
         String selectList = odata.createUriHelper().buildContextURLSelectList(edmEntityType, expandOption, selectOption);
         ContextURL contextUrl = ContextURL.with().entitySet(edmEntitySet).selectList(selectList).build();
 
-        // 9. Configure serialization options, reflects $select and $expand
+        // 8. Configure serialization options, reflects $select and $expand
         String id = request.getRawBaseUri() + "/" + edmEntitySet.getName();
         EntityCollectionSerializerOptions opts = EntityCollectionSerializerOptions.with()
                 .contextURL(contextUrl)
@@ -145,14 +345,350 @@ public class ODataCollectionProcessor<T> implements EntityCollectionProcessor {
                 .id(id)
                 .build();
 
-        // 10. Serialize response
+        // 9. Retrieve, convert and serialize the results, reflects $select and $expand
+        // only the selected columns are read, unless the full entities are needed,
+        // the sort keys are read as well, the next link is created from them,
+        // sort keys of related entities are read from the full entities
+        boolean navigationSorted = sortKeys.stream().anyMatch(ODataSortKey::isNavigation);
+        List<String> selectedAttributes = navigationSorted ? null : ODataSelectHelper.getSelectedAttributes(selectOption, expandOption);
+        if (selectedAttributes != null) {
+            for (ODataSortKey sortKey : sortKeys) {
+                if (!selectedAttributes.contains(sortKey.getAttribute())) {
+                    selectedAttributes.add(sortKey.getAttribute());
+                }
+            }
+        }
         ODataSerializer serializer = odata.createSerializer(contentType);
-        SerializerResult serializerResult = serializer.entityCollection(serviceMetadata, edmEntityType, entityCollection, opts);
+        long maxResponseBytes = queryLimits.getMaxResponseBytes(entitySetName);
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.READ_COLLECTION, "context-url", stageStart);
 
-        // 11. Set response content and headers
-        response.setContent(serializerResult.getContent());
+        if (paging.getPageSize() > streamingThreshold) {
+            // Large results are streamed, the query runs and the entities are converted one at a time
+            // while the response is written, so the memory usage does not depend on the size of the result
+            // with server paging one more row is read, it tells whether a next page exists,
+            // the query runs in the transaction of the write, so the statement timeout is applied there
+            Pageable streamPaging = serverPaging ? ((ODataPaginationBuilder) paging).withLookahead() : paging;
+            ODataEntityIterator<T> iterator = new ODataEntityIterator<>(
+                    () -> {
+                        repository.setStatementTimeout(statementTimeout);
+                        return selectedAttributes != null
+                                ? repository.streamAllSelected(specification, streamPaging, selectedAttributes, streamingFetchSize)
+                                : repository.streamAll(specification, streamPaging, streamingFetchSize);
+                    },
+                    repository, service, expandOption);
+            if (count != null) {
+                iterator.setCount((int) count.await(entitySetName));
+                stageMetrics.record(entitySetName, ODataStageMetrics.READ_COLLECTION, "count", stageStart);
+            }
+            if (serverPaging) {
+                iterator.setNextLinkFactory(nextLinkFactory, paging.getPageSize());
+            }
+
+            SerializerStreamResult streamResult = serializer.entityCollectionStreamed(serviceMetadata, edmEntityType, iterator, opts);
+            // the status is sent before the entities are read, so a streamed response exceeding the limit is cut off
+            ODataTransactionalContent content = new ODataTransactionalContent(streamResult.getODataContent(), iterator,
+                    streamingTransaction, maxResponseBytes, queryLimits::responseCutOff);
+            // fetching, converting and serializing overlap while streaming, they are recorded as one stage
+            content.setWriteListener((nanos, bytes) -> {
+                stageMetrics.recordNanos(entitySetName, ODataStageMetrics.READ_COLLECTION, "stream", nanos);
+                stageMetrics.countRows(entitySetName, iterator.getReadCount());
+                stageMetrics.countBytes(entitySetName, bytes);
+            });
+            response.setODataContent(content);
+            // streamed results are written after this method returned, only the results serialized at once are cached
+            cacheKey = null;
+        } else {
+            // A slice issues exactly one query, unlike a Page it never counts the matching entities
+            Slice<T> slice;
+            try {
+                slice = selectedAttributes != null
+                        ? repository.findSliceSelected(specification, paging, selectedAttributes)
+                        : repository.findSlice(specification, paging);
+            } catch (QueryTimeoutException e) {
+                throw queryLimits.statementTimedOut(entitySetName, e);
+            }
+            List<T> dbEntities = slice.getContent();
+            stageMetrics.countRows(entitySetName, dbEntities.size());
+            stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.READ_COLLECTION, "fetch", stageStart);
+
+            EntityCollection entityCollection = service.createEntityCollectionFrom(dbEntities, expandOption);
+            stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.READ_COLLECTION, "convert", stageStart);
+            if (count != null) {
+                entityCollection.setCount((int) count.await(entitySetName));
+                stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.READ_COLLECTION, "count", stageStart);
+            }
+            if (serverPaging && slice.hasNext()) {
+                T last = dbEntities.get(dbEntities.size() - 1);
+                entityCollection.setNext(nextLinkFactory.apply(last));
+            }
+
+            // a response exceeding the limit is rejected, the serialized response is read up to one byte beyond it
+            SerializerResult serializerResult = serializer.entityCollection(serviceMetadata, edmEntityType, entityCollection, opts);
+            byte[] content = readLimited(serializerResult.getContent(), maxResponseBytes, entitySetName);
+            response.setContent(new ByteArrayInputStream(content));
+            stageMetrics.countBytes(entitySetName, content.length);
+            stageMetrics.record(entitySetName, ODataStageMetrics.READ_COLLECTION, "serialize", stageStart);
+        }
+
+        // 10. Set response status and headers
         response.setStatusCode(HttpStatusCode.OK.getStatusCode());
         response.setHeader(HttpHeader.CONTENT_TYPE, contentType.toContentTypeString());
+        if (countEstimated) {
+            response.setHeader(HttpHeader.PREFERENCE_APPLIED,
+                    PreferencesApplied.with().preference(COUNT_PREFERENCE, ESTIMATED_COUNT).build().toValueString());
+        }
+        storeInCache(cacheKey, dependencies, generation, response);
+    }
+
+    /**
+     * Reads an aggregation of the entity collection, reflects $apply together with $filter, $search, $top and $skip.
+     * The groups and aggregates are computed by a GROUP BY query, so only the aggregated rows are read.
+     * The groups are ordered by the grouping properties, the rows are only returned as JSON.
+     *
+     * @param request the OData request
+     * @param response the OData response
+     * @param uriInfo the URI information containing the OData query options
+     * @param contentType the content type of the response
+     * @throws ODataApplicationException if the aggregation is not supported
+     */
+    private void readAggregation(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType contentType)
+            throws ODataApplicationException {
+        if (!contentType.isCompatible(ContentType.JSON)) {
+            throw new ODataApplicationException("$apply is only supported for JSON", HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), null);
+        }
+        if (uriInfo.getOrderByOption() != null || uriInfo.getExpandOption() != null) {
+            throw new ODataApplicationException("$orderby and $expand are not supported together with $apply",
+                    HttpStatusCode.NOT_IMPLEMENTED.getStatusCode(), null);
+        }
+
+        // 1. Translate $apply, its filter transformations are combined with $filter and $search
+        ODataAggregationBuilder<T> aggregationBuilder = new ODataAggregationBuilder<T>(filterCache).addApply(uriInfo.getApplyOption());
+        ODataAggregation<T> aggregation = aggregationBuilder.build();
+        Specification<T> specification = new ODataSpecificationBuilder<T>(filterCache)
+                .addFilter(uriInfo.getFilterOption())
+                .addSearchOption(uriInfo.getSearchOption())
+                .build()
+                .and(aggregationBuilder.buildFilter());
+
+        // 2. Build pagination over the groups, all groups are returned unless $top or $skip is given
+        Pageable paging = Pageable.unpaged();
+        if (uriInfo.getTopOption() != null || uriInfo.getSkipOption() != null) {
+            paging = new ODataPaginationBuilder(Integer.MAX_VALUE)
+                    .addTopOption(uriInfo.getTopOption())
+                    .addSkipOption(uriInfo.getSkipOption())
+                    .build();
+        }
+
+        // 3. Run the aggregation and serialize the rows
+        List<Tuple> rows = repository.findTuples(specification, aggregation, paging);
+        String entitySetName = uriInfo.getUriResourceParts().get(0).getSegmentValue();
+        try {
+            response.setContent(ODataAggregationSerializer.serialize(request.getRawBaseUri(), entitySetName, aggregation, rows));
+        } catch (IOException e) {
+            throw new ODataApplicationException("Could not serialize the aggregation", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), null, e);
+        }
+
+        // 4. Set response status and headers
+        response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+        response.setHeader(HttpHeader.CONTENT_TYPE, contentType.toContentTypeString());
+    }
+
+    /**
+     * Stores the response in the result cache, unless the request is not cacheable.
+     *
+     * @param cacheKey the key of the request, null if the request is not cacheable
+     * @param dependencies the entity sets the response was read from
+     * @param generation the generation of the entity sets taken before the read
+     * @param response the OData response serialized at once
+     * @throws ODataApplicationException if the serialized response can not be read
+     */
+    private void storeInCache(String cacheKey, Set<String> dependencies, long generation, ODataResponse response)
+            throws ODataApplicationException {
+        if (cacheKey == null) {
+            return;
+        }
+        try {
+            resultCache.store(cacheKey, dependencies, generation, response);
+        } catch (IOException e) {
+            throw new ODataApplicationException("Could not read the serialized response", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), null, e);
+        }
+    }
+
+    /**
+     * Reads the serialized response, unless it exceeds the limit of the entity set.
+     *
+     * @param content the serialized response
+     * @param maxBytes the largest number of bytes of the response
+     * @param entitySetName the name of the requested entity set
+     * @return the bytes of the serialized response
+     * @throws ODataApplicationException if the response exceeds the limit or can not be read
+     */
+    private byte[] readLimited(InputStream content, long maxBytes, String entitySetName) throws ODataApplicationException {
+        byte[] bytes;
+        try (content) {
+            bytes = content.readNBytes((int) Math.min(maxBytes + 1, Integer.MAX_VALUE - 8));
+        } catch (IOException e) {
+            throw new ODataApplicationException("Could not read the serialized response", HttpStatusCode.INTERNAL_SERVER_ERROR.getStatusCode(), null, e);
+        }
+        if (bytes.length > maxBytes) {
+            throw queryLimits.responseTooLarge(entitySetName);
+        }
+        return bytes;
+    }
+
+    /**
+     * Checks whether the client prefers an asynchronous response, sent as "Prefer: respond-async".
+     *
+     * @param request the OData request
+     * @return true if an asynchronous response is preferred
+     */
+    private boolean prefersRespondAsync(ODataRequest request) {
+        List<String> preferHeaders = request.getHeaders(HttpHeader.PREFER);
+        return preferHeaders != null && !preferHeaders.isEmpty() && odata.createPreferences(preferHeaders).hasRespondAsync();
+    }
+
+    /**
+     * Checks whether the client prefers an estimated count, sent as "Prefer: count=estimated".
+     *
+     * @param request the OData request
+     * @return true if an estimated count is preferred
+     */
+    private boolean prefersEstimatedCount(ODataRequest request) {
+        List<String> preferHeaders = request.getHeaders(HttpHeader.PREFER);
+        if (preferHeaders == null || preferHeaders.isEmpty()) {
+            return false;
+        }
+
+        Preferences.Preference preference = odata.createPreferences(preferHeaders).getPreference(COUNT_PREFERENCE);
+        return preference != null && ESTIMATED_COUNT.equalsIgnoreCase(preference.getValue());
+    }
+
+    /**
+     * Starts counting the entities matching the specification on the count executor.
+     * The count runs in its own read-only transaction, so it uses a different connection than the page query.
+     * If the executor is saturated, the count runs on the calling thread when it is awaited instead.
+     *
+     * @param countSpecification the specification for filtering, without ordering, fetching and skip token
+     * @param statementTimeout the statement timeout applied in the transaction of the count
+     * @return the running count
+     */
+    private ParallelCount startCount(Specification<T> countSpecification, Duration statementTimeout) {
+        ParallelCount count = new ParallelCount(countSpecification, statementTimeout);
+        try {
+            countExecutor.execute(count::runOnExecutor);
+        } catch (RejectedExecutionException e) {
+            // the count is claimed by the request thread in await
+        }
+        return count;
+    }
+
+    /**
+     * Creates the link to the next page, the request URL with the given paging parameter.
+     * All other query options are kept, $skip and $skiptoken are replaced by the paging parameter,
+     * the $top of a truncated request is replaced by the remaining $top.
+     *
+     * @param request the OData request
+     * @param edmEntitySet the requested entity set
+     * @param topParameter the remaining $top parameter, null if $top was not truncated
+     * @param pagingParameter the $skiptoken or $skip parameter continuing after the current page
+     * @return the link to the next page
+     */
+    private URI createNextLink(ODataRequest request, EdmEntitySet edmEntitySet, String topParameter, String pagingParameter) {
+        StringBuilder nextLink = new StringBuilder(request.getRawBaseUri())
+                .append('/').append(edmEntitySet.getName()).append('?');
+
+        String rawQuery = request.getRawQueryPath();
+        if (rawQuery != null && !rawQuery.isEmpty()) {
+            for (String parameter : rawQuery.split("&")) {
+                String name = URLDecoder.decode(parameter.split("=", 2)[0], StandardCharsets.UTF_8);
+                boolean replaced = name.equals(SKIP_PARAMETER) || name.equals(SKIP_TOKEN_PARAMETER)
+                        || (topParameter != null && name.equals(TOP_PARAMETER));
+                if (!parameter.isEmpty() && !replaced) {
+                    nextLink.append(parameter.replace(" ", "%20")).append('&');
+                }
+            }
+        }
+
+        if (topParameter != null) {
+            nextLink.append(topParameter).append('&');
+        }
+        nextLink.append(pagingParameter);
+        return URI.create(nextLink.toString());
+    }
+
+    /**
+     * Sets the transaction manager used for writing streamed results and for the count queries.
+     * Streamed results are written after readEntityCollection returned and counts run on another thread,
+     * so both need their own transaction.
+     *
+     * @param transactionManager the transaction manager
+     */
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.streamingTransaction = new TransactionTemplate(transactionManager);
+        this.streamingTransaction.setReadOnly(true);
+        this.countTransaction = new TransactionTemplate(transactionManager);
+        this.countTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Sets the executor running the count queries in parallel with the page queries.
+     *
+     * @param countExecutor the executor configured in ODataExecutorConfiguration
+     */
+    @Autowired
+    public void setCountExecutor(@Qualifier(ODataExecutorConfiguration.COUNT_EXECUTOR) Executor countExecutor) {
+        this.countExecutor = countExecutor;
+    }
+
+    /**
+     * Sets the cache of the serialized responses.
+     *
+     * @param resultCache the cache, invalidated by ODataResultCacheInvalidator
+     */
+    @Autowired
+    public void setResultCache(ODataResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Sets the limits of the requests.
+     *
+     * @param queryLimits the limits, configured with the odata.limits properties
+     */
+    @Autowired
+    public void setQueryLimits(ODataQueryLimits queryLimits) {
+        this.queryLimits = queryLimits;
+    }
+
+    /**
+     * Sets the processing of the requests sent with "Prefer: respond-async".
+     *
+     * @param asyncJobs the asynchronous requests, served by the status monitor
+     */
+    @Autowired
+    public void setAsyncJobs(ODataAsyncJobs asyncJobs) {
+        this.asyncJobs = asyncJobs;
+    }
+
+    /**
+     * Sets the timers of the stages of the requests.
+     *
+     * @param stageMetrics the metrics, scraped by Prometheus from /actuator/prometheus
+     */
+    @Autowired
+    public void setStageMetrics(ODataStageMetrics stageMetrics) {
+        this.stageMetrics = stageMetrics;
+    }
+
+    /**
+     * Sets the cache of the compiled $filter templates.
+     *
+     * @param filterCache the cache, sized by odata.filter-cache.size
+     */
+    @Autowired
+    public void setFilterCache(ODataFilterCache filterCache) {
+        this.filterCache = filterCache;
     }
 
     /**
@@ -167,4 +703,106 @@ public class ODataCollectionProcessor<T> implements EntityCollectionProcessor {
         this.odata = oData;
         this.serviceMetadata = serviceMetadata;
     }
+
+    /**
+     * A count running on the count executor while the page is read.
+     * The request thread holds the connection of its transaction, so waiting for a count which waits for a connection itself
+     * could starve the pool under load: every request would hold one connection and wait for a second one.
+     * Whoever has a connection first claims the count, the executor once its transaction has borrowed one,
+     * the request thread when it awaits the count. A count the executor has not claimed yet is run by the request thread
+     * on its own connection, the executor then returns without counting. A count claimed by the executor is awaited
+     * at most for its statement timeout.
+     */
+    private final class ParallelCount {
+
+        private final Specification<T> specification;
+        private final Duration statementTimeout;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        /**
+         * Creates a count to be run by the count executor or the request thread.
+         *
+         * @param specification the specification for filtering
+         * @param statementTimeout the statement timeout of the count
+         */
+        ParallelCount(Specification<T> specification, Duration statementTimeout) {
+            this.specification = specification;
+            this.statementTimeout = statementTimeout;
+        }
+
+        /**
+         * Creates a count known in advance, e.g. an estimate.
+         *
+         * @param value the count
+         */
+        ParallelCount(long value) {
+            this(null, Duration.ZERO);
+            claimed.set(true);
+            result.complete(value);
+        }
+
+        /**
+         * Runs the count on the count executor unless the request thread has claimed it.
+         */
+        void runOnExecutor() {
+            if (claimed.get()) {
+                return;
+            }
+            try {
+                Long value = countTransaction.execute(status -> {
+                    // the transaction holds a connection now, the request thread may have counted in the meantime
+                    if (!claimed.compareAndSet(false, true)) {
+                        return null;
+                    }
+                    repository.setStatementTimeout(statementTimeout);
+                    return repository.count(specification);
+                });
+                if (value != null) {
+                    result.complete(value);
+                }
+            } catch (RuntimeException e) {
+                // only read by the request thread if the executor had claimed the count
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Waits for the count, or runs it on the calling thread if the executor has not claimed it yet.
+         *
+         * @param entitySetName the name of the counted entity set
+         * @return the count
+         * @throws ODataApplicationException if the count exceeded the statement timeout
+         */
+        long await(String entitySetName) throws ODataApplicationException {
+            if (claimed.compareAndSet(false, true)) {
+                // the statement timeout of the request is set on its connection already
+                try {
+                    return repository.count(specification);
+                } catch (QueryTimeoutException e) {
+                    throw queryLimits.statementTimedOut(entitySetName, e);
+                }
+            }
+            try {
+                // a statement timeout of zero lets the count run as long as the database takes, so does the wait
+                if (statementTimeout.isZero() || statementTimeout.isNegative()) {
+                    return result.get();
+                }
+                return result.get(statementTimeout.toMillis() + COUNT_AWAIT_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw queryLimits.statementTimedOut(entitySetName, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw queryLimits.statementTimedOut(entitySetName, e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof QueryTimeoutException) {
+                    throw queryLimits.statementTimedOut(entitySetName, (QueryTimeoutException) e.getCause());
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("The count of " + entitySetName + " failed", e.getCause());
+            }
+        }
+    }
 }
@@ -1,6 +1,11 @@
 package com.shopfloor.backend.olingo.business.generics.processors;
 
+import com.shopfloor.backend.olingo.business.generics.ODataSelectHelper;
 import com.shopfloor.backend.olingo.business.generics.ODataService;
+import com.shopfloor.backend.olingo.business.generics.limits.ODataQueryLimits;
+import com.shopfloor.backend.olingo.business.generics.metrics.ODataStageMetrics;
+import com.shopfloor.backend.olingo.business.generics.specifications.FetchSpecification;
+import com.shopfloor.backend.olingo.business.generics.specifications.ODataFilterCache;
 import com.shopfloor.backend.olingo.business.generics.specifications.ODataSpecificationBuilder;
 import com.shopfloor.backend.olingo.database.ODataRepository;
 import jakarta.transaction.Transactional;
@@ -8,6 +13,10 @@ import org.apache.olingo.commons.api.data.ContextURL;
 import org.apache.olingo.commons.api.data.Entity;
 import org.apache.olingo.commons.api.edm.EdmEntitySet;
 import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.EdmProperty;
 import org.apache.olingo.commons.api.format.ContentType;
 import org.apache.olingo.commons.api.http.HttpHeader;
 import org.apache.olingo.commons.api.http.HttpStatusCode;
@@ -20,10 +29,12 @@ import org.apache.olingo.server.api.serializer.ODataSerializer;
 import org.apache.olingo.server.api.serializer.SerializerException;
 import org.apache.olingo.server.api.serializer.SerializerResult;
 import org.apache.olingo.server.api.uri.UriInfo;
+import org.apache.olingo.server.api.uri.UriParameter;
 import org.apache.olingo.server.api.uri.UriResource;
 import org.apache.olingo.server.api.uri.UriResourceEntitySet;
 import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
 import org.apache.olingo.server.api.uri.queryoption.SelectOption;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.util.List;
@@ -41,9 +52,9 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
     private final Long FAKE_UPDATER_ID = 1L;
 
     /**
-     * The maximum depth for entity expansion.
+     * The JPA attribute of the ID, the single Edm.Int64 key of an entity set is mapped to it.
      */
-    private static final int MAX_DEPTH = 2;
+    private static final String ID_ATTRIBUTE = "id";
 
     /**
      * Repository for accessing and managing entities of type T.
@@ -70,6 +81,21 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
      */
     private ServiceMetadata serviceMetadata;
 
+    /**
+     * Limits of the expansion and the query time.
+     */
+    private ODataQueryLimits queryLimits;
+
+    /**
+     * Timers of the stages of the requests.
+     */
+    private ODataStageMetrics stageMetrics;
+
+    /**
+     * Cache of the compiled templates of the key predicates.
+     */
+    private ODataFilterCache filterCache;
+
     /**
      * Constructs an ODataEntityProcessor with the specified repository and service.
      *
@@ -99,6 +125,7 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
     @Transactional
     public void readEntity(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType contentType)
             throws ODataApplicationException, ODataLibraryException {
+        long stageStart = System.nanoTime();
         Entity toReturnEntity = null;
 
         // Extract EntitySet and EntityType from URI
@@ -109,14 +136,33 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
         SelectOption selectOption = uriInfo.getSelectOption();
         ExpandOption expandOption = uriInfo.getExpandOption();
 
-        // Build the specification to query the entity
-        Specification<T> specification = buildSpecification(uriInfo);
-
-        // Retrieve entity from repository
-        T dbEntity = getEntityFromRepository(specification);
-
-        // Map the database entity to OData entity
-        toReturnEntity = service.createEntityFrom(dbEntity, MAX_DEPTH);
+        // Bound the request by the limits of the entity set
+        queryLimits.checkExpand(edmEntitySet.getName(), edmEntityType, expandOption);
+        repository.setStatementTimeout(queryLimits.getStatementTimeout(edmEntitySet.getName()));
+
+        // Without $select and $expand the entity is looked up by its ID, which may be answered by the persistence context
+        Long id = getId(uriInfo);
+        List<String> selectedAttributes = ODataSelectHelper.getSelectedAttributes(selectOption, expandOption);
+        T dbEntity;
+        if (id != null && selectedAttributes == null && expandOption == null) {
+            dbEntity = getEntityFromRepository(id);
+        } else {
+            // Build the specification to query the entity, fetching the expanded navigation properties along
+            Specification<T> specification = id != null ? buildSpecification(id) : buildSpecification(uriInfo);
+            specification = specification.and(new FetchSpecification<T>().build(expandOption));
+
+            // Retrieve entity from repository, with $select only the selected columns are read
+            dbEntity = selectedAttributes != null
+                    ? getEntityFromRepository(specification, selectedAttributes)
+                    : getEntityFromRepository(specification);
+        }
+        String entitySetName = edmEntitySet.getName();
+        stageMetrics.countRows(entitySetName, 1);
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.READ_ENTITY, "fetch", stageStart);
+
+        // Map the database entity to OData entity, converting only the expanded navigation properties
+        toReturnEntity = service.createEntityFrom(dbEntity, expandOption);
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.READ_ENTITY, "convert", stageStart);
 
         // Build Context URL with $select and $expand options
         ContextURL contextUrl = buildContextUrl(edmEntitySet, edmEntityType, selectOption, expandOption);
@@ -126,6 +172,7 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
 
         // Set the response
         setResponse(oDataResponse, serializerResult, contentType);
+        stageMetrics.record(entitySetName, ODataStageMetrics.READ_ENTITY, "serialize", stageStart);
     }
 
     /**
@@ -146,31 +193,38 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
     @Transactional
     public void createEntity(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType contentType, ContentType contentType1)
             throws ODataApplicationException, ODataLibraryException {
+        long stageStart = System.nanoTime();
 
         // Extract EntitySet and EntityType from URI
         EdmEntitySet edmEntitySet = getEdmEntitySet(uriInfo);
         EdmEntityType edmEntityType = edmEntitySet.getEntityType();
+        String entitySetName = edmEntitySet.getName();
 
         // Deserialize the OData entity from the request body
         Entity requestEntity = deserializeEntity(oDataRequest, contentType, edmEntityType);
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.CREATE_ENTITY, "deserialize", stageStart);
 
         // Convert OData entity to DB entity and save
         T dbo = service.createDBOFrom(requestEntity, this.FAKE_CREATOR_ID);
         dbo = repository.save(dbo);
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.CREATE_ENTITY, "save", stageStart);
 
         // Map the saved database entity back to OData entity
-        Entity createdEntity = service.createEntityFrom(dbo, MAX_DEPTH);
-
-        // Build Context URL with $select and $expand options
         SelectOption selectOption = uriInfo.getSelectOption();
         ExpandOption expandOption = uriInfo.getExpandOption();
+        Entity createdEntity = service.createEntityFrom(dbo, expandOption);
+
+        // Build Context URL with $select and $expand options
         ContextURL contextUrl = buildContextUrl(edmEntitySet, edmEntityType, selectOption, expandOption);
 
         // Serialize the created entity to OData format
         SerializerResult serializerResult = serializeEntity(edmEntityType, createdEntity, selectOption, expandOption, contextUrl, contentType);
 
-        // Set the response
+        // Set the response, the location lets $batch changesets refer to the created entity
         setResponse(oDataResponse, serializerResult, contentType);
+        oDataResponse.setHeader(HttpHeader.LOCATION,
+                oDataRequest.getRawBaseUri() + "/" + odata.createUriHelper().buildCanonicalURL(edmEntitySet, createdEntity));
+        stageMetrics.record(entitySetName, ODataStageMetrics.CREATE_ENTITY, "serialize", stageStart);
     }
 
     /**
@@ -191,29 +245,32 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
     @Transactional
     public void updateEntity(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo, ContentType contentType, ContentType contentType1)
             throws ODataApplicationException, ODataLibraryException {
+        long stageStart = System.nanoTime();
 
         // Extract EntitySet and EntityType from URI
         EdmEntitySet edmEntitySet = getEdmEntitySet(uriInfo);
         EdmEntityType edmEntityType = edmEntitySet.getEntityType();
-
-        // Build the specification to query the entity
-        Specification<T> specification = buildSpecification(uriInfo);
+        String entitySetName = edmEntitySet.getName();
 
         // Retrieve the database entity from the repository
-        T dbEntity = getEntityFromRepository(specification);
+        T dbEntity = getEntityFromRepository(uriInfo);
+        stageMetrics.countRows(entitySetName, 1);
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.UPDATE_ENTITY, "fetch", stageStart);
 
         // Deserialize the OData entity from the request body
         Entity requestEntity = deserializeEntity(oDataRequest, contentType, edmEntityType);
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.UPDATE_ENTITY, "deserialize", stageStart);
 
         // Update the database entity
         dbEntity = service.updateDBOFrom(dbEntity, requestEntity, this.FAKE_UPDATER_ID);
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.UPDATE_ENTITY, "update", stageStart);
 
         // Map the updated database entity back to OData entity
-        Entity updatedEntity = service.createEntityFrom(dbEntity, MAX_DEPTH);
-
-        // Build Context URL with $select and $expand options
         SelectOption selectOption = uriInfo.getSelectOption();
         ExpandOption expandOption = uriInfo.getExpandOption();
+        Entity updatedEntity = service.createEntityFrom(dbEntity, expandOption);
+
+        // Build Context URL with $select and $expand options
         ContextURL contextUrl = buildContextUrl(edmEntitySet, edmEntityType, selectOption, expandOption);
 
         // Serialize the updated entity to OData format
@@ -221,6 +278,7 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
 
         // Set the response
         setResponse(oDataResponse, serializerResult, contentType);
+        stageMetrics.record(entitySetName, ODataStageMetrics.UPDATE_ENTITY, "serialize", stageStart);
     }
 
     /**
@@ -239,23 +297,55 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
     @Transactional
     public void deleteEntity(ODataRequest oDataRequest, ODataResponse oDataResponse, UriInfo uriInfo)
             throws ODataApplicationException, ODataLibraryException {
-
-        // Build the specification to identify the entity to delete
-        Specification<T> specification = buildSpecification(uriInfo);
+        long stageStart = System.nanoTime();
+        String entitySetName = getEdmEntitySet(uriInfo).getName();
 
         // Retrieve the database entity to delete
-        T dboToDelete = getEntityFromRepository(specification);
+        T dboToDelete = getEntityFromRepository(uriInfo);
+        stageMetrics.countRows(entitySetName, 1);
+        stageStart = stageMetrics.record(entitySetName, ODataStageMetrics.DELETE_ENTITY, "fetch", stageStart);
 
         // Clear references before deleting the entity
         service.clearReferences(dboToDelete);
 
         // Delete the entity from the database
         repository.delete(dboToDelete);
+        stageMetrics.record(entitySetName, ODataStageMetrics.DELETE_ENTITY, "delete", stageStart);
 
         // Set the response to NO_CONTENT
         oDataResponse.setStatusCode(HttpStatusCode.NO_CONTENT.getStatusCode());
     }
 
+    /**
+     * Sets the limits of the requests.
+     *
+     * @param queryLimits the limits, configured with the odata.limits properties
+     */
+    @Autowired
+    public void setQueryLimits(ODataQueryLimits queryLimits) {
+        this.queryLimits = queryLimits;
+    }
+
+    /**
+     * Sets the timers of the stages of the requests.
+     *
+     * @param stageMetrics the metrics, scraped by Prometheus from /actuator/prometheus
+     */
+    @Autowired
+    public void setStageMetrics(ODataStageMetrics stageMetrics) {
+        this.stageMetrics = stageMetrics;
+    }
+
+    /**
+     * Sets the cache of the compiled templates of the key predicates.
+     *
+     * @param filterCache the cache, sized by odata.filter-cache.size
+     */
+    @Autowired
+    public void setFilterCache(ODataFilterCache filterCache) {
+        this.filterCache = filterCache;
+    }
+
     /**
      * Initializes the ODataEntityProcessor with the provided OData and ServiceMetadata instances.
      * This method is called by the OData library to set up the processor with the necessary OData context and metadata.
@@ -282,6 +372,45 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
         return uriResourceEntitySet.getEntitySet();
     }
 
+    /**
+     * Returns the ID of the addressed entity if the entity set has a single Edm.Int64 key, the ID of the repository.
+     * Such key predicates are looked up directly instead of being translated into a filter expression.
+     *
+     * @param uriInfo the URI information containing the key predicates
+     * @return the ID, or null if the entity set has a composite key or a key of another type
+     * @throws ODataApplicationException if the key is no valid Edm.Int64 value
+     */
+    private Long getId(UriInfo uriInfo) throws ODataApplicationException {
+        UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) uriInfo.getUriResourceParts().get(0);
+        List<UriParameter> keyPredicates = uriResourceEntitySet.getKeyPredicates();
+        if (keyPredicates == null || keyPredicates.size() != 1) {
+            return null;
+        }
+
+        UriParameter keyPredicate = keyPredicates.get(0);
+        EdmProperty keyProperty = (EdmProperty) uriResourceEntitySet.getEntityType().getProperty(keyPredicate.getName());
+        EdmPrimitiveType keyType = (EdmPrimitiveType) keyProperty.getType();
+        if (EdmPrimitiveTypeKind.valueOfFQN(keyType.getFullQualifiedName()) != EdmPrimitiveTypeKind.Int64 || keyPredicate.getText() == null) {
+            return null;
+        }
+
+        try {
+            return keyType.valueOfString(keyType.fromUriLiteral(keyPredicate.getText()), false, null, null, null, null, Long.class);
+        } catch (EdmPrimitiveTypeException e) {
+            throw new ODataApplicationException("Invalid key: " + keyPredicate.getText(), HttpStatusCode.BAD_REQUEST.getStatusCode(), null);
+        }
+    }
+
+    /**
+     * Builds a Specification matching the entity with the given ID.
+     *
+     * @param id the ID of the entity
+     * @return the Specification for querying the entity
+     */
+    private Specification<T> buildSpecification(Long id) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get(ID_ATTRIBUTE), id);
+    }
+
     /**
      * Builds a Specification for querying the entity based on the provided UriInfo.
      * The Specification is the primary key or composite key of the entity, both work
@@ -294,11 +423,38 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
     private Specification<T> buildSpecification(UriInfo uriInfo) throws ODataApplicationException {
         List<UriResource> resourcePaths = uriInfo.getUriResourceParts();
         UriResourceEntitySet uriResourceEntitySet = (UriResourceEntitySet) resourcePaths.get(0);
-        ODataSpecificationBuilder<T> specificationBuilder = new ODataSpecificationBuilder<>();
+        ODataSpecificationBuilder<T> specificationBuilder = new ODataSpecificationBuilder<>(filterCache);
 
         return specificationBuilder.addComposeKey(uriResourceEntitySet).build();
     }
 
+    /**
+     * Retrieves the entity addressed by the key predicates of the URI.
+     * A single key is looked up by ID, which is answered by the persistence context if the entity is already loaded,
+     * e.g. by an earlier request of the same $batch changeset. Composite keys are queried with a Specification.
+     *
+     * @param uriInfo the URI information containing the key predicates
+     * @return the managed entity
+     * @throws ODataApplicationException if the entity is not found
+     */
+    private T getEntityFromRepository(UriInfo uriInfo) throws ODataApplicationException {
+        Long id = getId(uriInfo);
+        return id != null ? getEntityFromRepository(id) : getEntityFromRepository(buildSpecification(uriInfo));
+    }
+
+    /**
+     * Retrieves an entity from the repository by its ID.
+     * If the entity is not found, an ODataApplicationException is thrown.
+     *
+     * @param id the ID of the entity
+     * @return the entity retrieved from the repository
+     * @throws ODataApplicationException if the entity is not found
+     */
+    private T getEntityFromRepository(Long id) throws ODataApplicationException {
+        return repository.findById(id)
+                .orElseThrow(() -> new ODataApplicationException("Entity not found", HttpStatusCode.NOT_FOUND.getStatusCode(), null));
+    }
+
     /**
      * Retrieves an entity from the repository based on the provided Specification.
      * If the entity is not found, an ODataApplicationException is thrown.
@@ -312,6 +468,20 @@ public class ODataEntityProcessor<T> implements EntityProcessor {
                 .orElseThrow(() -> new ODataApplicationException("Entity not found", HttpStatusCode.NOT_FOUND.getStatusCode(), null));
     }
 
+    /**
+     * Retrieves an entity from the repository based on the provided Specification, reading only the given attributes.
+     * If the entity is not found, an ODataApplicationException is thrown.
+     *
+     * @param specification the Specification for querying the entity
+     * @param attributes the attributes to read
+     * @return the partially filled entity retrieved from the repository
+     * @throws ODataApplicationException if the entity is not found
+     */
+    private T getEntityFromRepository(Specification<T> specification, List<String> attributes) throws ODataApplicationException {
+        return repository.findOneSelected(specification, attributes)
+                .orElseThrow(() -> new ODataApplicationException("Entity not found", HttpStatusCode.NOT_FOUND.getStatusCode(), null));
+    }
+
     /**
      * Deserializes an OData entity from the request body.
      * The deserialization is based on the provided content type and EDM entity type.
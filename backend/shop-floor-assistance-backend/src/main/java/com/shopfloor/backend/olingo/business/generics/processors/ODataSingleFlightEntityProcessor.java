@@ -0,0 +1,127 @@
+package com.shopfloor.backend.olingo.business.generics.processors;
+
+import com.shopfloor.backend.concurrency.SingleFlight;
+import org.apache.olingo.commons.api.ex.ODataException;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.processor.EntityProcessor;
+import org.apache.olingo.server.api.uri.UriInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EntityProcessor coalescing identical entity reads running at the same time, see SingleFlight.
+ * It wraps the entity processor of an entity set in front of its transaction, so waiting requests hold no connection.
+ * The leader's serialized response (status, headers and body) is copied to the responses of all followers.
+ * Two reads are identical if they have the same base URI, resource path, query options and response format,
+ * and their callers have the same authorities (added to the key by SingleFlight).
+ * Writes are passed to the wrapped processor.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class ODataSingleFlightEntityProcessor implements EntityProcessor {
+
+    private final EntityProcessor processor;
+    private final SingleFlight singleFlight;
+
+    /**
+     * Constructs an ODataSingleFlightEntityProcessor.
+     *
+     * @param processor the entity processor of the entity set
+     * @param singleFlight the coalescing of identical reads
+     */
+    public ODataSingleFlightEntityProcessor(EntityProcessor processor, SingleFlight singleFlight) {
+        this.processor = processor;
+        this.singleFlight = singleFlight;
+    }
+
+    @Override
+    public void init(OData odata, ServiceMetadata serviceMetadata) {
+        processor.init(odata, serviceMetadata);
+    }
+
+    /**
+     * Reads the entity, or copies the response of the same read already running.
+     *
+     * @param request the OData request
+     * @param response the OData response
+     * @param uriInfo the URI information containing the OData query options
+     * @param contentType the content type of the response
+     * @throws ODataApplicationException if an OData application error occurs
+     * @throws ODataLibraryException if an OData library error occurs
+     */
+    @Override
+    public void readEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType contentType)
+            throws ODataApplicationException, ODataLibraryException {
+        String key = "odata-entity:" + request.getRawBaseUri() + request.getRawODataPath()
+                + "?" + (request.getRawQueryPath() != null ? request.getRawQueryPath() : "")
+                + "|" + contentType.toContentTypeString();
+        SharedResponse shared;
+        try {
+            shared = singleFlight.<SharedResponse, ODataException>execute(key, () -> {
+                ODataResponse leaderResponse = new ODataResponse();
+                processor.readEntity(request, leaderResponse, uriInfo, contentType);
+                return SharedResponse.of(leaderResponse);
+            });
+        } catch (ODataApplicationException | ODataLibraryException e) {
+            throw e;
+        } catch (ODataException e) {
+            throw new IllegalStateException(e);
+        }
+        shared.copyTo(response);
+    }
+
+    @Override
+    public void createEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType requestFormat, ContentType responseFormat)
+            throws ODataApplicationException, ODataLibraryException {
+        processor.createEntity(request, response, uriInfo, requestFormat, responseFormat);
+    }
+
+    @Override
+    public void updateEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType requestFormat, ContentType responseFormat)
+            throws ODataApplicationException, ODataLibraryException {
+        processor.updateEntity(request, response, uriInfo, requestFormat, responseFormat);
+    }
+
+    @Override
+    public void deleteEntity(ODataRequest request, ODataResponse response, UriInfo uriInfo)
+            throws ODataApplicationException, ODataLibraryException {
+        processor.deleteEntity(request, response, uriInfo);
+    }
+
+    /**
+     * The serialized response of a read, copied to the response of every caller.
+     */
+    private record SharedResponse(int statusCode, Map<String, List<String>> headers, byte[] body) {
+
+        static SharedResponse of(ODataResponse response) {
+            byte[] body = null;
+            try (InputStream content = response.getContent()) {
+                if (content != null) {
+                    body = content.readAllBytes();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new SharedResponse(response.getStatusCode(), Map.copyOf(response.getAllHeaders()), body);
+        }
+
+        void copyTo(ODataResponse response) {
+            response.setStatusCode(statusCode);
+            headers.forEach(response::addHeader);
+            if (body != null) {
+                response.setContent(new ByteArrayInputStream(body));
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.shopfloor.backend.olingo.business.generics.specifications;
+
+import com.shopfloor.backend.olingo.business.generics.ODataAttributeResolver;
+import com.shopfloor.backend.olingo.business.generics.ODataExpandHelper;
+import jakarta.persistence.criteria.Fetch;
+import jakarta.persistence.criteria.FetchParent;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A specification for loading the navigation properties requested with $expand.
+ * Single valued navigation properties (e.g. ProductBefore) are fetch joined into the query,
+ * following nested $expand options as long as they stay single valued.
+ * Collection valued navigation properties (e.g. Equipments) are not joined, because joining them
+ * would multiply the rows and break the pagination, they are loaded in batches
+ * (hibernate.default_batch_fetch_size) once the services touch them.
+ * Navigation properties which are not expanded are never loaded.
+ *
+ * @param <T> the type of the entity to be queried
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class FetchSpecification<T> {
+
+    /**
+     * Builds a JPA Specification that fetch joins the expanded single valued navigation properties.
+     *
+     * @param expandOption the $expand option of the request
+     * @return a JPA Specification with the fetch joins applied, or a no-op Specification if nothing is expanded
+     */
+    public Specification<T> build(ExpandOption expandOption) {
+        if (expandOption == null || expandOption.getExpandItems().isEmpty()) {
+            return Specification.where(null); // Nothing to fetch
+        }
+
+        return (root, query, criteriaBuilder) -> {
+            // Count queries share the specification, fetch joins are only allowed when selecting the entity itself
+            if (query.getResultType() == root.getJavaType()) {
+                addFetches(root, root.getModel(), expandOption);
+            }
+            return null; // No predicate, just fetching
+        };
+    }
+
+    /**
+     * Adds fetch joins for the single valued navigation properties of the given expand level.
+     *
+     * @param parent the parent to fetch from, the root or a previous fetch
+     * @param type the JPA type of the parent
+     * @param expandOption the $expand option of the current level
+     */
+    private void addFetches(FetchParent<?, ?> parent, ManagedType<?> type, ExpandOption expandOption) {
+        Set<String> fetched = new HashSet<>();
+
+        for (ExpandItem expandItem : expandOption.getExpandItems()) {
+            if (expandItem.isStar()) {
+                for (SingularAttribute<?, ?> attribute : type.getSingularAttributes()) {
+                    if (attribute.isAssociation() && fetched.add(attribute.getName())) {
+                        parent.fetch(attribute.getName(), JoinType.LEFT);
+                    }
+                }
+                continue;
+            }
+
+            String attributeName = ODataAttributeResolver.resolve(ODataExpandHelper.getNavigationName(expandItem));
+            Attribute<?, ?> attribute = type.getAttribute(attributeName);
+            if (attribute.isCollection() || !fetched.add(attributeName)) {
+                continue; // Loaded in batches by the services
+            }
+
+            Fetch<?, ?> fetch = parent.fetch(attributeName, JoinType.LEFT);
+            if (expandItem.getExpandOption() != null) {
+                ManagedType<?> targetType = (ManagedType<?>) ((SingularAttribute<?, ?>) attribute).getType();
+                addFetches(fetch, targetType, expandItem.getExpandOption());
+            }
+        }
+    }
+}
@@ -1,14 +1,41 @@
 package com.shopfloor.backend.olingo.business.generics.specifications;
 
+import com.shopfloor.backend.olingo.business.generics.ODataAttributeResolver;
+import com.shopfloor.backend.olingo.business.generics.ODataPathHelper;
+import com.shopfloor.backend.olingo.database.ODataArrayFunctions;
+import jakarta.persistence.criteria.AbstractQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.From;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeException;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.server.api.uri.UriResource;
+import org.apache.olingo.server.api.uri.UriResourceIt;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAll;
+import org.apache.olingo.server.api.uri.UriResourceLambdaAny;
+import org.apache.olingo.server.api.uri.UriResourceLambdaVariable;
+import org.apache.olingo.server.api.uri.UriResourceNavigation;
+import org.apache.olingo.server.api.uri.UriResourcePrimitiveProperty;
 import org.apache.olingo.server.api.uri.queryoption.FilterOption;
 import org.apache.olingo.server.api.uri.queryoption.expression.*;
 import org.apache.olingo.server.core.uri.queryoption.expression.UnaryImpl;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
 import org.springframework.data.jpa.domain.Specification;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 /**
  * A specification for filtering JPA queries based on OData filter options.
@@ -16,12 +43,62 @@ import java.util.stream.Collectors;
  * Represent $filter option in OData.
  * Can be used directly with Expressions or FilterOptions.
  *
+ * The expression tree is compiled into a template once per shape, the expression without its literals.
+ * The templates are kept in the ODataFilterCache, a request only walks its expression to find the shape
+ * and binds its literals to the parameters of the template. The values are bound parameters of the SQL statement as well.
+ * A template is a tree of predicate factories, not a query: it saves resolving the member paths, the EDM types
+ * and the operators of the expression, but every request still builds a new Criteria query from it.
+ * Hibernate 6.5 keeps no query plans for Criteria queries, only for HQL strings, so the translation of the
+ * Criteria query into SQL is still done per request.
+ *
+ * Member paths may follow single valued navigation properties (e.g. ProductAfter/Name), they are left joined.
+ * Collection valued navigation properties are filtered with the any and all lambdas (e.g. Equipments/any(e:e/Type eq 'Press')),
+ * they become correlated EXISTS subqueries, so the collection is never loaded and the rows of the result are not multiplied.
  *
  * @param <T> the type of the entity to be queried
  * @author David Todorov (https://github.com/david-todorov)
  */
 public class FilterSpecification<T> {
 
+    /**
+     * The longest IN list sent as an SQL "in" list, longer lists are bound as one array parameter.
+     */
+    private static final int MAX_IN_LIST_SIZE = 32;
+
+    /**
+     * The Java types of the mapped columns, by the EDM type of the property.
+     * Types missing here are parsed as the default type of the EDM type.
+     */
+    private static final Map<EdmPrimitiveTypeKind, Class<?>> JAVA_TYPES = Map.of(
+            EdmPrimitiveTypeKind.Int64, Long.class,
+            EdmPrimitiveTypeKind.Int32, Integer.class,
+            EdmPrimitiveTypeKind.Double, Double.class,
+            EdmPrimitiveTypeKind.DateTimeOffset, Date.class);
+
+    /**
+     * The most fractional digits of the seconds of an Edm.DateTimeOffset literal.
+     */
+    private static final int MAX_FRACTIONAL_SECONDS = 12;
+
+    /**
+     * The escape character of the LIKE patterns of contains, startswith and endswith.
+     */
+    private static final char LIKE_ESCAPE = '\\';
+
+    /**
+     * The cache of the compiled templates.
+     */
+    private final ODataFilterCache filterCache;
+
+    /**
+     * Constructs a FilterSpecification taking its templates from the given cache.
+     *
+     * @param filterCache the cache of the compiled templates
+     */
+    public FilterSpecification(ODataFilterCache filterCache) {
+        this.filterCache = filterCache;
+    }
+
     /**
      * Builds a JPA Specification for filtering results based on the provided FilterOption.
      *
@@ -30,39 +107,119 @@ public class FilterSpecification<T> {
      */
     public Specification<T> build(FilterOption filterOption) {
         Expression expression = filterOption.getExpression();
-        return processExpression(expression);
+        return build(expression);
     }
 
     /**
      * Builds a JPA Specification for filtering results based on the provided expression.
-     * Recursively processes the expression tree using PostOrder traversal.
+     * The template of the expression shape is taken from the cache or compiled, then the literals are bound to it.
      *
      * @param expression the expression to be processed into a JPA Specification
      * @return a JPA Specification with the filter applied
      */
     public Specification<T> build(Expression expression) {
-        return processExpression(expression);
+        List<Object> arguments = new ArrayList<>();
+        String shape = describeShape(expression, arguments);
+
+        FilterTemplate template = filterCache.get(shape, () -> compile(expression));
+        Object[] parameters = template.bind(arguments);
+
+        return (root, query, criteriaBuilder) -> template.node.toPredicate(new FilterScope(root, query), criteriaBuilder, parameters);
+    }
+
+    /**
+     * Describes the shape of the given expression and collects its literals in the order of the template parameters.
+     * A literal is described as "?", the literals of an IN list are one argument.
+     *
+     * @param expression the OData expression
+     * @param arguments receives the literals, or the lists of literals of IN operators
+     * @return the shape of the expression
+     * @throws IllegalArgumentException if the expression type is unsupported
+     */
+    private static String describeShape(Expression expression, List<Object> arguments) {
+        if (expression instanceof Binary) {
+            Binary binary = (Binary) expression;
+            if (binary.getOperator() == BinaryOperatorKind.IN) {
+                arguments.add(binary.getExpressions());
+                return "(" + describeShape(binary.getLeftOperand(), arguments) + " in ?[])";
+            }
+            String left = describeShape(binary.getLeftOperand(), arguments);
+            String right = describeShape(binary.getRightOperand(), arguments);
+            return "(" + left + " " + binary.getOperator().name() + " " + right + ")";
+        } else if (expression instanceof Member) {
+            StringBuilder shape = new StringBuilder();
+            for (UriResource resourcePart : ((Member) expression).getResourcePath().getUriResourceParts()) {
+                shape.append(shape.length() == 0 ? "" : "/");
+                if (resourcePart instanceof UriResourceLambdaAny any) {
+                    shape.append("any(").append(describeLambda(any.getLambdaVariable(), any.getExpression(), arguments)).append(')');
+                } else if (resourcePart instanceof UriResourceLambdaAll all) {
+                    shape.append("all(").append(describeLambda(all.getLambdaVariable(), all.getExpression(), arguments)).append(')');
+                } else {
+                    shape.append(resourcePart.getSegmentValue());
+                }
+            }
+            return shape.toString();
+        } else if (expression instanceof Literal) {
+            arguments.add(expression);
+            return "?";
+        } else if (expression instanceof Method) {
+            Method method = (Method) expression;
+            List<String> parameters = new ArrayList<>();
+            for (Expression parameter : method.getParameters()) {
+                parameters.add(describeShape(parameter, arguments));
+            }
+            return method.getMethod().name() + "(" + String.join(",", parameters) + ")";
+        } else if (expression instanceof Unary) {
+            Unary unary = (Unary) expression;
+            return unary.getOperator().name() + " " + describeShape(unary.getOperand(), arguments);
+        }
+        throw new IllegalArgumentException("Unsupported expression type: " + expression.getClass());
+    }
+
+    /**
+     * Describes the shape of the body of an any or all lambda, e.g. "e:(e/Type EQ ?)".
+     *
+     * @param variable the lambda variable
+     * @param body the body of the lambda, null for "any()"
+     * @param arguments receives the literals of the body
+     * @return the shape of the lambda
+     */
+    private static String describeLambda(String variable, Expression body, List<Object> arguments) {
+        return body == null ? "" : variable + ":" + describeShape(body, arguments);
+    }
+
+    /**
+     * Compiles the given expression into a template, its literals become parameters.
+     *
+     * @param expression the OData expression
+     * @return the compiled template
+     */
+    private FilterTemplate compile(Expression expression) {
+        List<Parameter> parameters = new ArrayList<>();
+        FilterNode node = processExpression(expression, parameters);
+        return new FilterTemplate(node, parameters);
     }
 
     /**
-     * Processes the given OData expression and converts it into a JPA Specification.
+     * Processes the given OData expression and converts it into a node of the template.
      * Recursively processes the expression tree using PostOrder traversal.
      *
      * @param expression the OData expression to be processed
-     * @return a JPA Specification representing the given expression
+     * @param parameters receives one entry per literal, its type and whether its value is negated
+     * @return a node representing the given expression
      * @throws IllegalArgumentException if the expression type is unsupported
      */
-    private Specification<T> processExpression(Expression expression) {
+    private FilterNode processExpression(Expression expression, List<Parameter> parameters) {
         if (expression instanceof Binary) {
-            return handleBinaryExpression((Binary) expression);
+            return handleBinaryExpression((Binary) expression, parameters);
         } else if (expression instanceof Member) {
-            return handleMemberExpression((Member) expression);
+            return handleMemberExpression((Member) expression, parameters);
         } else if (expression instanceof Literal) {
-            return handleLiteralExpression((Literal) expression);
+            return handleLiteralExpression(parameters);
         } else if (expression instanceof Method) {
-            return handleMethodExpression((Method) expression);
+            return handleMethodExpression((Method) expression, parameters);
         } else if (expression instanceof Unary) {
-            return handleUnaryExpression((Unary) expression);
+            return handleUnaryExpression((Unary) expression, parameters);
         }
         throw new IllegalArgumentException("Unsupported expression type: " + expression.getClass());
     }
@@ -72,20 +229,21 @@ public class FilterSpecification<T> {
      * UnaryOperatorKind.MINUS is handled inside buildSimpleComparison().
      *
      * @param unary the unary expression to be processed
-     * @return a JPA Specification with the unary operator applied
+     * @param parameters receives the parameters of the operand
+     * @return a node with the unary operator applied
      * @throws UnsupportedOperationException if the unary operator is not supported
      */
-    private Specification<T> handleUnaryExpression(Unary unary) {
+    private FilterNode handleUnaryExpression(Unary unary, List<Parameter> parameters) {
         UnaryOperatorKind operator = unary.getOperator();
 
         if (operator == UnaryOperatorKind.NOT) {
             Expression expression = unary.getOperand(); // The expression inside the unary operator
-            Specification<T> operandSpec = processExpression(expression);
+            FilterNode operandNode = processExpression(expression, parameters);
             // Process the operand expression
-            return (root, query, criteriaBuilder) -> criteriaBuilder.not(operandSpec.toPredicate(root, query, criteriaBuilder));
+            return (scope, criteriaBuilder, values) -> criteriaBuilder.not(operandNode.toPredicate(scope, criteriaBuilder, values));
         } else if (operator == UnaryOperatorKind.MINUS) {
             // MINUS is handled inside buildSimpleComparison(), so no processing needed here.
-            return processExpression(unary.getOperand());
+            return processExpression(unary.getOperand(), parameters);
         }
 
         throw new UnsupportedOperationException("Unsupported unary operator: " + operator);
@@ -93,169 +251,240 @@ public class FilterSpecification<T> {
 
     /**
      * Handles member expressions in the filter specification.
+     * A member ending with an any or all lambda is a complete predicate over a collection.
      *
      * @param member the member expression to be processed
-     * @return a JPA Specification that provides the path for the field
+     * @param parameters receives the parameters of the lambda body
+     * @return a node that provides the path for the field
      */
-    private Specification<T> handleMemberExpression(Member member) {
+    private FilterNode handleMemberExpression(Member member, List<Parameter> parameters) {
+        List<UriResource> resourceParts = member.getResourcePath().getUriResourceParts();
+        UriResource lastPart = resourceParts.get(resourceParts.size() - 1);
+        if (lastPart instanceof UriResourceLambdaAny any) {
+            return handleLambda(resourceParts, any.getLambdaVariable(), any.getExpression(), false, parameters);
+        } else if (lastPart instanceof UriResourceLambdaAll all) {
+            return handleLambda(resourceParts, all.getLambdaVariable(), all.getExpression(), true, parameters);
+        }
+
         // A Member represents a field in the entity
-        String fieldName = this.camelCaseFieldName(member);
+        MemberPath path = createMemberPath(member);
+
+        // Return a node that provides the Path for the field
+        return (scope, criteriaBuilder, values) -> path.resolve(scope).as(Object.class).isNotNull(); // Dummy predicate for now
+    }
 
+    /**
+     * Handles the any and all lambdas over a collection valued navigation property.
+     * "any" becomes EXISTS (SELECT 1 FROM collection WHERE body) correlated with the entity,
+     * "all" becomes NOT EXISTS (SELECT 1 FROM collection WHERE NOT body), so it holds for empty collections.
+     *
+     * @param resourceParts the path to the collection followed by the lambda
+     * @param variable the lambda variable, the body refers to the elements of the collection with it
+     * @param body the body of the lambda, null for "any()" which checks that the collection is not empty
+     * @param all whether the lambda is "all"
+     * @param parameters receives the parameters of the body
+     * @return a node with the subquery applied
+     */
+    private FilterNode handleLambda(List<UriResource> resourceParts, String variable, Expression body, boolean all, List<Parameter> parameters) {
+        List<UriResource> collectionParts = resourceParts.subList(0, resourceParts.size() - 1);
+        String startVariable = getVariable(collectionParts);
+        List<String> attributes = new ArrayList<>();
+        for (UriResource resourcePart : collectionParts.subList(startVariable != null ? 1 : 0, collectionParts.size())) {
+            if (!(resourcePart instanceof UriResourceNavigation)) {
+                throw new IllegalArgumentException("any and all can only follow navigation properties: " + resourcePart.getSegmentValue());
+            }
+            attributes.add(ODataAttributeResolver.resolve(resourcePart.getSegmentValue()));
+        }
+        FilterNode bodyNode = body != null ? processExpression(body, parameters) : null;
 
-        // Return a Specification that provides the Path for the field
-        return (root, query, criteriaBuilder) -> root.get(fieldName).as(Object.class).isNotNull(); // Dummy predicate for now
+        return (scope, criteriaBuilder, values) -> {
+            Subquery<Integer> subquery = scope.query.subquery(Integer.class);
+            From<?, ?> element = scope.correlate(subquery, startVariable);
+            for (String attribute : attributes) {
+                element = element.join(attribute, JoinType.INNER);
+            }
+            subquery.select(criteriaBuilder.literal(1));
+            if (bodyNode != null) {
+                Predicate predicate = bodyNode.toPredicate(scope.enter(subquery, variable, element), criteriaBuilder, values);
+                subquery.where(all ? criteriaBuilder.not(predicate) : predicate);
+            }
+            return all ? criteriaBuilder.not(criteriaBuilder.exists(subquery)) : criteriaBuilder.exists(subquery);
+        };
     }
 
     /**
      * Handles literal expressions in the filter specification.
      *
-     * @param literal the literal expression to be processed
-     * @return a dummy JPA Specification (actual usage happens in binary expressions)
+     * @param parameters receives the parameter of the literal
+     * @return a dummy node (actual usage happens in binary expressions)
      */
-    private Specification<T> handleLiteralExpression(Literal literal) {
+    private FilterNode handleLiteralExpression(List<Parameter> parameters) {
         // A Literal represents a constant value in the expression
-        Object value = parseLiteralValue(literal, false);
+        int index = addParameter(parameters, false, null);
 
-        // Return a dummy Specification (actual usage happens in Binary expressions)
-        return (root, query, criteriaBuilder) -> criteriaBuilder.literal(value).isNotNull(); // Dummy predicate for now
+        // Return a dummy node (actual usage happens in Binary expressions)
+        return (scope, criteriaBuilder, values) -> criteriaBuilder.literal(values[index]).isNotNull(); // Dummy predicate for now
     }
 
     /**
      * Handles method expressions in the filter specification.
      *
      * @param method the method expression to be processed
-     * @return a JPA Specification with the method applied
+     * @param parameters receives the parameters of the method
+     * @return a node with the method applied
      * @throws UnsupportedOperationException if the method is not supported
      */
-    private Specification<T> handleMethodExpression(Method method) {
+    private FilterNode handleMethodExpression(Method method, List<Parameter> parameters) {
         String methodName = method.getMethod().name().toLowerCase();
 
         if (methodName.equals("contains")) {
-            return handleContains(method);
+            return handleLike(method, parameters, "%", "%");
         } else if (methodName.equals("startswith")) {
-            return handleStartsWith(method);
+            return handleLike(method, parameters, "", "%");
         } else if (methodName.equals("endswith")) {
-            return handleEndsWith(method);
+            return handleLike(method, parameters, "%", "");
         }
 
         throw new UnsupportedOperationException("Method expressions like " + methodName + " are not supported yet");
     }
 
     /**
-     * Handles "contains" method expressions in the filter specification.
+     * Handles the "contains", "startswith" and "endswith" method expressions in the filter specification.
+     * They are case-insensitive LIKE comparisons with the given wildcards around the value.
+     * The column is compared as lower(column), on PostgreSQL the trigram indexes over lower(column) answer the comparison
+     * (see schema-postgresql.sql). The wildcards % and _ in the value are escaped, they match themselves.
      *
      * @param method the method expression to be processed
-     * @return a JPA Specification with the "contains" method applied
+     * @param parameters receives the parameter of the value
+     * @param prefix the wildcard in front of the value
+     * @param suffix the wildcard after the value
+     * @return a node with the LIKE comparison applied
      */
-    private Specification<T> handleContains(Method method) {
+    private FilterNode handleLike(Method method, List<Parameter> parameters, String prefix, String suffix) {
         Member member = (Member) method.getParameters().get(0);  // Get the field (left operand)
         Literal literal = (Literal) method.getParameters().get(1);  // Get the value (right operand)
 
-        String fieldName = camelCaseFieldName(member);
-        String value = (String) parseLiteralValue(literal, false);
+        MemberPath path = createMemberPath(member);
+        int index = addParameter(parameters, false, path.type);
 
-        // Use LIKE in the query for "contains"
-        return (root, query, criteriaBuilder) -> criteriaBuilder.like(
-                criteriaBuilder.lower(root.get(fieldName)),
-                "%" + value.toLowerCase() + "%"
+        return (scope, criteriaBuilder, values) -> criteriaBuilder.like(
+                criteriaBuilder.lower(path.resolve(scope)),
+                prefix + escapeLike(((String) values[index]).toLowerCase()) + suffix,
+                LIKE_ESCAPE
         );
     }
 
     /**
-     * Handles "startswith" method expressions in the filter specification.
-     *
-     * @param method the method expression to be processed
-     * @return a JPA Specification with the "startswith" method applied
+     * Escapes the wildcards of a LIKE pattern with LIKE_ESCAPE.
      */
-    private Specification<T> handleStartsWith(Method method) {
-        Member member = (Member) method.getParameters().get(0);  // Get the field (left operand)
-        Literal literal = (Literal) method.getParameters().get(1);  // Get the value (right operand)
-
-        String fieldName = camelCaseFieldName(member);
-        String value = (String) parseLiteralValue(literal, false);
-
-        // Use LIKE for "startswith"
-        return (root, query, criteriaBuilder) -> criteriaBuilder.like(
-                criteriaBuilder.lower(root.get(fieldName)),
-                value.toLowerCase() + "%"
-        );
-    }
-
-    /**
-     * Handles "endswith" method expressions in the filter specification.
-     *
-     * @param method the method expression to be processed
-     * @return a JPA Specification with the "endswith" method applied
-     */
-    private Specification<T> handleEndsWith(Method method) {
-        Member member = (Member) method.getParameters().get(0);  // Get the field (left operand)
-        Literal literal = (Literal) method.getParameters().get(1);  // Get the value (right operand)
-
-        String fieldName = camelCaseFieldName(member);
-        String value = (String) parseLiteralValue(literal, false);
-
-        // Use LIKE for "endswith"
-        return (root, query, criteriaBuilder) -> criteriaBuilder.like(
-                criteriaBuilder.lower(root.get(fieldName)),
-                "%" + value.toLowerCase()
-        );
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == '%' || character == '_' || character == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(character);
+        }
+        return escaped.toString();
     }
 
     /**
      * Handles binary expressions in the filter specification.
      *
      * @param binary the binary expression to be processed
-     * @return a JPA Specification with the binary operator applied
+     * @param parameters receives the parameters of the operands
+     * @return a node with the binary operator applied
      */
-    private Specification<T> handleBinaryExpression(Binary binary) {
+    private FilterNode handleBinaryExpression(Binary binary, List<Parameter> parameters) {
         BinaryOperatorKind operator = binary.getOperator();
 
         if (operator == BinaryOperatorKind.IN) {
-            return handleInOperator(binary);
+            return handleInOperator(binary, parameters);
         }
 
-        Specification<T> leftSpec = processExpression(binary.getLeftOperand());
-        Specification<T> rightSpec = processExpression(binary.getRightOperand());
-
-        switch (operator) {
-            case AND:
-                return Specification.where(leftSpec).and(rightSpec);
-            case OR:
-                return Specification.where(leftSpec).or(rightSpec);
-            default:
-                return buildSimpleComparison(binary, operator);
+        if (operator != BinaryOperatorKind.AND && operator != BinaryOperatorKind.OR) {
+            return buildSimpleComparison(binary, operator, parameters);
         }
+
+        FilterNode leftNode = processExpression(binary.getLeftOperand(), parameters);
+        FilterNode rightNode = processExpression(binary.getRightOperand(), parameters);
+        return (scope, criteriaBuilder, values) -> {
+            Predicate left = leftNode.toPredicate(scope, criteriaBuilder, values);
+            Predicate right = rightNode.toPredicate(scope, criteriaBuilder, values);
+            return operator == BinaryOperatorKind.AND ? criteriaBuilder.and(left, right) : criteriaBuilder.or(left, right);
+        };
     }
 
     /**
      * Handles "IN" binary expressions in the filter specification.
+     * The whole list is one parameter, so lists of different lengths share the template.
+     * Short lists become an SQL "in" list with one bind parameter per value. Longer lists are bound as one array
+     * parameter, "= any(?)", so the SQL text is the same for every length and the database keeps a single plan for it.
      *
      * @param binary the binary expression to be processed
-     * @return a JPA Specification with the "IN" operator applied
+     * @param parameters receives the parameter of the list
+     * @return a node with the "IN" operator applied
      */
-    private Specification<T> handleInOperator(Binary binary) {
+    private FilterNode handleInOperator(Binary binary, List<Parameter> parameters) {
         Member member = (Member) binary.getLeftOperand();
-        String fieldName = camelCaseFieldName(member);
+        MemberPath memberPath = createMemberPath(member);
+        int index = addParameter(parameters, false, memberPath.type);
+
+        return (scope, criteriaBuilder, values) -> {
+            Path<?> path = memberPath.resolve(scope);
+            List<?> list = (List<?>) values[index];
+            Object array = list.size() > MAX_IN_LIST_SIZE ? toArray(list, path.getJavaType()) : null;
+            if (array == null) {
+                return path.in(list);
+            }
+            // a criteria literal would be rendered into the SQL text, value() binds the array as a parameter
+            HibernateCriteriaBuilder hibernateBuilder = (HibernateCriteriaBuilder) criteriaBuilder;
+            return criteriaBuilder.isTrue(criteriaBuilder.function(
+                    ODataArrayFunctions.EQUALS_ANY, Boolean.class, path, hibernateBuilder.value(array)));
+        };
+    }
 
-        List<Object> values = binary.getExpressions().stream()
-                .map(expression -> parseLiteralValue((Literal) expression, false))
-                .collect(Collectors.toList());
+    /**
+     * Converts the values of an IN list to an array of the type of the compared attribute.
+     *
+     * @param values the parsed literals of the list
+     * @param type the Java type of the attribute
+     * @return the array, or null if attributes of the type are not compared with arrays
+     * @throws IllegalArgumentException if a value does not fit the type of the attribute
+     */
+    private static Object toArray(List<?> values, Class<?> type) {
+        if (type == Long.class || type == long.class) {
+            return values.stream().map(value -> toNumber(value).longValue()).toArray(Long[]::new);
+        } else if (type == Integer.class || type == int.class) {
+            return values.stream().map(value -> toNumber(value).intValue()).toArray(Integer[]::new);
+        } else if (type == Double.class || type == double.class) {
+            return values.stream().map(value -> toNumber(value).doubleValue()).toArray(Double[]::new);
+        } else if (type == String.class) {
+            return values.stream().map(String::valueOf).toArray(String[]::new);
+        }
+        return null;
+    }
 
-        return (root, query, criteriaBuilder) -> root.get(fieldName).in(values);
+    private static Number toNumber(Object value) {
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Invalid literal value for a number: " + value);
+        }
+        return (Number) value;
     }
 
     /**
-     * Builds a simple comparison specification for binary expressions.
+     * Builds a simple comparison node for binary expressions.
      *
      * @param binary the binary expression to be processed
      * @param operator the binary operator to be applied
-     * @return a JPA Specification with the comparison applied
+     * @param parameters receives the parameter of the compared value
+     * @return a node with the comparison applied
      */
-    private Specification<T> buildSimpleComparison(Binary binary, BinaryOperatorKind operator) {
+    private FilterNode buildSimpleComparison(Binary binary, BinaryOperatorKind operator, List<Parameter> parameters) {
 
         Member member = null;
-        Literal literal = null;
-        Object literalValue = null;
+        boolean negate;
 
         // Special case when the binary operation
         // is negated with UnaryOperatorKind.MINUS
@@ -263,65 +492,129 @@ public class FilterSpecification<T> {
         // it serves different purpose
         if (isNegatedBinaryOperationMINUS(binary)) {
             member = (Member) ((UnaryImpl) binary.getLeftOperand()).getOperand();
-            literal = (Literal) binary.getRightOperand();
-            literalValue = parseLiteralValue(literal, true);
+            negate = true;
         } else {
             // Standard binary operation
             member = (Member) binary.getLeftOperand();
-            literal = (Literal) binary.getRightOperand();
-            literalValue = parseLiteralValue(literal, false);
+            negate = false;
+        }
+        if (!(binary.getRightOperand() instanceof Literal)) {
+            throw new IllegalArgumentException("Only literals can be compared with " + operator + ": " + binary.getRightOperand());
         }
 
-        String fieldName = camelCaseFieldName(member);
+        MemberPath memberPath = createMemberPath(member);
+        int index = addParameter(parameters, negate, memberPath.type);
 
 
-        Object finalLiteralValue = literalValue;
-        return (root, query, criteriaBuilder) -> {
+        return (scope, criteriaBuilder, values) -> {
+            Object value = values[index];
+            Path path = memberPath.resolve(scope);
             switch (operator) {
                 case EQ:
-                    return criteriaBuilder.equal(root.get(fieldName), finalLiteralValue);
+                    return criteriaBuilder.equal(path, value);
                 case NE:
-                    return criteriaBuilder.notEqual(root.get(fieldName), finalLiteralValue);
+                    return criteriaBuilder.notEqual(path, value);
                 case GT:
-                    return criteriaBuilder.greaterThan(root.get(fieldName), (Comparable) finalLiteralValue);
+                    return criteriaBuilder.greaterThan(path, (Comparable) value);
                 case LT:
-                    return criteriaBuilder.lessThan(root.get(fieldName), (Comparable) finalLiteralValue);
+                    return criteriaBuilder.lessThan(path, (Comparable) value);
                 case GE:
-                    return criteriaBuilder.greaterThanOrEqualTo(root.get(fieldName), (Comparable) finalLiteralValue);
+                    return criteriaBuilder.greaterThanOrEqualTo(path, (Comparable) value);
                 case LE:
-                    return criteriaBuilder.lessThanOrEqualTo(root.get(fieldName), (Comparable) finalLiteralValue);
+                    return criteriaBuilder.lessThanOrEqualTo(path, (Comparable) value);
                 default:
                     throw new UnsupportedOperationException("Unsupported comparison operator: " + operator);
             }
         };
     }
 
+    /**
+     * Adds a parameter to the template.
+     *
+     * @param parameters the parameters of the template so far
+     * @param negate whether the bound value is negated
+     * @param type the type of the property the value is compared with, null if the literal is compared with no property
+     * @return the index of the parameter
+     */
+    private static int addParameter(List<Parameter> parameters, boolean negate, EdmPrimitiveType type) {
+        parameters.add(new Parameter(negate, type));
+        return parameters.size() - 1;
+    }
+
+    /**
+     * Parses the literal value as a value of the type of the compared property, e.g. an Edm.Int64 literal as Long
+     * and an Edm.DateTimeOffset literal as Date. The value has the Java type of the mapped column,
+     * so it is bound as that SQL type and the index of the column can be used.
+     * Literals compared with no property fall back to parseLiteralValue(Literal, boolean).
+     *
+     * @param literal the literal expression containing the value to be parsed
+     * @param parameter the parameter the value is bound to
+     * @return the parsed value
+     * @throws IllegalArgumentException if the literal is no valid value of the type of the property
+     */
+    private static Object parseLiteralValue(Literal literal, Parameter parameter) {
+        if (parameter.type == null) {
+            return parseLiteralValue(literal, parameter.negate);
+        }
+
+        String text = literal.getText();
+        EdmPrimitiveType type = parameter.type;
+        Class<?> javaType = JAVA_TYPES.getOrDefault(EdmPrimitiveTypeKind.valueOfFQN(type.getFullQualifiedName()), type.getDefaultType());
+        Integer precision = javaType == Date.class ? MAX_FRACTIONAL_SECONDS : null;
+        Object value;
+        try {
+            value = type.valueOfString(type.fromUriLiteral(text), null, null, precision, null, null, javaType);
+        } catch (EdmPrimitiveTypeException e) {
+            throw new IllegalArgumentException("Invalid literal value: " + text, e);
+        }
+        return parameter.negate ? negate(value, text) : value;
+    }
+
+    /**
+     * Negates a numeric value, for the unary MINUS in front of a property.
+     */
+    private static Object negate(Object value, String text) {
+        if (value instanceof Long number) {
+            return -number;
+        } else if (value instanceof Integer number) {
+            return -number;
+        } else if (value instanceof Short number) {
+            return (short) -number;
+        } else if (value instanceof Double number) {
+            return -number;
+        } else if (value instanceof BigDecimal number) {
+            return number.negate();
+        }
+        throw new IllegalArgumentException("Invalid literal value for a number: " + text);
+    }
+
     /**
      * Parses the literal value from the given Literal expression.
+     * The type is recognized by scanning the characters, it is the hot path of every filtered request.
      *
      * @param literal the literal expression containing the value to be parsed
      * @param negate whether to negate the parsed value
-     * @return the parsed value, which can be an Integer, Double, Boolean, or LocalDate
+     * @return the parsed value, which can be a String, Integer, Double, Boolean, or LocalDate
      * @throws IllegalArgumentException if the literal value is invalid or unsupported
      */
-    private Object parseLiteralValue(Literal literal, boolean negate) {
+    private static Object parseLiteralValue(Literal literal, boolean negate) {
         String literalStringValue = literal.getText();
 
-        if (literalStringValue.startsWith("'") && literalStringValue.endsWith("'")) {
+        if (literalStringValue.length() >= 2 && literalStringValue.startsWith("'") && literalStringValue.endsWith("'")) {
             return literalStringValue.substring(1, literalStringValue.length() - 1);
         }
 
         try {
-            if (literalStringValue.matches("-?\\d+")) {
+            if (isInteger(literalStringValue)) {
                 Integer value = Integer.parseInt(literalStringValue);
                 return negate ? -value : value;
-            } else if (literalStringValue.matches("-?\\d+\\.\\d+")) {
+            } else if (isDecimal(literalStringValue)) {
                 Double value = Double.parseDouble(literalStringValue);
                 return negate ? -value : value;
             } else if (literalStringValue.equalsIgnoreCase("true") || literalStringValue.equalsIgnoreCase("false")) {
                 Boolean value = Boolean.parseBoolean(literalStringValue);
                 return negate ? !value : value;
-            } else if (literalStringValue.matches("\\d{4}-\\d{2}-\\d{2}")) {
+            } else if (isDate(literalStringValue)) {
                 return LocalDate.parse(literalStringValue);
             }
         } catch (NumberFormatException | DateTimeParseException e) {
@@ -332,14 +625,70 @@ public class FilterSpecification<T> {
     }
 
     /**
-     * Converts the field name from the Member expression to camel case format.
+     * Checks for an optionally negative integer, "-?\d+".
+     */
+    private static boolean isInteger(String text) {
+        int start = text.startsWith("-") ? 1 : 0;
+        return text.length() > start && countDigits(text, start) == text.length() - start;
+    }
+
+    /**
+     * Checks for an optionally negative decimal number, "-?\d+\.\d+".
+     */
+    private static boolean isDecimal(String text) {
+        int start = text.startsWith("-") ? 1 : 0;
+        int integerDigits = countDigits(text, start);
+        int point = start + integerDigits;
+        return integerDigits > 0 && point < text.length() && text.charAt(point) == '.'
+                && point + 1 < text.length() && countDigits(text, point + 1) == text.length() - point - 1;
+    }
+
+    /**
+     * Checks for a date, "\d{4}-\d{2}-\d{2}".
+     */
+    private static boolean isDate(String text) {
+        return text.length() == 10 && text.charAt(4) == '-' && text.charAt(7) == '-'
+                && countDigits(text, 0) == 4 && countDigits(text, 5) == 2 && countDigits(text, 8) == 2;
+    }
+
+    /**
+     * Counts the ASCII digits starting at the given index.
+     */
+    private static int countDigits(String text, int start) {
+        int index = start;
+        while (index < text.length() && text.charAt(index) >= '0' && text.charAt(index) <= '9') {
+            index++;
+        }
+        return index - start;
+    }
+
+    /**
+     * Creates the path of the given member, e.g. "ProductAfter/Name" or "e/Type" inside a lambda.
      *
-     * @param member the member expression containing the field name
-     * @return the field name in camel case format
+     * @param member the member expression containing the path
+     * @return the path, resolved against the scope of the query
+     * @throws IllegalArgumentException if the path follows a collection valued navigation property
      */
-    private String camelCaseFieldName(Member member) {
-        return Character.toLowerCase(member.getResourcePath().getUriResourceParts().get(0).getSegmentValue().charAt(0))
-                + member.getResourcePath().getUriResourceParts().get(0).getSegmentValue().substring(1);
+    private MemberPath createMemberPath(Member member) {
+        List<UriResource> resourceParts = member.getResourcePath().getUriResourceParts();
+        String variable = getVariable(resourceParts);
+        int start = variable != null || (!resourceParts.isEmpty() && resourceParts.get(0) instanceof UriResourceIt) ? 1 : 0;
+        UriResource lastPart = resourceParts.get(resourceParts.size() - 1);
+        EdmPrimitiveType type = lastPart instanceof UriResourcePrimitiveProperty property ? (EdmPrimitiveType) property.getProperty().getType() : null;
+        return new MemberPath(variable, ODataPathHelper.getAttributes(resourceParts.subList(start, resourceParts.size())), type);
+    }
+
+    /**
+     * Returns the lambda variable the given path starts with.
+     *
+     * @param resourceParts the parts of the path
+     * @return the name of the lambda variable, or null if the path starts at the entity of the query
+     */
+    private static String getVariable(List<UriResource> resourceParts) {
+        if (!resourceParts.isEmpty() && resourceParts.get(0) instanceof UriResourceLambdaVariable lambdaVariable) {
+            return lambdaVariable.getVariableName();
+        }
+        return null;
     }
 
     /**
@@ -352,4 +701,183 @@ public class FilterSpecification<T> {
         return binary.getLeftOperand() instanceof UnaryImpl;
     }
 
+    /**
+     * A compiled node of the filter expression, it reads the literal values from the bound parameters.
+     */
+    @FunctionalInterface
+    private interface FilterNode {
+
+        /**
+         * Creates the predicate of the node.
+         *
+         * @param scope the query and the entities the paths of the node start at
+         * @param criteriaBuilder the criteria builder used to construct criteria queries
+         * @param values the values bound to the parameters of the template
+         * @return the predicate
+         */
+        Predicate toPredicate(FilterScope scope, CriteriaBuilder criteriaBuilder, Object[] values);
+    }
+
+    /**
+     * The path of a member, starting at the entity of the query or at a lambda variable.
+     */
+    private static final class MemberPath {
+
+        /**
+         * The lambda variable the path starts at, null for the entity of the query.
+         */
+        private final String variable;
+
+        /**
+         * The JPA attributes of the path, the navigation properties followed by a property.
+         */
+        private final List<String> attributes;
+
+        /**
+         * The EDM type of the property at the end of the path, the literals compared with it are parsed as this type.
+         */
+        private final EdmPrimitiveType type;
+
+        private MemberPath(String variable, List<String> attributes, EdmPrimitiveType type) {
+            this.variable = variable;
+            this.attributes = attributes;
+            this.type = type;
+        }
+
+        private <Y> Path<Y> resolve(FilterScope scope) {
+            return ODataPathHelper.getPath(scope.getFrom(variable), attributes);
+        }
+    }
+
+    /**
+     * The query a predicate is created for, with the entities its paths may start at.
+     * Inside a lambda the query is the subquery of the lambda and the lambda variables are bound to the joined collections.
+     */
+    private static final class FilterScope {
+
+        private final Root<?> root;
+        private final AbstractQuery<?> query;
+        private final Map<String, From<?, ?>> variables;
+
+        private FilterScope(Root<?> root, AbstractQuery<?> query) {
+            this(root, query, Map.of());
+        }
+
+        private FilterScope(Root<?> root, AbstractQuery<?> query, Map<String, From<?, ?>> variables) {
+            this.root = root;
+            this.query = query;
+            this.variables = variables;
+        }
+
+        private From<?, ?> getFrom(String variable) {
+            if (variable == null) {
+                return root;
+            }
+            From<?, ?> from = variables.get(variable);
+            if (from == null) {
+                throw new IllegalArgumentException("Unknown lambda variable: " + variable);
+            }
+            return from;
+        }
+
+        /**
+         * Correlates the entity a lambda starts at with the subquery of the lambda.
+         *
+         * @param subquery the subquery of the lambda
+         * @param variable the lambda variable the collection path starts at, null for the entity of the query
+         * @return the correlated entity
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private From<?, ?> correlate(Subquery<?> subquery, String variable) {
+            From<?, ?> from = getFrom(variable);
+            return from instanceof Root ? subquery.correlate((Root) from) : subquery.correlate((Join) from);
+        }
+
+        /**
+         * Creates the scope of a lambda body, the entity of the query is correlated with the subquery.
+         *
+         * @param subquery the subquery of the lambda
+         * @param variable the lambda variable
+         * @param element the joined elements of the collection
+         * @return the scope of the body
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private FilterScope enter(Subquery<?> subquery, String variable, From<?, ?> element) {
+            Map<String, From<?, ?>> innerVariables = new HashMap<>(variables);
+            innerVariables.put(variable, element);
+            return new FilterScope(subquery.correlate((Root) root), subquery, innerVariables);
+        }
+    }
+
+    /**
+     * A parameter of a template, the literal bound to it is parsed as the type of the compared property.
+     */
+    private static final class Parameter {
+
+        /**
+         * Whether the value is negated (unary MINUS).
+         */
+        private final boolean negate;
+
+        /**
+         * The type of the compared property, null if the literal is compared with no property.
+         */
+        private final EdmPrimitiveType type;
+
+        private Parameter(boolean negate, EdmPrimitiveType type) {
+            this.negate = negate;
+            this.type = type;
+        }
+    }
+
+    /**
+     * The compiled filter expression of one shape, with one parameter per literal (or IN list).
+     * Templates are shared between threads, they are immutable.
+     */
+    private static final class FilterTemplate {
+
+        /**
+         * The root node of the compiled expression.
+         */
+        private final FilterNode node;
+
+        /**
+         * The parameters of the template, in the order of the literals.
+         */
+        private final Parameter[] parameters;
+
+        private FilterTemplate(FilterNode node, List<Parameter> parameters) {
+            this.node = node;
+            this.parameters = parameters.toArray(new Parameter[0]);
+        }
+
+        /**
+         * Parses the given literals into the values of the parameters.
+         *
+         * @param arguments the literals, or lists of literals, in the order of the parameters
+         * @return the values of the parameters
+         * @throws IllegalArgumentException if a literal value is invalid or unsupported
+         */
+        private Object[] bind(List<Object> arguments) {
+            if (arguments.size() != parameters.length) {
+                throw new IllegalArgumentException("Expected " + parameters.length + " literals but got " + arguments.size());
+            }
+
+            Object[] values = new Object[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                Object argument = arguments.get(i);
+                if (argument instanceof Literal) {
+                    values[i] = parseLiteralValue((Literal) argument, parameters[i]);
+                } else {
+                    List<Object> list = new ArrayList<>();
+                    for (Object element : (List<?>) argument) {
+                        list.add(parseLiteralValue((Literal) element, parameters[i]));
+                    }
+                    values[i] = list;
+                }
+            }
+            return values;
+        }
+    }
+
 }
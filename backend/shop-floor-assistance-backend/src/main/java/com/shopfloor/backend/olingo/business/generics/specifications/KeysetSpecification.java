@@ -0,0 +1,138 @@
+package com.shopfloor.backend.olingo.business.generics.specifications;
+
+import com.shopfloor.backend.olingo.business.generics.ODataPathHelper;
+import com.shopfloor.backend.olingo.business.generics.paginations.ODataSkipToken;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A specification continuing an ordered collection after the last entity of the previous page.
+ * Represents the $skiptoken option in OData.
+ * Instead of skipping rows with OFFSET, which gets slower with every page, it seeks directly to the
+ * next row with a predicate over the sort keys, for the keys (a, b, id):
+ * a > :a OR (a = :a AND b > :b) OR (a = :a AND b = :b AND id > :id)
+ * The comparison follows the null ordering of OrderBySpecification, null values are the largest values.
+ *
+ * @param <T> the type of the entity to be queried
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class KeysetSpecification<T> {
+
+    /**
+     * Builds a JPA Specification which only matches the entities after the position of the skip token.
+     *
+     * @param skipToken the skip token holding the sort key values of the last entity of the previous page
+     * @param sortKeys the sort keys of the ordering, as returned by OrderBySpecification
+     * @return a JPA Specification with the seek predicate applied
+     */
+    public Specification<T> build(ODataSkipToken skipToken, List<ODataSortKey> sortKeys) {
+        List<Object> values = skipToken.getValues();
+
+        return (root, query, criteriaBuilder) -> {
+            List<Predicate> alternatives = new ArrayList<>();
+            List<Predicate> equalPrefix = new ArrayList<>();
+
+            for (int i = 0; i < sortKeys.size(); i++) {
+                ODataSortKey sortKey = sortKeys.get(i);
+                Path<Object> path = ODataPathHelper.getPath(root, sortKey.getAttributes());
+                Object value = convertValue(values.get(i), path.getJavaType());
+
+                Predicate after = createAfterPredicate(path, value, sortKey.isDescending(), isOptional(root, sortKey), criteriaBuilder);
+                if (after != null) {
+                    List<Predicate> alternative = new ArrayList<>(equalPrefix);
+                    alternative.add(after);
+                    alternatives.add(criteriaBuilder.and(alternative.toArray(new Predicate[0])));
+                }
+                equalPrefix.add(value == null ? criteriaBuilder.isNull(path) : criteriaBuilder.equal(path, value));
+            }
+
+            return alternatives.isEmpty()
+                    ? criteriaBuilder.disjunction()
+                    : criteriaBuilder.or(alternatives.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * Creates the predicate matching the values that come after the given value of a single sort key.
+     *
+     * @param path the path of the sort key
+     * @param value the value of the last entity, may be null
+     * @param descending whether the sort key is ordered descending
+     * @param optional whether the attribute may hold null values
+     * @param criteriaBuilder the criteria builder used to construct the predicate
+     * @return the predicate, or null if no value can come after the given value
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Predicate createAfterPredicate(Path<Object> path, Object value, boolean descending, boolean optional,
+                                           CriteriaBuilder criteriaBuilder) {
+        Path<Comparable> comparablePath = (Path<Comparable>) (Path) path;
+
+        if (descending) {
+            // Nulls first, everything which is not null comes after a null value
+            return value == null
+                    ? criteriaBuilder.isNotNull(path)
+                    : criteriaBuilder.lessThan(comparablePath, (Comparable) value);
+        }
+
+        // Nulls last, nothing comes after a null value
+        if (value == null) {
+            return null;
+        }
+        Predicate greater = criteriaBuilder.greaterThan(comparablePath, (Comparable) value);
+        return optional ? criteriaBuilder.or(greater, criteriaBuilder.isNull(path)) : greater;
+    }
+
+    /**
+     * Checks whether the attribute of the sort key may hold null values.
+     * The properties of related entities are left joined, they are null without the related entity.
+     *
+     * @param root the root type in the from clause
+     * @param sortKey the sort key
+     * @return true if the attribute may be null
+     */
+    private boolean isOptional(Root<T> root, ODataSortKey sortKey) {
+        if (sortKey.isNavigation()) {
+            return true;
+        }
+        Attribute<? super T, ?> attribute = root.getModel().getAttribute(sortKey.getAttribute());
+        return !(attribute instanceof SingularAttribute) || ((SingularAttribute<? super T, ?>) attribute).isOptional();
+    }
+
+    /**
+     * Converts a value read from the skip token to the Java type of the attribute.
+     * The skip token is JSON, so numbers may come back as a different numeric type and dates as milliseconds.
+     *
+     * @param value the value read from the skip token
+     * @param javaType the Java type of the attribute
+     * @return the converted value
+     * @throws IllegalArgumentException if the value cannot be converted
+     */
+    private Object convertValue(Object value, Class<?> javaType) {
+        if (value == null || javaType.isInstance(value)) {
+            return value;
+        }
+
+        if (value instanceof Number number) {
+            if (Date.class.isAssignableFrom(javaType)) {
+                return new Date(number.longValue());
+            } else if (javaType == Long.class || javaType == long.class) {
+                return number.longValue();
+            } else if (javaType == Integer.class || javaType == int.class) {
+                return number.intValue();
+            } else if (javaType == Double.class || javaType == double.class) {
+                return number.doubleValue();
+            }
+        }
+
+        throw new IllegalArgumentException("Invalid skip token value " + value + " for type " + javaType.getSimpleName());
+    }
+}
@@ -0,0 +1,157 @@
+package com.shopfloor.backend.olingo.business.generics.specifications;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bounded LRU cache of compiled $filter templates, keyed by the shape of the filter expression.
+ * The shape is the expression with its literals left out, e.g. "(OrderNumber EQ ?)",
+ * so requests sending the same filter with different values share one template.
+ * A hit saves the compiling of the expression, not the Criteria query built from the template
+ * nor its translation into SQL by Hibernate, see FilterSpecification.
+ * The processors pass the cache to the FilterSpecification they build, its size is odata.filter-cache.size,
+ * ODataFilterCacheMetrics exposes the hits and misses.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+public class ODataFilterCache {
+
+    /**
+     * The number of templates kept if nothing else is configured.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+    /**
+     * The templates in access order, the least recently used first.
+     */
+    private final LinkedHashMap<String, Object> templates = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private int maximumSize;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maximumSize the maximum number of templates, 0 disables the cache
+     */
+    @Autowired
+    public ODataFilterCache(@Value("${odata.filter-cache.size:" + DEFAULT_MAXIMUM_SIZE + "}") int maximumSize) {
+        setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Returns the template of the given shape, compiling it on a miss.
+     * The template is compiled outside the lock, two threads missing the same shape both compile it.
+     * A template that fails to compile is not cached.
+     *
+     * @param shape the shape of the filter expression
+     * @param compiler compiles the template of the shape
+     * @param <V> the type of the template
+     * @return the cached or compiled template
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(String shape, Supplier<V> compiler) {
+        synchronized (templates) {
+            Object template = templates.get(shape);
+            if (template != null) {
+                hits.increment();
+                return (V) template;
+            }
+        }
+
+        misses.increment();
+        V template = compiler.get();
+        synchronized (templates) {
+            templates.put(shape, template);
+            trim();
+        }
+        return template;
+    }
+
+    /**
+     * Changes the maximum number of templates, the least recently used templates above the new size are evicted.
+     *
+     * @param maximumSize the maximum number of templates, 0 disables the cache
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public void setMaximumSize(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("The maximum size must not be negative: " + maximumSize);
+        }
+        synchronized (templates) {
+            this.maximumSize = maximumSize;
+            trim();
+        }
+    }
+
+    /**
+     * Evicts all templates, the statistics are kept.
+     */
+    public void clear() {
+        synchronized (templates) {
+            templates.clear();
+        }
+    }
+
+    /**
+     * @return the maximum number of templates
+     */
+    public int getMaximumSize() {
+        synchronized (templates) {
+            return maximumSize;
+        }
+    }
+
+    /**
+     * @return the number of cached templates
+     */
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+
+    /**
+     * @return the number of lookups answered by a cached template
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that compiled a template
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of templates evicted to keep the maximum size
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Evicts the least recently used templates above the maximum size, the caller holds the lock.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Object>> iterator = templates.entrySet().iterator();
+        while (templates.size() > maximumSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+}
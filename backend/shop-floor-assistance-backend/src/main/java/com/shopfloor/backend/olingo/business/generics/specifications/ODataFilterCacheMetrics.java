@@ -0,0 +1,102 @@
+package com.shopfloor.backend.olingo.business.generics.specifications;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the statistics of the ODataFilterCache as the meters "odata.filter.cache.hits", "odata.filter.cache.misses",
+ * "odata.filter.cache.evictions" and "odata.filter.cache.size" (GET /actuator/prometheus),
+ * and as the JMX bean "com.shopfloor.backend:type=ODataFilterCache" (with spring.jmx.enabled=true).
+ * A low hit ratio means the clients send many different filter shapes, the cache size (odata.filter-cache.size) can be raised then.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+@ManagedResource(objectName = "com.shopfloor.backend:type=ODataFilterCache", description = "Compiled $filter templates")
+public class ODataFilterCacheMetrics {
+
+    private final ODataFilterCache cache;
+
+    /**
+     * Constructs the metrics of the cache and registers its meters.
+     *
+     * @param cache the cache of the filter templates
+     * @param meterRegistry the registry the meters are registered in
+     */
+    @Autowired
+    public ODataFilterCacheMetrics(ODataFilterCache cache, MeterRegistry meterRegistry) {
+        this.cache = cache;
+        FunctionCounter.builder("odata.filter.cache.hits", cache, ODataFilterCache::getHits)
+                .description("Filters answered by a cached template").register(meterRegistry);
+        FunctionCounter.builder("odata.filter.cache.misses", cache, ODataFilterCache::getMisses)
+                .description("Filters whose template was compiled").register(meterRegistry);
+        FunctionCounter.builder("odata.filter.cache.evictions", cache, ODataFilterCache::getEvictions)
+                .description("Templates evicted to keep the maximum size").register(meterRegistry);
+        Gauge.builder("odata.filter.cache.size", cache, ODataFilterCache::size)
+                .description("Cached templates").register(meterRegistry);
+    }
+
+    /**
+     * @return the number of filters answered by a cached template
+     */
+    @ManagedAttribute(description = "Filters answered by a cached template")
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * @return the number of filters whose template was compiled
+     */
+    @ManagedAttribute(description = "Filters whose template was compiled")
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * @return the share of the filters answered by a cached template, 0 before the first filter
+     */
+    @ManagedAttribute(description = "Share of the filters answered by a cached template")
+    public double getHitRatio() {
+        long hits = cache.getHits();
+        long total = hits + cache.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the number of templates evicted to keep the maximum size
+     */
+    @ManagedAttribute(description = "Templates evicted to keep the maximum size")
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+
+    /**
+     * @return the number of cached templates
+     */
+    @ManagedAttribute(description = "Cached templates")
+    public int getSize() {
+        return cache.size();
+    }
+
+    /**
+     * @return the maximum number of cached templates
+     */
+    @ManagedAttribute(description = "Maximum number of cached templates")
+    public int getMaximumSize() {
+        return cache.getMaximumSize();
+    }
+
+    /**
+     * Evicts all cached templates.
+     */
+    @ManagedOperation(description = "Evicts all cached templates")
+    public void clear() {
+        cache.clear();
+    }
+}
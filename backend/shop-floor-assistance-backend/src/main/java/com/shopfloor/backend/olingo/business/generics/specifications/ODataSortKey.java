@@ -0,0 +1,71 @@
+package com.shopfloor.backend.olingo.business.generics.specifications;
+
+import java.util.List;
+
+/**
+ * A single key of the ordering applied to an OData collection, e.g. "orderNumber desc" or "afterProduct.name asc".
+ * The complete list of sort keys always ends with the entity ID, so the ordering is total
+ * and can be continued with a $skiptoken.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public final class ODataSortKey {
+
+    /**
+     * The JPA attribute the results are ordered by, the navigation properties on the way are separated by dots.
+     */
+    private final String attribute;
+
+    /**
+     * The JPA attributes of the path, e.g. "afterProduct" and "name".
+     */
+    private final List<String> attributes;
+
+    /**
+     * Whether the results are ordered descending.
+     */
+    private final boolean descending;
+
+    /**
+     * Constructs a sort key.
+     *
+     * @param attribute the JPA attribute the results are ordered by, e.g. "afterProduct.name"
+     * @param descending whether the results are ordered descending
+     */
+    public ODataSortKey(String attribute, boolean descending) {
+        this.attribute = attribute;
+        this.attributes = List.of(attribute.split("\\."));
+        this.descending = descending;
+    }
+
+    public String getAttribute() {
+        return attribute;
+    }
+
+    public List<String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Checks whether the sort key follows a navigation property.
+     *
+     * @return true if the sort key is a property of a related entity
+     */
+    public boolean isNavigation() {
+        return attributes.size() > 1;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Returns the sort key as written in $orderby, e.g. "orderNumber desc".
+     *
+     * @return the sort key as text
+     */
+    @Override
+    public String toString() {
+        return attribute + (descending ? " desc" : " asc");
+    }
+}
@@ -1,21 +1,26 @@
 package com.shopfloor.backend.olingo.business.generics.specifications;
 
-
+import com.shopfloor.backend.olingo.business.generics.paginations.ODataSkipToken;
 import org.apache.olingo.server.api.ODataApplicationException;
 import org.apache.olingo.server.api.uri.*;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
 import org.apache.olingo.server.api.uri.queryoption.FilterOption;
 import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
 import org.apache.olingo.server.api.uri.queryoption.SearchOption;
 import org.apache.olingo.server.api.uri.queryoption.expression.Expression;
 import org.springframework.data.jpa.domain.Specification;
 
+import java.util.List;
+
 /**
  * A builder class for creating JPA Specifications based on OData query options.
  * This class supports adding filters, order by options, search options, and composite keys.
  * Supported Options:
  * - $filter (FilterOption)
  * - $orderby (OrderByOption)
- * - $search (SearchOption)
+ * - $search (SearchOption), optionally ranked by relevance
+ * - $expand (ExpandOption)
+ * - $skiptoken (ODataSkipToken)
  * - Composite keys (UriResourceEntitySet)
  * It uses builder pattern to chain multiple options together.
  *
@@ -35,13 +40,21 @@ public class ODataSpecificationBuilder<T> {
      */
     private ExpressionTranslator expressionTranslator;
 
+    /**
+     * The cache of the compiled $filter templates.
+     */
+    private final ODataFilterCache filterCache;
+
     /**
      * Constructs an ODataSpecificationBuilder instance.
      * Initializes the specification with no filters applied initially and sets up the expression translator.
+     *
+     * @param filterCache the cache of the compiled $filter templates
      */
-    public ODataSpecificationBuilder() {
+    public ODataSpecificationBuilder(ODataFilterCache filterCache) {
         this.specification = Specification.where(null); // No filters applied initially
         this.expressionTranslator = new ExpressionTranslator();
+        this.filterCache = filterCache;
     }
 
     /**
@@ -52,7 +65,7 @@ public class ODataSpecificationBuilder<T> {
      */
     public ODataSpecificationBuilder<T> addFilter(FilterOption filterOption) {
         if (filterOption != null) {
-            Specification<T> filterSpecification = new FilterSpecification<T>().build(filterOption);
+            Specification<T> filterSpecification = new FilterSpecification<T>(filterCache).build(filterOption);
             specification = specification.and(filterSpecification);
         }
         return this;
@@ -60,14 +73,28 @@ public class ODataSpecificationBuilder<T> {
 
     /**
      * Adds an order by option to the current specification.
+     * The results are always ordered, by ID if no order by option is given, so the pages are stable.
      *
-     * @param orderByOption the order by option to be added
+     * @param orderByOption the order by option to be added, may be null
      * @return the updated ODataSpecificationBuilder instance
      */
     public ODataSpecificationBuilder<T> addOrderBy(OrderByOption orderByOption) {
-        if (orderByOption != null) {
-            Specification<T> orderBySpecification = new OrderBySpecification<T>().build(orderByOption);
-            specification = specification.and(orderBySpecification);
+        Specification<T> orderBySpecification = new OrderBySpecification<T>().build(orderByOption);
+        specification = specification.and(orderBySpecification);
+        return this;
+    }
+
+    /**
+     * Adds a skip token to the current specification, so only the entities after the previous page are matched.
+     *
+     * @param skipToken the skip token of the request, may be null
+     * @param sortKeys the sort keys of the ordering the skip token was created for
+     * @return the updated ODataSpecificationBuilder instance
+     */
+    public ODataSpecificationBuilder<T> addSkipToken(ODataSkipToken skipToken, List<ODataSortKey> sortKeys) {
+        if (skipToken != null) {
+            Specification<T> keysetSpecification = new KeysetSpecification<T>().build(skipToken, sortKeys);
+            specification = specification.and(keysetSpecification);
         }
         return this;
     }
@@ -81,7 +108,37 @@ public class ODataSpecificationBuilder<T> {
     public ODataSpecificationBuilder<T> addSearchOption(SearchOption searchOption) {
         if (searchOption != null) {
             Specification<T> searchSpecification = new SearchSpecification<T>().build(searchOption);
-            searchSpecification = specification.and(searchSpecification);
+            specification = specification.and(searchSpecification);
+        }
+        return this;
+    }
+
+    /**
+     * Orders the results by their relevance for the search option, in front of the current ordering.
+     * Must be added after the order by option.
+     *
+     * @param searchOption the search option the results are ranked by, may be null
+     * @return the updated ODataSpecificationBuilder instance
+     */
+    public ODataSpecificationBuilder<T> addSearchRanking(SearchOption searchOption) {
+        if (searchOption != null) {
+            Specification<T> rankingSpecification = new SearchSpecification<T>().buildRanking(searchOption);
+            specification = specification.and(rankingSpecification);
+        }
+        return this;
+    }
+
+    /**
+     * Adds an expand option to the current specification.
+     * The expanded single valued navigation properties are fetched with the same query.
+     *
+     * @param expandOption the expand option to be added
+     * @return the updated ODataSpecificationBuilder instance
+     */
+    public ODataSpecificationBuilder<T> addExpand(ExpandOption expandOption) {
+        if (expandOption != null) {
+            Specification<T> fetchSpecification = new FetchSpecification<T>().build(expandOption);
+            specification = specification.and(fetchSpecification);
         }
         return this;
     }
@@ -98,7 +155,7 @@ public class ODataSpecificationBuilder<T> {
     public ODataSpecificationBuilder<T> addComposeKey(UriResourceEntitySet uriResourceEntitySet) throws ODataApplicationException {
         Expression expression = this.expressionTranslator.translateExpressionFromEntitySet(uriResourceEntitySet);
         if (expression != null) {
-            Specification<T> expressionSpecification = new FilterSpecification<T>().build(expression);
+            Specification<T> expressionSpecification = new FilterSpecification<T>(filterCache).build(expression);
             specification = specification.and(expressionSpecification);
         }
         return this;
@@ -1,10 +1,15 @@
 package com.shopfloor.backend.olingo.business.generics.specifications;
 
+import com.shopfloor.backend.olingo.business.generics.ODataPathHelper;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.Order;
 import jakarta.persistence.criteria.Root;
+import org.apache.olingo.server.api.uri.UriResource;
 import org.apache.olingo.server.api.uri.queryoption.OrderByItem;
 import org.apache.olingo.server.api.uri.queryoption.OrderByOption;
+import org.apache.olingo.server.api.uri.queryoption.expression.Member;
+import org.hibernate.query.NullPrecedence;
+import org.hibernate.query.criteria.JpaOrder;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.util.ArrayList;
@@ -13,72 +18,103 @@ import java.util.List;
 /**
  * A specification for adding order by clauses to a JPA query.
  * Represents the $orderby option in OData.
+ * The properties of related entities (e.g. ProductAfter/Name) are ordered by over a left join,
+ * entities without the related entity are ordered like a null value.
+ * The entity ID is always appended as the last sort key, so the ordering is total
+ * and a page can be continued exactly where the previous one ended ($skiptoken).
+ * Null values are sorted as the largest values (last ascending, first descending) on every database,
+ * which is what KeysetSpecification expects.
  *
  * @param <T> the type of the entity to be queried
  * @author David Todorov (https://github.com/david-todorov)
  */
 public class OrderBySpecification<T> {
 
+    /**
+     * The JPA attribute of the entity ID, the final tiebreaker of every ordering.
+     */
+    private static final String ID_ATTRIBUTE = "id";
+
     /**
      * Builds a JPA Specification for ordering results based on the provided OrderByOption.
      *
-     * @param orderByOption the option containing the order by items
-     * @return a JPA Specification with the order by clauses applied, or a no-op Specification if no orders are provided
+     * @param orderByOption the option containing the order by items, may be null
+     * @return a JPA Specification with the order by clauses applied, ordering by ID if no orders are provided
      */
     public Specification<T> build(OrderByOption orderByOption) {
-        if (orderByOption == null || orderByOption.getOrders().isEmpty()) {
-            return Specification.where(null); // No sorting needed
-        }
+        List<ODataSortKey> sortKeys = getSortKeys(orderByOption);
 
         return (root, query, criteriaBuilder) -> {
-            // Create a list of orders for the query
-            query.orderBy(createOrders(orderByOption, root, criteriaBuilder));
+            // Count queries share the specification, ordering them is pointless
+            if (query.getResultType() != Long.class) {
+                query.orderBy(createOrders(sortKeys, root, criteriaBuilder));
+            }
             return null; // No predicate, just sorting
         };
     }
 
     /**
-     * Creates a list of JPA Order objects based on the provided OrderByOption.
+     * Returns the sort keys of the given OrderByOption followed by the entity ID.
      *
-     * @param orderByOption the option containing the order by items
+     * @param orderByOption the option containing the order by items, may be null
+     * @return the sort keys, never empty
+     * @throws IllegalArgumentException if an order by item is not a property of the entity
+     */
+    public static List<ODataSortKey> getSortKeys(OrderByOption orderByOption) {
+        List<ODataSortKey> sortKeys = new ArrayList<>();
+        boolean idIncluded = false;
+
+        if (orderByOption != null) {
+            for (OrderByItem orderByItem : orderByOption.getOrders()) {
+                String attribute = resolveAttribute(orderByItem);
+                sortKeys.add(new ODataSortKey(attribute, orderByItem.isDescending()));
+                idIncluded |= attribute.equals(ID_ATTRIBUTE);
+            }
+        }
+
+        if (!idIncluded) {
+            sortKeys.add(new ODataSortKey(ID_ATTRIBUTE, false));
+        }
+        return sortKeys;
+    }
+
+    /**
+     * Creates a list of JPA Order objects based on the provided sort keys.
+     *
+     * @param sortKeys the sort keys
      * @param root the root type in the from clause
      * @param criteriaBuilder the criteria builder used to construct criteria queries
      * @return a list of JPA Order objects
      */
-    private List<Order> createOrders(OrderByOption orderByOption, Root<?> root, CriteriaBuilder criteriaBuilder) {
+    private List<Order> createOrders(List<ODataSortKey> sortKeys, Root<?> root, CriteriaBuilder criteriaBuilder) {
         List<Order> orders = new ArrayList<>();
-        for (OrderByItem orderByItem : orderByOption.getOrders()) {
-            String fieldName = this.camelCaseFieldName(orderByItem);
-            boolean ascending = !orderByItem.isDescending();
-            Order order = ascending
-                    ? criteriaBuilder.asc(root.get(fieldName))
-                    : criteriaBuilder.desc(root.get(fieldName));
+        for (ODataSortKey sortKey : sortKeys) {
+            Order order = sortKey.isDescending()
+                    ? criteriaBuilder.desc(ODataPathHelper.getPath(root, sortKey.getAttributes()))
+                    : criteriaBuilder.asc(ODataPathHelper.getPath(root, sortKey.getAttributes()));
+            if (order instanceof JpaOrder) {
+                order = ((JpaOrder) order).nullPrecedence(sortKey.isDescending() ? NullPrecedence.FIRST : NullPrecedence.LAST);
+            }
             orders.add(order);
         }
         return orders;
     }
 
     /**
-     * Converts the field name from the OrderByItem to camel case format.
+     * Resolves the JPA attribute of the given OrderByItem.
      *
-     * @param orderByItem the order by item containing the field name
-     * @return the field name in camel case format
+     * @param orderByItem the order by item containing the property
+     * @return the JPA attribute, the navigation properties on the way are separated by dots
+     * @throws IllegalArgumentException if the order by item is not a property of the entity or of a single related entity
      */
-    private String camelCaseFieldName(OrderByItem orderByItem) {
-        // Extract the expression as a string (e.g., "[Name]")
-        String fieldName = orderByItem.getExpression().toString();
-
-        // Remove the square brackets
-        if (fieldName.startsWith("[") && fieldName.endsWith("]")) {
-            fieldName = fieldName.substring(1, fieldName.length() - 1); // Remove [ and ]
-        }
-
-        // Convert the first letter to lowercase
-        if (!fieldName.isEmpty()) {
-            fieldName = fieldName.substring(0, 1).toLowerCase() + fieldName.substring(1);
+    private static String resolveAttribute(OrderByItem orderByItem) {
+        List<UriResource> resourceParts = orderByItem.getExpression() instanceof Member
+                ? ((Member) orderByItem.getExpression()).getResourcePath().getUriResourceParts()
+                : List.of();
+        if (resourceParts.isEmpty()) {
+            throw new IllegalArgumentException("Only properties are supported in $orderby: " + orderByItem.getExpression());
         }
-
-        return fieldName;
+        return String.join(".", ODataPathHelper.getAttributes(resourceParts));
     }
 
 }
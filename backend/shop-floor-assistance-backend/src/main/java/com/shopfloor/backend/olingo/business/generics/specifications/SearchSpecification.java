@@ -1,5 +1,10 @@
 package com.shopfloor.backend.olingo.business.generics.specifications;
 
+import com.shopfloor.backend.olingo.database.ODataSearchFunctions;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.SingularAttribute;
 import org.apache.olingo.server.api.uri.queryoption.SearchOption;
 import org.apache.olingo.server.api.uri.queryoption.search.SearchBinary;
 import org.apache.olingo.server.api.uri.queryoption.search.SearchExpression;
@@ -7,23 +12,95 @@ import org.apache.olingo.server.api.uri.queryoption.search.SearchTerm;
 import org.apache.olingo.server.api.uri.queryoption.search.SearchUnary;
 import org.springframework.data.jpa.domain.Specification;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A generic class for building JPA Specifications based on OData search options.
- * This class supports adding search terms, unary expressions, and binary expressions.
- * It uses the Specification interface to build the query based on the search options.
- * IMPORTANT: Currently, not supported yet.
+ * This class supports adding search terms, unary expressions (NOT), and binary expressions (AND, OR).
+ * A term matches an entity if it occurs in its number, name or description,
+ * on PostgreSQL the terms are matched against the full-text search vector of the table (see ODataSearchFunctions).
+ * The matching entities can be ordered by their relevance for the terms.
  *
  * @param <T> the type of the entity for which the specification is being built
- * @author David Todorov (
+ * @author David Todorov (https://github.com/david-todorov)
  */
 public class SearchSpecification<T> {
 
+    /**
+     * The JPA attribute of the entity ID, it names the table for the search functions.
+     */
+    private static final String ID_ATTRIBUTE = "id";
+
+    /**
+     * The JPA attributes searched in every entity, besides the attributes ending with NUMBER_SUFFIX.
+     */
+    private static final List<String> SEARCH_ATTRIBUTES = List.of("name", "description");
+
+    /**
+     * Suffix of the business number attributes, like orderNumber.
+     */
+    private static final String NUMBER_SUFFIX = "Number";
+
+    /**
+     * Builds a JPA Specification matching the entities found by the provided SearchOption.
+     *
+     * @param searchOption the search option containing the search expression
+     * @return a JPA Specification with the search predicate
+     */
     public Specification<T> build(SearchOption searchOption) {
         SearchExpression searchExpression = searchOption.getSearchExpression();
 
         return processExpression(searchExpression);
     }
 
+    /**
+     * Builds a JPA Specification ordering the entities by their relevance for the provided SearchOption, most relevant first.
+     * The ranking is put in front of the existing ordering, which breaks the ties.
+     *
+     * @param searchOption the search option containing the search expression
+     * @return a JPA Specification with the ranking applied
+     */
+    public Specification<T> buildRanking(SearchOption searchOption) {
+        String terms = String.join(" ", getRankingTerms(searchOption));
+
+        return (root, query, criteriaBuilder) -> {
+            // Count queries share the specification, ordering them is pointless
+            if (query.getResultType() != Long.class) {
+                Expression<Double> rank = criteriaBuilder.function(ODataSearchFunctions.RANK, Double.class,
+                        root.get(ID_ATTRIBUTE), criteriaBuilder.literal(terms));
+                List<Order> orders = new ArrayList<>();
+                orders.add(criteriaBuilder.desc(rank));
+                orders.addAll(query.getOrderList());
+                query.orderBy(orders);
+            }
+            return null; // No predicate, just sorting
+        };
+    }
+
+    /**
+     * Returns the terms of the provided SearchOption an entity is ranked by, the negated terms are left out.
+     *
+     * @param searchOption the search option, may be null
+     * @return the ranking terms, empty if nothing can be ranked
+     */
+    public static List<String> getRankingTerms(SearchOption searchOption) {
+        List<String> terms = new ArrayList<>();
+        if (searchOption != null) {
+            collectRankingTerms(searchOption.getSearchExpression(), terms);
+        }
+        return terms;
+    }
+
+    private static void collectRankingTerms(SearchExpression searchExpression, List<String> terms) {
+        if (searchExpression.isSearchBinary()) {
+            collectRankingTerms(((SearchBinary) searchExpression).getLeftOperand(), terms);
+            collectRankingTerms(((SearchBinary) searchExpression).getRightOperand(), terms);
+        } else if (searchExpression.isSearchTerm()) {
+            terms.add(((SearchTerm) searchExpression).getSearchTerm());
+        }
+    }
+
     private Specification<T> processExpression(SearchExpression searchExpression) {
         if (searchExpression.isSearchBinary()) {
             return handleBinarySearchExpression((SearchBinary) searchExpression);
@@ -37,19 +114,23 @@ public class SearchSpecification<T> {
 
     private Specification<T> handleTermExpression(SearchTerm searchTerm) {
         String term = searchTerm.getSearchTerm();
-        // Iterate all over the string
-        // Make specification for each field
 
-        throw new UnsupportedOperationException("Not @search option implemented yet");
+        return (root, query, criteriaBuilder) -> {
+            List<Expression<?>> arguments = new ArrayList<>();
+            arguments.add(root.get(ID_ATTRIBUTE));
+            arguments.add(criteriaBuilder.literal(term));
+            arguments.addAll(getSearchFields(root));
+            return criteriaBuilder.isTrue(criteriaBuilder.function(ODataSearchFunctions.MATCH, Boolean.class,
+                    arguments.toArray(new Expression<?>[0])));
+        };
     }
 
     private Specification<T> handleUnaryExpression(SearchUnary searchExpression) {
-        return null;
+        // The only unary operator of $search is NOT
+        return Specification.not(processExpression(searchExpression.getOperand()));
     }
 
     private Specification<T> handleBinarySearchExpression(SearchBinary searchBinary) {
-        // Implement the handling of SearchBinary expression
-        // Example: Handle AND/OR operations or comparisons (e.g., term1 AND term2)
         SearchExpression leftOperand = searchBinary.getLeftOperand();
         SearchExpression rightOperand = searchBinary.getRightOperand();
 
@@ -66,4 +147,24 @@ public class SearchSpecification<T> {
         }
     }
 
+    /**
+     * Returns the searched text attributes of the entity, they make up its search vector on PostgreSQL.
+     *
+     * @param root the root type in the from clause
+     * @return the searched attributes
+     */
+    private List<Expression<String>> getSearchFields(Root<T> root) {
+        List<Expression<String>> fields = new ArrayList<>();
+        for (SingularAttribute<? super T, ?> attribute : root.getModel().getSingularAttributes()) {
+            String name = attribute.getName();
+            if (attribute.getJavaType() == String.class && (SEARCH_ATTRIBUTES.contains(name) || name.endsWith(NUMBER_SUFFIX))) {
+                fields.add(root.get(name));
+            }
+        }
+        if (fields.isEmpty()) {
+            throw new UnsupportedOperationException("$search is not supported for " + root.getModel().getName());
+        }
+        return fields;
+    }
+
 }
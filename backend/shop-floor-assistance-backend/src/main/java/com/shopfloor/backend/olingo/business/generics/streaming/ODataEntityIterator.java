@@ -0,0 +1,180 @@
+package com.shopfloor.backend.olingo.business.generics.streaming;
+
+import com.shopfloor.backend.olingo.business.generics.ODataService;
+import com.shopfloor.backend.olingo.database.ODataRepository;
+import org.apache.olingo.commons.api.data.Entity;
+import org.apache.olingo.commons.api.data.EntityIterator;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * EntityIterator converting the database entities one at a time while Olingo serializes them.
+ * The stream of database entities is opened on first use, which happens while the response is written,
+ * so the query has to run inside the transaction opened by ODataTransactionalContent.
+ * Every entity is detached after the conversion, so the persistence context does not grow with the result.
+ *
+ * @param <T> the type of the DBO (DataBase Object)
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class ODataEntityIterator<T> extends EntityIterator implements AutoCloseable {
+
+    /**
+     * Opens the stream of database entities.
+     */
+    private final Supplier<Stream<T>> streamSupplier;
+
+    /**
+     * Repository used for detaching the converted entities.
+     */
+    private final ODataRepository<T> repository;
+
+    /**
+     * Service used for converting the database entities.
+     */
+    private final ODataService<T> service;
+
+    /**
+     * The $expand option applied to every converted entity.
+     */
+    private final ExpandOption expandOption;
+
+    /**
+     * The opened stream, null until the first entity is requested.
+     */
+    private Stream<T> stream;
+
+    /**
+     * Iterator over the opened stream.
+     */
+    private Iterator<T> iterator;
+
+    /**
+     * Whether all entities were read and the stream is closed.
+     */
+    private boolean exhausted;
+
+    /**
+     * Creates the next link from the last entity, null if the result has no next link.
+     */
+    private Function<T, URI> nextLinkFactory;
+
+    /**
+     * The page size, the iterator stops after this number of entities when a next link factory is set.
+     */
+    private int pageSize;
+
+    /**
+     * The number of entities read so far.
+     */
+    private int readCount;
+
+    /**
+     * The last entity read, from which the next link is created.
+     */
+    private T lastDbo;
+
+    /**
+     * Constructs an ODataEntityIterator.
+     *
+     * @param streamSupplier opens the stream of database entities
+     * @param repository the repository used for detaching the converted entities
+     * @param service the service used for converting the database entities
+     * @param expandOption the $expand option applied to every converted entity, may be null
+     */
+    public ODataEntityIterator(Supplier<Stream<T>> streamSupplier, ODataRepository<T> repository,
+                               ODataService<T> service, ExpandOption expandOption) {
+        this.streamSupplier = streamSupplier;
+        this.repository = repository;
+        this.service = service;
+        this.expandOption = expandOption;
+    }
+
+    /**
+     * Sets the factory creating the next link from the last entity of a full page.
+     * The stream has to read one more entity than the page size, the iterator stops after the page size
+     * and creates the next link only if that additional entity exists.
+     * Olingo writes the next link after all entities, so it can be created from the last streamed entity.
+     *
+     * @param nextLinkFactory creates the next link from the last entity
+     * @param pageSize the page size
+     */
+    public void setNextLinkFactory(Function<T, URI> nextLinkFactory, int pageSize) {
+        this.nextLinkFactory = nextLinkFactory;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Returns the number of entities read so far.
+     *
+     * @return the number of entities read
+     */
+    public int getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * Checks whether another entity is available, opening the stream on first use.
+     * The stream is closed as soon as it is exhausted or the page is complete,
+     * and the next link is set if more entities follow the page.
+     *
+     * @return true if another entity is available
+     */
+    @Override
+    public boolean hasNext() {
+        if (exhausted) {
+            return false;
+        }
+        if (iterator == null) {
+            stream = streamSupplier.get();
+            iterator = stream.iterator();
+        }
+
+        boolean hasNext = iterator.hasNext();
+        boolean pageComplete = nextLinkFactory != null && readCount >= pageSize;
+        if (!hasNext || pageComplete) {
+            exhausted = true;
+            close();
+            if (hasNext) {
+                setNext(nextLinkFactory.apply(lastDbo));
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads and converts the next entity and detaches the database entity afterwards.
+     *
+     * @return the next OData entity
+     */
+    @Override
+    public Entity next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        T dbo = iterator.next();
+        lastDbo = dbo;
+        readCount++;
+        Entity entity = service.createEntityFrom(dbo, expandOption);
+        repository.detach(dbo);
+        return entity;
+    }
+
+    /**
+     * Closes the underlying stream and with it the database cursor.
+     */
+    @Override
+    public void close() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.shopfloor.backend.olingo.business.generics.streaming;
+
+import org.apache.olingo.server.api.ODataContent;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ODataContent writing the streamed response inside a read-only transaction.
+ * Olingo writes streamed content after the processor has returned, so the processor's transaction is already closed.
+ * This wrapper opens a new transaction for the duration of the write, in which the ODataEntityIterator
+ * runs its query and loads the expanded navigation properties.
+ * The written bytes are counted, a response exceeding the limit is cut off by failing the write.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class ODataTransactionalContent implements ODataContent {
+
+    /**
+     * The content created by the Olingo serializer.
+     */
+    private final ODataContent content;
+
+    /**
+     * The iterator the content reads from, closed after writing.
+     */
+    private final ODataEntityIterator<?> iterator;
+
+    /**
+     * Template opening the read-only transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * The largest number of bytes written.
+     */
+    private final long maxBytes;
+
+    /**
+     * Called once when the response exceeds the largest number of bytes.
+     */
+    private final Runnable limitExceeded;
+
+    /**
+     * Notified after the content was written, may be null.
+     */
+    private WriteListener writeListener;
+
+    /**
+     * Constructs an ODataTransactionalContent.
+     *
+     * @param content the content created by the Olingo serializer
+     * @param iterator the iterator the content reads from
+     * @param transactionTemplate the template opening the read-only transaction
+     * @param maxBytes the largest number of bytes written
+     * @param limitExceeded called when the response is cut off
+     */
+    public ODataTransactionalContent(ODataContent content, ODataEntityIterator<?> iterator, TransactionTemplate transactionTemplate,
+                                     long maxBytes, Runnable limitExceeded) {
+        this.content = content;
+        this.iterator = iterator;
+        this.transactionTemplate = transactionTemplate;
+        this.maxBytes = maxBytes;
+        this.limitExceeded = limitExceeded;
+    }
+
+    /**
+     * Sets the listener notified with the duration and the size of the write.
+     *
+     * @param writeListener the listener
+     */
+    public void setWriteListener(WriteListener writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    /**
+     * Writes the content to the channel inside a read-only transaction.
+     *
+     * @param channel the channel to write to
+     */
+    @Override
+    public void write(WritableByteChannel channel) {
+        write(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Writes the content to the stream inside a read-only transaction.
+     *
+     * @param stream the stream to write to
+     */
+    @Override
+    public void write(OutputStream stream) {
+        long start = System.nanoTime();
+        LimitedOutputStream limitedStream = new LimitedOutputStream(stream);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    content.write(limitedStream);
+                } finally {
+                    iterator.close();
+                }
+            });
+        } finally {
+            if (writeListener != null) {
+                writeListener.written(System.nanoTime() - start, limitedStream.written);
+            }
+        }
+    }
+
+    /**
+     * Listener notified after the content was written.
+     */
+    @FunctionalInterface
+    public interface WriteListener {
+
+        /**
+         * Called after the content was written or the write failed.
+         *
+         * @param nanos the duration of the write in nanoseconds
+         * @param bytes the number of bytes written
+         */
+        void written(long nanos, long bytes);
+    }
+
+    /**
+     * Stream failing the write once more than maxBytes bytes were written.
+     */
+    private class LimitedOutputStream extends FilterOutputStream {
+
+        private long written;
+
+        LimitedOutputStream(OutputStream stream) {
+            super(stream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            count(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count(len);
+            out.write(b, off, len);
+        }
+
+        private void count(int length) throws IOException {
+            written += length;
+            if (written > maxBytes) {
+                if (written - length <= maxBytes) {
+                    limitExceeded.run();
+                }
+                throw new IOException("The response exceeds the limit of " + maxBytes + " bytes");
+            }
+        }
+    }
+}
@@ -2,12 +2,15 @@ package com.shopfloor.backend.olingo.business.implementations.equipments;
 
 import com.shopfloor.backend.database.objects.EquipmentDBO;
 import com.shopfloor.backend.database.objects.OrderDBO;
+import com.shopfloor.backend.olingo.business.generics.ODataExpandHelper;
 import com.shopfloor.backend.olingo.business.generics.ODataService;
 import com.shopfloor.backend.olingo.business.implementations.orders.OrderService;
 import com.shopfloor.backend.olingo.presentation.EdmProvider;
 import org.apache.olingo.commons.api.Constants;
 import org.apache.olingo.commons.api.data.*;
 import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
 import org.springframework.stereotype.Service;
 
 import java.net.URI;
@@ -35,11 +38,11 @@ public class EquipmentService implements ODataService<EquipmentDBO> {
      * Creates an OData Entity from the given EquipmentDBO.
      *
      * @param dbo the EquipmentDBO to be converted into an OData Entity
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option describing which related entities should be expanded
      * @return the created OData Entity
      */
     @Override
-    public Entity createEntityFrom(EquipmentDBO dbo, int expandDepth) {
+    public Entity createEntityFrom(EquipmentDBO dbo, ExpandOption expandOption) {
         Entity equipmentEntity = new Entity();
 
         equipmentEntity.addProperty(new Property(null, "Id", ValueType.PRIMITIVE, dbo.getId()));
@@ -54,7 +57,7 @@ public class EquipmentService implements ODataService<EquipmentDBO> {
 
         equipmentEntity.setId(createEntityId(equipmentEntity, "Id", null));
 
-        addOrdersCollectionNavigationProperty(equipmentEntity, "Orders", dbo.getOrders(), expandDepth);
+        addOrdersCollectionNavigationProperty(equipmentEntity, "Orders", dbo.getOrders(), expandOption);
 
         return equipmentEntity;
     }
@@ -63,15 +66,15 @@ public class EquipmentService implements ODataService<EquipmentDBO> {
      * Creates an OData EntityCollection from the given iterable of EquipmentDBO.
      *
      * @param dbos the iterable of EquipmentDBO to be converted into an OData EntityCollection
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option describing which related entities should be expanded
      * @return the created OData EntityCollection
      */
     @Override
-    public EntityCollection createEntityCollectionFrom(Iterable<EquipmentDBO> dbos, int expandDepth) {
+    public EntityCollection createEntityCollectionFrom(Iterable<EquipmentDBO> dbos, ExpandOption expandOption) {
         EntityCollection entityCollection = new EntityCollection();
 
         for (EquipmentDBO entity : dbos) {
-            entityCollection.getEntities().add(this.createEntityFrom(entity, expandDepth));
+            entityCollection.getEntities().add(this.createEntityFrom(entity, expandOption));
         }
 
         return entityCollection;
@@ -164,9 +167,9 @@ public class EquipmentService implements ODataService<EquipmentDBO> {
      * @param equipmentEntity the equipment entity to which the navigation property is to be added
      * @param navigationName the name of the navigation property
      * @param orderDBOS the list of OrderDBO to be added as navigation property
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option of the given entity, the navigation property is only converted if it is expanded
      */
-    private void addOrdersCollectionNavigationProperty(Entity equipmentEntity, String navigationName, List<OrderDBO> orderDBOS, int expandDepth) {
+    private void addOrdersCollectionNavigationProperty(Entity equipmentEntity, String navigationName, List<OrderDBO> orderDBOS, ExpandOption expandOption) {
         Link navLink = new Link();
         navLink.setTitle(navigationName);
         navLink.setType(Constants.ENTITY_SET_NAVIGATION_LINK_TYPE);
@@ -174,11 +177,12 @@ public class EquipmentService implements ODataService<EquipmentDBO> {
 
         EntityCollection entityCollection = new EntityCollection();
 
-        if (orderDBOS != null && expandDepth > 0) {
+        ExpandItem expandItem = ODataExpandHelper.getExpandItem(expandOption, navigationName);
+        if (orderDBOS != null && expandItem != null) {
             for (OrderDBO orderDBO : orderDBOS) {
                 if (orderDBO != null) {
                     // Convert each OrderDBO to an OData Entity
-                    Entity relatedEntity = new OrderService().createEntityFrom(orderDBO, expandDepth - 1);
+                    Entity relatedEntity = new OrderService().createEntityFrom(orderDBO, expandItem.getExpandOption());
                     entityCollection.getEntities().add(relatedEntity);
                     relatedEntity.setId(createEntityId(equipmentEntity, "Id", navigationName));
                 }
@@ -3,27 +3,41 @@ package com.shopfloor.backend.olingo.business.implementations.orders;
 import com.shopfloor.backend.database.objects.EquipmentDBO;
 import com.shopfloor.backend.database.objects.OrderDBO;
 import com.shopfloor.backend.database.objects.ProductDBO;
+import com.shopfloor.backend.olingo.business.generics.ODataBindingHelper;
+import com.shopfloor.backend.olingo.business.generics.ODataExpandHelper;
 import com.shopfloor.backend.olingo.business.generics.ODataService;
 import com.shopfloor.backend.olingo.business.implementations.equipments.EquipmentService;
 import com.shopfloor.backend.olingo.business.implementations.products.ProductService;
+import com.shopfloor.backend.olingo.database.repositories.EquipmentODataRepository;
+import com.shopfloor.backend.olingo.database.repositories.ProductODataRepository;
 import com.shopfloor.backend.olingo.presentation.EdmProvider;
 import org.apache.olingo.commons.api.Constants;
 import org.apache.olingo.commons.api.data.*;
 import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Service for handling OrderDBO entities.
  * Implements the ODataService interface to provide specific functionality for OrderDBO.
  * This class provides concrete implementations for the abstract methods of the ODataService.
  * For handling OrderDBO entities, the OrderService is used.
+ * Orders support deep inserts and deep updates: inline Equipments are created along with the order,
+ * existing Equipments and the ProductBefore and ProductAfter are bound with "@odata.bind" references.
  *
  * @author David Todorov (https://github.com/david-todorov)
  * */
@@ -32,15 +46,39 @@ public class OrderService implements ODataService<OrderDBO> {
 
     private String ES_ORDERS_NAME = EdmProvider.ES_ORDERS_NAME;
 
+    /**
+     * Repository for resolving the bound ProductBefore and ProductAfter.
+     * Not set on the instances that only convert orders into OData entities.
+     */
+    private ProductODataRepository productRepository;
+
+    /**
+     * Repository for resolving the bound Equipments.
+     * Not set on the instances that only convert orders into OData entities.
+     */
+    private EquipmentODataRepository equipmentRepository;
+
+    /**
+     * Sets the repositories used for resolving the entity references of deep inserts and deep updates.
+     *
+     * @param productRepository the repository for products
+     * @param equipmentRepository the repository for equipments
+     */
+    @Autowired
+    public void setRepositories(ProductODataRepository productRepository, EquipmentODataRepository equipmentRepository) {
+        this.productRepository = productRepository;
+        this.equipmentRepository = equipmentRepository;
+    }
+
     /**
      * Creates an OData Entity from the given OrderDBO.
      *
      * @param dbo the OrderDBO to be converted into an OData Entity
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option describing which related entities should be expanded
      * @return the created OData Entity
      */
     @Override
-    public Entity createEntityFrom(OrderDBO dbo, int expandDepth) {
+    public Entity createEntityFrom(OrderDBO dbo, ExpandOption expandOption) {
         Entity orderEntity = new Entity();
 
         // Add primitive properties
@@ -57,10 +95,10 @@ public class OrderService implements ODataService<OrderDBO> {
         orderEntity.setId(createEntityId(orderEntity, "Id", null));
 
 
-        addProductNavigationProperty(orderEntity, "ProductBefore", dbo.getBeforeProduct(), expandDepth);
-        addProductNavigationProperty(orderEntity, "ProductAfter", dbo.getAfterProduct(), expandDepth);
+        addProductNavigationProperty(orderEntity, "ProductBefore", dbo.getBeforeProduct(), expandOption);
+        addProductNavigationProperty(orderEntity, "ProductAfter", dbo.getAfterProduct(), expandOption);
 
-        addEquipmentsCollectionNavigationProperty(orderEntity, "Equipments", dbo.getEquipment(), expandDepth);
+        addEquipmentsCollectionNavigationProperty(orderEntity, "Equipments", dbo.getEquipment(), expandOption);
         return orderEntity;
     }
 
@@ -68,29 +106,31 @@ public class OrderService implements ODataService<OrderDBO> {
      * Creates an OData EntityCollection from the given iterable of OrderDBO.
      *
      * @param dbos the iterable of OrderDBO to be converted into an OData EntityCollection
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option describing which related entities should be expanded
      * @return the created OData EntityCollection
      */
     @Override
-    public EntityCollection createEntityCollectionFrom(Iterable<OrderDBO> dbos, int expandDepth) {
+    public EntityCollection createEntityCollectionFrom(Iterable<OrderDBO> dbos, ExpandOption expandOption) {
         EntityCollection entityCollection = new EntityCollection();
 
         for (OrderDBO orderDBO : dbos) {
-            entityCollection.getEntities().add(this.createEntityFrom(orderDBO, expandDepth));
+            entityCollection.getEntities().add(this.createEntityFrom(orderDBO, expandOption));
         }
 
         return entityCollection;
     }
 
     /**
-     * Creates an OrderDBO from the given OData Entity.
+     * Creates an OrderDBO from the given OData Entity, together with its inline Equipments and bound entities.
+     * The new Equipments are persisted with the order (cascade), the inserts are sent in JDBC batches.
      *
      * @param entity the OData Entity to be converted into an OrderDBO
      * @param creatorId the ID of the creator
      * @return the created OrderDBO
+     * @throws ODataApplicationException if a bound entity does not exist
      */
     @Override
-    public OrderDBO createDBOFrom(Entity entity, long creatorId) {
+    public OrderDBO createDBOFrom(Entity entity, long creatorId) throws ODataApplicationException {
 
         OrderDBO orderDBO = new OrderDBO();
 
@@ -100,19 +140,23 @@ public class OrderService implements ODataService<OrderDBO> {
         orderDBO.setCreatedBy(creatorId);
         orderDBO.setCreatedAt(Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant()));
 
+        this.updateNavigationPropertiesFrom(orderDBO, entity, creatorId);
+
         return orderDBO;
     }
 
     /**
      * Updates the target OrderDBO with values from the source OData Entity.
+     * The navigation properties contained in the source entity replace the current ones, the others are kept.
      *
      * @param targetDBO the target OrderDBO to be updated
      * @param sourceEntity the source OData Entity containing updated values
      * @param updaterId the ID of the updater
      * @return the updated OrderDBO
+     * @throws ODataApplicationException if a bound entity does not exist
      */
     @Override
-    public OrderDBO updateDBOFrom(OrderDBO targetDBO, Entity sourceEntity, long updaterId) {
+    public OrderDBO updateDBOFrom(OrderDBO targetDBO, Entity sourceEntity, long updaterId) throws ODataApplicationException {
 
         targetDBO.setOrderNumber(this.getPropertyAsString(sourceEntity, "OrderNumber"));
         targetDBO.setName(this.getPropertyAsString(sourceEntity, "Name"));
@@ -121,6 +165,8 @@ public class OrderService implements ODataService<OrderDBO> {
         targetDBO.setUpdatedBy(updaterId);
         targetDBO.setUpdatedAt(Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant()));
 
+        this.updateNavigationPropertiesFrom(targetDBO, sourceEntity, updaterId);
+
         return targetDBO;
     }
 
@@ -137,16 +183,109 @@ public class OrderService implements ODataService<OrderDBO> {
         dbo.clearExecutions();
     }
 
+    /**
+     * Applies the navigation properties contained in the given OData Entity to the order.
+     *
+     * @param orderDBO the order to be updated
+     * @param entity the OData Entity with the inline entities and entity references
+     * @param userId the ID of the user creating the inline entities
+     * @throws ODataApplicationException if a bound entity does not exist
+     */
+    private void updateNavigationPropertiesFrom(OrderDBO orderDBO, Entity entity, long userId) throws ODataApplicationException {
+        if (isNavigationPropertyContained(entity, "ProductBefore")) {
+            orderDBO.setBeforeProduct(this.getBoundProduct(entity, "ProductBefore"));
+        }
+        if (isNavigationPropertyContained(entity, "ProductAfter")) {
+            orderDBO.setAfterProduct(this.getBoundProduct(entity, "ProductAfter"));
+        }
+        if (isNavigationPropertyContained(entity, "Equipments")) {
+            orderDBO.synchronizeEquipmentList(this.getEquipments(entity, "Equipments", userId));
+        }
+    }
+
+    /**
+     * Returns the product bound to the given navigation property.
+     * Products are not created inline, they must exist and be bound with "@odata.bind".
+     *
+     * @param entity the OData Entity with the entity reference
+     * @param navigationName the name of the navigation property
+     * @return the bound product, or null if the reference is null
+     * @throws ODataApplicationException if the product is inline, the reference is invalid or the product does not exist
+     */
+    private ProductDBO getBoundProduct(Entity entity, String navigationName) throws ODataApplicationException {
+        Link inlineLink = entity.getNavigationLink(navigationName);
+        if (inlineLink != null && inlineLink.getInlineEntity() != null) {
+            throw new ODataApplicationException(navigationName + " must be bound with " + navigationName + "@odata.bind",
+                    HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+        }
+
+        Link binding = entity.getNavigationBinding(navigationName);
+        if (binding == null || binding.getBindingLink() == null) {
+            return null;
+        }
+        Long productId = ODataBindingHelper.getReferencedId(binding.getBindingLink(), EdmProvider.ES_PRODUCTS_NAME);
+        return productRepository.findById(productId)
+                .orElseThrow(() -> new ODataApplicationException("Bound entity not found: " + binding.getBindingLink(),
+                        HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH));
+    }
+
+    /**
+     * Returns the equipments of the given navigation property: the bound existing equipments, followed by the new inline equipments.
+     * The bound equipments are read with one query.
+     *
+     * @param entity the OData Entity with the inline entities and entity references
+     * @param navigationName the name of the navigation property
+     * @param userId the ID of the user creating the inline equipments
+     * @return the equipments of the order
+     * @throws ODataApplicationException if a reference is invalid or a bound equipment does not exist
+     */
+    private List<EquipmentDBO> getEquipments(Entity entity, String navigationName, long userId) throws ODataApplicationException {
+        List<EquipmentDBO> equipments = new ArrayList<>();
+
+        Link binding = entity.getNavigationBinding(navigationName);
+        if (binding != null && !binding.getBindingLinks().isEmpty()) {
+            LinkedHashSet<Long> equipmentIds = new LinkedHashSet<>(
+                    ODataBindingHelper.getReferencedIds(binding.getBindingLinks(), EdmProvider.ES_EQUIPMENTS_NAME));
+            List<EquipmentDBO> boundEquipments = equipmentRepository.findAllById(equipmentIds);
+            if (boundEquipments.size() != equipmentIds.size()) {
+                throw new ODataApplicationException("Bound entity not found in " + EdmProvider.ES_EQUIPMENTS_NAME,
+                        HttpStatusCode.BAD_REQUEST.getStatusCode(), Locale.ENGLISH);
+            }
+            equipments.addAll(boundEquipments);
+        }
+
+        Link inlineLink = entity.getNavigationLink(navigationName);
+        if (inlineLink != null && inlineLink.getInlineEntitySet() != null) {
+            EquipmentService equipmentService = new EquipmentService();
+            for (Entity inlineEntity : inlineLink.getInlineEntitySet().getEntities()) {
+                equipments.add(equipmentService.createDBOFrom(inlineEntity, userId));
+            }
+        }
+        return equipments;
+    }
+
+    /**
+     * Checks whether the given OData Entity contains the navigation property, inline or as an entity reference.
+     *
+     * @param entity the OData Entity
+     * @param navigationName the name of the navigation property
+     * @return true if the navigation property is contained
+     */
+    private static boolean isNavigationPropertyContained(Entity entity, String navigationName) {
+        return entity.getNavigationLink(navigationName) != null || entity.getNavigationBinding(navigationName) != null;
+    }
+
     /**
      * Adds a navigation property for a product to the given order entity.
      *
      * @param orderEntity the order entity to which the navigation property is to be added
      * @param navigationName the name of the navigation property
      * @param productDBO the ProductDBO to be added as a navigation property
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option of the given entity, the navigation property is only converted if it is expanded
      */
-    private void addProductNavigationProperty(Entity orderEntity, String navigationName, ProductDBO productDBO, int expandDepth) {
-        if (productDBO != null && expandDepth > 0) {
+    private void addProductNavigationProperty(Entity orderEntity, String navigationName, ProductDBO productDBO, ExpandOption expandOption) {
+        ExpandItem expandItem = ODataExpandHelper.getExpandItem(expandOption, navigationName);
+        if (productDBO != null && expandItem != null) {
             // Create the navigation link and set its title
             Link link = new Link();
             link.setTitle(navigationName);
@@ -155,7 +294,7 @@ public class OrderService implements ODataService<OrderDBO> {
 
             // Let Olingo handle URL building
             // Create the related entity for the navigation link
-            Entity relatedEntity = new ProductService().createEntityFrom(productDBO, expandDepth - 1);
+            Entity relatedEntity = new ProductService().createEntityFrom(productDBO, expandItem.getExpandOption());
 
             relatedEntity.setId(createEntityId(orderEntity, "Id", navigationName));
             // Use Olingo's method to set the inline entity for the navigation link
@@ -172,9 +311,10 @@ public class OrderService implements ODataService<OrderDBO> {
      * @param orderEntity the order entity to which the navigation property is to be added
      * @param navigationName the name of the navigation property
      * @param equipmentDBOS the list of EquipmentDBO to be added as a navigation property
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option of the given entity, the navigation property is only converted if it is expanded
      */
-    private void addEquipmentsCollectionNavigationProperty(Entity orderEntity, String navigationName, List<EquipmentDBO> equipmentDBOS, int expandDepth) {
+    private void addEquipmentsCollectionNavigationProperty(Entity orderEntity, String navigationName, List<EquipmentDBO> equipmentDBOS,
+                                                           ExpandOption expandOption) {
         Link navLink = new Link();
         navLink.setTitle(navigationName);
         navLink.setType(Constants.ENTITY_SET_NAVIGATION_LINK_TYPE);
@@ -182,11 +322,12 @@ public class OrderService implements ODataService<OrderDBO> {
 
         EntityCollection entityCollection = new EntityCollection();
 
-        if (equipmentDBOS != null && expandDepth > 0) {
+        ExpandItem expandItem = ODataExpandHelper.getExpandItem(expandOption, navigationName);
+        if (equipmentDBOS != null && expandItem != null) {
             for (EquipmentDBO equipmentDBO : equipmentDBOS) {
                 if (equipmentDBO != null) {
                     // Convert each OrderDBO to an OData Entity
-                    Entity relatedEntity = new EquipmentService().createEntityFrom(equipmentDBO, expandDepth - 1);
+                    Entity relatedEntity = new EquipmentService().createEntityFrom(equipmentDBO, expandItem.getExpandOption());
                     entityCollection.getEntities().add(relatedEntity);
                     relatedEntity.setId(createEntityId(orderEntity, "Id", navigationName));
                 }
@@ -2,12 +2,15 @@ package com.shopfloor.backend.olingo.business.implementations.products;
 
 import com.shopfloor.backend.database.objects.OrderDBO;
 import com.shopfloor.backend.database.objects.ProductDBO;
+import com.shopfloor.backend.olingo.business.generics.ODataExpandHelper;
 import com.shopfloor.backend.olingo.business.generics.ODataService;
 import com.shopfloor.backend.olingo.business.implementations.orders.OrderService;
 import com.shopfloor.backend.olingo.presentation.EdmProvider;
 import org.apache.olingo.commons.api.Constants;
 import org.apache.olingo.commons.api.data.*;
 import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.server.api.uri.queryoption.ExpandItem;
+import org.apache.olingo.server.api.uri.queryoption.ExpandOption;
 import org.springframework.stereotype.Service;
 
 import java.net.URI;
@@ -34,11 +37,11 @@ public class ProductService implements ODataService<ProductDBO> {
      * Creates an OData Entity from the given ProductDBO.
      *
      * @param dbo the ProductDBO to be converted into an OData Entity
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option describing which related entities should be expanded
      * @return the created OData Entity
      */
     @Override
-    public Entity createEntityFrom(ProductDBO dbo, int expandDepth) {
+    public Entity createEntityFrom(ProductDBO dbo, ExpandOption expandOption) {
         Entity productEntity = new Entity();
 
 
@@ -60,8 +63,8 @@ public class ProductService implements ODataService<ProductDBO> {
         productEntity.setId(createEntityId(productEntity, "Id", null));
 
         // Add navigation properties (e.g., OrdersAsBefore, OrdersAsAfter)
-        addOrdersCollectionNavigationProperty(productEntity, "OrdersAsBefore", dbo.getOrdersAsBeforeProduct(), expandDepth);
-        addOrdersCollectionNavigationProperty(productEntity, "OrdersAsAfter", dbo.getOrdersAsAfterProduct(), expandDepth);
+        addOrdersCollectionNavigationProperty(productEntity, "OrdersAsBefore", dbo.getOrdersAsBeforeProduct(), expandOption);
+        addOrdersCollectionNavigationProperty(productEntity, "OrdersAsAfter", dbo.getOrdersAsAfterProduct(), expandOption);
 
         return productEntity;
     }
@@ -70,15 +73,15 @@ public class ProductService implements ODataService<ProductDBO> {
      * Creates an OData EntityCollection from the given iterable of ProductDBO.
      *
      * @param dbos the iterable of ProductDBO to be converted into an OData EntityCollection
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option describing which related entities should be expanded
      * @return the created OData EntityCollection
      */
     @Override
-    public EntityCollection createEntityCollectionFrom(Iterable<ProductDBO> dbos, int expandDepth) {
+    public EntityCollection createEntityCollectionFrom(Iterable<ProductDBO> dbos, ExpandOption expandOption) {
         EntityCollection productsCollection = new EntityCollection();
 
         for (ProductDBO productDBO : dbos) {
-            productsCollection.getEntities().add(this.createEntityFrom(productDBO, expandDepth));
+            productsCollection.getEntities().add(this.createEntityFrom(productDBO, expandOption));
         }
 
         return productsCollection;
@@ -154,9 +157,9 @@ public class ProductService implements ODataService<ProductDBO> {
      * @param productEntity the product entity to which the navigation property is to be added
      * @param navigationName the name of the navigation property
      * @param orderDBOS the list of OrderDBO to be added as navigation property
-     * @param expandDepth the depth to which related entities should be expanded
+     * @param expandOption the $expand option of the given entity, the navigation property is only converted if it is expanded
      */
-    private void addOrdersCollectionNavigationProperty(Entity productEntity, String navigationName, List<OrderDBO> orderDBOS, int expandDepth) {
+    private void addOrdersCollectionNavigationProperty(Entity productEntity, String navigationName, List<OrderDBO> orderDBOS, ExpandOption expandOption) {
         Link navLink = new Link();
         navLink.setTitle(navigationName);
         navLink.setType(Constants.ENTITY_SET_NAVIGATION_LINK_TYPE);
@@ -164,11 +167,12 @@ public class ProductService implements ODataService<ProductDBO> {
 
         EntityCollection entityCollection = new EntityCollection();
 
-        if (orderDBOS != null && expandDepth > 0) {
+        ExpandItem expandItem = ODataExpandHelper.getExpandItem(expandOption, navigationName);
+        if (orderDBOS != null && expandItem != null) {
             for (OrderDBO orderDBO : orderDBOS) {
                 if (orderDBO != null) {
                     // Convert each OrderDBO to an OData Entity
-                    Entity relatedEntity = new OrderService().createEntityFrom(orderDBO, expandDepth - 1);
+                    Entity relatedEntity = new OrderService().createEntityFrom(orderDBO, expandItem.getExpandOption());
                     relatedEntity.setId(createEntityId(relatedEntity, "Id", navigationName));
                     entityCollection.getEntities().add(relatedEntity);
                 }
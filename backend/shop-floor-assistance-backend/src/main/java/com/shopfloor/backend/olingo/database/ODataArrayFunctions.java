@@ -0,0 +1,53 @@
+package com.shopfloor.backend.olingo.database;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.query.ReturnableType;
+import org.hibernate.query.sqm.function.AbstractSqmSelfRenderingFunctionDescriptor;
+import org.hibernate.query.sqm.produce.function.StandardArgumentsValidators;
+import org.hibernate.query.sqm.produce.function.StandardFunctionArgumentTypeResolvers;
+import org.hibernate.query.sqm.produce.function.StandardFunctionReturnTypeResolvers;
+import org.hibernate.sql.ast.SqlAstNodeRenderingMode;
+import org.hibernate.sql.ast.SqlAstTranslator;
+import org.hibernate.sql.ast.spi.SqlAppender;
+import org.hibernate.sql.ast.tree.SqlAstNode;
+import org.hibernate.type.StandardBasicTypes;
+
+import java.util.List;
+
+/**
+ * Registers the HQL function used for large $filter "in" lists.
+ * - equals_any(value, array) - true if the value equals one of the elements of the array
+ * It is rendered as "value = any(?)" with the whole list bound as one array parameter,
+ * so the SQL text does not depend on the length of the list and PostgreSQL reuses one plan,
+ * the comparison is answered by the index of the column like an "in" list. H2 understands the same syntax.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class ODataArrayFunctions implements FunctionContributor {
+
+    /**
+     * Name of the function comparing a value with the elements of an array.
+     */
+    public static final String EQUALS_ANY = "equals_any";
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        functionContributions.getFunctionRegistry().register(EQUALS_ANY, new AbstractSqmSelfRenderingFunctionDescriptor(
+                EQUALS_ANY,
+                StandardArgumentsValidators.exactly(2),
+                StandardFunctionReturnTypeResolvers.invariant(
+                        functionContributions.getTypeConfiguration().getBasicTypeRegistry().resolve(StandardBasicTypes.BOOLEAN)),
+                StandardFunctionArgumentTypeResolvers.NULL) {
+            @Override
+            public void render(SqlAppender sqlAppender, List<? extends SqlAstNode> arguments,
+                               ReturnableType<?> returnType, SqlAstTranslator<?> walker) {
+                sqlAppender.appendSql('(');
+                walker.render(arguments.get(0), SqlAstNodeRenderingMode.DEFAULT);
+                sqlAppender.appendSql(" = any(");
+                walker.render(arguments.get(1), SqlAstNodeRenderingMode.DEFAULT);
+                sqlAppender.appendSql("))");
+            }
+        });
+    }
+}
@@ -0,0 +1,362 @@
+package com.shopfloor.backend.olingo.database;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.metamodel.ManagedType;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.jpa.SpecHints;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.BeanUtils;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.jpa.repository.support.JpaEntityInformation;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Base class of all Spring Data repositories, registered in the ShopFloorAssistanceBackendApplication.
+ * Adds slice queries to the standard SimpleJpaRepository, which read a page without the count query of a Page,
+ * projection queries, which read only the selected columns and fill them into otherwise empty entity instances,
+ * streaming queries which read large results row by row with a JDBC fetch size,
+ * and count estimates read from the planner statistics. The methods are exposed through the ODataRepository interface,
+ * the other repositories behave exactly like SimpleJpaRepository.
+ * The entities returned by the projection queries are not managed by the persistence context and must only be read.
+ *
+ * @param <T> the type of the entity
+ * @param <ID> the type of the identifier
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class ODataBaseRepository<T, ID extends Serializable> extends SimpleJpaRepository<T, ID> {
+
+    private static final String POSTGRESQL_ESTIMATE_QUERY =
+            "SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE oid = to_regclass(:table)";
+    private static final String H2_ESTIMATE_QUERY =
+            "SELECT ROW_COUNT_ESTIMATE FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = SCHEMA() AND UPPER(TABLE_NAME) = UPPER(:table)";
+
+    /**
+     * Entity manager used for the projection queries.
+     */
+    private final EntityManager entityManager;
+
+    /**
+     * Fields of the entity by attribute name, resolved once from the JPA metamodel.
+     */
+    private final Map<String, Field> fields = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs the repository, called by Spring Data for every repository interface.
+     *
+     * @param entityInformation the information about the entity
+     * @param entityManager the entity manager
+     */
+    public ODataBaseRepository(JpaEntityInformation<T, ?> entityInformation, EntityManager entityManager) {
+        super(entityInformation, entityManager);
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Returns a slice of the entities matching the specification.
+     * Unlike findAll(Specification, Pageable) no count query is issued, one more row than the page size
+     * is read instead to find out whether a next slice exists.
+     *
+     * @param specification the specification for filtering, ordering and fetching, may be null
+     * @param pageable the pagination, its sort is applied as well
+     * @return the slice of entities
+     */
+    public Slice<T> findSlice(Specification<T> specification, Pageable pageable) {
+        TypedQuery<T> query = getQuery(specification, pageable.getSort());
+        return readSlice(query, pageable, entity -> entity);
+    }
+
+    /**
+     * Returns a slice of the entities matching the specification, reading only the given attributes.
+     * No count query is issued, one more row than the page size is read instead.
+     *
+     * @param specification the specification for filtering and ordering, may be null
+     * @param pageable the pagination, its sort is applied as well
+     * @param attributes the basic attributes to read, e.g. "id", "orderNumber"
+     * @return the slice of partially filled entities
+     */
+    public Slice<T> findSliceSelected(Specification<T> specification, Pageable pageable, List<String> attributes) {
+        TypedQuery<Tuple> query = createSelectedQuery(specification, pageable, attributes);
+        return readSlice(query, pageable, tuple -> toEntity(tuple, attributes));
+    }
+
+    /**
+     * Returns the single entity matching the specification, reading only the given attributes.
+     *
+     * @param specification the specification identifying the entity
+     * @param attributes the basic attributes to read, e.g. "id", "orderNumber"
+     * @return the partially filled entity, or empty if no entity matches
+     */
+    public Optional<T> findOneSelected(Specification<T> specification, List<String> attributes) {
+        TypedQuery<Tuple> query = createSelectedQuery(specification, Pageable.unpaged(), attributes);
+        query.setMaxResults(2);
+
+        List<Tuple> tuples = query.getResultList();
+        if (tuples.size() > 1) {
+            throw new IncorrectResultSizeDataAccessException(1, tuples.size());
+        }
+        return tuples.stream().findFirst().map(tuple -> toEntity(tuple, attributes));
+    }
+
+    /**
+     * Runs a tuple query over the entities matching the specification, e.g. an aggregation.
+     *
+     * @param specification the specification for filtering, may be null
+     * @param projection the projection setting the selections, grouping and ordering
+     * @param pageable the pagination applied to the tuples
+     * @return the tuples
+     */
+    public List<Tuple> findTuples(Specification<T> specification, TupleProjection<T> projection, Pageable pageable) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+        Root<T> root = query.from(getDomainClass());
+
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, criteriaBuilder);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+        projection.apply(root, query, criteriaBuilder);
+
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (pageable.isPaged()) {
+            typedQuery.setFirstResult((int) pageable.getOffset());
+            typedQuery.setMaxResults(pageable.getPageSize());
+        }
+        return typedQuery.getResultList();
+    }
+
+    /**
+     * Streams the entities matching the specification, reading the rows from a cursor.
+     * Must be called inside a transaction and the stream must be closed after use.
+     *
+     * @param specification the specification for filtering, ordering and fetching, may be null
+     * @param pageable the pagination, its sort is applied as well
+     * @param fetchSize the number of rows the JDBC driver reads per round trip
+     * @return the stream of read-only entities
+     */
+    public Stream<T> streamAll(Specification<T> specification, Pageable pageable, int fetchSize) {
+        TypedQuery<T> query = getQuery(specification, pageable.getSort());
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        return query.getResultStream();
+    }
+
+    /**
+     * Streams the entities matching the specification, reading only the given attributes from a cursor.
+     * Must be called inside a transaction and the stream must be closed after use.
+     *
+     * @param specification the specification for filtering and ordering, may be null
+     * @param pageable the pagination, its sort is applied as well
+     * @param attributes the basic attributes to read, e.g. "id", "orderNumber"
+     * @param fetchSize the number of rows the JDBC driver reads per round trip
+     * @return the stream of partially filled entities
+     */
+    public Stream<T> streamAllSelected(Specification<T> specification, Pageable pageable, List<String> attributes, int fetchSize) {
+        TypedQuery<Tuple> query = createSelectedQuery(specification, pageable, attributes);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize);
+        return query.getResultStream().map(tuple -> toEntity(tuple, attributes));
+    }
+
+    /**
+     * Returns the number of entities as estimated by the planner statistics of the database,
+     * without scanning the table. Supported on PostgreSQL (pg_class.reltuples) and H2 (ROW_COUNT_ESTIMATE).
+     *
+     * @return the estimated number of entities, or empty if the database has no estimate
+     */
+    public Optional<Long> estimateCount() {
+        String estimateQuery = getEstimateQuery();
+        if (estimateQuery == null) {
+            return Optional.empty();
+        }
+
+        List<?> result = entityManager.createNativeQuery(estimateQuery)
+                .setParameter("table", getTableName())
+                .getResultList();
+        if (result.isEmpty() || result.get(0) == null) {
+            return Optional.empty();
+        }
+
+        // PostgreSQL reports -1 for tables which were never analyzed
+        long estimate = ((Number) result.get(0)).longValue();
+        return estimate >= 0 ? Optional.of(estimate) : Optional.empty();
+    }
+
+    /**
+     * Removes the entity from the persistence context, so it can be garbage collected while streaming.
+     * Entities which are not managed are ignored.
+     *
+     * @param entity the entity to detach
+     */
+    public void detach(T entity) {
+        if (entityManager.contains(entity)) {
+            entityManager.detach(entity);
+        }
+    }
+
+    /**
+     * Sets the timeout of the queries of the current transaction, the database cancels a query running longer.
+     * The timeout is a property of the session of the transaction, so it applies to the queries created afterwards.
+     *
+     * @param timeout the statement timeout
+     */
+    public void setStatementTimeout(Duration timeout) {
+        entityManager.setProperty(SpecHints.HINT_SPEC_QUERY_TIMEOUT, (int) Math.min(timeout.toMillis(), Integer.MAX_VALUE));
+    }
+
+    /**
+     * Returns the native query reading the row estimate of a table of the current database.
+     *
+     * @return the native query with the parameter "table", or null if the database is not supported
+     */
+    private String getEstimateQuery() {
+        Dialect dialect = getSessionFactory().getJdbcServices().getDialect();
+        if (dialect instanceof PostgreSQLDialect) {
+            return POSTGRESQL_ESTIMATE_QUERY;
+        } else if (dialect instanceof H2Dialect) {
+            return H2_ESTIMATE_QUERY;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name of the table the entity is mapped to.
+     *
+     * @return the table name
+     */
+    private String getTableName() {
+        EntityPersister persister = getSessionFactory().getMappingMetamodel().getEntityDescriptor(getDomainClass());
+        return ((AbstractEntityPersister) persister).getTableName();
+    }
+
+    private SessionFactoryImplementor getSessionFactory() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+    }
+
+    /**
+     * Runs the query for a slice, reading one more row than the page size to find out whether a next slice exists.
+     *
+     * @param query the query to run
+     * @param pageable the pagination
+     * @param converter converts the rows to entities
+     * @param <R> the type of the rows
+     * @return the slice of entities
+     */
+    private <R> Slice<T> readSlice(TypedQuery<R> query, Pageable pageable, Function<R, T> converter) {
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(query.getResultList().stream().map(converter).toList(), pageable, false);
+        }
+
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize() + 1);
+        List<R> rows = query.getResultList();
+
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        List<T> content = new ArrayList<>();
+        for (R row : hasNext ? rows.subList(0, pageable.getPageSize()) : rows) {
+            content.add(converter.apply(row));
+        }
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    /**
+     * Creates a tuple query selecting the given attributes.
+     *
+     * @param specification the specification for filtering and ordering, may be null
+     * @param pageable the pagination whose sort should be applied
+     * @param attributes the attributes to select
+     * @return the created query
+     */
+    private TypedQuery<Tuple> createSelectedQuery(Specification<T> specification, Pageable pageable, List<String> attributes) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+        Root<T> root = query.from(getDomainClass());
+
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, criteriaBuilder);
+            if (predicate != null) {
+                query.where(predicate);
+            }
+        }
+
+        List<Selection<?>> selections = new ArrayList<>();
+        for (String attribute : attributes) {
+            selections.add(root.get(attribute).alias(attribute));
+        }
+        query.multiselect(selections);
+
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, criteriaBuilder));
+        }
+
+        return entityManager.createQuery(query);
+    }
+
+    /**
+     * Creates an entity instance and fills the selected attributes from the tuple.
+     * The fields are written directly, because identifiers and similar attributes have no setters.
+     *
+     * @param tuple the row read from the database
+     * @param attributes the selected attributes
+     * @return the partially filled entity
+     */
+    private T toEntity(Tuple tuple, List<String> attributes) {
+        T entity = BeanUtils.instantiateClass(getDomainClass());
+        for (String attribute : attributes) {
+            ReflectionUtils.setField(getField(attribute), entity, tuple.get(attribute));
+        }
+        return entity;
+    }
+
+    /**
+     * Returns the accessible field of the given attribute.
+     *
+     * @param attribute the name of the attribute
+     * @return the field backing the attribute
+     */
+    private Field getField(String attribute) {
+        return fields.computeIfAbsent(attribute, name -> {
+            ManagedType<T> type = entityManager.getMetamodel().managedType(getDomainClass());
+            Field field = (Field) type.getAttribute(name).getJavaMember();
+            ReflectionUtils.makeAccessible(field);
+            return field;
+        });
+    }
+}
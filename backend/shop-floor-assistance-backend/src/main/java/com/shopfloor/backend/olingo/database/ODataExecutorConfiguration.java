@@ -0,0 +1,100 @@
+package com.shopfloor.backend.olingo.database;
+
+import com.shopfloor.backend.concurrency.Bulkhead;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Configuration of the executors running parts of OData requests in parallel.
+ * The $count queries of collection reads run on their own thread and database connection while the page is read,
+ * so a request with $count=true takes about as long as the slower of both queries instead of their sum.
+ * The independent GET requests of a $batch request are read in parallel as well.
+ * Requests sent with "Prefer: respond-async" run in the background after the client was answered.
+ * The pools are bounded, when a pool is saturated the work runs on the request thread again.
+ * The tasks run inside the bulkhead of the request that handed them over (Bulkhead.propagate),
+ * so their connections count toward the connection budget of the OData API.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Configuration
+public class ODataExecutorConfiguration {
+
+    /**
+     * Name of the executor bean running the count queries.
+     */
+    public static final String COUNT_EXECUTOR = "odataCountExecutor";
+
+    /**
+     * Name of the executor bean running the GET requests of $batch requests.
+     */
+    public static final String BATCH_EXECUTOR = "odataBatchExecutor";
+
+    /**
+     * Name of the executor bean running the requests sent with "Prefer: respond-async".
+     */
+    public static final String ASYNC_EXECUTOR = "odataAsyncExecutor";
+
+    /**
+     * Creates the executor running the count queries.
+     * Every running count holds a database connection, so the pool size has to stay well below the connection pool size.
+     *
+     * @param poolSize the maximum number of concurrently running count queries
+     * @param queueCapacity the maximum number of waiting count queries
+     * @return the executor
+     */
+    @Bean(name = COUNT_EXECUTOR)
+    public ThreadPoolTaskExecutor odataCountExecutor(@Value("${odata.count.pool-size:4}") int poolSize,
+                                                     @Value("${odata.count.queue-capacity:50}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("odata-count-");
+        executor.setTaskDecorator(Bulkhead::propagate);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * Creates the executor running the GET requests of $batch requests.
+     * Every running request holds a database connection, so the pool size has to stay well below the connection pool size.
+     *
+     * @param poolSize the maximum number of concurrently running requests
+     * @param queueCapacity the maximum number of waiting requests
+     * @return the executor
+     */
+    @Bean(name = BATCH_EXECUTOR)
+    public ThreadPoolTaskExecutor odataBatchExecutor(@Value("${odata.batch.pool-size:4}") int poolSize,
+                                                     @Value("${odata.batch.queue-capacity:50}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("odata-batch-");
+        executor.setTaskDecorator(Bulkhead::propagate);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /**
+     * Creates the executor running the requests sent with "Prefer: respond-async".
+     * These are the heavy requests, the pool is kept small so they can not take over the connection pool.
+     *
+     * @param poolSize the maximum number of concurrently running requests
+     * @param queueCapacity the maximum number of waiting requests
+     * @return the executor
+     */
+    @Bean(name = ASYNC_EXECUTOR)
+    public ThreadPoolTaskExecutor odataAsyncExecutor(@Value("${odata.async.pool-size:2}") int poolSize,
+                                                     @Value("${odata.async.queue-capacity:20}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("odata-async-");
+        executor.setTaskDecorator(Bulkhead::propagate);
+        return executor;
+    }
+}
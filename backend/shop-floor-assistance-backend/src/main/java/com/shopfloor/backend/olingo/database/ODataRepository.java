@@ -1,13 +1,23 @@
 package com.shopfloor.backend.olingo.database;
 
+import jakarta.persistence.Tuple;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.repository.NoRepositoryBean;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 /**
  * A generic repository interface for OData entities.
  * Extends the JpaRepository for basic CRUD operations
  * and the JpaSpecificationExecutor for querying the database with Specifications.
+ * The slice, projection and streaming methods are implemented by the ODataBaseRepository, the base class of all repositories.
  * @NoRepositoryBean annotation is used to exclude this interface from being picked up by Spring Data JPA.
  *
  * @param <T> the type of the entity
@@ -15,4 +25,93 @@ import org.springframework.data.repository.NoRepositoryBean;
  */
 @NoRepositoryBean
 public interface ODataRepository<T> extends JpaRepository<T, Long>, JpaSpecificationExecutor<T> {
+
+    /**
+     * Returns a slice of the entities matching the specification.
+     * Used for collection reads instead of findAll(Specification, Pageable), which issues a count query for every Page.
+     * Exactly one query is issued, it reads one more row than the page size to find out whether a next slice exists.
+     *
+     * @param specification the specification for filtering, ordering and fetching, may be null
+     * @param pageable the pagination
+     * @return the slice of entities
+     */
+    Slice<T> findSlice(Specification<T> specification, Pageable pageable);
+
+    /**
+     * Returns a slice of the entities matching the specification, reading only the given attributes.
+     * Used for $select, so unselected columns are never read from the database.
+     *
+     * @param specification the specification for filtering and ordering, may be null
+     * @param pageable the pagination
+     * @param attributes the basic attributes to read, e.g. "id", "orderNumber"
+     * @return the slice of partially filled, unmanaged entities
+     */
+    Slice<T> findSliceSelected(Specification<T> specification, Pageable pageable, List<String> attributes);
+
+    /**
+     * Returns the single entity matching the specification, reading only the given attributes.
+     *
+     * @param specification the specification identifying the entity
+     * @param attributes the basic attributes to read, e.g. "id", "orderNumber"
+     * @return the partially filled, unmanaged entity, or empty if no entity matches
+     */
+    Optional<T> findOneSelected(Specification<T> specification, List<String> attributes);
+
+    /**
+     * Runs a tuple query over the entities matching the specification.
+     * Used for $apply, so only the aggregated rows are read from the database.
+     *
+     * @param specification the specification for filtering, may be null
+     * @param projection the projection setting the selections, grouping and ordering
+     * @param pageable the pagination applied to the tuples
+     * @return the tuples
+     */
+    List<Tuple> findTuples(Specification<T> specification, TupleProjection<T> projection, Pageable pageable);
+
+    /**
+     * Streams the entities matching the specification, reading the rows from a cursor.
+     * Used for large results, which should not be loaded into memory at once.
+     * Must be called inside a transaction and the stream must be closed after use.
+     *
+     * @param specification the specification for filtering, ordering and fetching, may be null
+     * @param pageable the pagination
+     * @param fetchSize the number of rows the JDBC driver reads per round trip
+     * @return the stream of read-only entities
+     */
+    Stream<T> streamAll(Specification<T> specification, Pageable pageable, int fetchSize);
+
+    /**
+     * Streams the entities matching the specification, reading only the given attributes from a cursor.
+     * Must be called inside a transaction and the stream must be closed after use.
+     *
+     * @param specification the specification for filtering and ordering, may be null
+     * @param pageable the pagination
+     * @param attributes the basic attributes to read, e.g. "id", "orderNumber"
+     * @param fetchSize the number of rows the JDBC driver reads per round trip
+     * @return the stream of partially filled, unmanaged entities
+     */
+    Stream<T> streamAllSelected(Specification<T> specification, Pageable pageable, List<String> attributes, int fetchSize);
+
+    /**
+     * Returns the number of entities as estimated by the planner statistics of the database.
+     * Used for $count when the client prefers an estimated count, reading the estimate does not scan the table.
+     *
+     * @return the estimated number of entities, or empty if the database has no estimate
+     */
+    Optional<Long> estimateCount();
+
+    /**
+     * Sets the timeout of the queries of the current transaction, the database cancels a query running longer.
+     * Must be called inside a transaction, before the queries are created.
+     *
+     * @param timeout the statement timeout
+     */
+    void setStatementTimeout(Duration timeout);
+
+    /**
+     * Removes the entity from the persistence context, so it can be garbage collected while streaming.
+     *
+     * @param entity the entity to detach
+     */
+    void detach(T entity);
 }
@@ -0,0 +1,163 @@
+package com.shopfloor.backend.olingo.database;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.query.ReturnableType;
+import org.hibernate.query.sqm.function.AbstractSqmSelfRenderingFunctionDescriptor;
+import org.hibernate.query.sqm.produce.function.StandardArgumentsValidators;
+import org.hibernate.query.sqm.produce.function.StandardFunctionArgumentTypeResolvers;
+import org.hibernate.query.sqm.produce.function.StandardFunctionReturnTypeResolvers;
+import org.hibernate.sql.ast.SqlAstNodeRenderingMode;
+import org.hibernate.sql.ast.SqlAstTranslator;
+import org.hibernate.sql.ast.spi.SqlAppender;
+import org.hibernate.sql.ast.tree.SqlAstNode;
+import org.hibernate.sql.ast.tree.expression.ColumnReference;
+import org.hibernate.sql.ast.tree.expression.Expression;
+import org.hibernate.type.BasicTypeRegistry;
+import org.hibernate.type.StandardBasicTypes;
+
+import java.util.List;
+
+/**
+ * Registers the HQL functions used by the OData $search option.
+ * - fts_match(id, term, field...) - true if the entity matches the search term
+ * - fts_rank(id, terms) - the relevance of the entity for the search terms, higher is better
+ * On PostgreSQL both functions work on the generated "search_vector" column of the entity table
+ * (see schema-postgresql.sql), which is indexed by a GIN index, the fields are not needed there.
+ * The first argument only names the table, its column qualifier is used for the search vector.
+ * Other databases fall back to a case-insensitive LIKE over the fields and do not rank.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class ODataSearchFunctions implements FunctionContributor {
+
+    /**
+     * Name of the matching function.
+     */
+    public static final String MATCH = "fts_match";
+
+    /**
+     * Name of the ranking function.
+     */
+    public static final String RANK = "fts_rank";
+
+    /**
+     * Name of the generated tsvector column of the searchable tables.
+     */
+    private static final String SEARCH_VECTOR = "search_vector";
+
+    /**
+     * Text search configuration used for the search vector and the queries, it must match schema-postgresql.sql.
+     */
+    private static final String CONFIGURATION = "'simple'";
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        boolean textSearch = supportsTextSearch(functionContributions.getDialect());
+        BasicTypeRegistry basicTypeRegistry = functionContributions.getTypeConfiguration().getBasicTypeRegistry();
+
+        functionContributions.getFunctionRegistry().register(MATCH, new AbstractSqmSelfRenderingFunctionDescriptor(
+                MATCH,
+                StandardArgumentsValidators.min(3),
+                StandardFunctionReturnTypeResolvers.invariant(basicTypeRegistry.resolve(StandardBasicTypes.BOOLEAN)),
+                StandardFunctionArgumentTypeResolvers.NULL) {
+            @Override
+            public void render(SqlAppender sqlAppender, List<? extends SqlAstNode> arguments,
+                               ReturnableType<?> returnType, SqlAstTranslator<?> walker) {
+                if (textSearch) {
+                    renderMatch(sqlAppender, arguments, walker);
+                } else {
+                    renderLikeMatch(sqlAppender, arguments, walker);
+                }
+            }
+        });
+
+        functionContributions.getFunctionRegistry().register(RANK, new AbstractSqmSelfRenderingFunctionDescriptor(
+                RANK,
+                StandardArgumentsValidators.exactly(2),
+                StandardFunctionReturnTypeResolvers.invariant(basicTypeRegistry.resolve(StandardBasicTypes.DOUBLE)),
+                StandardFunctionArgumentTypeResolvers.NULL) {
+            @Override
+            public void render(SqlAppender sqlAppender, List<? extends SqlAstNode> arguments,
+                               ReturnableType<?> returnType, SqlAstTranslator<?> walker) {
+                if (textSearch) {
+                    renderRank(sqlAppender, arguments, walker);
+                } else {
+                    // an expression, a plain 0 in ORDER BY would name the first column
+                    sqlAppender.appendSql("cast(0 as double precision)");
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks whether the search vector columns exist on the given database.
+     *
+     * @param dialect the dialect of the database
+     * @return true for PostgreSQL
+     */
+    private static boolean supportsTextSearch(Dialect dialect) {
+        return dialect instanceof PostgreSQLDialect;
+    }
+
+    /**
+     * Renders "search_vector @@ plainto_tsquery(term)", which is answered by the GIN index.
+     */
+    private static void renderMatch(SqlAppender sqlAppender, List<? extends SqlAstNode> arguments, SqlAstTranslator<?> walker) {
+        sqlAppender.appendSql('(');
+        renderSearchVector(sqlAppender, arguments.get(0));
+        sqlAppender.appendSql(" @@ plainto_tsquery(" + CONFIGURATION + ", ");
+        walker.render(arguments.get(1), SqlAstNodeRenderingMode.DEFAULT);
+        sqlAppender.appendSql("))");
+    }
+
+    /**
+     * Renders "lower(field) like '%term%'" for every field, combined with OR.
+     */
+    private static void renderLikeMatch(SqlAppender sqlAppender, List<? extends SqlAstNode> arguments, SqlAstTranslator<?> walker) {
+        sqlAppender.appendSql('(');
+        for (int i = 2; i < arguments.size(); i++) {
+            if (i > 2) {
+                sqlAppender.appendSql(" or ");
+            }
+            sqlAppender.appendSql("lower(coalesce(");
+            walker.render(arguments.get(i), SqlAstNodeRenderingMode.DEFAULT);
+            sqlAppender.appendSql(", '')) like ('%' || lower(");
+            walker.render(arguments.get(1), SqlAstNodeRenderingMode.DEFAULT);
+            sqlAppender.appendSql(") || '%')");
+        }
+        sqlAppender.appendSql(')');
+    }
+
+    /**
+     * Renders "ts_rank(search_vector, plainto_tsquery(terms))".
+     */
+    private static void renderRank(SqlAppender sqlAppender, List<? extends SqlAstNode> arguments, SqlAstTranslator<?> walker) {
+        sqlAppender.appendSql("ts_rank(");
+        renderSearchVector(sqlAppender, arguments.get(0));
+        sqlAppender.appendSql(", plainto_tsquery(" + CONFIGURATION + ", ");
+        walker.render(arguments.get(1), SqlAstNodeRenderingMode.DEFAULT);
+        sqlAppender.appendSql("))");
+    }
+
+    /**
+     * Renders the search vector column of the table the given column belongs to.
+     *
+     * @param sqlAppender the SQL appender
+     * @param column the ID column of the entity
+     * @throws IllegalArgumentException if the argument is not a column
+     */
+    private static void renderSearchVector(SqlAppender sqlAppender, SqlAstNode column) {
+        ColumnReference columnReference = column instanceof Expression ? ((Expression) column).getColumnReference() : null;
+        if (columnReference == null) {
+            throw new IllegalArgumentException("The first argument of a search function must be a column");
+        }
+        if (columnReference.getQualifier() != null) {
+            sqlAppender.appendSql(columnReference.getQualifier());
+            sqlAppender.appendSql('.');
+        }
+        sqlAppender.appendSql(SEARCH_VECTOR);
+    }
+}
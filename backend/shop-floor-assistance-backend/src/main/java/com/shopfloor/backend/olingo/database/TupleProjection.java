@@ -0,0 +1,27 @@
+package com.shopfloor.backend.olingo.database;
+
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+
+/**
+ * Describes what a tuple query selects, e.g. the groups and aggregates of $apply.
+ * Applied by ODataBaseRepository.findTuples after the specification restricted the rows,
+ * it sets the selections and may add grouping and ordering to the query.
+ *
+ * @param <T> the type of the entity
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@FunctionalInterface
+public interface TupleProjection<T> {
+
+    /**
+     * Applies the selections to the query.
+     *
+     * @param root the root type in the from clause
+     * @param query the tuple query
+     * @param criteriaBuilder the criteria builder used to construct the selections
+     */
+    void apply(Root<T> root, CriteriaQuery<Tuple> query, CriteriaBuilder criteriaBuilder);
+}
@@ -0,0 +1,665 @@
+package com.shopfloor.backend.olingo.presentation;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.shopfloor.backend.olingo.database.ODataExecutorConfiguration;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ODataServerError;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.batch.BatchFacade;
+import org.apache.olingo.server.api.deserializer.batch.BatchOptions;
+import org.apache.olingo.server.api.deserializer.batch.BatchRequestPart;
+import org.apache.olingo.server.api.deserializer.batch.ODataResponsePart;
+import org.apache.olingo.server.api.processor.BatchProcessor;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * Processor for $batch requests, in the multipart format of OData 4.0 and the JSON format of OData 4.01.
+ * Every part is dispatched to the handler of its entity set, like a request of its own.
+ * - A changeset (JSON: atomicity group) runs in one transaction, the entity processors join it.
+ *   If one of its requests fails, the transaction is rolled back and only the error is returned for the changeset.
+ *   Requests of a changeset can refer to an entity created before in the same changeset with "$Content-ID".
+ * - Consecutive GET requests outside of changesets are independent and are read in parallel on the batch executor.
+ *   Every other part waits until the reads before it have finished, so the parts still observe each other in order.
+ *   A read the executor has not started yet when it is waited for is read on the calling thread instead,
+ *   a started read is waited for at most odata.batch.read-timeout, then it is answered with 503 Service Unavailable.
+ * Olingo only parses the multipart format, the JSON format is parsed here and answered by processJsonBatch.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+public class ODataBatchProcessor implements BatchProcessor {
+
+    /**
+     * Prefix of a reference to an entity created in the same changeset, followed by its Content-ID.
+     */
+    private static final String REFERENCE_PREFIX = "/$";
+
+    /**
+     * Mapper used for reading and writing the JSON format.
+     */
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Processes a request with a handler of an entity set, with a handler of the service root for null or unknown names.
+     * Set by the ODataHandlerRegistry.
+     */
+    private BiFunction<String, ODataRequest, ODataResponse> dispatcher;
+
+    /**
+     * Transaction every changeset runs in.
+     */
+    private final TransactionTemplate changeSetTransaction;
+
+    /**
+     * Executor reading the independent GET requests in parallel.
+     */
+    private final Executor executor;
+
+    /**
+     * The longest wait for a read started on the executor.
+     */
+    private final Duration readTimeout;
+
+    /**
+     * OData instance used for parsing and serializing the batch.
+     */
+    private OData odata;
+
+    /**
+     * Constructs the batch processor.
+     *
+     * @param transactionManager the transaction manager every changeset runs in
+     * @param executor the executor reading the independent GET requests in parallel
+     * @param readTimeout the longest wait for a read started on the executor
+     */
+    public ODataBatchProcessor(PlatformTransactionManager transactionManager,
+                               @Qualifier(ODataExecutorConfiguration.BATCH_EXECUTOR) Executor executor,
+                               @Value("${odata.batch.read-timeout:60s}") Duration readTimeout) {
+        this.changeSetTransaction = new TransactionTemplate(transactionManager);
+        this.executor = executor;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Sets the dispatcher processing the parts of a batch.
+     *
+     * @param dispatcher processes a request with a handler of an entity set, of the service root for null or unknown names
+     */
+    public void setDispatcher(BiFunction<String, ODataRequest, ODataResponse> dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Initializes the processor with the provided OData instance.
+     *
+     * @param oData the OData instance used for parsing and serializing the batch
+     * @param serviceMetadata the service metadata, not needed for batches
+     */
+    @Override
+    public void init(OData oData, ServiceMetadata serviceMetadata) {
+        this.odata = oData;
+    }
+
+    /**
+     * Processes a multipart $batch request and writes the multipart response.
+     *
+     * @param facade the batch facade of Olingo, only used for reading the boundary
+     * @param request the OData request containing the batch
+     * @param response the OData response
+     * @throws ODataApplicationException if an OData application error occurs
+     * @throws ODataLibraryException if the batch can not be parsed or serialized
+     */
+    @Override
+    public void processBatch(BatchFacade facade, ODataRequest request, ODataResponse response)
+            throws ODataApplicationException, ODataLibraryException {
+
+        String boundary = facade.extractBoundaryFromContentType(request.getHeader(HttpHeader.CONTENT_TYPE));
+        BatchOptions options = BatchOptions.with()
+                .rawBaseUri(request.getRawBaseUri())
+                .rawServiceResolutionUri(request.getRawServiceResolutionUri())
+                .build();
+        List<BatchRequestPart> requestParts = odata.createFixedFormatDeserializer().parseBatchRequest(request.getBody(), boundary, options);
+
+        List<ODataResponsePart> responseParts = execute(requestParts);
+
+        String responseBoundary = "batch_" + UUID.randomUUID();
+        response.setContent(odata.createFixedFormatSerializer().batchResponse(responseParts, responseBoundary));
+        response.setHeader(HttpHeader.CONTENT_TYPE, ContentType.MULTIPART_MIXED + ";boundary=" + responseBoundary);
+        response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+    }
+
+    /**
+     * Processes a changeset in one transaction.
+     *
+     * @param facade the batch facade of Olingo, not used
+     * @param requests the requests of the changeset
+     * @return the responses of all requests, or only the error response if a request failed
+     */
+    @Override
+    public ODataResponsePart processChangeSet(BatchFacade facade, List<ODataRequest> requests) {
+        return executeChangeSet(requests);
+    }
+
+    /**
+     * Processes a $batch request in the JSON format and writes the JSON response.
+     * Requests with the same atomicityGroup must be adjacent, they are processed like a changeset.
+     *
+     * @param servletRequest the servlet request containing the batch
+     * @param servletResponse the servlet response
+     * @throws IOException if the request can not be read or the response can not be written
+     */
+    public void processJsonBatch(HttpServletRequest servletRequest, HttpServletResponse servletResponse) throws IOException {
+        String rawBaseUri = servletRequest.getRequestURL().toString();
+        rawBaseUri = rawBaseUri.substring(0, rawBaseUri.length() - servletRequest.getPathInfo().length());
+
+        List<BatchRequestPart> requestParts;
+        try {
+            requestParts = parseJsonBatch(objectMapper.readTree(servletRequest.getInputStream()), rawBaseUri, servletRequest.getServletPath());
+        } catch (IOException | IllegalArgumentException e) {
+            writeError(servletResponse, HttpStatusCode.BAD_REQUEST, "Invalid JSON batch request: " + e.getMessage());
+            return;
+        }
+
+        List<ODataResponsePart> responseParts = execute(requestParts);
+
+        ArrayNode responses = objectMapper.createArrayNode();
+        for (int i = 0; i < requestParts.size(); i++) {
+            List<ODataRequest> requests = requestParts.get(i).getRequests();
+            List<ODataResponse> partResponses = responseParts.get(i).getResponses();
+            for (int j = 0; j < requests.size(); j++) {
+                // A failed atomicity group has one response, all of its requests failed with it
+                ODataResponse partResponse = partResponses.get(Math.min(j, partResponses.size() - 1));
+                responses.add(toJson(requests.get(j), partResponse));
+            }
+        }
+
+        ObjectNode body = objectMapper.createObjectNode();
+        body.set("responses", responses);
+        servletResponse.setStatus(HttpStatusCode.OK.getStatusCode());
+        servletResponse.setContentType(ContentType.APPLICATION_JSON.toContentTypeString());
+        objectMapper.writeValue(servletResponse.getOutputStream(), body);
+    }
+
+    /**
+     * Checks whether the given servlet request is a $batch request in the JSON format.
+     *
+     * @param servletRequest the servlet request
+     * @return true for a POST with a JSON body
+     */
+    public static boolean isJsonBatch(HttpServletRequest servletRequest) {
+        String contentType = servletRequest.getContentType();
+        return HttpMethod.POST.name().equals(servletRequest.getMethod())
+                && contentType != null
+                && ContentType.parse(contentType).isCompatible(ContentType.APPLICATION_JSON);
+    }
+
+    /**
+     * Executes the parts of a batch in order, consecutive GET requests outside of changesets run in parallel.
+     *
+     * @param requestParts the parts of the batch
+     * @return the response parts in the order of the request parts
+     */
+    private List<ODataResponsePart> execute(List<BatchRequestPart> requestParts) {
+        List<ParallelRead> responseParts = new ArrayList<>();
+        List<ParallelRead> runningReads = new ArrayList<>();
+
+        for (BatchRequestPart requestPart : requestParts) {
+            if (!requestPart.isChangeSet() && isRead(requestPart.getRequests().get(0))) {
+                ParallelRead read = startRead(requestPart.getRequests().get(0));
+                runningReads.add(read);
+                responseParts.add(read);
+            } else {
+                // Writes must not overtake the reads before them
+                runningReads.forEach(ParallelRead::await);
+                runningReads.clear();
+
+                ODataResponsePart responsePart = requestPart.isChangeSet()
+                        ? executeChangeSet(requestPart.getRequests())
+                        : new ODataResponsePart(handle(requestPart.getRequests().get(0), null), false);
+                responseParts.add(new ParallelRead(responsePart));
+            }
+        }
+
+        List<ODataResponsePart> result = new ArrayList<>();
+        for (ParallelRead responsePart : responseParts) {
+            result.add(responsePart.await());
+        }
+        return result;
+    }
+
+    /**
+     * Starts reading a GET request on the executor, if the executor is saturated it is read when it is waited for.
+     *
+     * @param request the GET request
+     * @return the running read
+     */
+    private ParallelRead startRead(ODataRequest request) {
+        ParallelRead read = new ParallelRead(request);
+        try {
+            executor.execute(read::runOnExecutor);
+        } catch (RejectedExecutionException e) {
+            // the read is claimed by the calling thread in await
+        }
+        return read;
+    }
+
+    /**
+     * Executes the requests of a changeset in one transaction.
+     * The first failing request rolls the transaction back, its response is the only response of the changeset.
+     *
+     * @param requests the requests of the changeset
+     * @return the response part of the changeset
+     */
+    private ODataResponsePart executeChangeSet(List<ODataRequest> requests) {
+        return changeSetTransaction.execute(status -> {
+            Map<String, String> createdLocations = new HashMap<>();
+            List<ODataResponse> responses = new ArrayList<>();
+            for (ODataRequest request : requests) {
+                ODataResponse response = handle(request, createdLocations);
+                if (response.getStatusCode() >= HttpStatusCode.BAD_REQUEST.getStatusCode()) {
+                    status.setRollbackOnly();
+                    return new ODataResponsePart(response, false);
+                }
+                responses.add(response);
+            }
+            return new ODataResponsePart(responses, true);
+        });
+    }
+
+    /**
+     * Dispatches a single request to the handler of its entity set.
+     * References to created entities are resolved first, the Content-ID is returned with the response.
+     *
+     * @param request the request
+     * @param createdLocations the locations of the entities created before in the changeset by Content-ID,
+     *                         filled with this request, null outside of changesets
+     * @return the response, its content is readable without a transaction
+     */
+    private ODataResponse handle(ODataRequest request, Map<String, String> createdLocations) {
+        if (createdLocations != null) {
+            resolveReference(request, createdLocations);
+        }
+        ODataResponse response = dispatcher.apply(getEntitySetName(request), request);
+        bufferContent(response);
+
+        String contentId = request.getHeader(HttpHeader.CONTENT_ID);
+        if (contentId != null) {
+            response.setHeader(HttpHeader.CONTENT_ID, contentId);
+            String location = response.getHeader(HttpHeader.LOCATION);
+            if (location != null && createdLocations != null) {
+                createdLocations.put(contentId, location);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Replaces a leading "$Content-ID" segment of the request path with the location of the referenced entity.
+     * Unknown references are left as they are, Olingo answers them with an error.
+     *
+     * @param request the request
+     * @param createdLocations the locations of the created entities by Content-ID
+     */
+    private void resolveReference(ODataRequest request, Map<String, String> createdLocations) {
+        String path = request.getRawODataPath();
+        if (path == null || !path.startsWith(REFERENCE_PREFIX)) {
+            return;
+        }
+        int end = path.indexOf('/', REFERENCE_PREFIX.length());
+        String location = createdLocations.get(path.substring(REFERENCE_PREFIX.length(), end < 0 ? path.length() : end));
+        if (location == null || !location.startsWith(request.getRawBaseUri())) {
+            return;
+        }
+
+        String resolvedPath = location.substring(request.getRawBaseUri().length()) + (end < 0 ? "" : path.substring(end));
+        request.setRawODataPath(resolvedPath);
+        request.setRawRequestUri(request.getRawBaseUri() + resolvedPath
+                + (request.getRawQueryPath() == null ? "" : "?" + request.getRawQueryPath()));
+    }
+
+    /**
+     * Reads streamed response content into memory, streamed content can only be written once and within its transaction.
+     *
+     * @param response the response
+     */
+    private void bufferContent(ODataResponse response) {
+        if (response.getODataContent() != null) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            response.getODataContent().write(content);
+            response.setODataContent(null);
+            response.setContent(new ByteArrayInputStream(content.toByteArray()));
+        }
+    }
+
+    /**
+     * Parses a batch in the JSON format into the parts Olingo parses from the multipart format.
+     *
+     * @param batch the JSON batch
+     * @param rawBaseUri the base URI of the service
+     * @param servletPath the path of the OData servlet, absolute request URLs start with it
+     * @return the parts of the batch
+     * @throws IOException if a request body can not be written
+     * @throws IllegalArgumentException if the batch is malformed
+     */
+    private List<BatchRequestPart> parseJsonBatch(JsonNode batch, String rawBaseUri, String servletPath) throws IOException {
+        JsonNode requests = batch == null ? null : batch.get("requests");
+        if (requests == null || !requests.isArray()) {
+            throw new IllegalArgumentException("\"requests\" array expected");
+        }
+
+        List<BatchRequestPart> requestParts = new ArrayList<>();
+        List<ODataRequest> atomicityGroup = null;
+        String atomicityGroupName = null;
+        for (JsonNode jsonRequest : requests) {
+            ODataRequest request = toODataRequest(jsonRequest, rawBaseUri, servletPath);
+            String groupName = jsonRequest.path("atomicityGroup").asText(null);
+            if (groupName == null) {
+                addAtomicityGroup(requestParts, atomicityGroup);
+                atomicityGroup = null;
+                atomicityGroupName = null;
+                requestParts.add(new BatchRequestPart(false, request));
+            } else {
+                if (!groupName.equals(atomicityGroupName)) {
+                    addAtomicityGroup(requestParts, atomicityGroup);
+                    atomicityGroup = new ArrayList<>();
+                    atomicityGroupName = groupName;
+                }
+                atomicityGroup.add(request);
+            }
+        }
+        addAtomicityGroup(requestParts, atomicityGroup);
+        return requestParts;
+    }
+
+    private void addAtomicityGroup(List<BatchRequestPart> requestParts, List<ODataRequest> atomicityGroup) {
+        if (atomicityGroup != null) {
+            requestParts.add(new BatchRequestPart(true, atomicityGroup));
+        }
+    }
+
+    /**
+     * Converts a request of a JSON batch into an OData request.
+     *
+     * @param jsonRequest the JSON request with id, method, url, headers and body
+     * @param rawBaseUri the base URI of the service
+     * @param servletPath the path of the OData servlet
+     * @return the OData request
+     * @throws IOException if the body can not be written
+     * @throws IllegalArgumentException if the method or the url is missing or invalid
+     */
+    private ODataRequest toODataRequest(JsonNode jsonRequest, String rawBaseUri, String servletPath) throws IOException {
+        String method = jsonRequest.path("method").asText(null);
+        String url = jsonRequest.path("url").asText(null);
+        if (method == null || url == null) {
+            throw new IllegalArgumentException("\"method\" and \"url\" are required");
+        }
+
+        // The url is relative to the service root, absolute or starts with the servlet path
+        if (url.startsWith(rawBaseUri)) {
+            url = url.substring(rawBaseUri.length());
+        } else if (url.startsWith(servletPath + "/")) {
+            url = url.substring(servletPath.length());
+        }
+        if (!url.startsWith("/")) {
+            url = "/" + url;
+        }
+        int queryStart = url.indexOf('?');
+        String path = queryStart < 0 ? url : url.substring(0, queryStart);
+        String query = queryStart < 0 ? null : url.substring(queryStart + 1);
+
+        ODataRequest request = new ODataRequest();
+        request.setMethod(HttpMethod.valueOf(method.toUpperCase(Locale.ROOT)));
+        request.setProtocol("HTTP/1.1");
+        request.setRawBaseUri(rawBaseUri);
+        request.setRawODataPath(path);
+        request.setRawQueryPath(query);
+        request.setRawRequestUri(rawBaseUri + url);
+
+        jsonRequest.path("headers").fields().forEachRemaining(header -> request.addHeader(header.getKey(), header.getValue().asText()));
+        if (jsonRequest.hasNonNull("id")) {
+            request.setHeader(HttpHeader.CONTENT_ID, jsonRequest.get("id").asText());
+        }
+
+        JsonNode body = jsonRequest.get("body");
+        if (body != null && !body.isNull()) {
+            byte[] content = body.isTextual() ? body.asText().getBytes(StandardCharsets.UTF_8) : objectMapper.writeValueAsBytes(body);
+            if (request.getHeader(HttpHeader.CONTENT_TYPE) == null) {
+                request.setHeader(HttpHeader.CONTENT_TYPE, ContentType.APPLICATION_JSON.toContentTypeString());
+            }
+            request.setBody(new ByteArrayInputStream(content));
+        }
+        return request;
+    }
+
+    /**
+     * Converts the response of a request of a JSON batch, JSON bodies are embedded as JSON.
+     *
+     * @param request the request
+     * @param response the response
+     * @return the JSON response with id, status, headers and body
+     * @throws IOException if the response body can not be read
+     */
+    private ObjectNode toJson(ODataRequest request, ODataResponse response) throws IOException {
+        ObjectNode jsonResponse = objectMapper.createObjectNode();
+        String contentId = request.getHeader(HttpHeader.CONTENT_ID);
+        if (contentId != null) {
+            jsonResponse.put("id", contentId);
+        }
+        jsonResponse.put("status", response.getStatusCode());
+
+        ObjectNode headers = jsonResponse.putObject("headers");
+        response.getAllHeaders().forEach((name, values) -> {
+            if (!name.equalsIgnoreCase(HttpHeader.CONTENT_ID) && !values.isEmpty()) {
+                headers.put(name.toLowerCase(Locale.ROOT), values.get(0));
+            }
+        });
+
+        byte[] content = readContent(response);
+        if (content.length > 0) {
+            String contentType = response.getHeader(HttpHeader.CONTENT_TYPE);
+            if (contentType != null && ContentType.parse(contentType).isCompatible(ContentType.APPLICATION_JSON)) {
+                jsonResponse.set("body", objectMapper.readTree(content));
+            } else {
+                jsonResponse.put("body", new String(content, StandardCharsets.UTF_8));
+            }
+        }
+        return jsonResponse;
+    }
+
+    /**
+     * Reads the content of a response, the content stays readable for the next call.
+     *
+     * @param response the response
+     * @return the content, empty if there is none
+     * @throws IOException if the content can not be read
+     */
+    private byte[] readContent(ODataResponse response) throws IOException {
+        InputStream content = response.getContent();
+        if (content == null) {
+            return new byte[0];
+        }
+        byte[] bytes = content.readAllBytes();
+        response.setContent(new ByteArrayInputStream(bytes));
+        return bytes;
+    }
+
+    /**
+     * Writes a JSON error as response of the whole batch.
+     *
+     * @param servletResponse the servlet response
+     * @param status the HTTP status
+     * @param message the error message
+     * @throws IOException if the response can not be written
+     */
+    private void writeError(HttpServletResponse servletResponse, HttpStatusCode status, String message) throws IOException {
+        servletResponse.setStatus(status.getStatusCode());
+        servletResponse.setContentType(ContentType.APPLICATION_JSON.toContentTypeString());
+        try (InputStream error = serializeError(status, message)) {
+            error.transferTo(servletResponse.getOutputStream());
+        }
+    }
+
+    /**
+     * Creates the error response of a single part of the batch.
+     *
+     * @param status the HTTP status
+     * @param message the error message
+     * @return the response
+     */
+    private ODataResponse errorResponse(HttpStatusCode status, String message) {
+        ODataResponse response = new ODataResponse();
+        response.setStatusCode(status.getStatusCode());
+        response.setHeader(HttpHeader.CONTENT_TYPE, ContentType.APPLICATION_JSON.toContentTypeString());
+        response.setContent(serializeError(status, message));
+        return response;
+    }
+
+    private InputStream serializeError(HttpStatusCode status, String message) {
+        ODataServerError error = new ODataServerError().setStatusCode(status.getStatusCode()).setMessage(message);
+        try {
+            return odata.createSerializer(ContentType.APPLICATION_JSON).error(error).getContent();
+        } catch (SerializerException e) {
+            throw new IllegalStateException("Unable to serialize the error", e);
+        }
+    }
+
+    /**
+     * Checks whether a request only reads and can run in parallel with other reads.
+     *
+     * @param request the request
+     * @return true for GET requests
+     */
+    private boolean isRead(ODataRequest request) {
+        return request.getMethod() == HttpMethod.GET;
+    }
+
+    /**
+     * Extracts the entity set name from the path of a request, e.g. "Orders" from "/Orders(1)".
+     *
+     * @param request the request
+     * @return the entity set name, null for the service root
+     */
+    private String getEntitySetName(ODataRequest request) {
+        String path = request.getRawODataPath();
+        if (path == null || path.length() <= 1) {
+            return null;
+        }
+        String segment = path.substring(1).split("/")[0];
+        return segment.contains("(") ? segment.substring(0, segment.indexOf('(')) : segment;
+    }
+
+    /**
+     * A GET request of the batch read on the executor, or a part already answered.
+     * Whoever starts the read first claims it, so a read still queued on a saturated executor
+     * is read by the waiting thread itself instead of holding up the batch.
+     */
+    private final class ParallelRead {
+
+        private final ODataRequest request;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CompletableFuture<ODataResponsePart> result = new CompletableFuture<>();
+
+        /**
+         * Creates a read to be run by the executor or the waiting thread.
+         *
+         * @param request the GET request
+         */
+        ParallelRead(ODataRequest request) {
+            this.request = request;
+        }
+
+        /**
+         * Creates a part already answered.
+         *
+         * @param responsePart the response part
+         */
+        ParallelRead(ODataResponsePart responsePart) {
+            this.request = null;
+            claimed.set(true);
+            result.complete(responsePart);
+        }
+
+        /**
+         * Reads the request on the executor unless the waiting thread has claimed it.
+         */
+        void runOnExecutor() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                result.complete(new ODataResponsePart(handle(request, null), false));
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Waits for the read, or reads the request on the calling thread if the executor has not started it yet.
+         *
+         * @return the response part, 503 Service Unavailable if the read did not finish within the read timeout
+         */
+        ODataResponsePart await() {
+            if (claimed.compareAndSet(false, true)) {
+                ODataResponsePart responsePart = new ODataResponsePart(handle(request, null), false);
+                result.complete(responsePart);
+                return responsePart;
+            }
+            try {
+                return result.get(readTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return new ODataResponsePart(errorResponse(HttpStatusCode.SERVICE_UNAVAILABLE,
+                        "The read did not finish within " + readTimeout.toMillis() + " ms"), false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new ODataResponsePart(errorResponse(HttpStatusCode.SERVICE_UNAVAILABLE, "Interrupted while reading"), false);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException("The read failed", e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.shopfloor.backend.olingo.presentation;
+
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.api.http.HttpStatusCode;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataApplicationException;
+import org.apache.olingo.server.api.ODataLibraryException;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.processor.MetadataProcessor;
+import org.apache.olingo.server.api.processor.ServiceDocumentProcessor;
+import org.apache.olingo.server.api.serializer.SerializerException;
+import org.apache.olingo.server.api.uri.UriInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Processor for the service document and the $metadata document.
+ * Both documents only depend on the EDM, which does not change at runtime,
+ * so they are serialized once per format and served from memory afterwards.
+ * The $metadata document is pre-serialized for XML and JSON when the processor is initialized.
+ * The service document contains the base URI of the request, so it is cached per format and base URI.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class ODataDocumentProcessor implements MetadataProcessor, ServiceDocumentProcessor {
+
+    /**
+     * Upper bound for cached service documents, each distinct base URI creates one entry.
+     */
+    private static final int MAX_SERVICE_DOCUMENTS = 64;
+
+    /**
+     * Serialized $metadata documents by content type.
+     */
+    private final Map<String, byte[]> metadataDocuments = new ConcurrentHashMap<>();
+
+    /**
+     * Serialized service documents by content type and base URI.
+     */
+    private final Map<String, byte[]> serviceDocuments = new ConcurrentHashMap<>();
+
+    /**
+     * OData instance used for creating serializers.
+     */
+    private OData odata;
+
+    /**
+     * Service metadata which is serialized into the documents.
+     */
+    private ServiceMetadata serviceMetadata;
+
+    /**
+     * Initializes the processor and pre-serializes the $metadata document for XML and JSON.
+     * The processor is registered with every pooled handler of the service root, the documents are only serialized the first time.
+     *
+     * @param oData the OData instance used for creating serializers
+     * @param serviceMetadata the service metadata to be serialized
+     */
+    @Override
+    public synchronized void init(OData oData, ServiceMetadata serviceMetadata) {
+        if (this.serviceMetadata == serviceMetadata) {
+            return;
+        }
+        this.odata = oData;
+        this.serviceMetadata = serviceMetadata;
+
+        try {
+            serializeMetadata(ContentType.APPLICATION_XML);
+            serializeMetadata(ContentType.APPLICATION_JSON);
+        } catch (SerializerException e) {
+            throw new IllegalStateException("Unable to serialize the $metadata document", e);
+        }
+    }
+
+    /**
+     * Reads the $metadata document from the cache, serializing it on first use for unknown formats.
+     *
+     * @param request the OData request
+     * @param response the OData response
+     * @param uriInfo the URI information
+     * @param responseFormat the requested content type
+     * @throws ODataApplicationException if an OData application error occurs
+     * @throws ODataLibraryException if an OData library error occurs
+     */
+    @Override
+    public void readMetadata(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType responseFormat)
+            throws ODataApplicationException, ODataLibraryException {
+
+        byte[] document = metadataDocuments.get(responseFormat.toContentTypeString());
+        if (document == null) {
+            document = serializeMetadata(responseFormat);
+        }
+        setResponse(response, document, responseFormat);
+    }
+
+    /**
+     * Reads the service document from the cache, serializing it on first use per format and base URI.
+     *
+     * @param request the OData request
+     * @param response the OData response
+     * @param uriInfo the URI information
+     * @param responseFormat the requested content type
+     * @throws ODataApplicationException if an OData application error occurs
+     * @throws ODataLibraryException if an OData library error occurs
+     */
+    @Override
+    public void readServiceDocument(ODataRequest request, ODataResponse response, UriInfo uriInfo, ContentType responseFormat)
+            throws ODataApplicationException, ODataLibraryException {
+
+        String key = responseFormat.toContentTypeString() + " " + request.getRawBaseUri();
+        byte[] document = serviceDocuments.get(key);
+        if (document == null) {
+            document = toBytes(odata.createSerializer(responseFormat)
+                    .serviceDocument(serviceMetadata, request.getRawBaseUri())
+                    .getContent());
+            if (serviceDocuments.size() < MAX_SERVICE_DOCUMENTS) {
+                serviceDocuments.put(key, document);
+            }
+        }
+        setResponse(response, document, responseFormat);
+    }
+
+    /**
+     * Serializes the $metadata document in the given format and caches it.
+     *
+     * @param contentType the format of the document
+     * @return the serialized document
+     * @throws SerializerException if the format is not supported
+     */
+    private byte[] serializeMetadata(ContentType contentType) throws SerializerException {
+        byte[] document = toBytes(odata.createSerializer(contentType).metadataDocument(serviceMetadata).getContent());
+        metadataDocuments.put(contentType.toContentTypeString(), document);
+        return document;
+    }
+
+    /**
+     * Sets the OData response with a copy-free stream over the cached document.
+     *
+     * @param response the OData response
+     * @param document the serialized document
+     * @param contentType the content type of the response
+     */
+    private void setResponse(ODataResponse response, byte[] document, ContentType contentType) {
+        response.setContent(new ByteArrayInputStream(document));
+        response.setStatusCode(HttpStatusCode.OK.getStatusCode());
+        response.setHeader(HttpHeader.CONTENT_TYPE, contentType.toContentTypeString());
+    }
+
+    /**
+     * Reads the serializer output completely.
+     *
+     * @param content the serialized content
+     * @return the content as byte array
+     */
+    private byte[] toBytes(InputStream content) {
+        try (InputStream in = content) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read serialized document", e);
+        }
+    }
+}
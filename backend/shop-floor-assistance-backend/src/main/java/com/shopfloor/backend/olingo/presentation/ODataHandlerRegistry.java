@@ -0,0 +1,355 @@
+package com.shopfloor.backend.olingo.presentation;
+
+import com.shopfloor.backend.concurrency.SingleFlight;
+import com.shopfloor.backend.olingo.business.generics.async.ODataAsyncJobs;
+import com.shopfloor.backend.olingo.business.generics.processors.ODataSingleFlightEntityProcessor;
+import com.shopfloor.backend.olingo.business.implementations.equipments.EquipmentCollectionProcessor;
+import com.shopfloor.backend.olingo.business.implementations.equipments.EquipmentEntityProcessor;
+import com.shopfloor.backend.olingo.business.implementations.orders.OrderCollectionProcessor;
+import com.shopfloor.backend.olingo.business.implementations.orders.OrderEntityProcessor;
+import com.shopfloor.backend.olingo.business.implementations.products.ProductCollectionProcessor;
+import com.shopfloor.backend.olingo.business.implementations.products.ProductEntityProcessor;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataHttpHandler;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.apache.olingo.server.api.processor.EntityProcessor;
+import org.apache.olingo.server.api.processor.Processor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry holding the OData handlers of the service.
+ * The OData instance, the service metadata and the processors are built once at startup and shared by all requests.
+ * Every entity set gets its own handler with its entity and collection processors registered,
+ * because Olingo selects processors by type and not by entity set.
+ * The root handler serves the service document, the $metadata document and $batch requests.
+ * Requests sent with "Prefer: respond-async" are processed again in the background by the handlers of this registry.
+ * The entity processors are wrapped by ODataSingleFlightEntityProcessor, identical entity reads running at the same time share one read.
+ * Olingo handlers keep the state of the request they process (e.g. its URI info), so a handler serves one request at a time.
+ * Every request borrows an idle handler of its entity set from a pool and returns it when it has been processed,
+ * a new handler is only wired when all handlers of the entity set are busy. The pool does not depend on the thread
+ * a request runs on, so virtual threads (spring.threads.virtual.enabled) reuse the handlers like pooled threads do,
+ * and a $batch part dispatched while its batch is processed gets a handler of its own.
+ * At most odata.handlers.max-idle handlers are kept per entity set, the handlers wired and kept are exposed over JMX.
+ *
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+@ManagedResource(objectName = "com.shopfloor.backend:type=ODataHandlerRegistry", description = "Pooled OData handlers")
+public class ODataHandlerRegistry {
+
+    /**
+     * Key of the root handler in the handler maps.
+     */
+    private static final String ROOT = "";
+
+    /**
+     * OData instance shared by all handlers.
+     */
+    private final OData odata;
+
+    /**
+     * Service metadata built once from the EdmProvider.
+     */
+    private final ServiceMetadata serviceMetadata;
+
+    /**
+     * Processor serving the service document and the $metadata document.
+     */
+    private final ODataDocumentProcessor documentProcessor;
+
+    /**
+     * Processor serving $batch requests.
+     */
+    private ODataBatchProcessor batchProcessor;
+
+    /**
+     * Asynchronous requests and their status monitors.
+     */
+    private ODataAsyncJobs asyncJobs;
+
+    /**
+     * Coalescing of identical entity reads.
+     */
+    private SingleFlight singleFlight;
+
+    /**
+     * Processors by entity set name, e.g. "Orders".
+     */
+    private final Map<String, Processor[]> entitySetProcessors;
+
+    /**
+     * Idle handlers by entity set name, the handlers of the root are stored under ROOT.
+     */
+    private final Map<String, HandlerPool> handlerPools;
+
+    /**
+     * The largest number of idle handlers kept per entity set.
+     */
+    @Value("${odata.handlers.max-idle:64}")
+    private int maxIdleHandlers;
+
+    /**
+     * Number of handlers wired since startup.
+     */
+    private final LongAdder wiredHandlers = new LongAdder();
+
+    /**
+     * Constructs the registry.
+     *
+     * @param edmProvider the provider of the entity data model
+     * @param productEntityProcessor the processor for single products
+     * @param productCollectionProcessor the processor for product collections
+     * @param orderEntityProcessor the processor for single orders
+     * @param orderCollectionProcessor the processor for order collections
+     * @param equipmentEntityProcessor the processor for single equipments
+     * @param equipmentCollectionProcessor the processor for equipment collections
+     */
+    @Autowired
+    public ODataHandlerRegistry(EdmProvider edmProvider,
+                                ProductEntityProcessor productEntityProcessor,
+                                ProductCollectionProcessor productCollectionProcessor,
+                                OrderEntityProcessor orderEntityProcessor,
+                                OrderCollectionProcessor orderCollectionProcessor,
+                                EquipmentEntityProcessor equipmentEntityProcessor,
+                                EquipmentCollectionProcessor equipmentCollectionProcessor) {
+        this.odata = OData.newInstance();
+        this.serviceMetadata = odata.createServiceMetadata(edmProvider, new ArrayList<>());
+
+        this.documentProcessor = new ODataDocumentProcessor();
+
+        Map<String, Processor[]> processors = new HashMap<>();
+        processors.put(EdmProvider.ES_PRODUCTS_NAME, new Processor[]{productEntityProcessor, productCollectionProcessor});
+        processors.put(EdmProvider.ES_ORDERS_NAME, new Processor[]{orderEntityProcessor, orderCollectionProcessor});
+        processors.put(EdmProvider.ES_EQUIPMENTS_NAME, new Processor[]{equipmentEntityProcessor, equipmentCollectionProcessor});
+        this.entitySetProcessors = Collections.unmodifiableMap(processors);
+
+        Map<String, HandlerPool> pools = new HashMap<>();
+        pools.put(ROOT, new HandlerPool());
+        processors.keySet().forEach(entitySetName -> pools.put(entitySetName, new HandlerPool()));
+        this.handlerPools = Collections.unmodifiableMap(pools);
+    }
+
+    /**
+     * Sets the processor serving $batch requests, it dispatches the parts of a batch to the handlers of this registry.
+     *
+     * @param batchProcessor the batch processor
+     */
+    @Autowired
+    public void setBatchProcessor(ODataBatchProcessor batchProcessor) {
+        this.batchProcessor = batchProcessor;
+        batchProcessor.setDispatcher(this::process);
+    }
+
+    /**
+     * Sets the processing of asynchronous requests, it processes the requests with the handlers of this registry.
+     *
+     * @param asyncJobs the asynchronous requests
+     */
+    @Autowired
+    public void setAsyncJobs(ODataAsyncJobs asyncJobs) {
+        this.asyncJobs = asyncJobs;
+        asyncJobs.setDispatcher(this::process);
+    }
+
+    /**
+     * Sets the coalescing of identical entity reads, the entity processors are wrapped when a handler is wired.
+     *
+     * @param singleFlight the coalescing of identical reads
+     */
+    @Autowired
+    public void setSingleFlight(SingleFlight singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    /**
+     * Processes a servlet request with a handler of the given entity set.
+     * Unknown names are processed by a handler of the root, which lets Olingo answer with its own error.
+     *
+     * @param entitySetName the name of the entity set, null for the service root
+     * @param request the servlet request
+     * @param response the servlet response
+     */
+    public void process(String entitySetName, HttpServletRequest request, HttpServletResponse response) {
+        HandlerPool pool = poolFor(entitySetName);
+        ODataHttpHandler handler = pool.borrow(entitySetName);
+        try {
+            handler.process(request, response);
+        } finally {
+            pool.giveBack(handler);
+        }
+    }
+
+    /**
+     * Processes an OData request, e.g. a part of a $batch request, with a handler of the given entity set.
+     *
+     * @param entitySetName the name of the entity set, null for the service root
+     * @param request the OData request
+     * @return the response
+     */
+    public ODataResponse process(String entitySetName, ODataRequest request) {
+        HandlerPool pool = poolFor(entitySetName);
+        ODataHttpHandler handler = pool.borrow(entitySetName);
+        try {
+            return handler.process(request);
+        } finally {
+            pool.giveBack(handler);
+        }
+    }
+
+    /**
+     * Returns the processor serving $batch requests.
+     *
+     * @return the batch processor
+     */
+    public ODataBatchProcessor getBatchProcessor() {
+        return batchProcessor;
+    }
+
+    /**
+     * Returns the asynchronous requests serving the status monitors.
+     *
+     * @return the asynchronous requests
+     */
+    public ODataAsyncJobs getAsyncJobs() {
+        return asyncJobs;
+    }
+
+    /**
+     * Returns the shared OData instance.
+     *
+     * @return the OData instance
+     */
+    public OData getOData() {
+        return odata;
+    }
+
+    /**
+     * Returns the shared service metadata.
+     *
+     * @return the service metadata
+     */
+    public ServiceMetadata getServiceMetadata() {
+        return serviceMetadata;
+    }
+
+    @ManagedAttribute(description = "Handlers wired since startup")
+    public long getWiredHandlers() {
+        return wiredHandlers.sum();
+    }
+
+    @ManagedAttribute(description = "Idle handlers of all entity sets")
+    public int getIdleHandlers() {
+        return handlerPools.values().stream().mapToInt(pool -> pool.idleCount.get()).sum();
+    }
+
+    /**
+     * Returns the pool of handlers of the given entity set, the pool of the root for null or unknown names.
+     *
+     * @param entitySetName the name of the entity set, may be null
+     * @return the pool
+     */
+    private HandlerPool poolFor(String entitySetName) {
+        HandlerPool pool = entitySetName != null ? handlerPools.get(entitySetName) : null;
+        return pool != null ? pool : handlerPools.get(ROOT);
+    }
+
+    /**
+     * Wires a new handler of an entity set, the handler of the root for null or unknown names.
+     *
+     * @param entitySetName the name of the entity set, may be null
+     * @return the handler with its processors registered
+     */
+    private ODataHttpHandler wireHandler(String entitySetName) {
+        wiredHandlers.increment();
+        Processor[] processors = entitySetName != null ? entitySetProcessors.get(entitySetName) : null;
+        if (processors == null) {
+            return createHandler(documentProcessor, batchProcessor);
+        }
+        return createHandler(coalesceReads(processors));
+    }
+
+    /**
+     * Wraps the entity processors, so identical entity reads running at the same time share one read.
+     *
+     * @param processors the processors of an entity set
+     * @return the processors with the entity processor wrapped
+     */
+    private Processor[] coalesceReads(Processor[] processors) {
+        Processor[] wrapped = processors.clone();
+        for (int i = 0; i < wrapped.length; i++) {
+            if (singleFlight != null && wrapped[i] instanceof EntityProcessor entityProcessor) {
+                wrapped[i] = new ODataSingleFlightEntityProcessor(entityProcessor, singleFlight);
+            }
+        }
+        return wrapped;
+    }
+
+    /**
+     * Creates a handler and registers the given processors.
+     * Registering calls init() on every processor.
+     *
+     * @param processors the processors to register
+     * @return the created handler
+     */
+    private ODataHttpHandler createHandler(Processor... processors) {
+        ODataHttpHandler handler = odata.createHandler(serviceMetadata);
+        for (Processor processor : processors) {
+            handler.register(processor);
+        }
+        return handler;
+    }
+
+    /**
+     * The idle handlers of one entity set.
+     */
+    private final class HandlerPool {
+
+        private final Queue<ODataHttpHandler> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        /**
+         * Takes an idle handler, or wires a new one if all handlers are busy.
+         *
+         * @param entitySetName the name of the entity set, may be null
+         * @return the handler, used by the calling request only
+         */
+        ODataHttpHandler borrow(String entitySetName) {
+            ODataHttpHandler handler = idle.poll();
+            if (handler == null) {
+                return wireHandler(entitySetName);
+            }
+            idleCount.decrementAndGet();
+            return handler;
+        }
+
+        /**
+         * Returns a handler after its request has been processed, it is dropped if enough handlers are idle.
+         *
+         * @param handler the handler
+         */
+        void giveBack(ODataHttpHandler handler) {
+            if (idleCount.incrementAndGet() > maxIdleHandlers) {
+                idleCount.decrementAndGet();
+                return;
+            }
+            idle.offer(handler);
+        }
+    }
+}
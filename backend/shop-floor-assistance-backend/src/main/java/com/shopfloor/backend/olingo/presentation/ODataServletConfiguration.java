@@ -1,117 +1,71 @@
 package com.shopfloor.backend.olingo.presentation;
 
-import com.shopfloor.backend.olingo.business.implementations.equipments.EquipmentCollectionProcessor;
-import com.shopfloor.backend.olingo.business.implementations.equipments.EquipmentEntityProcessor;
-import com.shopfloor.backend.olingo.business.implementations.orders.OrderCollectionProcessor;
-import com.shopfloor.backend.olingo.business.implementations.orders.OrderEntityProcessor;
-import com.shopfloor.backend.olingo.business.implementations.products.ProductCollectionProcessor;
-import com.shopfloor.backend.olingo.business.implementations.products.ProductEntityProcessor;
+import com.shopfloor.backend.olingo.business.generics.async.ODataAsyncJobs;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.apache.olingo.server.api.OData;
-import org.apache.olingo.server.api.ODataHttpHandler;
-import org.apache.olingo.server.api.ServiceMetadata;
 import org.springframework.boot.web.servlet.ServletRegistrationBean;
-import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * Configuration class for the OData servlet.
  * Registers the OData servlet with the Spring application context.
  * The servlet is registered at the base URL "/odata/*".
- * The servlet dynamically registers entity processors based on the requested entity type.
+ * The servlet routes every request to the handler of the requested entity set,
+ * $batch requests in the JSON format go to the ODataBatchProcessor directly,
+ * the status monitors of asynchronous requests ("/odata/$async/{id}") are answered by ODataAsyncJobs.
  * In general, every entity type has two processors - one for handling single entities and one for handling collections.
- * The entity processors are registered based on the requested entity type.
+ * The handlers are pooled by the ODataHandlerRegistry, a request borrows one for the time it is processed.
  *
  *
  * @Author David Todorov (https://github.com/david-todorov)
  */
 @Configuration
 public class ODataServletConfiguration {
-    private final ApplicationContext applicationContext;
+    private final ODataHandlerRegistry handlerRegistry;
     private static final String BASE_URL = "/odata";
 
-    public ODataServletConfiguration(ApplicationContext applicationContext) {
-        this.applicationContext = applicationContext;
+    public ODataServletConfiguration(ODataHandlerRegistry handlerRegistry) {
+        this.handlerRegistry = handlerRegistry;
     }
 
     @Bean
     public ServletRegistrationBean<HttpServlet> odataServlet() {
-        return new ServletRegistrationBean<>(new ODataServlet(applicationContext), BASE_URL + "/*");
+        return new ServletRegistrationBean<>(new ODataServlet(handlerRegistry), BASE_URL + "/*");
     }
 
     static class ODataServlet extends HttpServlet {
         private static final long serialVersionUID = 1L;
-        private final ApplicationContext applicationContext;
+        private static final String BATCH_SEGMENT = "$batch";
+        private final transient ODataHandlerRegistry handlerRegistry;
 
-        ODataServlet(ApplicationContext applicationContext) {
-            this.applicationContext = applicationContext;
+        ODataServlet(ODataHandlerRegistry handlerRegistry) {
+            this.handlerRegistry = handlerRegistry;
         }
 
         @Override
         protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
             try {
-                OData odata = OData.newInstance();
-                ServiceMetadata edm = odata.createServiceMetadata(
-                        applicationContext.getBean(EdmProvider.class),
-                        new ArrayList<>()
-                );
-                ODataHttpHandler handler = odata.createHandler(edm);
-
-                // Allow metadata and service root requests
-                String requestUri = req.getRequestURI();
-                if (requestUri.equals(BASE_URL + "/$metadata") || requestUri.equals("/odata/")) {
-                    handler.process(req, resp);
+                // Metadata and service root requests have no entity set and are served by the root handler
+                String entityName = extractEntityName(req.getRequestURI());
+                if (BATCH_SEGMENT.equals(entityName) && ODataBatchProcessor.isJsonBatch(req)) {
+                    // Olingo only parses multipart batches
+                    handlerRegistry.getBatchProcessor().processJsonBatch(req, resp);
                     return;
                 }
-
-                // Extract entity type from request URL
-                String entityName = extractEntityName(requestUri);
-                if (entityName == null) {
-                    handler.process(req, resp);
+                if (ODataAsyncJobs.MONITOR_SEGMENT.equals(entityName)) {
+                    handlerRegistry.getAsyncJobs().respond(req, resp);
                     return;
                 }
-
-                // Register processors dynamically
-                registerProcessors(handler, entityName);
-                handler.process(req, resp);
+                handlerRegistry.process(entityName, req, resp);
             } catch (RuntimeException e) {
                 throw new IOException(e);
             }
         }
 
-        /**
-         * Registers entity and collection processors based on the requested entity type.
-         *
-         * @param handler the ODataHttpHandler to register the processors with
-         * @param entityName the name of the entity type for which processors are to be registered
-         * @throws RuntimeException if the entity type is unknown
-         */
-        private void registerProcessors(ODataHttpHandler handler, String entityName) {
-            // Register entity and collection processors based on the requested entity type
-            switch (entityName) {
-                case "Products":
-                    handler.register(applicationContext.getBean(ProductEntityProcessor.class));
-                    handler.register(applicationContext.getBean(ProductCollectionProcessor.class));
-                    break;
-                case "Orders":
-                    handler.register(applicationContext.getBean(OrderEntityProcessor.class));
-                    handler.register(applicationContext.getBean(OrderCollectionProcessor.class));
-                    break;
-                case "Equipments":
-                    handler.register(applicationContext.getBean(EquipmentEntityProcessor.class));
-                    handler.register(applicationContext.getBean(EquipmentCollectionProcessor.class));
-                    break;
-                default:
-                    throw new RuntimeException("Unknown entity: " + entityName);
-            }
-        }
-
         private String extractEntityName(String requestUri) {
             String[] segments = requestUri.split("/");
             if (segments.length > 2) {
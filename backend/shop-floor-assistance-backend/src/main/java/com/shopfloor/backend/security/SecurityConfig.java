@@ -46,6 +46,8 @@ public class SecurityConfig {
      * - **EDITOR**: Has access to both editors and operators orders.
      * - **OPERATOR**: Has limited access to operators orders only.
      *
+     * The actuator health endpoint is public, the metrics scraped by Prometheus (/actuator/prometheus) need an EDITOR.
+     *
      * **Note**: If a new endpoint or role is introduced, this method will need to be updated to reflect the new access rules.
      *
      * @param http the HttpSecurity to configure
@@ -62,6 +64,8 @@ public class SecurityConfig {
                         .requestMatchers("/editor/**").hasRole("EDITOR")
                         .requestMatchers("/operator/**").hasAnyRole("EDITOR", "OPERATOR")
                         .requestMatchers("/odata/**").permitAll()// In future this may be changed to hasRole("OLINGO")
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("EDITOR")
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> session
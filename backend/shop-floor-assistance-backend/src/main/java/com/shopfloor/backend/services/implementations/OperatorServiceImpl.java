@@ -4,6 +4,7 @@ import com.shopfloor.backend.api.mappers.OperatorTOMapper;
 import com.shopfloor.backend.api.transferobjects.operators.OperatorExecutionTO;
 import com.shopfloor.backend.api.transferobjects.operators.OperatorForecastTO;
 import com.shopfloor.backend.api.transferobjects.operators.OperatorOrderTO;
+import com.shopfloor.backend.concurrency.SingleFlight;
 import com.shopfloor.backend.database.exceptions.ExecutionNotFoundException;
 import com.shopfloor.backend.database.exceptions.OrderNotFoundException;
 import com.shopfloor.backend.database.mappers.ExecutionDBOMapper;
@@ -46,6 +47,11 @@ public class OperatorServiceImpl implements OperatorService {
      */
     private final ExecutionDBOMapper executionDBOMapper;
 
+    /**
+     * Coalescing of identical order reads running at the same time.
+     */
+    private final SingleFlight singleFlight;
+
     /**
      * Constructs an OperatorServiceImpl with the specified dependencies.
      *
@@ -53,16 +59,19 @@ public class OperatorServiceImpl implements OperatorService {
      * @param orderRepository the repository to manage order data
      * @param executionRepository the repository to manage execution data
      * @param executionDBOMapper the mapper to initialize and update execution database objects
+     * @param singleFlight the coalescing of identical reads
      */
     @Autowired
     public OperatorServiceImpl(OperatorTOMapper operatorTOMapper,
                                OrderRepository orderRepository,
                                ExecutionRepository executionRepository,
-                               ExecutionDBOMapper executionDBOMapper) {
+                               ExecutionDBOMapper executionDBOMapper,
+                               SingleFlight singleFlight) {
         this.operatorTOMapper = operatorTOMapper;
         this.orderRepository = orderRepository;
         this.executionRepository = executionRepository;
         this.executionDBOMapper = executionDBOMapper;
+        this.singleFlight = singleFlight;
     }
 
     /**
@@ -77,6 +86,7 @@ public class OperatorServiceImpl implements OperatorService {
 
     /**
      * Retrieves a specific order by its ID.
+     * Terminals with the same roles requesting the same order at the same time share one read and mapping of the workflow tree.
      *
      * @param id the ID of the order to retrieve
      * @return an OperatorOrderTO representing the order
@@ -84,13 +94,15 @@ public class OperatorServiceImpl implements OperatorService {
      */
     @Override
     public OperatorOrderTO getOrder(Long id) {
+        return singleFlight.execute("operator-order:" + id, () -> {
 
-        // Retrieve the order from the database or return null if not found
-        OrderDBO orderDBO = orderRepository.findById(id)
-                .orElseThrow(OrderNotFoundException::new);
+            // Retrieve the order from the database or return null if not found
+            OrderDBO orderDBO = orderRepository.findById(id)
+                    .orElseThrow(OrderNotFoundException::new);
 
-        // Convert the order to a OperatorOrderTO and return it
-        return this.operatorTOMapper.toOrderTO(orderDBO);
+            // Convert the order to a OperatorOrderTO and return it
+            return this.operatorTOMapper.toOrderTO(orderDBO);
+        });
     }
 
     /**
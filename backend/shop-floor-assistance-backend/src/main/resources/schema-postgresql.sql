@@ -0,0 +1,52 @@
+-- Runs after Hibernate has created or updated the tables and sequences, every statement is idempotent.
+
+-- Full-text search of the OData $search option, see ODataSearchFunctions.
+-- The search vectors are generated by PostgreSQL and are not mapped in the entities.
+
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (
+    to_tsvector('simple', coalesce(order_number, '') || ' ' || coalesce(name, '') || ' ' || coalesce(description, ''))
+) STORED;
+CREATE INDEX IF NOT EXISTS idx_orders_search_vector ON orders USING GIN (search_vector);
+
+ALTER TABLE products ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (
+    to_tsvector('simple', coalesce(product_number, '') || ' ' || coalesce(name, '') || ' ' || coalesce(description, ''))
+) STORED;
+CREATE INDEX IF NOT EXISTS idx_products_search_vector ON products USING GIN (search_vector);
+
+ALTER TABLE equipment ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (
+    to_tsvector('simple', coalesce(equipment_number, '') || ' ' || coalesce(name, '') || ' ' || coalesce(description, ''))
+) STORED;
+CREATE INDEX IF NOT EXISTS idx_equipment_search_vector ON equipment USING GIN (search_vector);
+
+-- The order tree moved from identity columns to pooled sequences, Hibernate draws a value and hands out the 50 IDs below it.
+-- Every sequence is moved past the highest existing ID, a sequence that is already ahead is kept.
+SELECT setval('orders_seq', GREATEST((SELECT coalesce(max(id), 0) FROM orders) + 50, (SELECT last_value FROM orders_seq)));
+SELECT setval('products_seq', GREATEST((SELECT coalesce(max(id), 0) FROM products) + 50, (SELECT last_value FROM products_seq)));
+SELECT setval('equipment_seq', GREATEST((SELECT coalesce(max(id), 0) FROM equipment) + 50, (SELECT last_value FROM equipment_seq)));
+SELECT setval('workflows_seq', GREATEST((SELECT coalesce(max(id), 0) FROM workflows) + 50, (SELECT last_value FROM workflows_seq)));
+SELECT setval('tasks_seq', GREATEST((SELECT coalesce(max(id), 0) FROM tasks) + 50, (SELECT last_value FROM tasks_seq)));
+SELECT setval('items_seq', GREATEST((SELECT coalesce(max(id), 0) FROM items) + 50, (SELECT last_value FROM items_seq)));
+
+-- contains, startswith and endswith of $filter compare lower(column) with LIKE, see FilterSpecification.
+-- The trigram indexes over lower(column) answer all three, a btree index cannot answer a pattern with a leading wildcard.
+-- Creating the extension needs the CREATE privilege on the database. Without it the startup goes on without the trigram
+-- indexes and the patterns are answered by scanning, until a DBA has run "CREATE EXTENSION pg_trgm;" once (see DEPLOYMENT.md).
+-- The blocks are quoted with single quotes, the script is split at every semicolon outside of a quoted literal.
+
+DO 'BEGIN
+    CREATE EXTENSION IF NOT EXISTS pg_trgm;
+EXCEPTION WHEN insufficient_privilege OR undefined_file THEN
+    RAISE WARNING ''pg_trgm is not installed, the $filter patterns are answered without the trigram indexes: %'', SQLERRM;
+END';
+
+DO 'BEGIN
+    IF EXISTS (SELECT 1 FROM pg_extension WHERE extname = ''pg_trgm'') THEN
+        CREATE INDEX IF NOT EXISTS idx_orders_order_number_trgm ON orders USING GIN (lower(order_number) gin_trgm_ops);
+        CREATE INDEX IF NOT EXISTS idx_orders_name_trgm ON orders USING GIN (lower(name) gin_trgm_ops);
+        CREATE INDEX IF NOT EXISTS idx_products_product_number_trgm ON products USING GIN (lower(product_number) gin_trgm_ops);
+        CREATE INDEX IF NOT EXISTS idx_products_name_trgm ON products USING GIN (lower(name) gin_trgm_ops);
+        CREATE INDEX IF NOT EXISTS idx_equipment_equipment_number_trgm ON equipment USING GIN (lower(equipment_number) gin_trgm_ops);
+        CREATE INDEX IF NOT EXISTS idx_equipment_name_trgm ON equipment USING GIN (lower(name) gin_trgm_ops);
+        CREATE INDEX IF NOT EXISTS idx_equipment_type_trgm ON equipment USING GIN (lower(type) gin_trgm_ops);
+    END IF;
+END';
@@ -0,0 +1,257 @@
+package com.shopfloor.backend.tests;
+
+import com.shopfloor.backend.concurrency.AdaptiveLimitFilter;
+import com.shopfloor.backend.concurrency.AdaptiveLimiter;
+import com.shopfloor.backend.concurrency.AdaptiveLimiter.Priority;
+import com.shopfloor.backend.concurrency.AdaptiveLimiters;
+import com.shopfloor.backend.concurrency.PriorityAdmission;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Integration tests for the adaptive concurrency limits.
+ *
+ * This class checks that the limit shrinks when requests get slower and grows while they are fast,
+ * that the shared admission sheds the lowest priority first, also when a higher priority gets slower,
+ * and that shed requests are answered with 503 and counted in the metrics.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "limiter.enabled=true",
+        "limiter.editor.initial-limit=1",
+        "limiter.editor.min-limit=1",
+        "limiter.editor.max-limit=1"
+})
+@AutoConfigureMockMvc
+public class AdaptiveLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * MockMvc for the requests passing the registered filters.
+     */
+    @Autowired
+    private MockMvc mockMvc;
+
+    /**
+     * Helper for logging in the editor scraping the metrics.
+     */
+    @Autowired
+    private ApiHelper apiHelper;
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * The limiters under test.
+     */
+    @Autowired
+    private AdaptiveLimiters limiters;
+
+    /**
+     * The filter admitting the requests.
+     */
+    @Autowired
+    private AdaptiveLimitFilter limitFilter;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_LatencyRises_Then_LimitShrinks() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 20, 4, 200, 0.2, 100, 1.5);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.tryAcquire(Priority.NORMAL);
+            limiter.onComplete(10 * MILLIS, limiter.getLimit(), Priority.NORMAL);
+        }
+        int grownLimit = limiter.getLimit();
+        assertTrue(grownLimit > 20, "limit after fast requests: " + grownLimit);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.tryAcquire(Priority.NORMAL);
+            limiter.onComplete(100 * MILLIS, limiter.getLimit(), Priority.NORMAL);
+        }
+        assertTrue(limiter.getLimit() < grownLimit / 2, "limit after slow requests: " + limiter.getLimit());
+
+        int shrunkLimit = limiter.getLimit();
+        for (int i = 0; i < 20; i++) {
+            limiter.tryAcquire(Priority.NORMAL);
+            limiter.onComplete(100 * MILLIS, 1, Priority.NORMAL);
+        }
+        assertEquals(shrunkLimit, limiter.getLimit(), "samples of an idle service do not change the limit");
+    }
+
+    @Test
+    public void when_LowPriorityRequestsGetSlower_Then_LimitShrinks() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 20, 4, 40, 0.2, 600, 1.5);
+
+        for (int round = 0; round < 50; round++) {
+            completeAdmittedLow(limiter, MILLIS);
+        }
+        int fastLimit = limiter.getLimit();
+        for (int round = 0; round < 10; round++) {
+            completeAdmittedLow(limiter, 100 * MILLIS);
+        }
+        assertTrue(limiter.getLimit() < fastLimit / 2, "limit of " + fastLimit + " after slow LOW requests: " + limiter.getLimit());
+    }
+
+    @Test
+    public void when_AdmissionLimitReached_Then_LowestPriorityShedFirst() {
+        PriorityAdmission admission = new PriorityAdmission(10, 10, 10, 0.2);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(admission.tryAcquire(Priority.LOW) > 0);
+        }
+        assertEquals(0, admission.tryAcquire(Priority.LOW));
+        assertTrue(admission.tryAcquire(Priority.NORMAL) > 0);
+        assertTrue(admission.tryAcquire(Priority.NORMAL) > 0);
+        assertEquals(0, admission.tryAcquire(Priority.NORMAL));
+        assertTrue(admission.tryAcquire(Priority.HIGH) > 0);
+        assertTrue(admission.tryAcquire(Priority.HIGH) > 0);
+        assertEquals(0, admission.tryAcquire(Priority.HIGH));
+        assertTrue(admission.tryAcquire(Priority.CRITICAL) > 0);
+        assertEquals(0, admission.tryAcquire(Priority.CRITICAL));
+
+        assertEquals(10, admission.getInFlight());
+        assertEquals(1, admission.getShed(Priority.LOW));
+        assertEquals(1, admission.getShed(Priority.CRITICAL));
+        admission.release();
+        assertEquals(9, admission.getInFlight());
+    }
+
+    @Test
+    public void when_GroupLimitReached_Then_EveryPriorityUsesWholeLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 10, 10, 10, 0.2, 100, 1.5);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire(Priority.LOW) > 0);
+        }
+        assertEquals(0, limiter.tryAcquire(Priority.LOW));
+        assertEquals(0, limiter.tryAcquire(Priority.CRITICAL));
+    }
+
+    @Test
+    public void when_OperatorsGetSlower_Then_CollectionsShedBeforeOperatorWrites() {
+        PriorityAdmission admission = new PriorityAdmission(40, 4, 40, 0.2);
+        AdaptiveLimiter operator = new AdaptiveLimiter("operator", 10, 4, 40, 0.2, 600, 1.5);
+        int collectionsInFlight = 0;
+        while (admission.tryAcquire(Priority.LOW) > 0) {
+            collectionsInFlight++;
+        }
+        assertEquals(20, collectionsInFlight);
+
+        for (int i = 0; i < 50; i++) {
+            completeOperatorWrite(admission, operator, MILLIS);
+        }
+        assertEquals(40, admission.getLimit());
+        for (int i = 0; i < 3; i++) {
+            completeOperatorWrite(admission, operator, 100 * MILLIS);
+        }
+
+        assertTrue(admission.getLimit() < 40, "admission limit after slow operator writes: " + admission.getLimit());
+        assertEquals(10, operator.getLimit(), "the operators use too little of their own limit to shrink it");
+        assertEquals(0, admission.tryAcquire(Priority.LOW), "no further OData collection is admitted");
+        assertTrue(admission.tryAcquire(Priority.CRITICAL) > 0, "operator writes are still admitted");
+    }
+
+    @Test
+    public void when_RequestsClassified_Then_OperatorWritesCritical() {
+        assertEquals("odata-collection", limiters.groupOf("GET", "/odata/Orders"));
+        assertEquals("odata-entity", limiters.groupOf("POST", "/odata/$batch"));
+        assertEquals("odata-entity", limiters.groupOf("GET", "/odata/Orders(1)/Equipments"));
+        assertEquals("odata-entity", limiters.groupOf("POST", "/odata/Orders"));
+        assertEquals("operator", limiters.groupOf("POST", "/operator/start/1"));
+        assertNull(limiters.groupOf("GET", "/actuator/prometheus"));
+
+        assertEquals(Priority.CRITICAL, limiters.priorityOf("operator", "POST"));
+        assertEquals(Priority.HIGH, limiters.priorityOf("operator", "GET"));
+        assertEquals(Priority.LOW, limiters.priorityOf("odata-collection", "GET"));
+    }
+
+    @Test
+    public void when_GroupLimitReached_Then_ShedWith503AndCounted() throws Exception {
+        long shed = limiters.getShed("editor", "normal");
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> editing = CompletableFuture.runAsync(() -> {
+            try {
+                limitFilter.doFilter(new MockHttpServletRequest("GET", "/editor/orders"), new MockHttpServletResponse(), (request, response) -> {
+                    entered.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        try {
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            MockHttpServletResponse response = mockMvc.perform(get("/editor/orders")).andReturn().getResponse();
+            assertEquals(503, response.getStatus());
+            assertNotNull(response.getHeader("Retry-After"));
+            assertEquals(shed + 1, limiters.getShed("editor", "normal"));
+        } finally {
+            release.countDown();
+            editing.get(5, TimeUnit.SECONDS);
+        }
+
+        String metrics = mockMvc.perform(get("/actuator/prometheus")
+                        .header("Authorization", apiHelper.createAuthorizationHeaderFrom("editor", "editor")))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(metrics.contains("concurrency_limit{group=\"editor\"} 1.0"), metrics);
+        assertTrue(metrics.contains("concurrency_shed_total{group=\"editor\",priority=\"normal\"} " + (shed + 1) + ".0"), metrics);
+        assertTrue(metrics.contains("concurrency_in_flight{group=\"operator\"}"), metrics);
+        assertEquals(0, limiters.getInFlight("editor"));
+    }
+
+    /**
+     * Admits LOW requests until they are shed, then completes all of them with the given latency.
+     */
+    private static void completeAdmittedLow(AdaptiveLimiter limiter, long rttNanos) {
+        List<Integer> admitted = new ArrayList<>();
+        for (int inFlight = limiter.tryAcquire(Priority.LOW); inFlight > 0; inFlight = limiter.tryAcquire(Priority.LOW)) {
+            admitted.add(inFlight);
+        }
+        admitted.forEach(inFlight -> limiter.onComplete(rttNanos, inFlight, Priority.LOW));
+    }
+
+    /**
+     * Runs one operator write through the admission and the operator limiter with the given latency.
+     */
+    private static void completeOperatorWrite(PriorityAdmission admission, AdaptiveLimiter operator, long rttNanos) {
+        int admittedInFlight = admission.tryAcquire(Priority.CRITICAL);
+        int inFlight = operator.tryAcquire(Priority.CRITICAL);
+        admission.onGroupComplete(operator.onComplete(rttNanos, inFlight, Priority.CRITICAL), admittedInFlight, Priority.CRITICAL);
+    }
+}
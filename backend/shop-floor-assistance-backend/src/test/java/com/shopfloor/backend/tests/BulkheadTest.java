@@ -0,0 +1,265 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shopfloor.backend.concurrency.Bulkhead;
+import com.shopfloor.backend.concurrency.BulkheadFilter;
+import com.shopfloor.backend.concurrency.Bulkheads;
+import com.shopfloor.backend.olingo.database.ODataExecutorConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Integration tests for the bulkheads of the API families.
+ *
+ * This class checks that a saturated family is rejected with 503 and Retry-After before authentication,
+ * that the other families are still served, that the connection budget of a family is enforced,
+ * that the connections reserved for a family stay free and that executor tasks borrow inside the budget of their request.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "bulkhead.enabled=true",
+        "bulkhead.odata.max-concurrent=1",
+        "bulkhead.editor.max-concurrent=1",
+        "bulkhead.operator.max-connections=1",
+        "bulkhead.operator.reserved-connections=1",
+        "spring.datasource.hikari.maximum-pool-size=4",
+        "spring.datasource.hikari.connection-timeout=500"
+})
+@AutoConfigureMockMvc
+public class BulkheadTest {
+
+    /**
+     * Helper for API-related operations.
+     */
+    @Autowired
+    private ApiHelper apiHelper;
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * MockMvc for the requests passing the registered filters.
+     */
+    @Autowired
+    private MockMvc mockMvc;
+
+    /**
+     * The bulkheads under test.
+     */
+    @Autowired
+    private Bulkheads bulkheads;
+
+    /**
+     * The filter admitting the requests.
+     */
+    @Autowired
+    private BulkheadFilter bulkheadFilter;
+
+    /**
+     * Executor of the $count queries, its tasks run inside the bulkhead of their request.
+     */
+    @Autowired
+    @Qualifier(ODataExecutorConfiguration.COUNT_EXECUTOR)
+    private ThreadPoolTaskExecutor countExecutor;
+
+    /**
+     * The gated connection pool.
+     */
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_ODataSaturated_Then_ODataRejectedAndOperatorServed() throws Exception {
+        String operatorHeader = apiHelper.createAuthorizationHeaderFrom("operator", "operator");
+        long rejected = bulkheads.getRejected("odata");
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> export = holdPlace("/odata/Orders", entered, release);
+        try {
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            MockHttpServletResponse response = mockMvc.perform(get("/odata/Orders")).andReturn().getResponse();
+            assertEquals(503, response.getStatus());
+            assertEquals("1", response.getHeader("Retry-After"));
+            JsonNode error = new ObjectMapper().readTree(response.getContentAsString(StandardCharsets.UTF_8));
+            assertEquals("503", error.get("error").get("code").asText());
+            assertEquals(rejected + 1, bulkheads.getRejected("odata"));
+
+            apiHelper.getOperatorAllOrdersGET(operatorHeader, 200);
+        } finally {
+            release.countDown();
+            export.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(0, bulkheads.getActiveRequests("odata"));
+        assertEquals(404, mockMvc.perform(get("/odata/Orders")).andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void when_EditorSaturated_Then_RejectedBeforeAuthentication() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> editing = holdPlace("/editor/orders", entered, release);
+        try {
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            MockHttpServletResponse response = mockMvc.perform(get("/editor/orders")).andReturn().getResponse();
+            assertEquals(503, response.getStatus());
+            assertTrue(response.getContentType().startsWith("application/problem+json"), response.getContentType());
+            assertNotNull(response.getHeader("Retry-After"));
+        } finally {
+            release.countDown();
+            editing.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(403, mockMvc.perform(get("/editor/orders")).andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void when_FamilyHoldsItsConnections_Then_FamilyWaitsAndOthersBorrow() throws Exception {
+        Bulkhead operator = bulkheads.get("operator");
+        assertTrue(operator.tryEnter());
+        try (Connection first = dataSource.getConnection(); Connection nested = dataSource.getConnection()) {
+            assertEquals(1, operator.getActiveConnections());
+
+            CompletableFuture<Void> secondRequest = CompletableFuture.runAsync(() -> runInBulkhead(operator));
+            Exception failure = assertThrows(Exception.class, () -> secondRequest.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(SQLTransientConnectionException.class, failure.getCause().getCause());
+
+            CompletableFuture.runAsync(() -> runInBulkhead(bulkheads.get("odata"))).get(5, TimeUnit.SECONDS);
+        } finally {
+            operator.exit();
+        }
+
+        assertEquals(0, operator.getActiveConnections());
+    }
+
+    @Test
+    public void when_ODataTakesAllButReserved_Then_ODataWaitsAndOperatorBorrows() throws Exception {
+        Bulkhead odata = bulkheads.get("odata");
+        CountDownLatch release = new CountDownLatch(1);
+        assertTrue(odata.tryEnter());
+        try {
+            CountDownLatch borrowed = new CountDownLatch(3);
+            List<CompletableFuture<Void>> holders = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                holders.add(CompletableFuture.runAsync(Bulkhead.propagate(() -> holdConnection(borrowed, release))));
+            }
+            assertTrue(borrowed.await(5, TimeUnit.SECONDS));
+            assertEquals(3, odata.getActiveConnections());
+
+            // the fourth connection of the pool is reserved for the operators
+            CompletableFuture<Void> fourth = CompletableFuture.runAsync(Bulkhead.propagate(() -> holdConnection(new CountDownLatch(1), release)));
+            Exception failure = assertThrows(Exception.class, () -> fourth.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(SQLTransientConnectionException.class, failure.getCause().getCause());
+
+            CompletableFuture.runAsync(() -> runInBulkhead(bulkheads.get("operator"))).get(5, TimeUnit.SECONDS);
+
+            release.countDown();
+            for (CompletableFuture<Void> holder : holders) {
+                holder.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            release.countDown();
+            odata.exit();
+        }
+
+        assertEquals(0, odata.getActiveConnections());
+    }
+
+    @Test
+    public void when_TaskHandedToExecutor_Then_RunsInBulkheadOfRequest() throws Exception {
+        Bulkhead odata = bulkheads.get("odata");
+        assertTrue(odata.tryEnter());
+        try {
+            assertSame(odata, countExecutor.submit(Bulkhead::current).get(5, TimeUnit.SECONDS));
+        } finally {
+            odata.exit();
+        }
+
+        assertNull(countExecutor.submit(Bulkhead::current).get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Borrows a connection and keeps it until released.
+     */
+    private void holdConnection(CountDownLatch borrowed, CountDownLatch release) {
+        try (Connection connection = dataSource.getConnection()) {
+            borrowed.countDown();
+            release.await(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Passes a request through the filter on another thread and keeps it inside until released.
+     */
+    private CompletableFuture<Void> holdPlace(String path, CountDownLatch entered, CountDownLatch release) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                bulkheadFilter.doFilter(new MockHttpServletRequest("GET", path), new MockHttpServletResponse(), (request, response) -> {
+                    entered.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * Borrows a connection inside the given bulkhead.
+     */
+    private void runInBulkhead(Bulkhead bulkhead) {
+        try {
+            assertTrue(bulkhead.tryEnter());
+            try (Connection connection = dataSource.getConnection()) {
+                assertTrue(connection.isValid(1));
+            } finally {
+                bulkhead.exit();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.concurrency.GatedDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the gate in front of the connection pool.
+ *
+ * This class checks that the gate is on by default, that no more threads hold a connection than the pool holds,
+ * that a thread waiting longer than the connection timeout fails and that OData requests are served through the gate.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "spring.datasource.hikari.connection-timeout=1000"
+})
+@AutoConfigureMockMvc
+public class ConnectionGateTest {
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * The gated connection pool.
+     */
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_ManyThreadsBorrow_Then_NoMoreThanPoolSizeHoldAConnection() throws Exception {
+        GatedDataSource gate = assertInstanceOf(GatedDataSource.class, dataSource);
+        assertEquals(2, gate.getMaxConnections());
+        AtomicInteger holding = new AtomicInteger();
+        AtomicInteger maxHolding = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                futures.add(executor.submit(() -> {
+                    try (Connection connection = dataSource.getConnection()) {
+                        maxHolding.accumulateAndGet(holding.incrementAndGet(), Math::max);
+                        connection.createStatement().execute("SELECT 1");
+                        Thread.sleep(50);
+                        holding.decrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(maxHolding.get() <= 2, "held at once: " + maxHolding.get());
+        assertEquals(2, gate.getAvailablePermits());
+    }
+
+    @Test
+    public void when_PoolExhaustedLongerThanTimeout_Then_BorrowFails() throws Exception {
+        GatedDataSource gate = assertInstanceOf(GatedDataSource.class, dataSource);
+        long timeouts = gate.getTimeouts();
+
+        try (Connection first = dataSource.getConnection(); Connection second = dataSource.getConnection()) {
+            assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+            second.close();
+            try (Connection third = dataSource.getConnection()) {
+                assertTrue(third.isValid(1));
+            }
+        }
+
+        assertEquals(timeouts + 1, gate.getTimeouts());
+        assertEquals(2, gate.getAvailablePermits());
+    }
+
+    @Test
+    public void when_GateEnabled_Then_ODataRequestsServed() throws Exception {
+        odataHelper.seedOrders(3, 1);
+
+        JsonNode orders = odataHelper.getJson("/Orders", "$count=true&$expand=Equipments", 200);
+
+        assertEquals(3, orders.get("@odata.count").asInt());
+        assertEquals(2, ((GatedDataSource) dataSource).getAvailablePermits());
+    }
+}
@@ -0,0 +1,143 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.database.objects.OrderDBO;
+import com.shopfloor.backend.database.repositories.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for $apply on the OData entity sets.
+ *
+ * This class checks that groupby, aggregate and filter transformations are computed by the database
+ * and that only the aggregated rows are returned.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataApplyTest {
+
+    private static final int ORDER_COUNT = 30;
+    private static final int EQUIPMENT_COUNT = 2;
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Repository for managing order data.
+     */
+    @Autowired
+    private OrderRepository orderRepository;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_GroupByProductAfterWithSum_Then_OneQueryWithAggregatedRows() throws Exception {
+        seedOrdersWithTimes();
+        Long afterProductId = orderRepository.findAll().get(0).getAfterProduct().getId();
+
+        SqlStatementCounter.reset();
+        JsonNode result = odataHelper.getJson("/Orders",
+                "$apply=groupby((ProductAfter/Id),aggregate(TotalTimeRequired with sum as Total))", 200);
+
+        JsonNode rows = result.get("value");
+        assertEquals(1, rows.size());
+        assertEquals(afterProductId, rows.get(0).get("ProductAfter").get("Id").asLong());
+        assertEquals(30, rows.get(0).get("Total").asLong());
+        assertTrue(result.get("@odata.context").asText().endsWith("$metadata#Orders(ProductAfter(Id),Total)"));
+
+        assertEquals(1, SqlStatementCounter.count());
+        assertTrue(SqlStatementCounter.statements().get(0).toLowerCase().contains("group by"));
+    }
+
+    @Test
+    public void when_AggregateWithoutGroupBy_Then_SingleRow() throws Exception {
+        seedOrdersWithTimes();
+
+        JsonNode rows = odataHelper.getJson("/Orders",
+                "$apply=aggregate(TotalTimeRequired with max as Max,TotalTimeRequired with min as Min,"
+                        + "TotalTimeRequired with countdistinct as Distinct,$count as Count)", 200).get("value");
+
+        assertEquals(1, rows.size());
+        assertEquals(2, rows.get(0).get("Max").asInt());
+        assertEquals(0, rows.get(0).get("Min").asInt());
+        assertEquals(3, rows.get(0).get("Distinct").asInt());
+        assertEquals(ORDER_COUNT, rows.get(0).get("Count").asInt());
+    }
+
+    @Test
+    public void when_FilterThenGroupBy_Then_GroupsOfFilteredRows() throws Exception {
+        seedOrdersWithTimes();
+
+        JsonNode rows = odataHelper.getJson("/Orders",
+                "$apply=filter(startswith(OrderNumber,'O001'))/groupby((TotalTimeRequired),aggregate($count as Count))"
+                        + "&$filter=TotalTimeRequired ne 2", 200).get("value");
+
+        // O0010 to O0019 with times 1, 2, 0, 1, ... and without the time 2
+        assertEquals(2, rows.size());
+        assertEquals(0, rows.get(0).get("TotalTimeRequired").asInt());
+        assertEquals(3, rows.get(0).get("Count").asInt());
+        assertEquals(1, rows.get(1).get("TotalTimeRequired").asInt());
+        assertEquals(4, rows.get(1).get("Count").asInt());
+    }
+
+    @Test
+    public void when_GroupByCollectionNavigation_Then_GroupPerEquipment() throws Exception {
+        seedOrdersWithTimes();
+
+        JsonNode rows = odataHelper.getJson("/Orders",
+                "$apply=groupby((Equipments/EquipmentNumber),aggregate($count as Orders))&$top=1", 200).get("value");
+
+        assertEquals(1, rows.size());
+        assertEquals("E0001", rows.get(0).get("Equipments").get("EquipmentNumber").asText());
+        assertEquals(ORDER_COUNT, rows.get(0).get("Orders").asInt());
+    }
+
+    @Test
+    public void when_GroupProducts_Then_AggregatedProducts() throws Exception {
+        seedOrdersWithTimes();
+
+        JsonNode rows = odataHelper.getJson("/Products", "$apply=groupby((Type),aggregate($count as Count))", 200).get("value");
+
+        assertEquals(1, rows.size());
+        assertEquals("Tablet", rows.get(0).get("Type").asText());
+        assertEquals(2, rows.get(0).get("Count").asInt());
+    }
+
+    @Test
+    public void when_UnsupportedTransformation_Then_NotImplemented() throws Exception {
+        seedOrdersWithTimes();
+
+        odataHelper.getJson("/Orders", "$apply=topcount(2,TotalTimeRequired)", 501);
+    }
+
+    /**
+     * Seeds the orders and assigns the total times 1, 2, 0, 1, 2, 0, ... in creation order.
+     */
+    private void seedOrdersWithTimes() {
+        List<Long> orderIds = odataHelper.seedOrders(ORDER_COUNT, EQUIPMENT_COUNT);
+        List<OrderDBO> orders = orderRepository.findAllById(orderIds);
+        for (OrderDBO order : orders) {
+            order.setTotalTimeRequired((orderIds.indexOf(order.getId()) + 1) % 3);
+        }
+        orderRepository.saveAll(orders);
+    }
+}
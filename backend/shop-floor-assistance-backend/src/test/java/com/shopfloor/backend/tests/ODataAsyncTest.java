@@ -0,0 +1,205 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shopfloor.backend.olingo.business.generics.async.ODataAsyncJobs;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.server.api.ODataRequest;
+import org.apache.olingo.server.api.ODataResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for requests sent with "Prefer: respond-async".
+ *
+ * This class checks that such requests are answered with 202 Accepted and a status monitor,
+ * and that the monitor returns the finished response, the error of a failed or interrupted request and 404 once it was deleted.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataAsyncTest {
+
+    private static final Map<String, String> RESPOND_ASYNC = Map.of("Prefer", "respond-async");
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * The asynchronous requests under test.
+     */
+    @Autowired
+    private ODataAsyncJobs asyncJobs;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_RespondAsyncPreferred_Then_AcceptedAndResultFromMonitor() throws Exception {
+        odataHelper.seedOrders(3, 2);
+        String query = "$expand=Equipments&$orderby=OrderNumber&$count=true";
+        JsonNode expected = odataHelper.getJson("/Orders", query, 200);
+        long submitted = asyncJobs.getSubmitted();
+
+        MockHttpServletResponse accepted = odataHelper.get("/Orders", query, RESPOND_ASYNC);
+
+        assertEquals(202, accepted.getStatus());
+        assertEquals("respond-async", accepted.getHeader("Preference-Applied"));
+        assertTrue(accepted.getHeader("Location").contains("/$async/"), accepted.getHeader("Location"));
+        assertEquals(submitted + 1, asyncJobs.getSubmitted());
+
+        MockHttpServletResponse result = awaitResult(accepted.getHeader("Location"));
+        assertEquals("200", result.getHeader(ODataAsyncJobs.ASYNC_RESULT));
+        assertTrue(result.getContentType().startsWith("application/json"), result.getContentType());
+        assertEquals(expected, new ObjectMapper().readTree(result.getContentAsString(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void when_AsyncRequestFails_Then_MonitorReturnsError() throws Exception {
+        odataHelper.seedOrders(1, 1);
+
+        MockHttpServletResponse accepted = odataHelper.get("/Orders", "$orderby=OrderNumber&$skiptoken=invalid", RESPOND_ASYNC);
+        assertEquals(202, accepted.getStatus());
+
+        MockHttpServletResponse result = awaitResult(accepted.getHeader("Location"));
+        assertEquals("400", result.getHeader(ODataAsyncJobs.ASYNC_RESULT));
+        assertTrue(result.getContentAsString(StandardCharsets.UTF_8).contains("error"));
+    }
+
+    @Test
+    public void when_MonitorDeleted_Then_NotFound() throws Exception {
+        odataHelper.seedOrders(1, 1);
+        MockHttpServletResponse accepted = odataHelper.get("/Orders", null, RESPOND_ASYNC);
+        String monitorPath = getMonitorPath(accepted.getHeader("Location"));
+
+        assertEquals(204, odataHelper.perform("DELETE", monitorPath, null, Map.of(), null).getStatus());
+        assertEquals(404, odataHelper.get(monitorPath, null).getStatus());
+        assertEquals(404, odataHelper.get("/$async/unknown", null).getStatus());
+    }
+
+    @Test
+    public void when_AsyncRequestThrowsError_Then_MonitorReturnsError(@TempDir Path spoolDirectory) throws Exception {
+        ODataAsyncJobs jobs = new ODataAsyncJobs(Runnable::run, spoolDirectory, Duration.ofHours(1), 10, Duration.ofMinutes(30));
+        jobs.setDispatcher((entitySetName, request) -> {
+            throw new StackOverflowError();
+        });
+
+        String monitor = jobs.submit(request(), "Orders");
+        MockHttpServletResponse result = respond(jobs, monitor);
+
+        assertEquals(200, result.getStatus());
+        assertEquals("500", result.getHeader(ODataAsyncJobs.ASYNC_RESULT));
+    }
+
+    @Test
+    public void when_AsyncRequestRunsTooLong_Then_InterruptedAndMonitorReturnsError(@TempDir Path spoolDirectory) throws Exception {
+        List<Runnable> neverRun = new ArrayList<>();
+        ODataAsyncJobs jobs = new ODataAsyncJobs(neverRun::add, spoolDirectory, Duration.ofHours(1), 1, Duration.ZERO);
+        jobs.setDispatcher((entitySetName, request) -> fail("The request must not run"));
+
+        String monitor = jobs.submit(request(), "Orders");
+        Thread.sleep(5);
+        MockHttpServletResponse result = respond(jobs, monitor);
+
+        assertEquals(200, result.getStatus());
+        assertEquals("500", result.getHeader(ODataAsyncJobs.ASYNC_RESULT));
+        assertEquals(1, jobs.getTimedOut());
+        assertTrue(((FutureTask<?>) neverRun.get(0)).isCancelled());
+    }
+
+    @Test
+    public void when_SpoolFilesOfPreviousRun_Then_DeletedAtStartup(@TempDir Path spoolDirectory) throws Exception {
+        Path leftover = Files.writeString(spoolDirectory.resolve("lost-job.spool"), "{}");
+        Path other = Files.writeString(spoolDirectory.resolve("other.txt"), "kept");
+
+        new ODataAsyncJobs(Runnable::run, spoolDirectory, Duration.ofHours(1), 10, Duration.ofMinutes(30));
+
+        assertFalse(Files.exists(leftover));
+        assertTrue(Files.exists(other), "only spool files are deleted");
+    }
+
+    @Test
+    public void when_SweptWithoutRequests_Then_ExpiredResponseDeleted(@TempDir Path spoolDirectory) throws Exception {
+        ODataAsyncJobs jobs = new ODataAsyncJobs(Runnable::run, spoolDirectory, Duration.ZERO, 10, Duration.ofMinutes(30));
+        jobs.setDispatcher((entitySetName, request) -> {
+            ODataResponse response = new ODataResponse();
+            response.setStatusCode(200);
+            response.setContent(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+            return response;
+        });
+        jobs.submit(request(), "Orders");
+        assertEquals(1, jobs.getSize());
+        Thread.sleep(5);
+
+        jobs.removeExpired();
+
+        assertEquals(0, jobs.getSize());
+        try (Stream<Path> spools = Files.list(spoolDirectory)) {
+            assertEquals(0, spools.count());
+        }
+    }
+
+    private ODataRequest request() {
+        ODataRequest request = new ODataRequest();
+        request.setMethod(HttpMethod.GET);
+        request.setRawBaseUri("http://localhost/odata");
+        request.setRawODataPath("/Orders");
+        request.setRawRequestUri("http://localhost/odata/Orders");
+        return request;
+    }
+
+    private MockHttpServletResponse respond(ODataAsyncJobs jobs, String monitor) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        jobs.respond(new MockHttpServletRequest("GET", URI.create(monitor).getRawPath()), response);
+        return response;
+    }
+
+    private MockHttpServletResponse awaitResult(String monitor) throws Exception {
+        String monitorPath = getMonitorPath(monitor);
+        for (int i = 0; i < 100; i++) {
+            MockHttpServletResponse response = odataHelper.get(monitorPath, null);
+            if (response.getStatus() != 202) {
+                assertEquals(200, response.getStatus());
+                return response;
+            }
+            assertNotNull(response.getHeader("Retry-After"));
+            Thread.sleep(50);
+        }
+        throw new AssertionError("The asynchronous request did not finish");
+    }
+
+    private String getMonitorPath(String monitor) {
+        String path = URI.create(monitor).getRawPath();
+        return path.substring(path.indexOf("/$async/"));
+    }
+}
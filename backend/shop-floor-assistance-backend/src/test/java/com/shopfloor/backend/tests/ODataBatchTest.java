@@ -0,0 +1,307 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shopfloor.backend.database.objects.EquipmentDBO;
+import com.shopfloor.backend.database.repositories.EquipmentRepository;
+import com.shopfloor.backend.database.repositories.OrderRepository;
+import com.shopfloor.backend.olingo.database.ODataExecutorConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for $batch requests in the multipart and the JSON format.
+ *
+ * This class checks that the changesets are atomic, that they can refer to entities created before
+ * and that the independent GET requests are read on the batch executor, or on the request thread while it is busy.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataBatchTest {
+
+    private static final String CRLF = "\r\n";
+    private static final String BOUNDARY = "batch_test";
+    private static final String CHANGESET_BOUNDARY = "changeset_test";
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Mapper for reading the JSON responses.
+     */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Executor reading the independent GET requests of a batch in parallel.
+     */
+    @Autowired
+    @Qualifier(ODataExecutorConfiguration.BATCH_EXECUTOR)
+    private ThreadPoolTaskExecutor batchExecutor;
+
+    /**
+     * Repository for managing order data.
+     */
+    @Autowired
+    private OrderRepository orderRepository;
+
+    /**
+     * Repository for managing equipment data.
+     */
+    @Autowired
+    private EquipmentRepository equipmentRepository;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_MultipartBatchWithReadsAndChangeSet_Then_AllPartsAnswered() throws Exception {
+        odataHelper.seedOrders(5, 2);
+
+        String body = part("GET Orders?$top=2 HTTP/1.1", null)
+                + part("GET Products?$count=true HTTP/1.1", null)
+                + changeSet(
+                        changeSetPart("1", "POST Equipments HTTP/1.1", equipment("E100", "Press")),
+                        changeSetPart("2", "POST Equipments HTTP/1.1", equipment("E101", "Drill")))
+                + "--" + BOUNDARY + "--" + CRLF;
+
+        String response = postMultipart(body, 200);
+
+        assertTrue(response.contains("\"OrderNumber\":\"O0001\""));
+        assertTrue(response.contains("\"@odata.count\":2"));
+        assertTrue(response.contains("\"EquipmentNumber\":\"E100\""));
+        assertTrue(response.contains("\"EquipmentNumber\":\"E101\""));
+        assertEquals(4, equipmentRepository.count());
+    }
+
+    @Test
+    public void when_ChangeSetPartFails_Then_ChangeSetRolledBack() throws Exception {
+        String body = changeSet(
+                        changeSetPart("1", "POST Equipments HTTP/1.1", equipment("E100", "Press")),
+                        changeSetPart("2", "PUT Equipments(999999) HTTP/1.1", equipment("E101", "Drill")))
+                + "--" + BOUNDARY + "--" + CRLF;
+
+        String response = postMultipart(body, 200);
+
+        assertTrue(response.contains("404"));
+        assertFalse(response.contains("\"EquipmentNumber\":\"E100\""));
+        assertEquals(0, equipmentRepository.count());
+    }
+
+    @Test
+    public void when_ChangeSetRefersToContentId_Then_CreatedEntityUpdated() throws Exception {
+        String body = changeSet(
+                        changeSetPart("1", "POST Equipments HTTP/1.1", equipment("E100", "Press")),
+                        changeSetPart("2", "PUT $1 HTTP/1.1", equipment("E100", "Hydraulic press")))
+                + "--" + BOUNDARY + "--" + CRLF;
+
+        postMultipart(body, 200);
+
+        List<EquipmentDBO> equipments = equipmentRepository.findAll();
+        assertEquals(1, equipments.size());
+        assertEquals("Hydraulic press", equipments.get(0).getName());
+    }
+
+    @Test
+    public void when_ChangeSetUpdatesEntityTwice_Then_EntityReadOnce() throws Exception {
+        odataHelper.seedOrders(1, 1);
+        long equipmentId = equipmentRepository.findByEquipmentNumber("E0001").map(EquipmentDBO::getId).orElseThrow();
+        String body = changeSet(
+                        changeSetPart("1", "PUT Equipments(" + equipmentId + ") HTTP/1.1", equipment("E0001", "Press")),
+                        changeSetPart("2", "PUT Equipments(" + equipmentId + ") HTTP/1.1", equipment("E0001", "Hydraulic press")))
+                + "--" + BOUNDARY + "--" + CRLF;
+
+        SqlStatementCounter.reset();
+        postMultipart(body, 200);
+
+        // the second update finds the equipment in the persistence context of the changeset
+        long selects = SqlStatementCounter.statements().stream()
+                .filter(statement -> statement.toLowerCase().startsWith("select") && statement.toLowerCase().contains(" from equipment "))
+                .count();
+        assertEquals(1, selects, SqlStatementCounter.statements().toString());
+        assertEquals("Hydraulic press", equipmentRepository.findById(equipmentId).orElseThrow().getName());
+    }
+
+    @Test
+    public void when_JsonBatch_Then_ResponsesInOrder() throws Exception {
+        odataHelper.seedOrders(5, 2);
+
+        JsonNode responses = postJson("{\"requests\":["
+                + "{\"id\":\"r1\",\"method\":\"get\",\"url\":\"Orders?$top=1&$select=OrderNumber\"},"
+                + "{\"id\":\"r2\",\"method\":\"get\",\"url\":\"Equipments/$count\"},"
+                + "{\"id\":\"c1\",\"atomicityGroup\":\"g1\",\"method\":\"post\",\"url\":\"Equipments\",\"body\":" + equipment("E100", "Press") + "},"
+                + "{\"id\":\"c2\",\"atomicityGroup\":\"g1\",\"method\":\"put\",\"url\":\"$c1\",\"body\":" + equipment("E100", "Hydraulic press") + "}"
+                + "]}").get("responses");
+
+        assertEquals(4, responses.size());
+        assertEquals("r1", responses.get(0).get("id").asText());
+        assertEquals(200, responses.get(0).get("status").asInt());
+        assertEquals("O0001", responses.get(0).get("body").get("value").get(0).get("OrderNumber").asText());
+        assertEquals("c2", responses.get(3).get("id").asText());
+        assertEquals("Hydraulic press", responses.get(3).get("body").get("Name").asText());
+        assertEquals(3, equipmentRepository.count());
+    }
+
+    @Test
+    public void when_JsonAtomicityGroupFails_Then_GroupRolledBack() throws Exception {
+        JsonNode responses = postJson("{\"requests\":["
+                + "{\"id\":\"c1\",\"atomicityGroup\":\"g1\",\"method\":\"post\",\"url\":\"Equipments\",\"body\":" + equipment("E100", "Press") + "},"
+                + "{\"id\":\"c2\",\"atomicityGroup\":\"g1\",\"method\":\"delete\",\"url\":\"Equipments(999999)\"},"
+                + "{\"id\":\"r1\",\"method\":\"get\",\"url\":\"Equipments\"}"
+                + "]}").get("responses");
+
+        assertEquals(3, responses.size());
+        assertEquals(404, responses.get(0).get("status").asInt());
+        assertEquals(404, responses.get(1).get("status").asInt());
+        assertEquals(0, responses.get(2).get("body").get("value").size());
+        assertEquals(0, equipmentRepository.count());
+    }
+
+    @Test
+    public void when_BatchWithIndependentReads_Then_ReadOnBatchExecutor() throws Exception {
+        odataHelper.seedOrders(5, 2);
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 1; i <= 4; i++) {
+            body.append(part("GET Orders(" + orderRepository.findAll().get(i - 1).getId() + ") HTTP/1.1", null));
+        }
+        body.append("--").append(BOUNDARY).append("--").append(CRLF);
+
+        SqlStatementCounter.reset();
+        String response = postMultipart(body.toString(), 200);
+
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(response.contains("\"OrderNumber\":\"O000" + i + "\""));
+        }
+        // a read the executor has not started when the batch waits for it is read by the request thread
+        assertTrue(SqlStatementCounter.threads().stream().anyMatch(thread -> thread.startsWith("odata-batch-")));
+    }
+
+    @Test
+    public void when_BatchExecutorBusy_Then_ReadOnRequestThread() throws Exception {
+        odataHelper.seedOrders(5, 2);
+
+        StringBuilder body = new StringBuilder();
+        for (int i = 1; i <= 4; i++) {
+            body.append(part("GET Orders(" + orderRepository.findAll().get(i - 1).getId() + ") HTTP/1.1", null));
+        }
+        body.append("--").append(BOUNDARY).append("--").append(CRLF);
+
+        // every thread of the executor is taken, the reads of the batch stay queued
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(batchExecutor.getMaxPoolSize());
+        for (int i = 0; i < batchExecutor.getMaxPoolSize(); i++) {
+            batchExecutor.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        try {
+            started.await();
+            SqlStatementCounter.reset();
+            String response = postMultipart(body.toString(), 200);
+
+            for (int i = 1; i <= 4; i++) {
+                assertTrue(response.contains("\"OrderNumber\":\"O000" + i + "\""));
+            }
+            assertTrue(SqlStatementCounter.threads().stream().noneMatch(thread -> thread.startsWith("odata-batch-")));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void when_JsonBatchMalformed_Then_BadRequest() throws Exception {
+        MockHttpServletResponse response = odataHelper.perform("POST", "/$batch", null,
+                Map.of("Content-Type", "application/json"), "{\"values\":[]}".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(400, response.getStatus());
+    }
+
+    private String postMultipart(String body, int expectedStatus) throws Exception {
+        MockHttpServletResponse response = odataHelper.perform("POST", "/$batch", null,
+                Map.of("Content-Type", "multipart/mixed;boundary=" + BOUNDARY), body.getBytes(StandardCharsets.UTF_8));
+        String content = response.getContentAsString(StandardCharsets.UTF_8);
+        assertEquals(expectedStatus, response.getStatus(), content);
+        return content;
+    }
+
+    private JsonNode postJson(String body) throws Exception {
+        MockHttpServletResponse response = odataHelper.perform("POST", "/$batch", null,
+                Map.of("Content-Type", "application/json"), body.getBytes(StandardCharsets.UTF_8));
+        String content = response.getContentAsString(StandardCharsets.UTF_8);
+        assertEquals(200, response.getStatus(), content);
+        return objectMapper.readTree(content);
+    }
+
+    private String part(String requestLine, String body) {
+        return "--" + BOUNDARY + CRLF
+                + "Content-Type: application/http" + CRLF
+                + "Content-Transfer-Encoding: binary" + CRLF
+                + CRLF
+                + request(requestLine, body);
+    }
+
+    private String changeSet(String... parts) {
+        return "--" + BOUNDARY + CRLF
+                + "Content-Type: multipart/mixed;boundary=" + CHANGESET_BOUNDARY + CRLF
+                + CRLF
+                + String.join("", parts)
+                + "--" + CHANGESET_BOUNDARY + "--" + CRLF
+                + CRLF;
+    }
+
+    private String changeSetPart(String contentId, String requestLine, String body) {
+        return "--" + CHANGESET_BOUNDARY + CRLF
+                + "Content-Type: application/http" + CRLF
+                + "Content-Transfer-Encoding: binary" + CRLF
+                + "Content-ID: " + contentId + CRLF
+                + CRLF
+                + request(requestLine, body);
+    }
+
+    private String request(String requestLine, String body) {
+        if (body == null) {
+            return requestLine + CRLF
+                    + "Accept: application/json" + CRLF
+                    + CRLF
+                    + CRLF;
+        }
+        return requestLine + CRLF
+                + "Content-Type: application/json" + CRLF
+                + CRLF
+                + body + CRLF;
+    }
+
+    private String equipment(String equipmentNumber, String name) {
+        return "{\"EquipmentNumber\":\"" + equipmentNumber + "\",\"Name\":\"" + name + "\",\"Type\":\"Machine\",\"Description\":\"Test\"}";
+    }
+}
@@ -0,0 +1,141 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shopfloor.backend.olingo.database.ODataExecutorConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for $count on the OData entity sets.
+ *
+ * The estimate threshold is lowered, so every unfiltered $count request
+ * with "Prefer: count=estimated" is answered from the database statistics.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = "odata.count.estimate-threshold=0")
+@AutoConfigureMockMvc
+public class ODataCountTest {
+
+    private static final int ORDER_COUNT = 30;
+    private static final Map<String, String> PREFER_ESTIMATED = Map.of("Prefer", "count=estimated");
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Mapper for reading the response bodies.
+     */
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Executor running the count queries in parallel with the page queries.
+     */
+    @Autowired
+    @Qualifier(ODataExecutorConfiguration.COUNT_EXECUTOR)
+    private ThreadPoolTaskExecutor countExecutor;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_GetCountWithoutPreference_Then_ExactCount() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        MockHttpServletResponse response = odataHelper.get("/Orders", "$count=true&$top=1", Map.of());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(ORDER_COUNT, readJson(response).get("@odata.count").asInt());
+        assertNull(response.getHeader("Preference-Applied"));
+    }
+
+    @Test
+    public void when_GetEstimatedCountUnfiltered_Then_EstimateWithoutCountQuery() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        SqlStatementCounter.reset();
+        MockHttpServletResponse response = odataHelper.get("/Orders", "$count=true&$top=1", PREFER_ESTIMATED);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("count=\"estimated\"", response.getHeader("Preference-Applied"));
+        assertTrue(readJson(response).get("@odata.count").asInt() >= 0);
+        assertTrue(SqlStatementCounter.statements().stream().noneMatch(sql -> sql.toLowerCase().contains("count(")));
+    }
+
+    @Test
+    public void when_GetEstimatedCountFiltered_Then_ExactCount() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        MockHttpServletResponse response = odataHelper.get("/Orders", "$count=true&$filter=startswith(OrderNumber,'O001')", PREFER_ESTIMATED);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(10, readJson(response).get("@odata.count").asInt());
+        assertNull(response.getHeader("Preference-Applied"));
+    }
+
+    @Test
+    public void when_GetEstimatedCountWithoutCountOption_Then_PreferenceIgnored() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        MockHttpServletResponse response = odataHelper.get("/Orders", "$top=1", PREFER_ESTIMATED);
+
+        assertEquals(200, response.getStatus());
+        assertFalse(readJson(response).has("@odata.count"));
+        assertNull(response.getHeader("Preference-Applied"));
+    }
+
+    @Test
+    public void when_CountExecutorBusy_Then_CountedOnRequestThread() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        // every thread of the executor is taken, the count of the request stays queued
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(countExecutor.getMaxPoolSize());
+        for (int i = 0; i < countExecutor.getMaxPoolSize(); i++) {
+            countExecutor.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        try {
+            started.await();
+            MockHttpServletResponse response = odataHelper.get("/Orders", "$count=true&$top=1", Map.of());
+
+            assertEquals(200, response.getStatus());
+            assertEquals(ORDER_COUNT, readJson(response).get("@odata.count").asInt());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private JsonNode readJson(MockHttpServletResponse response) throws Exception {
+        return objectMapper.readTree(response.getContentAsString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,173 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.database.objects.EquipmentDBO;
+import com.shopfloor.backend.database.objects.ProductDBO;
+import com.shopfloor.backend.database.repositories.EquipmentRepository;
+import com.shopfloor.backend.database.repositories.OrderRepository;
+import com.shopfloor.backend.database.repositories.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for deep inserts and deep updates of orders.
+ *
+ * This class checks that the inline equipments and the bound entities are persisted with the order
+ * and that the inserts of a deep insert are sent in JDBC batches.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataDeepInsertTest {
+
+    private static final String EXPAND = "$expand=ProductBefore,ProductAfter,Equipments";
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Repository for managing order data.
+     */
+    @Autowired
+    private OrderRepository orderRepository;
+
+    /**
+     * Repository for managing product data.
+     */
+    @Autowired
+    private ProductRepository productRepository;
+
+    /**
+     * Repository for managing equipment data.
+     */
+    @Autowired
+    private EquipmentRepository equipmentRepository;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_DeepInsertWithFiftyEquipments_Then_PersistedInBatches() throws Exception {
+        odataHelper.seedOrders(1, 0);
+        List<Long> productIds = getProductIds();
+
+        List<String> equipments = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            equipments.add(equipment(String.format("N%04d", i)));
+        }
+        String body = "{" + orderProperties("O0100", "Deep order") + ","
+                + "\"ProductBefore@odata.bind\":\"Products(" + productIds.get(0) + ")\","
+                + "\"ProductAfter@odata.bind\":\"Products(" + productIds.get(1) + ")\","
+                + "\"Equipments\":[" + String.join(",", equipments) + "]}";
+
+        SqlStatementCounter.reset();
+        long orderId = odataHelper.sendJson("POST", "/Orders", body, 200).get("Id").asLong();
+
+        // sequences, the bound products, one insert per table
+        assertTrue(SqlStatementCounter.count() <= 10, SqlStatementCounter.statements().toString());
+
+        JsonNode order = odataHelper.getJson("/Orders(" + orderId + ")", EXPAND, 200);
+        assertEquals("P0001", order.get("ProductBefore").get("ProductNumber").asText());
+        assertEquals("P0002", order.get("ProductAfter").get("ProductNumber").asText());
+        assertEquals(50, order.get("Equipments").size());
+        assertEquals(50, equipmentRepository.count());
+    }
+
+    @Test
+    public void when_DeepInsertWithBoundAndInlineEquipments_Then_AllLinked() throws Exception {
+        odataHelper.seedOrders(1, 2);
+        List<Long> equipmentIds = equipmentRepository.findAll().stream().map(EquipmentDBO::getId).toList();
+
+        String body = "{" + orderProperties("O0100", "Deep order") + ","
+                + "\"Equipments@odata.bind\":[\"Equipments(" + equipmentIds.get(0) + ")\",\"Equipments(" + equipmentIds.get(1) + ")\"],"
+                + "\"Equipments\":[" + equipment("N0001") + "]}";
+
+        long orderId = odataHelper.sendJson("POST", "/Orders", body, 200).get("Id").asLong();
+
+        JsonNode order = odataHelper.getJson("/Orders(" + orderId + ")", EXPAND, 200);
+        assertEquals(3, order.get("Equipments").size());
+        assertEquals(3, equipmentRepository.count());
+        assertTrue(order.get("ProductBefore").isNull());
+    }
+
+    @Test
+    public void when_DeepInsertBindsMissingProduct_Then_BadRequestAndNothingCreated() throws Exception {
+        String body = "{" + orderProperties("O0100", "Deep order") + ","
+                + "\"ProductBefore@odata.bind\":\"Products(999999)\","
+                + "\"Equipments\":[" + equipment("N0001") + "]}";
+
+        odataHelper.sendJson("POST", "/Orders", body, 400);
+
+        assertEquals(0, orderRepository.count());
+        assertEquals(0, equipmentRepository.count());
+    }
+
+    @Test
+    public void when_DeepInsertWithInlineProduct_Then_BadRequest() throws Exception {
+        String body = "{" + orderProperties("O0100", "Deep order") + ","
+                + "\"ProductBefore\":{\"ProductNumber\":\"P0100\",\"Name\":\"Paracetamol\"}}";
+
+        odataHelper.sendJson("POST", "/Orders", body, 400);
+
+        assertEquals(0, orderRepository.count());
+    }
+
+    @Test
+    public void when_DeepUpdate_Then_ContainedNavigationPropertiesReplaced() throws Exception {
+        long orderId = odataHelper.seedOrders(1, 3).get(0);
+        List<Long> productIds = getProductIds();
+        List<Long> equipmentIds = equipmentRepository.findAll().stream().map(EquipmentDBO::getId).toList();
+
+        String body = "{" + orderProperties("O0001", "Updated order") + ","
+                + "\"ProductAfter@odata.bind\":\"Products(" + productIds.get(0) + ")\","
+                + "\"Equipments@odata.bind\":[\"Equipments(" + equipmentIds.get(2) + ")\"],"
+                + "\"Equipments\":[" + equipment("N0001") + "]}";
+
+        odataHelper.sendJson("PUT", "/Orders(" + orderId + ")", body, 200);
+
+        JsonNode order = odataHelper.getJson("/Orders(" + orderId + ")", EXPAND, 200);
+        assertEquals("Updated order", order.get("Name").asText());
+        // not contained in the request, kept
+        assertEquals("P0001", order.get("ProductBefore").get("ProductNumber").asText());
+        assertEquals("P0001", order.get("ProductAfter").get("ProductNumber").asText());
+        List<String> equipmentNumbers = new ArrayList<>();
+        order.get("Equipments").forEach(equipment -> equipmentNumbers.add(equipment.get("EquipmentNumber").asText()));
+        assertEquals(List.of("E0003", "N0001"), equipmentNumbers.stream().sorted().toList());
+        assertEquals(4, equipmentRepository.count());
+    }
+
+    private List<Long> getProductIds() {
+        return productRepository.findAll().stream()
+                .sorted(Comparator.comparing(ProductDBO::getProductNumber))
+                .map(ProductDBO::getId)
+                .toList();
+    }
+
+    private String orderProperties(String orderNumber, String name) {
+        return "\"OrderNumber\":\"" + orderNumber + "\",\"Name\":\"" + name + "\",\"Description\":\"Test\"";
+    }
+
+    private String equipment(String equipmentNumber) {
+        return "{\"EquipmentNumber\":\"" + equipmentNumber + "\",\"Name\":\"Equipment " + equipmentNumber + "\","
+                + "\"Type\":\"Machine\",\"Description\":\"Test\"}";
+    }
+}
@@ -0,0 +1,124 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for $expand on the OData entity sets.
+ *
+ * This class checks that only the expanded navigation properties are converted
+ * and that they are loaded with a bounded number of statements instead of one per entity.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataExpandTest {
+
+    private static final int ORDER_COUNT = 20;
+    private static final int EQUIPMENT_COUNT = 3;
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_GetOrdersWithoutExpand_Then_NavigationsNotLoaded() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, EQUIPMENT_COUNT);
+
+        SqlStatementCounter.reset();
+        JsonNode orders = odataHelper.getJson("/Orders", null, 200).get("value");
+
+        assertEquals(ORDER_COUNT, orders.size());
+        assertFalse(orders.get(0).has("ProductBefore"));
+        assertFalse(orders.get(0).has("Equipments"));
+        assertEquals(1, SqlStatementCounter.count());
+    }
+
+    @Test
+    public void when_GetOrdersExpandProduct_Then_FetchedWithSameQuery() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, EQUIPMENT_COUNT);
+
+        SqlStatementCounter.reset();
+        JsonNode orders = odataHelper.getJson("/Orders", "$expand=ProductBefore", 200).get("value");
+
+        assertEquals(ORDER_COUNT, orders.size());
+        for (JsonNode order : orders) {
+            assertEquals("P0001", order.get("ProductBefore").get("ProductNumber").asText());
+            assertFalse(order.has("ProductAfter"));
+        }
+        assertEquals(1, SqlStatementCounter.count());
+    }
+
+    @Test
+    public void when_GetOrdersExpandEquipments_Then_LoadedInBatch() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, EQUIPMENT_COUNT);
+
+        SqlStatementCounter.reset();
+        JsonNode orders = odataHelper.getJson("/Orders", "$expand=Equipments", 200).get("value");
+
+        assertEquals(ORDER_COUNT, orders.size());
+        for (JsonNode order : orders) {
+            assertEquals(EQUIPMENT_COUNT, order.get("Equipments").size());
+        }
+        assertEquals(2, SqlStatementCounter.count());
+    }
+
+    @Test
+    public void when_GetProductsWithNestedExpand_Then_AllLevelsConverted() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, EQUIPMENT_COUNT);
+
+        SqlStatementCounter.reset();
+        JsonNode products = odataHelper.getJson("/Products", "$filter=ProductNumber eq 'P0001'&$expand=OrdersAsBefore($expand=Equipments)", 200)
+                .get("value");
+
+        assertEquals(1, products.size());
+        JsonNode orders = products.get(0).get("OrdersAsBefore");
+        assertEquals(ORDER_COUNT, orders.size());
+        assertEquals(EQUIPMENT_COUNT, orders.get(0).get("Equipments").size());
+        assertFalse(products.get(0).has("OrdersAsAfter"));
+        assertTrue(SqlStatementCounter.count() <= 3);
+    }
+
+    @Test
+    public void when_GetOrderExpandStar_Then_AllNavigationsConverted() throws Exception {
+        List<Long> orderIds = odataHelper.seedOrders(1, EQUIPMENT_COUNT);
+
+        JsonNode order = odataHelper.getJson("/Orders(" + orderIds.get(0) + ")", "$expand=*", 200);
+
+        assertEquals("P0001", order.get("ProductBefore").get("ProductNumber").asText());
+        assertEquals("P0002", order.get("ProductAfter").get("ProductNumber").asText());
+        assertEquals(EQUIPMENT_COUNT, order.get("Equipments").size());
+    }
+
+    @Test
+    public void when_GetOrderWithoutExpand_Then_NavigationsNotLoaded() throws Exception {
+        List<Long> orderIds = odataHelper.seedOrders(1, EQUIPMENT_COUNT);
+
+        SqlStatementCounter.reset();
+        JsonNode order = odataHelper.getJson("/Orders(" + orderIds.get(0) + ")", null, 200);
+
+        assertEquals("O0001", order.get("OrderNumber").asText());
+        assertFalse(order.has("Equipments"));
+        assertEquals(1, SqlStatementCounter.count());
+    }
+}
@@ -0,0 +1,129 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.olingo.business.generics.specifications.ODataFilterCache;
+import com.shopfloor.backend.olingo.business.generics.specifications.ODataFilterCacheMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the cache of compiled $filter templates.
+ *
+ * This class checks that filters of the same shape share a template while every request gets its own values,
+ * and that the statistics of the cache are exposed.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = "spring.jmx.enabled=true")
+@AutoConfigureMockMvc
+public class ODataFilterCacheTest {
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Statistics of the filter cache.
+     */
+    @Autowired
+    private ODataFilterCacheMetrics filterCacheMetrics;
+
+    /**
+     * Registry of the meters scraped by Prometheus.
+     */
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_SameShapeWithOtherLiterals_Then_TemplateReusedWithOwnValues() throws Exception {
+        odataHelper.seedOrders(5, 1);
+        filterCacheMetrics.clear();
+        long misses = filterCacheMetrics.getMisses();
+        long hits = filterCacheMetrics.getHits();
+
+        assertEquals(List.of("O0002"), filterOrderNumbers("OrderNumber eq 'O0002' and startswith(Name,'Order')"));
+        assertEquals(List.of("O0004"), filterOrderNumbers("OrderNumber eq 'O0004' and startswith(Name,'order')"));
+        assertEquals(List.of(), filterOrderNumbers("OrderNumber eq 'O0004' and startswith(Name,'Other')"));
+
+        assertEquals(misses + 1, filterCacheMetrics.getMisses());
+        assertEquals(hits + 2, filterCacheMetrics.getHits());
+        assertEquals(hits + 2, (long) meterRegistry.get("odata.filter.cache.hits").functionCounter().count());
+        assertEquals(misses + 1, (long) meterRegistry.get("odata.filter.cache.misses").functionCounter().count());
+    }
+
+    @Test
+    public void when_InListsOfDifferentLength_Then_OneTemplate() throws Exception {
+        odataHelper.seedOrders(5, 1);
+        filterCacheMetrics.clear();
+        long misses = filterCacheMetrics.getMisses();
+
+        assertEquals(List.of("O0001", "O0003"), filterOrderNumbers("OrderNumber in ('O0001','O0003')"));
+        assertEquals(List.of("O0002", "O0004", "O0005"), filterOrderNumbers("OrderNumber in ('O0002','O0004','O0005')"));
+
+        assertEquals(misses + 1, filterCacheMetrics.getMisses());
+    }
+
+    @Test
+    public void when_InvalidLiteralInCachedShape_Then_Rejected() throws Exception {
+        odataHelper.seedOrders(2, 1);
+        filterOrderNumbers("Id gt 1");
+
+        MockHttpServletResponse response = odataHelper.get("/Orders", "$filter=Id gt 99999999999999999999");
+
+        assertNotEquals(200, response.getStatus());
+        assertTrue(response.getContentAsString().contains("Invalid literal value: 99999999999999999999"));
+    }
+
+    @Test
+    public void when_CacheFull_Then_LeastRecentlyUsedEvicted() {
+        ODataFilterCache cache = new ODataFilterCache(2);
+
+        cache.get("a", () -> "A");
+        cache.get("b", () -> "B");
+        cache.get("a", () -> "A2");
+        cache.get("c", () -> "C");
+
+        assertEquals("A", cache.get("a", () -> "A3"));
+        assertEquals("B2", cache.get("b", () -> "B2"));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void when_JmxEnabled_Then_StatisticsExposed() throws Exception {
+        assertFalse(ManagementFactory.getPlatformMBeanServer()
+                .queryNames(new ObjectName("com.shopfloor.backend:type=ODataFilterCache,*"), null).isEmpty());
+    }
+
+    private List<String> filterOrderNumbers(String filter) throws Exception {
+        JsonNode orders = odataHelper.getJson("/Orders", "$filter=" + filter + "&$orderby=OrderNumber", 200).get("value");
+        List<String> orderNumbers = new ArrayList<>();
+        orders.forEach(order -> orderNumbers.add(order.get("OrderNumber").asText()));
+        return orderNumbers;
+    }
+}
@@ -0,0 +1,244 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shopfloor.backend.database.objects.EquipmentDBO;
+import com.shopfloor.backend.database.objects.OrderDBO;
+import com.shopfloor.backend.database.objects.ProductDBO;
+import com.shopfloor.backend.database.repositories.EquipmentRepository;
+import com.shopfloor.backend.database.repositories.ExecutionRepository;
+import com.shopfloor.backend.database.repositories.OrderRepository;
+import com.shopfloor.backend.database.repositories.ProductRepository;
+import jakarta.servlet.http.HttpServlet;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ODataHelper is a helper class that provides methods to interact with the OData API.
+ *
+ * The OData servlet is registered next to the DispatcherServlet, so MockMvc does not reach it.
+ * This helper invokes the registered servlet directly with mock requests instead.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@Component
+public class ODataHelper {
+
+    private static final String BASE_URL = "/odata";
+    private static final int MAX_PAGES = 1000;
+
+    @Autowired
+    private ServletRegistrationBean<HttpServlet> odataServlet;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EquipmentRepository equipmentRepository;
+
+    @Autowired
+    private ExecutionRepository executionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Clears the database, called by the tests after each test.
+     * NOTE: The order of deletion is important to avoid foreign key constraint violations.
+     */
+    public void clearDatabase() {
+        executionRepository.deleteAll();
+        orderRepository.deleteAll();
+        productRepository.deleteAll();
+        equipmentRepository.deleteAll();
+    }
+
+    /**
+     * Seeds the database with orders sharing one before product, one after product and a set of equipments.
+     * Order numbers are "O0001", "O0002", ... and equipment numbers "E0001", "E0002", ...
+     *
+     * @param orderCount the number of orders to create
+     * @param equipmentCount the number of equipments assigned to every order
+     * @return the IDs of the created orders in creation order
+     */
+    public List<Long> seedOrders(int orderCount, int equipmentCount) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            ProductDBO beforeProduct = productRepository.save(createProduct("P0001", "Aspirin"));
+            ProductDBO afterProduct = productRepository.save(createProduct("P0002", "Ibuprofen"));
+
+            List<EquipmentDBO> equipments = new ArrayList<>();
+            for (int i = 1; i <= equipmentCount; i++) {
+                EquipmentDBO equipment = new EquipmentDBO();
+                equipment.setEquipmentNumber(String.format("E%04d", i));
+                equipment.setName("Equipment " + i);
+                equipment.setType("Machine");
+                equipment.setCreatedBy(1L);
+                equipment.setCreatedAt(new Date());
+                equipments.add(equipmentRepository.save(equipment));
+            }
+
+            List<Long> orderIds = new ArrayList<>();
+            for (int i = 1; i <= orderCount; i++) {
+                OrderDBO order = new OrderDBO();
+                order.setOrderNumber(String.format("O%04d", i));
+                order.setName("Order " + i);
+                order.setDescription("Description of order " + i);
+                order.setCreatedBy(1L);
+                order.setCreatedAt(new Date());
+                order.setBeforeProduct(beforeProduct);
+                order.setAfterProduct(afterProduct);
+                equipments.forEach(order::addEquipment);
+                orderIds.add(orderRepository.save(order).getId());
+            }
+            return orderIds;
+        });
+    }
+
+    private ProductDBO createProduct(String productNumber, String name) {
+        ProductDBO product = new ProductDBO();
+        product.setProductNumber(productNumber);
+        product.setName(name);
+        product.setType("Tablet");
+        product.setCountry("Germany");
+        product.setPackageSize("20");
+        product.setPackageType("Blister");
+        product.setLanguage("German");
+        product.setCreatedBy(1L);
+        product.setCreatedAt(new Date());
+        return product;
+    }
+
+    /**
+     * Performs a GET request against the OData servlet.
+     *
+     * @param path the path below /odata, e.g. "/Orders"
+     * @param query the raw query string without "?", may be null
+     * @param headers additional request headers
+     * @return the servlet response
+     * @throws Exception if an error occurs during the request
+     */
+    public MockHttpServletResponse get(String path, String query, Map<String, String> headers) throws Exception {
+        return perform("GET", path, query, headers, null);
+    }
+
+    /**
+     * Performs a GET request against the OData servlet.
+     *
+     * @param path the path below /odata, e.g. "/Orders"
+     * @param query the raw query string without "?", may be null
+     * @return the servlet response
+     * @throws Exception if an error occurs during the request
+     */
+    public MockHttpServletResponse get(String path, String query) throws Exception {
+        return get(path, query, Map.of());
+    }
+
+    /**
+     * Performs a GET request and parses the JSON response body.
+     *
+     * @param path the path below /odata
+     * @param query the raw query string without "?", may be null
+     * @param expectedStatus the expected HTTP status code
+     * @return the parsed JSON body
+     * @throws Exception if an error occurs during the request or the status differs
+     */
+    public JsonNode getJson(String path, String query, int expectedStatus) throws Exception {
+        MockHttpServletResponse response = get(path, query);
+        assertStatus(response, expectedStatus);
+        return objectMapper.readTree(response.getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Performs a GET request and follows the @odata.nextLink of every page until the last page.
+     *
+     * @param path the path below /odata
+     * @param query the raw query string without "?", may be null
+     * @return the parsed JSON body of every page in order
+     * @throws Exception if an error occurs during a request or a status differs from 200
+     */
+    public List<JsonNode> getAllPages(String path, String query) throws Exception {
+        List<JsonNode> pages = new ArrayList<>();
+        JsonNode page = getJson(path, query, 200);
+        pages.add(page);
+
+        while (page.has("@odata.nextLink")) {
+            if (pages.size() > MAX_PAGES) {
+                throw new AssertionError("More than " + MAX_PAGES + " pages, the next links do not advance");
+            }
+            URI nextLink = URI.create(page.get("@odata.nextLink").asText());
+            String nextPath = nextLink.getRawPath().substring(nextLink.getRawPath().indexOf(BASE_URL) + BASE_URL.length());
+            page = getJson(nextPath, nextLink.getRawQuery(), 200);
+            pages.add(page);
+        }
+        return pages;
+    }
+
+    /**
+     * Performs a request with a JSON body against the OData servlet.
+     *
+     * @param method the HTTP method, e.g. "POST"
+     * @param path the path below /odata
+     * @param body the JSON body
+     * @param expectedStatus the expected HTTP status code
+     * @return the parsed JSON body, or null for empty responses
+     * @throws Exception if an error occurs during the request or the status differs
+     */
+    public JsonNode sendJson(String method, String path, String body, int expectedStatus) throws Exception {
+        MockHttpServletResponse response = perform(method, path, null,
+                Map.of("Content-Type", "application/json"), body.getBytes(StandardCharsets.UTF_8));
+        assertStatus(response, expectedStatus);
+        String content = response.getContentAsString(StandardCharsets.UTF_8);
+        return content.isEmpty() ? null : objectMapper.readTree(content);
+    }
+
+    /**
+     * Performs a request against the OData servlet.
+     *
+     * @param method the HTTP method
+     * @param path the path below /odata
+     * @param query the raw query string without "?", may be null
+     * @param headers additional request headers
+     * @param body the request body, may be null
+     * @return the servlet response
+     * @throws Exception if an error occurs during the request
+     */
+    public MockHttpServletResponse perform(String method, String path, String query, Map<String, String> headers, byte[] body)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, BASE_URL + path);
+        request.setServletPath(BASE_URL);
+        request.setPathInfo(path);
+        request.setQueryString(query);
+        headers.forEach(request::addHeader);
+        if (body != null) {
+            request.setContent(body);
+        }
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        odataServlet.getServlet().service(request, response);
+        return response;
+    }
+
+    private void assertStatus(MockHttpServletResponse response, int expectedStatus) throws Exception {
+        if (response.getStatus() != expectedStatus) {
+            throw new AssertionError("Expected status " + expectedStatus + " but was " + response.getStatus()
+                    + ": " + response.getContentAsString(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.database.objects.OrderDBO;
+import com.shopfloor.backend.database.repositories.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the SQL of $filter "in" lists.
+ *
+ * This class checks that long lists are bound as one array parameter, so the SQL text does not depend on
+ * the length of the list, while short lists stay an SQL "in" list.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataInListTest {
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Repository for managing order data.
+     */
+    @Autowired
+    private OrderRepository orderRepository;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_LongIdListsOfDifferentLength_Then_SameStatement() throws Exception {
+        odataHelper.seedOrders(4, 1);
+        List<Long> ids = orderRepository.findAll().stream().map(OrderDBO::getId).sorted().toList();
+
+        List<String> first = filterWithIds(List.of(ids.get(0), ids.get(2)), 600);
+        String firstStatement = SqlStatementCounter.statements().get(0);
+        List<String> second = filterWithIds(List.of(ids.get(1), ids.get(2), ids.get(3)), 601);
+        String secondStatement = SqlStatementCounter.statements().get(0);
+
+        assertEquals(List.of("O0001", "O0003"), first);
+        assertEquals(List.of("O0002", "O0003", "O0004"), second);
+        assertTrue(firstStatement.toLowerCase().contains("any("), firstStatement);
+        assertEquals(firstStatement, secondStatement);
+    }
+
+    @Test
+    public void when_LongStringList_Then_BoundAsArray() throws Exception {
+        odataHelper.seedOrders(3, 1);
+        String numbers = Stream.concat(Stream.of("O0001", "O0003"), IntStream.range(0, 100).mapToObj(i -> "X" + i))
+                .map(number -> "'" + number + "'")
+                .collect(Collectors.joining(","));
+
+        SqlStatementCounter.reset();
+        assertEquals(List.of("O0001", "O0003"), filterOrderNumbers("OrderNumber in (" + numbers + ")"));
+
+        assertTrue(SqlStatementCounter.statements().get(0).toLowerCase().contains("any("));
+    }
+
+    @Test
+    public void when_ShortList_Then_InList() throws Exception {
+        odataHelper.seedOrders(3, 1);
+
+        SqlStatementCounter.reset();
+        assertEquals(List.of("O0002", "O0003"), filterOrderNumbers("OrderNumber in ('O0002','O0003','O0009')"));
+
+        String statement = SqlStatementCounter.statements().get(0).toLowerCase();
+        assertTrue(statement.contains(" in ("), statement);
+        assertFalse(statement.contains("any("), statement);
+    }
+
+    /**
+     * Filters the orders by the given ids, padded with ids that do not exist up to the given length.
+     */
+    private List<String> filterWithIds(List<Long> ids, int length) throws Exception {
+        List<Long> values = new ArrayList<>(ids);
+        for (long missing = Integer.MAX_VALUE; values.size() < length; missing--) {
+            values.add(missing);
+        }
+        String list = values.stream().map(String::valueOf).collect(Collectors.joining(","));
+
+        SqlStatementCounter.reset();
+        return filterOrderNumbers("Id in (" + list + ")");
+    }
+
+    private List<String> filterOrderNumbers(String filter) throws Exception {
+        JsonNode orders = odataHelper.getJson("/Orders", "$filter=" + filter + "&$orderby=OrderNumber", 200).get("value");
+        List<String> orderNumbers = new ArrayList<>();
+        orders.forEach(order -> orderNumbers.add(order.get("OrderNumber").asText()));
+        return orderNumbers;
+    }
+}
@@ -0,0 +1,116 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the binding of $filter literals and the indexes answering the filters.
+ *
+ * This class checks that literals are parsed as the EDM type of the compared property
+ * and reads the plans of the generated queries with EXPLAIN to check that the indexes are used.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataIndexUsageTest {
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * JDBC access for reading the plans of the generated queries.
+     */
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_FilterByCreatedAtRange_Then_IndexUsed() throws Exception {
+        odataHelper.seedOrders(3, 1);
+        Instant now = Instant.now();
+        String from = now.minus(1, ChronoUnit.DAYS).toString();
+        String to = now.plus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.SECONDS).toString();
+
+        SqlStatementCounter.reset();
+        assertEquals(List.of("O0001", "O0002", "O0003"), filterOrderNumbers("CreatedAt ge " + from + " and CreatedAt lt " + to));
+        String statement = SqlStatementCounter.statements().get(0);
+        assertEquals(List.of(), filterOrderNumbers("CreatedAt gt " + to));
+
+        assertTrue(explain(statement).contains("IDX_ORDERS_CREATED_AT"), explain(statement));
+    }
+
+    @Test
+    public void when_FilterByName_Then_IndexUsed() throws Exception {
+        odataHelper.seedOrders(3, 1);
+
+        SqlStatementCounter.reset();
+        assertEquals(List.of("O0002"), filterOrderNumbers("Name eq 'Order 2'"));
+        String statement = SqlStatementCounter.statements().get(0);
+
+        assertTrue(explain(statement).contains("IDX_ORDERS_NAME"), explain(statement));
+    }
+
+    @Test
+    public void when_Int64LiteralBeyondInt32_Then_ComparedAsLong() throws Exception {
+        odataHelper.seedOrders(2, 1);
+
+        assertEquals(List.of("O0001", "O0002"), filterOrderNumbers("Id lt 99999999999"));
+        assertEquals(List.of(), filterOrderNumbers("Id in (99999999999,99999999998)"));
+    }
+
+    @Test
+    public void when_LiteralOutOfRangeOfPropertyType_Then_Rejected() throws Exception {
+        MockHttpServletResponse response = odataHelper.get("/Orders", "$filter=Id gt 99999999999999999999");
+
+        assertNotEquals(200, response.getStatus());
+        assertTrue(response.getContentAsString().contains("Invalid literal value: 99999999999999999999"), response.getContentAsString());
+    }
+
+    @Test
+    public void when_ContainsWithWildcard_Then_WildcardMatchedLiterally() throws Exception {
+        odataHelper.seedOrders(2, 1);
+
+        assertEquals(List.of(), filterOrderNumbers("contains(Name,'%25')"));
+        assertEquals(List.of(), filterOrderNumbers("startswith(Name,'Order_')"));
+        assertEquals(List.of("O0001", "O0002"), filterOrderNumbers("startswith(Name,'order ')"));
+    }
+
+    /**
+     * Returns the plan H2 chooses for the given statement, the parameters are left unbound.
+     */
+    private String explain(String statement) {
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + statement, String.class));
+    }
+
+    private List<String> filterOrderNumbers(String filter) throws Exception {
+        JsonNode orders = odataHelper.getJson("/Orders", "$filter=" + filter + "&$orderby=OrderNumber", 200).get("value");
+        List<String> orderNumbers = new ArrayList<>();
+        orders.forEach(order -> orderNumbers.add(order.get("OrderNumber").asText()));
+        return orderNumbers;
+    }
+}
@@ -0,0 +1,170 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.database.objects.EquipmentDBO;
+import com.shopfloor.backend.database.objects.OrderDBO;
+import com.shopfloor.backend.database.repositories.EquipmentRepository;
+import com.shopfloor.backend.database.repositories.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for $filter and $orderby over navigation properties.
+ *
+ * This class checks paths through single valued navigation properties and the any and all lambdas
+ * over collection valued navigation properties, which are answered by a single query.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataNavigationFilterTest {
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Transaction manager for arranging the relations of the seeded orders.
+     */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Repository for managing order data.
+     */
+    @Autowired
+    private OrderRepository orderRepository;
+
+    /**
+     * Repository for managing equipment data.
+     */
+    @Autowired
+    private EquipmentRepository equipmentRepository;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_FilterByPropertyOfRelatedEntity_Then_Joined() throws Exception {
+        seedRelations();
+
+        assertEquals(List.of("O0002"), filterOrderNumbers("/Orders", "ProductAfter/Name eq 'Aspirin'"));
+        assertEquals(List.of("O0001", "O0003"), filterOrderNumbers("/Orders", "startswith(ProductAfter/ProductNumber,'P0002')"));
+        // O0004 has no after product, it is kept by the left join and does not match
+        assertEquals(List.of("O0001", "O0003"), filterOrderNumbers("/Orders", "ProductAfter/Name ne 'Aspirin'"));
+    }
+
+    @Test
+    public void when_FilterWithAny_Then_MatchingOrdersOnce() throws Exception {
+        seedRelations();
+
+        assertEquals(List.of("O0004"), filterOrderNumbers("/Orders", "Equipments/any(e:e/Type eq 'Press')"));
+        // O0001 has two matching equipments and is returned once
+        assertEquals(List.of("O0001", "O0002", "O0004"), filterOrderNumbers("/Orders", "Equipments/any(e:e/Type eq 'Machine')"));
+        assertEquals(List.of("O0001", "O0002", "O0004"), filterOrderNumbers("/Orders", "Equipments/any()"));
+        assertEquals(List.of("O0003"), filterOrderNumbers("/Orders", "not Equipments/any()"));
+    }
+
+    @Test
+    public void when_FilterWithAll_Then_EmptyCollectionsMatch() throws Exception {
+        seedRelations();
+
+        assertEquals(List.of("O0001", "O0002", "O0003"), filterOrderNumbers("/Orders", "Equipments/all(e:e/Type eq 'Machine')"));
+        assertEquals(List.of("O0003"), filterOrderNumbers("/Orders", "Equipments/all(e:e/Type eq 'Press')"));
+    }
+
+    @Test
+    public void when_FilterWithNestedLambdas_Then_CorrelatedOverBothCollections() throws Exception {
+        seedRelations();
+
+        assertEquals(List.of("E0003"), filterEquipmentNumbers("Orders/any(o:o/ProductBefore/Name eq 'Aspirin') and Orders/all(o:o/OrderNumber eq 'O0004')"));
+        assertEquals(List.of("P0001"), filterProductNumbers("OrdersAsBefore/any(o:o/Equipments/any(e:e/Type eq 'Press'))"));
+        assertEquals(List.of(), filterProductNumbers("OrdersAsAfter/any(o:o/Equipments/any(e:e/Type eq 'Press'))"));
+        assertEquals(List.of("P0001", "P0002"), filterProductNumbers("OrdersAsAfter/any(o:o/Equipments/any(e:e/Type eq 'Machine'))"));
+    }
+
+    @Test
+    public void when_FilterWithAny_Then_SingleQuery() throws Exception {
+        seedRelations();
+
+        SqlStatementCounter.reset();
+        odataHelper.getJson("/Orders", "$filter=Equipments/any(e:e/Type eq 'Press') and ProductBefore/Name eq 'Aspirin'", 200);
+
+        assertEquals(1, SqlStatementCounter.count(), SqlStatementCounter.statements().toString());
+        assertTrue(SqlStatementCounter.statements().get(0).toLowerCase().contains("exists"));
+    }
+
+    @Test
+    public void when_OrderByPropertyOfRelatedEntity_Then_OrderedWithNullsLast() throws Exception {
+        seedRelations();
+
+        JsonNode orders = odataHelper.getJson("/Orders", "$orderby=ProductAfter/Name,OrderNumber desc&$select=OrderNumber", 200).get("value");
+
+        List<String> orderNumbers = new ArrayList<>();
+        orders.forEach(order -> orderNumbers.add(order.get("OrderNumber").asText()));
+        assertEquals(List.of("O0002", "O0003", "O0001", "O0004"), orderNumbers);
+    }
+
+    /**
+     * Seeds four orders with different relations:
+     * O0001 is the seeded order with two machines, O0002 has Aspirin as after product,
+     * O0003 has no equipments and O0004 has no after product and an additional press.
+     */
+    private void seedRelations() {
+        odataHelper.seedOrders(4, 2);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            OrderDBO second = orderRepository.findByOrderNumber("O0002").orElseThrow();
+            second.setAfterProduct(second.getBeforeProduct());
+
+            orderRepository.findByOrderNumber("O0003").orElseThrow().clearEquipmentList();
+
+            EquipmentDBO press = new EquipmentDBO();
+            press.setEquipmentNumber("E0003");
+            press.setName("Press");
+            press.setType("Press");
+            press.setCreatedBy(1L);
+            press.setCreatedAt(new Date());
+            OrderDBO fourth = orderRepository.findByOrderNumber("O0004").orElseThrow();
+            fourth.clearAfterProduct();
+            fourth.addEquipment(equipmentRepository.save(press));
+        });
+    }
+
+    private List<String> filterOrderNumbers(String path, String filter) throws Exception {
+        return collect(odataHelper.getJson(path, "$filter=" + filter + "&$orderby=OrderNumber", 200), "OrderNumber");
+    }
+
+    private List<String> filterEquipmentNumbers(String filter) throws Exception {
+        return collect(odataHelper.getJson("/Equipments", "$filter=" + filter + "&$orderby=EquipmentNumber", 200), "EquipmentNumber");
+    }
+
+    private List<String> filterProductNumbers(String filter) throws Exception {
+        return collect(odataHelper.getJson("/Products", "$filter=" + filter + "&$orderby=ProductNumber", 200), "ProductNumber");
+    }
+
+    private List<String> collect(JsonNode result, String property) {
+        List<String> values = new ArrayList<>();
+        result.get("value").forEach(entity -> values.add(entity.get(property).asText()));
+        return values;
+    }
+}
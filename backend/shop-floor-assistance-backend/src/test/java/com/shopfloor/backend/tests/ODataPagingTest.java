@@ -0,0 +1,288 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.database.objects.OrderDBO;
+import com.shopfloor.backend.database.repositories.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for server-driven paging of the OData entity sets.
+ *
+ * The page size is lowered, so every request without $top is split into several pages
+ * which are linked with a $skiptoken in the @odata.nextLink.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = "odata.paging.page-size=7")
+@AutoConfigureMockMvc
+public class ODataPagingTest {
+
+    private static final int ORDER_COUNT = 30;
+    private static final int PAGE_SIZE = 7;
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Transaction manager for changing the relations of the seeded orders.
+     */
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Repository for managing order data.
+     */
+    @Autowired
+    private OrderRepository orderRepository;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_GetOrdersWithoutTop_Then_PagesLinkedUntilLastPage() throws Exception {
+        List<Long> orderIds = odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        List<JsonNode> pages = odataHelper.getAllPages("/Orders", null);
+
+        assertEquals(5, pages.size());
+        for (int i = 0; i < pages.size() - 1; i++) {
+            assertEquals(PAGE_SIZE, pages.get(i).get("value").size());
+            assertTrue(pages.get(i).get("@odata.nextLink").asText().contains("$skiptoken="));
+        }
+        assertEquals(ORDER_COUNT - 4 * PAGE_SIZE, pages.get(4).get("value").size());
+        assertEquals(orderIds, collectIds(pages));
+    }
+
+    @Test
+    public void when_FollowNextLinksOrderedDescendingWithNulls_Then_NoDuplicatesOrGaps() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+        List<OrderDBO> orders = seedTotalTimes();
+
+        List<JsonNode> pages = odataHelper.getAllPages("/Orders", "$orderby=TotalTimeRequired desc");
+
+        // Nulls are the largest values, they come first when ordering descending
+        Comparator<OrderDBO> expectedOrder = Comparator
+                .comparing(OrderDBO::getTotalTimeRequired, Comparator.nullsFirst(Comparator.<Integer>reverseOrder()))
+                .thenComparing(OrderDBO::getId);
+        assertEquals(orders.stream().sorted(expectedOrder).map(OrderDBO::getId).collect(Collectors.toList()), collectIds(pages));
+    }
+
+    @Test
+    public void when_FollowNextLinksOrderedAscendingWithNulls_Then_NoDuplicatesOrGaps() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+        List<OrderDBO> orders = seedTotalTimes();
+
+        List<JsonNode> pages = odataHelper.getAllPages("/Orders", "$orderby=TotalTimeRequired,OrderNumber desc&$select=OrderNumber");
+
+        // Nulls are the largest values, they come last when ordering ascending
+        Comparator<OrderDBO> expectedOrder = Comparator
+                .comparing(OrderDBO::getTotalTimeRequired, Comparator.nullsLast(Comparator.<Integer>naturalOrder()))
+                .thenComparing(OrderDBO::getOrderNumber, Comparator.reverseOrder());
+        assertEquals(orders.stream().sorted(expectedOrder).map(OrderDBO::getId).collect(Collectors.toList()), collectIds(pages));
+        assertFalse(pages.get(0).get("value").get(0).has("Name"));
+    }
+
+    @Test
+    public void when_FollowNextLinksOrderedByRelatedEntity_Then_NoDuplicatesOrGaps() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+        Map<Long, String> afterProductNames = seedAfterProducts();
+
+        List<JsonNode> pages = odataHelper.getAllPages("/Orders", "$orderby=ProductAfter/Name desc&$select=OrderNumber");
+
+        // Orders without an after product are ordered like null values, they come first when ordering descending
+        Comparator<Long> expectedOrder = Comparator.<Long, String>comparing(afterProductNames::get,
+                        Comparator.nullsFirst(Comparator.<String>reverseOrder()))
+                .thenComparing(Comparator.<Long>naturalOrder());
+        assertEquals(afterProductNames.keySet().stream().sorted(expectedOrder).collect(Collectors.toList()), collectIds(pages));
+    }
+
+    @Test
+    public void when_FollowNextLinksWithFilterAndCount_Then_FilterAndCountKept() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        List<JsonNode> pages = odataHelper.getAllPages("/Orders", "$filter=startswith(OrderNumber,'O001')&$count=true");
+
+        // O0010 to O0019
+        assertEquals(2, pages.size());
+        for (JsonNode page : pages) {
+            assertEquals(10, page.get("@odata.count").asInt());
+        }
+        assertEquals(10, collectIds(pages).size());
+    }
+
+    @Test
+    public void when_GetOrdersWithSkip_Then_NextLinkContinuesAfterSkippedOrders() throws Exception {
+        List<Long> orderIds = odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        List<JsonNode> pages = odataHelper.getAllPages("/Orders", "$skip=10");
+
+        assertFalse(pages.get(0).get("@odata.nextLink").asText().contains("$skip="));
+        assertEquals(orderIds.subList(10, ORDER_COUNT), collectIds(pages));
+    }
+
+    @Test
+    public void when_LastPageExactlyFull_Then_NoNextLink() throws Exception {
+        odataHelper.seedOrders(4 * PAGE_SIZE, 0);
+
+        List<JsonNode> pages = odataHelper.getAllPages("/Orders", "$select=Name");
+
+        assertEquals(4, pages.size());
+        assertEquals(PAGE_SIZE, pages.get(3).get("value").size());
+        assertFalse(pages.get(3).has("@odata.nextLink"));
+    }
+
+    @Test
+    public void when_GetPageWithoutCount_Then_OnlyDataQuery() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        SqlStatementCounter.reset();
+        JsonNode result = odataHelper.getJson("/Orders", "$skip=5&$top=5", 200);
+
+        assertEquals(5, result.get("value").size());
+        assertEquals(1, SqlStatementCounter.count());
+        assertEquals(0, countQueries());
+    }
+
+    @Test
+    public void when_GetPageWithCount_Then_ExactlyOneCountQuery() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        SqlStatementCounter.reset();
+        JsonNode result = odataHelper.getJson("/Orders", "$skip=5&$top=5&$count=true&$select=Name", 200);
+
+        assertEquals(5, result.get("value").size());
+        assertEquals(ORDER_COUNT, result.get("@odata.count").asInt());
+        assertEquals(2, SqlStatementCounter.count());
+        assertEquals(1, countQueries());
+    }
+
+    @Test
+    public void when_GetPageWithCountAndOrderBy_Then_CountRunsUnorderedOnCountExecutor() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        SqlStatementCounter.reset();
+        JsonNode result = odataHelper.getJson("/Orders", "$filter=startswith(OrderNumber,'O001')&$orderby=Name desc&$count=true", 200);
+
+        assertEquals(10, result.get("@odata.count").asInt());
+        assertEquals("O0019", result.get("value").get(0).get("OrderNumber").asText());
+
+        List<String> statements = SqlStatementCounter.statements();
+        List<String> threads = SqlStatementCounter.threads();
+        for (int i = 0; i < statements.size(); i++) {
+            String sql = statements.get(i).toLowerCase();
+            if (sql.contains("count(")) {
+                assertFalse(sql.contains("order by"));
+                assertTrue(threads.get(i).startsWith("odata-count-"));
+            } else {
+                assertFalse(threads.get(i).startsWith("odata-count-"));
+            }
+        }
+        assertEquals(1, countQueries());
+    }
+
+    @Test
+    public void when_GetOrdersWithTop_Then_NoNextLink() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        JsonNode result = odataHelper.getJson("/Orders", "$top=20", 200);
+
+        assertEquals(20, result.get("value").size());
+        assertFalse(result.has("@odata.nextLink"));
+    }
+
+    @Test
+    public void when_SkipTokenUsedWithDifferentOrderBy_Then_BadRequest() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 0);
+
+        JsonNode firstPage = odataHelper.getJson("/Orders", "$orderby=Name desc", 200);
+        String skipToken = URI.create(firstPage.get("@odata.nextLink").asText()).getRawQuery().replaceAll(".*\\$skiptoken=", "");
+
+        odataHelper.getJson("/Orders", "$orderby=Name&$skiptoken=" + skipToken, 400);
+        odataHelper.getJson("/Orders", "$skiptoken=invalid", 400);
+    }
+
+    /**
+     * Assigns total times with duplicates and null values to the seeded orders.
+     *
+     * @return the updated orders
+     */
+    private List<OrderDBO> seedTotalTimes() {
+        List<OrderDBO> orders = orderRepository.findAll();
+        for (int i = 0; i < orders.size(); i++) {
+            orders.get(i).setTotalTimeRequired(i % 4 == 0 ? null : i % 3);
+        }
+        return orderRepository.saveAll(orders);
+    }
+
+    /**
+     * Changes the after products of the seeded orders, every third order gets the before product and every fifth none.
+     *
+     * @return the names of the after products by order ID, null for orders without an after product
+     */
+    private Map<Long, String> seedAfterProducts() {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            List<OrderDBO> orders = orderRepository.findAll();
+            Map<Long, String> afterProductNames = new HashMap<>();
+            for (int i = 0; i < orders.size(); i++) {
+                OrderDBO order = orders.get(i);
+                if (i % 5 == 0) {
+                    order.clearAfterProduct();
+                } else if (i % 3 == 0) {
+                    order.setAfterProduct(order.getBeforeProduct());
+                }
+                afterProductNames.put(order.getId(), order.getAfterProduct() != null ? order.getAfterProduct().getName() : null);
+            }
+            return afterProductNames;
+        });
+    }
+
+    /**
+     * Returns the number of count queries recorded since the last reset.
+     *
+     * @return the number of count queries
+     */
+    private long countQueries() {
+        return SqlStatementCounter.statements().stream().filter(sql -> sql.toLowerCase().contains("count(")).count();
+    }
+
+    /**
+     * Collects the IDs of the orders of all pages in order.
+     *
+     * @param pages the pages
+     * @return the IDs of the orders
+     */
+    private List<Long> collectIds(List<JsonNode> pages) {
+        List<Long> ids = new ArrayList<>();
+        for (JsonNode page : pages) {
+            for (JsonNode order : page.get("value")) {
+                ids.add(order.get("Id").asLong());
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,121 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.olingo.business.generics.limits.ODataQueryLimits;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the limits of OData requests.
+ *
+ * This class checks that a $top above the limit is truncated and continued with a next link,
+ * that the limits of an entity set override the default limits, and that too deep or too broad
+ * expansions and too large responses are rejected and counted.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "odata.limits.max-top=4",
+        "odata.limits.Products.max-top=1",
+        "odata.limits.Equipments.max-top=100",
+        "odata.limits.max-expand-depth=1",
+        "odata.limits.max-expand-breadth=2",
+        "odata.limits.Equipments.max-response-bytes=1000"
+})
+@AutoConfigureMockMvc
+public class ODataQueryLimitsTest {
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * The limits under test.
+     */
+    @Autowired
+    private ODataQueryLimits queryLimits;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_TopAboveLimit_Then_TruncatedAndContinued() throws Exception {
+        odataHelper.seedOrders(10, 1);
+        long truncations = queryLimits.getTopTruncations();
+
+        JsonNode firstPage = odataHelper.getJson("/Orders", "$top=9&$orderby=OrderNumber&$select=OrderNumber", 200);
+        assertEquals(4, firstPage.get("value").size());
+        assertTrue(firstPage.get("@odata.nextLink").asText().contains("$top=5"), firstPage.get("@odata.nextLink").asText());
+
+        List<String> orderNumbers = new ArrayList<>();
+        List<JsonNode> pages = odataHelper.getAllPages("/Orders", "$top=9&$orderby=OrderNumber&$select=OrderNumber");
+        pages.forEach(page -> page.get("value").forEach(order -> orderNumbers.add(order.get("OrderNumber").asText())));
+
+        assertEquals(3, pages.size());
+        assertEquals(List.of("O0001", "O0002", "O0003", "O0004", "O0005", "O0006", "O0007", "O0008", "O0009"), orderNumbers);
+        assertTrue(queryLimits.getTopTruncations() > truncations);
+    }
+
+    @Test
+    public void when_TopWithinLimit_Then_NotPaged() throws Exception {
+        odataHelper.seedOrders(10, 1);
+
+        JsonNode orders = odataHelper.getJson("/Orders", "$top=3", 200);
+
+        assertEquals(3, orders.get("value").size());
+        assertFalse(orders.has("@odata.nextLink"));
+    }
+
+    @Test
+    public void when_EntitySetHasOwnLimit_Then_OverridesDefault() throws Exception {
+        odataHelper.seedOrders(1, 1);
+
+        JsonNode products = odataHelper.getJson("/Products", "$top=2&$orderby=ProductNumber", 200);
+        assertEquals(1, products.get("value").size());
+        assertTrue(products.has("@odata.nextLink"));
+
+        assertEquals(2, odataHelper.getAllPages("/Products", "$top=2&$orderby=ProductNumber").size());
+    }
+
+    @Test
+    public void when_ExpandTooDeepOrTooBroad_Then_Rejected() throws Exception {
+        List<Long> orderIds = odataHelper.seedOrders(1, 1);
+        long rejections = queryLimits.getExpandRejections();
+
+        odataHelper.getJson("/Orders", "$expand=Equipments,ProductBefore", 200);
+        odataHelper.getJson("/Orders", "$expand=Equipments($expand=Orders)", 400);
+        odataHelper.getJson("/Orders", "$expand=*", 400);
+        odataHelper.getJson("/Orders(" + orderIds.get(0) + ")", "$expand=ProductBefore,ProductAfter,Equipments", 400);
+        odataHelper.getJson("/Orders(" + orderIds.get(0) + ")", "$expand=ProductBefore", 200);
+
+        assertEquals(rejections + 3, queryLimits.getExpandRejections());
+    }
+
+    @Test
+    public void when_ResponseAboveLimit_Then_Rejected() throws Exception {
+        odataHelper.seedOrders(1, 10);
+        long rejections = queryLimits.getResponseSizeRejections();
+
+        odataHelper.getJson("/Equipments", "$top=1", 200);
+        odataHelper.getJson("/Equipments", "$select=Id", 200);
+        odataHelper.getJson("/Equipments", null, 400);
+
+        assertEquals(rejections + 1, queryLimits.getResponseSizeRejections());
+    }
+}
@@ -0,0 +1,165 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.api.transferobjects.editors.EditorEquipmentTO;
+import com.shopfloor.backend.database.objects.EquipmentDBO;
+import com.shopfloor.backend.database.repositories.EquipmentRepository;
+import com.shopfloor.backend.olingo.business.generics.caching.ODataResultCache;
+import org.apache.olingo.server.api.ODataResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the cache of serialized OData collection responses.
+ *
+ * This class checks that repeated queries are answered without the database and that writes over OData
+ * and over the editor REST API evict exactly the responses read from the written entity sets.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataResultCacheTest {
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Helper for API-related operations.
+     */
+    @Autowired
+    private ApiHelper apiHelper;
+
+    /**
+     * Helper for equipment-related operations.
+     */
+    @Autowired
+    private EquipmentHelper equipmentHelper;
+
+    /**
+     * The cache under test.
+     */
+    @Autowired
+    private ODataResultCache resultCache;
+
+    /**
+     * Repository for managing equipment data.
+     */
+    @Autowired
+    private EquipmentRepository equipmentRepository;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_SameQueryInOtherOrder_Then_AnsweredFromCache() throws Exception {
+        odataHelper.seedOrders(3, 1);
+        JsonNode first = odataHelper.getJson("/Orders", "$orderby=OrderNumber&$top=2&$count=true", 200);
+        long hits = resultCache.getHits();
+
+        SqlStatementCounter.reset();
+        JsonNode second = odataHelper.getJson("/Orders", "$count=true&$top=2&$orderby=OrderNumber", 200);
+
+        assertEquals(0, SqlStatementCounter.count(), SqlStatementCounter.statements().toString());
+        assertEquals(first, second);
+        assertEquals(hits + 1, resultCache.getHits());
+    }
+
+    @Test
+    public void when_EntityUpdatedOverOData_Then_CachedCollectionEvicted() throws Exception {
+        odataHelper.seedOrders(1, 2);
+        long equipmentId = equipmentRepository.findByEquipmentNumber("E0001").map(EquipmentDBO::getId).orElseThrow();
+        assertEquals(List.of("Equipment 1", "Equipment 2"), getEquipmentNames("/Equipments", "$orderby=EquipmentNumber"));
+
+        odataHelper.sendJson("PUT", "/Equipments(" + equipmentId + ")",
+                "{\"EquipmentNumber\":\"E0001\",\"Name\":\"Renamed\",\"Type\":\"Machine\",\"Description\":\"Test\"}", 200);
+
+        assertEquals(List.of("Renamed", "Equipment 2"), getEquipmentNames("/Equipments", "$orderby=EquipmentNumber"));
+    }
+
+    @Test
+    public void when_EntityUpdatedOverEditor_Then_ExpandingCollectionEvicted() throws Exception {
+        odataHelper.seedOrders(1, 1);
+        long equipmentId = equipmentRepository.findByEquipmentNumber("E0001").map(EquipmentDBO::getId).orElseThrow();
+        assertEquals("Equipment 1", getExpandedEquipmentName());
+
+        EditorEquipmentTO equipment = equipmentHelper.buildCompleteEditorEquipmentTO("E0001");
+        equipment.setName("Renamed");
+        apiHelper.updateEditorEquipmentPUT(equipmentId, equipment, apiHelper.createAuthorizationHeaderFrom("editor", "editor"), 200);
+
+        assertEquals("Renamed", getExpandedEquipmentName());
+    }
+
+    @Test
+    public void when_UnrelatedEntitySetWritten_Then_CachedCollectionKept() throws Exception {
+        odataHelper.seedOrders(1, 1);
+        long equipmentId = equipmentRepository.findByEquipmentNumber("E0001").map(EquipmentDBO::getId).orElseThrow();
+        odataHelper.getJson("/Products", "$orderby=ProductNumber", 200);
+
+        EditorEquipmentTO equipment = equipmentHelper.buildCompleteEditorEquipmentTO("E0001");
+        apiHelper.updateEditorEquipmentPUT(equipmentId, equipment, apiHelper.createAuthorizationHeaderFrom("editor", "editor"), 200);
+
+        SqlStatementCounter.reset();
+        JsonNode products = odataHelper.getJson("/Products", "$orderby=ProductNumber", 200).get("value");
+
+        assertEquals(0, SqlStatementCounter.count(), SqlStatementCounter.statements().toString());
+        assertEquals(2, products.size());
+    }
+
+    @Test
+    public void when_WrittenWhileReading_Then_ResponseNotStored() throws Exception {
+        ODataResultCache cache = new ODataResultCache(true, 10, 1024, Duration.ofMinutes(1));
+        Set<String> dependencies = Set.of("Orders", "Equipments");
+
+        long generation = cache.getGeneration(dependencies);
+        cache.invalidate(List.of("Equipments"));
+        cache.store("stale", dependencies, generation, createResponse());
+        cache.store("fresh", dependencies, cache.getGeneration(dependencies), createResponse());
+
+        assertFalse(cache.respond("stale", new ODataResponse()));
+        assertTrue(cache.respond("fresh", new ODataResponse()));
+        cache.invalidate(List.of("Products"));
+        assertEquals(1, cache.getSize());
+        cache.invalidate(List.of("Orders"));
+        assertEquals(0, cache.getSize());
+    }
+
+    private ODataResponse createResponse() {
+        ODataResponse response = new ODataResponse();
+        response.setStatusCode(200);
+        response.setContent(new ByteArrayInputStream("{\"value\":[]}".getBytes()));
+        return response;
+    }
+
+    private String getExpandedEquipmentName() throws Exception {
+        JsonNode orders = odataHelper.getJson("/Orders", "$expand=Equipments", 200).get("value");
+        return orders.get(0).get("Equipments").get(0).get("Name").asText();
+    }
+
+    private List<String> getEquipmentNames(String path, String query) throws Exception {
+        JsonNode equipments = odataHelper.getJson(path, query, 200).get("value");
+        List<String> names = new ArrayList<>();
+        equipments.forEach(equipment -> names.add(equipment.get("Name").asText()));
+        return names;
+    }
+}
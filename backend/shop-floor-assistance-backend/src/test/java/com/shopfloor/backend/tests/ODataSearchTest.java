@@ -0,0 +1,164 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.database.objects.OrderDBO;
+import com.shopfloor.backend.database.repositories.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for $search on the OData entity sets.
+ *
+ * H2 has no full-text search, so the terms are matched with LIKE here,
+ * the PostgreSQL search vectors are not part of these tests.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = "odata.paging.page-size=7")
+@AutoConfigureMockMvc
+public class ODataSearchTest {
+
+    private static final int ORDER_COUNT = 30;
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Repository for managing order data.
+     */
+    @Autowired
+    private OrderRepository orderRepository;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_SearchOrderNumber_Then_OnlyMatchingOrder() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 2);
+
+        JsonNode orders = odataHelper.getJson("/Orders", "$search=O0003", 200).get("value");
+
+        assertEquals(1, orders.size());
+        assertEquals("O0003", orders.get(0).get("OrderNumber").asText());
+    }
+
+    @Test
+    public void when_SearchDescriptionIgnoringCase_Then_MatchingOrders() throws Exception {
+        seedOrdersWithDescriptions();
+
+        JsonNode orders = odataHelper.getJson("/Orders", "$search=PUMP&$orderby=OrderNumber", 200).get("value");
+
+        assertEquals(2, orders.size());
+        assertEquals("O0001", orders.get(0).get("OrderNumber").asText());
+        assertEquals("O0002", orders.get(1).get("OrderNumber").asText());
+    }
+
+    @Test
+    public void when_SearchAndOrNot_Then_CombinedMatches() throws Exception {
+        seedOrdersWithDescriptions();
+
+        assertEquals(List.of("O0002"), searchOrderNumbers("pump AND cleaning"));
+        assertEquals(List.of("O0001", "O0002", "O0003"), searchOrderNumbers("pump OR valve"));
+        assertEquals(List.of("O0003"), searchOrderNumbers("cleaning NOT pump"));
+        assertEquals(ORDER_COUNT - 2, odataHelper.getJson("/Orders", "$search=NOT pump&$count=true&$top=1", 200)
+                .get("@odata.count").asInt());
+    }
+
+    @Test
+    public void when_SearchWithCount_Then_OnlyMatchesCounted() throws Exception {
+        seedOrdersWithDescriptions();
+
+        JsonNode result = odataHelper.getJson("/Orders", "$search=cleaning&$count=true", 200);
+
+        assertEquals(2, result.get("@odata.count").asInt());
+        assertEquals(2, result.get("value").size());
+    }
+
+    @Test
+    public void when_SearchProductsAndEquipments_Then_MatchingEntities() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 3);
+
+        JsonNode products = odataHelper.getJson("/Products", "$search=aspirin", 200).get("value");
+        JsonNode equipments = odataHelper.getJson("/Equipments", "$search=E0002 OR E0003", 200).get("value");
+
+        assertEquals(1, products.size());
+        assertEquals("P0001", products.get(0).get("ProductNumber").asText());
+        assertEquals(2, equipments.size());
+    }
+
+    @Test
+    public void when_SearchRankedWithoutOrderBy_Then_PagesLinkedWithSkip() throws Exception {
+        List<Long> orderIds = odataHelper.seedOrders(ORDER_COUNT, 2);
+
+        List<JsonNode> pages = odataHelper.getAllPages("/Orders", "$search=order");
+
+        assertEquals(5, pages.size());
+        assertTrue(pages.get(0).get("@odata.nextLink").asText().contains("$skip=7"));
+        assertFalse(pages.get(0).get("@odata.nextLink").asText().contains("$skiptoken"));
+
+        List<Long> pagedIds = new ArrayList<>();
+        for (JsonNode page : pages) {
+            page.get("value").forEach(order -> pagedIds.add(order.get("Id").asLong()));
+        }
+        assertEquals(ORDER_COUNT, pagedIds.size());
+        assertEquals(new HashSet<>(orderIds), Set.copyOf(pagedIds));
+    }
+
+    @Test
+    public void when_SearchWithOrderBy_Then_PagesLinkedWithSkipToken() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 2);
+
+        JsonNode page = odataHelper.getJson("/Orders", "$search=order&$orderby=OrderNumber desc", 200);
+
+        assertEquals("O0030", page.get("value").get(0).get("OrderNumber").asText());
+        assertTrue(page.get("@odata.nextLink").asText().contains("$skiptoken="));
+    }
+
+    @Test
+    public void when_SearchRankedWithSkipToken_Then_BadRequest() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 2);
+        String nextLink = odataHelper.getJson("/Orders", "$orderby=Id", 200).get("@odata.nextLink").asText();
+        String skipToken = nextLink.substring(nextLink.indexOf("$skiptoken="));
+
+        odataHelper.getJson("/Orders", "$search=order&" + skipToken, 400);
+    }
+
+    /**
+     * Seeds the orders and describes the first three, the other orders keep their default description.
+     */
+    private void seedOrdersWithDescriptions() {
+        List<Long> orderIds = odataHelper.seedOrders(ORDER_COUNT, 2);
+        List<String> descriptions = List.of("Pump maintenance", "Pump cleaning", "Valve cleaning");
+        List<OrderDBO> orders = orderRepository.findAllById(orderIds.subList(0, descriptions.size()));
+        for (OrderDBO order : orders) {
+            order.setDescription(descriptions.get(orderIds.indexOf(order.getId())));
+        }
+        orderRepository.saveAll(orders);
+    }
+
+    private List<String> searchOrderNumbers(String search) throws Exception {
+        List<String> orderNumbers = new ArrayList<>();
+        odataHelper.getJson("/Orders", "$search=" + search + "&$orderby=OrderNumber", 200).get("value")
+                .forEach(order -> orderNumbers.add(order.get("OrderNumber").asText()));
+        return orderNumbers;
+    }
+}
@@ -0,0 +1,105 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for $select on the OData entity sets.
+ *
+ * This class checks that only the selected columns are read from the database
+ * and that $select still works together with the other query options.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataSelectTest {
+
+    private static final int ORDER_COUNT = 20;
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_GetOrdersWithSelect_Then_OnlySelectedColumnsRead() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 1);
+
+        SqlStatementCounter.reset();
+        JsonNode orders = odataHelper.getJson("/Orders", "$select=OrderNumber", 200).get("value");
+
+        assertEquals(ORDER_COUNT, orders.size());
+        assertTrue(orders.get(0).has("OrderNumber"));
+        assertFalse(orders.get(0).has("Description"));
+
+        assertEquals(1, SqlStatementCounter.count());
+        String sql = SqlStatementCounter.statements().get(0).toLowerCase();
+        assertTrue(sql.contains("order_number"));
+        assertFalse(sql.contains("description"));
+        assertFalse(sql.contains("created_at"));
+    }
+
+    @Test
+    public void when_GetOrdersWithSelectFilterOrderByTop_Then_OK() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 1);
+
+        JsonNode orders = odataHelper.getJson("/Orders",
+                "$select=Id,OrderNumber,Name&$filter=startswith(OrderNumber,'O00')&$orderby=OrderNumber desc&$top=5", 200).get("value");
+
+        assertEquals(5, orders.size());
+        assertEquals("O0020", orders.get(0).get("OrderNumber").asText());
+        assertEquals("Order 20", orders.get(0).get("Name").asText());
+        assertTrue(orders.get(0).get("Id").asLong() > 0);
+        assertEquals("O0016", orders.get(4).get("OrderNumber").asText());
+    }
+
+    @Test
+    public void when_GetOrderWithSelect_Then_OnlySelectedColumnsRead() throws Exception {
+        List<Long> orderIds = odataHelper.seedOrders(1, 1);
+
+        SqlStatementCounter.reset();
+        JsonNode order = odataHelper.getJson("/Orders(" + orderIds.get(0) + ")", "$select=Name", 200);
+
+        assertEquals("Order 1", order.get("Name").asText());
+        assertFalse(order.has("Description"));
+        assertFalse(SqlStatementCounter.statements().get(0).toLowerCase().contains("description"));
+    }
+
+    @Test
+    public void when_GetOrdersWithSelectAndExpand_Then_FullEntitiesRead() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 1);
+
+        JsonNode orders = odataHelper.getJson("/Orders", "$select=OrderNumber&$expand=ProductBefore", 200).get("value");
+
+        assertEquals(ORDER_COUNT, orders.size());
+        assertEquals("P0001", orders.get(0).get("ProductBefore").get("ProductNumber").asText());
+        assertFalse(orders.get(0).has("Description"));
+    }
+
+    @Test
+    public void when_GetUnknownOrderWithSelect_Then_NotFound() throws Exception {
+        MockHttpServletResponse response = odataHelper.get("/Orders(999999)", "$select=Name");
+
+        assertEquals(404, response.getStatus());
+    }
+}
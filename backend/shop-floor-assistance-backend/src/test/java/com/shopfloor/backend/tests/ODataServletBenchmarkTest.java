@@ -0,0 +1,180 @@
+package com.shopfloor.backend.tests;
+
+import com.shopfloor.backend.olingo.business.implementations.equipments.EquipmentCollectionProcessor;
+import com.shopfloor.backend.olingo.business.implementations.equipments.EquipmentEntityProcessor;
+import com.shopfloor.backend.olingo.presentation.EdmProvider;
+import com.shopfloor.backend.olingo.presentation.ODataHandlerRegistry;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.apache.olingo.server.api.OData;
+import org.apache.olingo.server.api.ODataHttpHandler;
+import org.apache.olingo.server.api.ServiceMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Throughput benchmark for the OData request handling.
+ *
+ * Compares the former per-request construction of OData, ServiceMetadata and handler
+ * with the pooled handlers of the ODataHandlerRegistry, on one thread and on several concurrent threads.
+ * The results are logged, nothing is asserted about the timing, the benchmark only checks that every request succeeds.
+ * It is skipped by default, run it with: mvn test -Dtest=ODataServletBenchmarkTest -Dbenchmark=true
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ODataServletBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ODataServletBenchmarkTest.class);
+
+    private static final int WARMUP_REQUESTS = 2000;
+    private static final int MEASURED_REQUESTS = 8000;
+    private static final int THREADS = 8;
+
+    @Autowired
+    private ODataHandlerRegistry handlerRegistry;
+
+    @Autowired
+    private EdmProvider edmProvider;
+
+    @Autowired
+    private EquipmentEntityProcessor equipmentEntityProcessor;
+
+    @Autowired
+    private EquipmentCollectionProcessor equipmentCollectionProcessor;
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void benchmark_MetadataRequests() throws Exception {
+        compare("/$metadata", null);
+    }
+
+    @Test
+    public void benchmark_CollectionRequests() throws Exception {
+        odataHelper.seedOrders(1, 10);
+        compare("/Equipments", "Equipments");
+    }
+
+    private void compare(String path, String entitySetName) throws Exception {
+        for (int threads : new int[]{1, THREADS}) {
+            double before = measure(path, entitySetName, true, threads);
+            double after = measure(path, entitySetName, false, threads);
+            LOGGER.info("OData {} on {} thread(s): per-request handler {} req/s, pooled handler {} req/s (x{})",
+                    path, threads, Math.round(before), Math.round(after), String.format("%.1f", after / before));
+        }
+    }
+
+    private double measure(String path, String entitySetName, boolean rebuildPerRequest, int threads) throws Exception {
+        run(path, entitySetName, rebuildPerRequest, threads, WARMUP_REQUESTS);
+        long start = System.nanoTime();
+        run(path, entitySetName, rebuildPerRequest, threads, MEASURED_REQUESTS);
+        return MEASURED_REQUESTS / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private void run(String path, String entitySetName, boolean rebuildPerRequest, int threads, int requests) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    for (int i = 0; i < requests / threads; i++) {
+                        process(path, entitySetName, rebuildPerRequest);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void process(String path, String entitySetName, boolean rebuildPerRequest) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/odata" + path);
+        request.setServletPath("/odata");
+        request.setPathInfo(path);
+        MockHttpServletResponse response = new DiscardingResponse();
+
+        if (rebuildPerRequest) {
+            buildHandlerPerRequest().process(request, response);
+        } else {
+            handlerRegistry.process(entitySetName, request, response);
+        }
+        assertEquals(200, response.getStatus());
+    }
+
+    /**
+     * Mirrors the former ODataServlet, which built everything for every single request.
+     */
+    private ODataHttpHandler buildHandlerPerRequest() {
+        OData odata = OData.newInstance();
+        ServiceMetadata edm = odata.createServiceMetadata(edmProvider, new ArrayList<>());
+        ODataHttpHandler handler = odata.createHandler(edm);
+        handler.register(equipmentEntityProcessor);
+        handler.register(equipmentCollectionProcessor);
+        return handler;
+    }
+
+    /**
+     * Response that drops the body, so the benchmark measures the handler and not the byte-wise mock output stream.
+     */
+    private static class DiscardingResponse extends MockHttpServletResponse {
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.shopfloor.backend.olingo.presentation.ODataHandlerRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the OData servlet.
+ *
+ * This class contains tests for the service and metadata documents
+ * and for reading and writing the OData entity sets,
+ * and for the handlers pooled by the ODataHandlerRegistry.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataServletTest {
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Registry of the pooled OData handlers.
+     */
+    @Autowired
+    private ODataHandlerRegistry handlerRegistry;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_GetMetadata_Then_OK() throws Exception {
+        MockHttpServletResponse response = odataHelper.get("/$metadata", null);
+
+        assertEquals(200, response.getStatus());
+        String document = response.getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(document.contains("EntityType Name=\"Order\""));
+        assertTrue(document.contains("EntitySet Name=\"Equipments\""));
+    }
+
+    @Test
+    public void when_GetMetadataTwice_Then_SameDocument() throws Exception {
+        String first = odataHelper.get("/$metadata", null).getContentAsString(StandardCharsets.UTF_8);
+        String second = odataHelper.get("/$metadata", null).getContentAsString(StandardCharsets.UTF_8);
+
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void when_GetMetadataAsJson_Then_OK() throws Exception {
+        MockHttpServletResponse response = odataHelper.get("/$metadata", "$format=json");
+
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getContentType().startsWith("application/json"));
+    }
+
+    @Test
+    public void when_GetServiceDocument_Then_EntitySetsListed() throws Exception {
+        JsonNode document = odataHelper.getJson("/", null, 200);
+
+        assertEquals(3, document.get("value").size());
+    }
+
+    @Test
+    public void when_GetUnknownEntitySet_Then_NotFound() throws Exception {
+        MockHttpServletResponse response = odataHelper.get("/Machines", null, Map.of());
+
+        assertEquals(404, response.getStatus());
+    }
+
+    @Test
+    public void when_CreateAndReadEquipment_Then_OK() throws Exception {
+        JsonNode created = odataHelper.sendJson("POST", "/Equipments",
+                "{\"EquipmentNumber\":\"E100\",\"Name\":\"Press\",\"Type\":\"Press\",\"Description\":\"Hydraulic\"}", 200);
+        long id = created.get("Id").asLong();
+
+        JsonNode read = odataHelper.getJson("/Equipments(" + id + ")", null, 200);
+        assertEquals("E100", read.get("EquipmentNumber").asText());
+
+        JsonNode collection = odataHelper.getJson("/Equipments", null, 200);
+        assertEquals(1, collection.get("value").size());
+    }
+
+    @Test
+    public void when_GetSequentially_Then_HandlerReused() throws Exception {
+        odataHelper.getJson("/Equipments", null, 200);
+        long wired = handlerRegistry.getWiredHandlers();
+
+        for (int i = 0; i < 10; i++) {
+            odataHelper.getJson("/Equipments", null, 200);
+            odataHelper.get("/$metadata", null);
+        }
+
+        // the $metadata request may wire the first root handler, the Equipments handler is reused
+        assertTrue(handlerRegistry.getWiredHandlers() <= wired + 1);
+    }
+
+    @Test
+    public void when_GetConcurrently_Then_EveryRequestAnsweredWithItsOwnEntity() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            JsonNode created = odataHelper.sendJson("POST", "/Equipments",
+                    "{\"EquipmentNumber\":\"E" + i + "\",\"Name\":\"Press\",\"Type\":\"Press\",\"Description\":\"Hydraulic\"}", 200);
+            ids.add(created.get("Id").asLong());
+        }
+
+        // handlers keep the state of their request, a handler shared by two requests answers one of them with the other entity
+        ExecutorService executor = Executors.newFixedThreadPool(ids.size());
+        try {
+            List<Callable<Boolean>> reads = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                long id = ids.get(i);
+                String equipmentNumber = "E" + i;
+                reads.add(() -> {
+                    for (int j = 0; j < 25; j++) {
+                        JsonNode read = odataHelper.getJson("/Equipments(" + id + ")", null, 200);
+                        if (!equipmentNumber.equals(read.get("EquipmentNumber").asText())) {
+                            return false;
+                        }
+                    }
+                    return true;
+                });
+            }
+            for (Future<Boolean> read : executor.invokeAll(reads)) {
+                assertTrue(read.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
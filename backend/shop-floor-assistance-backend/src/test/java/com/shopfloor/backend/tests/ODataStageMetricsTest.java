@@ -0,0 +1,123 @@
+package com.shopfloor.backend.tests;
+
+import com.shopfloor.backend.database.objects.EquipmentDBO;
+import com.shopfloor.backend.database.repositories.EquipmentRepository;
+import com.shopfloor.backend.olingo.business.generics.metrics.ODataStageMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the stage metrics of OData requests.
+ *
+ * This class checks that the stages of collection and entity requests are timed per entity set,
+ * that fetched rows and serialized bytes are counted, and that the metrics are exposed in the Prometheus format to editors.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class ODataStageMetricsTest {
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Helper for logging in the editor scraping the metrics.
+     */
+    @Autowired
+    private ApiHelper apiHelper;
+
+    /**
+     * MockMvc for the requests to the metrics endpoint.
+     */
+    @Autowired
+    private MockMvc mockMvc;
+
+    /**
+     * The metrics under test.
+     */
+    @Autowired
+    private ODataStageMetrics stageMetrics;
+
+    /**
+     * Repository for managing equipment data.
+     */
+    @Autowired
+    private EquipmentRepository equipmentRepository;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_CollectionRead_Then_StagesTimedAndRowsCounted() throws Exception {
+        odataHelper.seedOrders(3, 1);
+        List<String> stages = List.of("options", "specification", "context-url", "fetch", "convert", "count", "serialize");
+        long[] counts = stages.stream().mapToLong(stage -> stageMetrics.getCount("Orders", ODataStageMetrics.READ_COLLECTION, stage)).toArray();
+        long rows = stageMetrics.getRowsFetched("Orders");
+        long bytes = stageMetrics.getBytesSerialized("Orders");
+
+        odataHelper.getJson("/Orders", "$count=true&$filter=Name ne 'none'", 200);
+
+        for (int i = 0; i < stages.size(); i++) {
+            assertEquals(counts[i] + 1, stageMetrics.getCount("Orders", ODataStageMetrics.READ_COLLECTION, stages.get(i)), stages.get(i));
+        }
+        assertEquals(rows + 3, stageMetrics.getRowsFetched("Orders"));
+        assertTrue(stageMetrics.getBytesSerialized("Orders") > bytes);
+    }
+
+    @Test
+    public void when_EntityWritten_Then_OperationStagesTimed() throws Exception {
+        odataHelper.seedOrders(1, 1);
+        long equipmentId = equipmentRepository.findByEquipmentNumber("E0001").map(EquipmentDBO::getId).orElseThrow();
+        long reads = stageMetrics.getCount("Equipments", ODataStageMetrics.READ_ENTITY, "serialize");
+        long updates = stageMetrics.getCount("Equipments", ODataStageMetrics.UPDATE_ENTITY, "update");
+
+        odataHelper.getJson("/Equipments(" + equipmentId + ")", null, 200);
+        odataHelper.sendJson("PUT", "/Equipments(" + equipmentId + ")",
+                "{\"EquipmentNumber\":\"E0001\",\"Name\":\"Renamed\",\"Type\":\"Machine\",\"Description\":\"Test\"}", 200);
+
+        assertEquals(reads + 1, stageMetrics.getCount("Equipments", ODataStageMetrics.READ_ENTITY, "serialize"));
+        assertEquals(updates + 1, stageMetrics.getCount("Equipments", ODataStageMetrics.UPDATE_ENTITY, "update"));
+    }
+
+    @Test
+    public void when_MetricsScrapedWithoutAuthentication_Then_Forbidden() throws Exception {
+        assertEquals(403, mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus")).andReturn().getResponse().getStatus());
+    }
+
+    @Test
+    public void when_MetricsScrapedByEditor_Then_PrometheusHistogram() throws Exception {
+        odataHelper.seedOrders(1, 1);
+        odataHelper.get("/Orders", "$top=1", Map.of());
+
+        String metrics = mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus")
+                        .header("Authorization", apiHelper.createAuthorizationHeaderFrom("editor", "editor")))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        assertTrue(metrics.contains("# TYPE odata_stage_seconds histogram"));
+        assertTrue(metrics.contains("odata_stage_seconds_bucket{entity_set=\"Orders\",operation=\"read-collection\",stage=\"fetch\",le=\"+Inf\"}"));
+        assertTrue(metrics.contains("odata_stage_seconds_sum{entity_set=\"Orders\",operation=\"read-collection\",stage=\"fetch\"}"));
+        assertTrue(metrics.contains("odata_rows_fetched_total{entity_set=\"Orders\"}"));
+        assertTrue(metrics.contains("odata_bytes_serialized_total{entity_set=\"Orders\"}"));
+    }
+}
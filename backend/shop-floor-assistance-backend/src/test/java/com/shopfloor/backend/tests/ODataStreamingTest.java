@@ -0,0 +1,118 @@
+package com.shopfloor.backend.tests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for streamed OData collections.
+ *
+ * The streaming threshold is lowered, so every request with a $top above it is streamed
+ * from a database cursor instead of being loaded at once. The server page size is above the threshold as well.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = {"odata.streaming.threshold=10", "odata.streaming.fetch-size=4", "odata.paging.page-size=12"})
+@AutoConfigureMockMvc
+public class ODataStreamingTest {
+
+    private static final int ORDER_COUNT = 30;
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_GetOrdersAboveThreshold_Then_Streamed() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 2);
+
+        JsonNode result = odataHelper.getJson("/Orders", "$top=25&$orderby=OrderNumber&$count=true", 200);
+
+        JsonNode orders = result.get("value");
+        assertEquals(25, orders.size());
+        assertEquals(ORDER_COUNT, result.get("@odata.count").asInt());
+        assertEquals("O0001", orders.get(0).get("OrderNumber").asText());
+        assertEquals("O0025", orders.get(24).get("OrderNumber").asText());
+    }
+
+    @Test
+    public void when_GetOrdersAboveThresholdWithExpand_Then_NavigationsStreamed() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 2);
+
+        JsonNode orders = odataHelper.getJson("/Orders", "$top=50&$expand=ProductBefore,Equipments", 200).get("value");
+
+        assertEquals(ORDER_COUNT, orders.size());
+        for (JsonNode order : orders) {
+            assertEquals("P0001", order.get("ProductBefore").get("ProductNumber").asText());
+            assertEquals(2, order.get("Equipments").size());
+        }
+    }
+
+    @Test
+    public void when_GetOrdersAboveThresholdWithSelect_Then_OnlySelectedColumnsStreamed() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 2);
+
+        SqlStatementCounter.reset();
+        JsonNode orders = odataHelper.getJson("/Orders", "$top=50&$select=OrderNumber", 200).get("value");
+
+        assertEquals(ORDER_COUNT, orders.size());
+        assertFalse(orders.get(0).has("Description"));
+        assertFalse(SqlStatementCounter.statements().get(0).toLowerCase().contains("description"));
+    }
+
+    @Test
+    public void when_GetOrdersBelowThreshold_Then_OK() throws Exception {
+        odataHelper.seedOrders(ORDER_COUNT, 2);
+
+        JsonNode orders = odataHelper.getJson("/Orders", "$top=5", 200).get("value");
+
+        assertEquals(5, orders.size());
+    }
+
+    @Test
+    public void when_GetOrdersWithoutTop_Then_StreamedPagesLinked() throws Exception {
+        List<Long> orderIds = odataHelper.seedOrders(ORDER_COUNT, 2);
+
+        List<JsonNode> pages = odataHelper.getAllPages("/Orders", "$orderby=OrderNumber desc&$count=true");
+
+        assertEquals(3, pages.size());
+        assertEquals(12, pages.get(0).get("value").size());
+        assertEquals(ORDER_COUNT, pages.get(2).get("@odata.count").asInt());
+        assertEquals(6, pages.get(2).get("value").size());
+        assertFalse(pages.get(2).has("@odata.nextLink"));
+
+        List<Long> streamedIds = new ArrayList<>();
+        for (JsonNode page : pages) {
+            page.get("value").forEach(order -> streamedIds.add(order.get("Id").asLong()));
+        }
+        Collections.reverse(orderIds);
+        assertEquals(orderIds, streamedIds);
+    }
+
+    @Test
+    public void when_GetEmptyCollectionAboveThreshold_Then_EmptyValue() throws Exception {
+        JsonNode orders = odataHelper.getJson("/Orders", "$top=50", 200).get("value");
+
+        assertEquals(0, orders.size());
+    }
+}
@@ -0,0 +1,252 @@
+package com.shopfloor.backend.tests;
+
+import com.shopfloor.backend.api.transferobjects.operators.OperatorOrderTO;
+import com.shopfloor.backend.concurrency.SingleFlight;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for the coalescing of identical concurrent reads.
+ *
+ * This class checks that identical reads running at the same time are run once and share the result or the exception,
+ * that nothing is cached once the read has finished, that callers with other roles or waiting too long read themselves,
+ * and that concurrent OData entity and operator order reads get equal responses.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    /**
+     * The coalescing under test.
+     */
+    @Autowired
+    private SingleFlight singleFlight;
+
+    /**
+     * Helper for OData-related operations.
+     */
+    @Autowired
+    private ODataHelper odataHelper;
+
+    /**
+     * Helper for API-related operations.
+     */
+    @Autowired
+    private ApiHelper apiHelper;
+
+    /**
+     * Threads of the concurrent callers.
+     */
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    /**
+     * Clears the database after each test.
+     */
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+        odataHelper.clearDatabase();
+    }
+
+    @Test
+    public void when_IdenticalReadsConcurrent_Then_RunOnceAndResultShared() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        long followers = singleFlight.getFollowers();
+
+        List<CompletableFuture<String>> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            callers.add(CompletableFuture.supplyAsync(() -> singleFlight.execute("test:shared", () -> {
+                runs.incrementAndGet();
+                awaitQuietly(release);
+                return "result";
+            }), executor));
+        }
+        awaitFollowers(followers + CALLERS - 1);
+        release.countDown();
+
+        for (CompletableFuture<String> caller : callers) {
+            assertEquals("result", caller.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, runs.get());
+        assertEquals(0, singleFlight.getRunning());
+
+        assertEquals("again", singleFlight.execute("test:shared", () -> "again"), "finished reads are not cached");
+    }
+
+    @Test
+    public void when_SharedReadFails_Then_EveryCallerGetsException() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        long followers = singleFlight.getFollowers();
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("test:failing", () -> {
+            awaitQuietly(release);
+            throw new IllegalStateException("read failed");
+        }), executor);
+        awaitRunning();
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> singleFlight.<String, RuntimeException>execute("test:failing", () -> "not run"), executor);
+        awaitFollowers(followers + 1);
+        release.countDown();
+
+        for (CompletableFuture<String> caller : List.of(leader, follower)) {
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> caller.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, exception.getCause());
+            assertEquals("read failed", exception.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void when_CallersHaveOtherRoles_Then_ReadNotShared() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> editor = CompletableFuture.supplyAsync(() -> readAs("ROLE_EDITOR", "test:roles", () -> {
+            runs.incrementAndGet();
+            awaitQuietly(release);
+            return "editor";
+        }), executor);
+        awaitRunning();
+        CompletableFuture<String> operator = CompletableFuture.supplyAsync(() -> readAs("ROLE_OPERATOR", "test:roles", () -> {
+            runs.incrementAndGet();
+            return "operator";
+        }), executor);
+
+        assertEquals("operator", operator.get(1, TimeUnit.SECONDS), "the operator does not wait for the read of the editor");
+        release.countDown();
+        assertEquals("editor", editor.get(5, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void when_LeaderTooSlow_Then_FollowerReadsItself() throws Exception {
+        SingleFlight shortWait = new SingleFlight(true, Duration.ofMillis(100));
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> shortWait.execute("test:slow", () -> {
+            awaitQuietly(release);
+            return "leader";
+        }), executor);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (shortWait.getRunning() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals("follower", shortWait.execute("test:slow", () -> "follower"));
+        assertEquals(1, shortWait.getFollowers());
+        assertEquals(1, shortWait.getTimedOut());
+        release.countDown();
+        assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void when_EntityReadConcurrent_Then_EqualResponses() throws Exception {
+        long orderId = odataHelper.seedOrders(1, 2).get(0);
+        long reads = singleFlight.getLeaders() + singleFlight.getFollowers();
+
+        List<CompletableFuture<MockHttpServletResponse>> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            callers.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return odataHelper.get("/Orders(" + orderId + ")", "$expand=Equipments", Map.of());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, executor));
+        }
+
+        String expected = odataHelper.get("/Orders(" + orderId + ")", "$expand=Equipments", Map.of()).getContentAsString(StandardCharsets.UTF_8);
+        for (CompletableFuture<MockHttpServletResponse> caller : callers) {
+            MockHttpServletResponse response = caller.get(10, TimeUnit.SECONDS);
+            assertEquals(200, response.getStatus());
+            assertTrue(response.getContentType().startsWith("application/json"), response.getContentType());
+            assertEquals(expected, response.getContentAsString(StandardCharsets.UTF_8));
+        }
+        assertEquals(reads + CALLERS + 1, singleFlight.getLeaders() + singleFlight.getFollowers());
+        odataHelper.getJson("/Orders(" + (orderId + 1000) + ")", null, 404);
+    }
+
+    @Test
+    public void when_OperatorOrderReadConcurrent_Then_EqualOrders() throws Exception {
+        long orderId = odataHelper.seedOrders(1, 1).get(0);
+        String operatorHeader = apiHelper.createAuthorizationHeaderFrom("operator", "operator");
+        long reads = singleFlight.getLeaders() + singleFlight.getFollowers();
+
+        List<CompletableFuture<OperatorOrderTO>> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            callers.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return apiHelper.getOperatorOrderGET(orderId, operatorHeader, 200);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, executor));
+        }
+
+        for (CompletableFuture<OperatorOrderTO> caller : callers) {
+            OperatorOrderTO order = caller.get(10, TimeUnit.SECONDS);
+            assertEquals(orderId, order.getId());
+            assertEquals(1, order.getEquipment().size());
+        }
+        assertEquals(reads + CALLERS, singleFlight.getLeaders() + singleFlight.getFollowers());
+        apiHelper.getOperatorOrderGET(orderId + 1000, operatorHeader, 404);
+    }
+
+    private String readAs(String role, String key, SingleFlight.Work<String, RuntimeException> work) {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("user", null, role));
+        try {
+            return singleFlight.execute(key, work);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private void awaitFollowers(long followers) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.getFollowers() < followers && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(followers, singleFlight.getFollowers());
+    }
+
+    private void awaitRunning() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.getRunning() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, singleFlight.getRunning());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.shopfloor.backend.tests;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hibernate StatementInspector which records every SQL statement sent to the database.
+ * Registered for the test profile in application-test.properties,
+ * it lets tests assert how many statements a request issues, what they look like and which thread issued them.
+ * @author David Todorov (https://github.com/david-todorov)
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<>());
+    private static final List<String> THREADS = new ArrayList<>();
+
+    /**
+     * Records the statement and passes it on unchanged.
+     *
+     * @param sql the SQL statement
+     * @return the unchanged SQL statement
+     */
+    @Override
+    public String inspect(String sql) {
+        synchronized (STATEMENTS) {
+            STATEMENTS.add(sql);
+            THREADS.add(Thread.currentThread().getName());
+        }
+        return sql;
+    }
+
+    /**
+     * Forgets all recorded statements.
+     */
+    public static void reset() {
+        synchronized (STATEMENTS) {
+            STATEMENTS.clear();
+            THREADS.clear();
+        }
+    }
+
+    /**
+     * Returns the number of statements recorded since the last reset.
+     *
+     * @return the number of statements
+     */
+    public static int count() {
+        return STATEMENTS.size();
+    }
+
+    /**
+     * Returns a copy of the statements recorded since the last reset.
+     *
+     * @return the recorded statements
+     */
+    public static List<String> statements() {
+        synchronized (STATEMENTS) {
+            return new ArrayList<>(STATEMENTS);
+        }
+    }
+
+    /**
+     * Returns the names of the threads which issued the recorded statements, in the order of statements().
+     *
+     * @return the thread names
+     */
+    public static List<String> threads() {
+        synchronized (STATEMENTS) {
+            return new ArrayList<>(THREADS);
+        }
+    }
+}